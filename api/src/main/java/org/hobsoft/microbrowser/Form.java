@@ -13,6 +13,9 @@
  */
 package org.hobsoft.microbrowser;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Defines an HTML form.
  */
@@ -85,4 +88,37 @@ public interface Form extends Unwrappable
 	 *             if the action is not a valid URL
 	 */
 	MicrodataDocument submit();
+	
+	/**
+	 * Asynchronously submits this form.
+	 * <p>
+	 * The returned future completes exceptionally with a {@code MicrobrowserException} if an error occurs. Cancelling
+	 * the future aborts the request.
+	 * 
+	 * @return a future for the response as a microdata document
+	 * @throws IllegalStateException
+	 *             if the form is missing a submit button
+	 * @throws IllegalArgumentException
+	 *             if the action is not a valid URL
+	 */
+	CompletableFuture<MicrodataDocument> submitAsync();
+	
+	/**
+	 * Asynchronously submits this form within the specified time.
+	 * <p>
+	 * The returned future completes exceptionally with a {@code TimeoutException}, and the request is aborted, if no
+	 * response has been received within the timeout.
+	 * 
+	 * @param timeout
+	 *            the maximum time to wait
+	 * @param unit
+	 *            the time unit of the timeout
+	 * @return a future for the response as a microdata document
+	 * @throws IllegalStateException
+	 *             if the form is missing a submit button
+	 * @throws IllegalArgumentException
+	 *             if the action is not a valid URL
+	 * @see #submitAsync()
+	 */
+	CompletableFuture<MicrodataDocument> submitAsync(long timeout, TimeUnit unit);
 }
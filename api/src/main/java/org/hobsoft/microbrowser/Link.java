@@ -14,6 +14,8 @@
 package org.hobsoft.microbrowser;
 
 import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Defines an HTML link.
@@ -44,4 +46,33 @@ public interface Link extends Unwrappable
 	 *             if the href is not a valid URL
 	 */
 	MicrodataDocument follow();
+	
+	/**
+	 * Asynchronously follows this link.
+	 * <p>
+	 * The returned future completes exceptionally with a {@code MicrobrowserException} if an error occurs. Cancelling
+	 * the future aborts the request.
+	 * 
+	 * @return a future for the response as a microdata document
+	 * @throws IllegalArgumentException
+	 *             if the href is not a valid URL
+	 */
+	CompletableFuture<MicrodataDocument> followAsync();
+	
+	/**
+	 * Asynchronously follows this link within the specified time.
+	 * <p>
+	 * The returned future completes exceptionally with a {@code TimeoutException}, and the request is aborted, if no
+	 * response has been received within the timeout.
+	 * 
+	 * @param timeout
+	 *            the maximum time to wait
+	 * @param unit
+	 *            the time unit of the timeout
+	 * @return a future for the response as a microdata document
+	 * @throws IllegalArgumentException
+	 *             if the href is not a valid URL
+	 * @see #followAsync()
+	 */
+	CompletableFuture<MicrodataDocument> followAsync(long timeout, TimeUnit unit);
 }
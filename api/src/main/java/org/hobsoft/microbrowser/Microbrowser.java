@@ -13,6 +13,9 @@
  */
 package org.hobsoft.microbrowser;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Defines a programmatic web browser for HTML microdata.
  */
@@ -30,4 +33,37 @@ public interface Microbrowser
 	 *             if the URL is not valid
 	 */
 	MicrodataDocument get(String url);
+	
+	/**
+	 * Asynchronously fetches the specified page as a microdata document.
+	 * <p>
+	 * The returned future completes exceptionally with a {@code MicrobrowserException} if an error occurs. Cancelling
+	 * the future aborts the fetch.
+	 * 
+	 * @param url
+	 *            the URL of the page to fetch
+	 * @return a future for the page as a microdata document
+	 * @throws IllegalArgumentException
+	 *             if the URL is not valid
+	 */
+	CompletableFuture<MicrodataDocument> getAsync(String url);
+	
+	/**
+	 * Asynchronously fetches the specified page as a microdata document within the specified time.
+	 * <p>
+	 * The returned future completes exceptionally with a {@code TimeoutException}, and the fetch is aborted, if the
+	 * page has not been fetched within the timeout.
+	 * 
+	 * @param url
+	 *            the URL of the page to fetch
+	 * @param timeout
+	 *            the maximum time to wait
+	 * @param unit
+	 *            the time unit of the timeout
+	 * @return a future for the page as a microdata document
+	 * @throws IllegalArgumentException
+	 *             if the URL is not valid
+	 * @see #getAsync(String)
+	 */
+	CompletableFuture<MicrodataDocument> getAsync(String url, long timeout, TimeUnit unit);
 }
@@ -54,4 +54,16 @@ public interface MicrodataDocument extends Hypermedia, Unwrappable
 	 *             if the cookie cannot be found
 	 */
 	String getCookie(String name);
+
+	/**
+	 * Gets an immutable copy of the items and links of this document, and releases whatever else this document holds.
+	 * <p>
+	 * The copy retains the type, id and property values of each item, and the relation and URL of each link, which can
+	 * still be followed, along with the cookies of this document. It has no forms and cannot be unwrapped, and it is
+	 * unchanged by any later navigation. Implementations that hold the content of the document themselves then read its
+	 * items and links from the copy in the same way.
+	 * 
+	 * @return the detached document
+	 */
+	MicrodataDocument detach();
 }
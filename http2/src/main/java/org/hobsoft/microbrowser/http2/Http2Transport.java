@@ -0,0 +1,472 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.http2;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpClient.Redirect;
+import java.net.http.HttpClient.Version;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.hobsoft.microbrowser.spi.CompletableFutures;
+import org.hobsoft.microbrowser.spi.http.AbstractTransport;
+import org.hobsoft.microbrowser.spi.http.BodyTooLargeException;
+import org.hobsoft.microbrowser.spi.http.ContentEncodings;
+import org.hobsoft.microbrowser.spi.http.HttpRequest;
+import org.hobsoft.microbrowser.spi.http.HttpResponse;
+import org.hobsoft.microbrowser.spi.http.ResponseLimits;
+import org.hobsoft.microbrowser.spi.http.TotalTimeoutException;
+
+import com.google.common.io.CountingInputStream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@code Transport} that uses {@code java.net.http.HttpClient} to multiplex concurrent requests over a single HTTP/2
+ * connection per origin.
+ * <p>
+ * HTTPS origins negotiate HTTP/2 using ALPN. Plain HTTP origins are upgraded to cleartext HTTP/2 (h2c) by the first
+ * request without a body. Origins that support neither fall back to HTTP/1.1.
+ * <p>
+ * The maximum body size and total timeout of the {@code ResponseLimits} in effect are enforced as each body streams in.
+ * The client's own connect timeout applies instead of that of the limits, and the time to wait for response headers is
+ * set by {@link #timeout(Duration)} instead of the read timeout of the limits.
+ */
+public class Http2Transport extends AbstractTransport
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// constants
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(30);
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private static final Set<String> RESTRICTED_HEADERS = newCaseInsensitiveSet("Connection", "Content-Length",
+		"Expect", "Host", "Upgrade");
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private final HttpClient client;
+
+	private volatile Duration timeout;
+
+	private volatile ResponseLimits limits;
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public Http2Transport()
+	{
+		this(HttpClient.newBuilder()
+			.version(Version.HTTP_2)
+			.followRedirects(Redirect.NEVER)
+			.connectTimeout(DEFAULT_TIMEOUT)
+			.build());
+	}
+
+	/**
+	 * Creates a transport that uses the specified client.
+	 *
+	 * @param client
+	 *            the client to send requests with, which must not follow redirects
+	 */
+	public Http2Transport(HttpClient client)
+	{
+		this.client = checkNotNull(client, "client");
+		checkArgument(client.followRedirects() == Redirect.NEVER, "client must not follow redirects");
+
+		timeout = DEFAULT_TIMEOUT;
+		limits = ResponseLimits.DEFAULT;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// public methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Sets the time to wait for the headers of each response.
+	 *
+	 * @param timeout
+	 *            the response timeout
+	 * @return this transport
+	 */
+	public Http2Transport timeout(Duration timeout)
+	{
+		checkNotNull(timeout, "timeout");
+		checkArgument(!timeout.isNegative() && !timeout.isZero(), "timeout must be positive: %s", timeout);
+
+		this.timeout = timeout;
+		return this;
+	}
+
+	/**
+	 * Sets the size and time limits to enforce while receiving each response, of which only the maximum body size,
+	 * truncation and total timeout apply to this transport.
+	 *
+	 * @param limits
+	 *            the response limits
+	 * @return this transport
+	 */
+	public Http2Transport limits(ResponseLimits limits)
+	{
+		this.limits = checkNotNull(limits, "limits");
+		return this;
+	}
+
+	/**
+	 * Sets the maximum number of permanent redirects to remember, so that later requests skip them.
+	 *
+	 * @param maxPermanentRedirects
+	 *            the maximum number of redirects, or zero to always follow permanent redirects anew
+	 * @return this transport
+	 */
+	public Http2Transport maxPermanentRedirects(int maxPermanentRedirects)
+	{
+		setMaxPermanentRedirects(maxPermanentRedirects);
+		return this;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// AbstractTransport methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Override
+	protected HttpResponse send(HttpRequest request) throws IOException
+	{
+		ResponseLimits limits = this.limits;
+		java.net.http.HttpResponse<InputStream> response;
+
+		try
+		{
+			response = client.send(newClientRequest(request, limits), BodyHandlers.ofInputStream());
+		}
+		catch (HttpTimeoutException exception)
+		{
+			throw toTimeoutException(exception, request, limits);
+		}
+		catch (InterruptedException exception)
+		{
+			Thread.currentThread().interrupt();
+			throw (IOException) new InterruptedIOException("Interrupted fetching URL " + request.getUrl())
+				.initCause(exception);
+		}
+
+		return toResponse(request, response, limits);
+	}
+
+	@Override
+	protected CompletableFuture<HttpResponse> sendAsync(HttpRequest request)
+	{
+		ResponseLimits limits = this.limits;
+		java.net.http.HttpRequest clientRequest;
+
+		try
+		{
+			clientRequest = newClientRequest(request, limits);
+		}
+		catch (IOException exception)
+		{
+			return CompletableFutures.failedFuture(exception);
+		}
+
+		CompletableFuture<java.net.http.HttpResponse<InputStream>> sent = client.sendAsync(clientRequest,
+			BodyHandlers.ofInputStream());
+		CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+
+		sent.whenComplete((response, throwable) ->
+		{
+			if (throwable != null)
+			{
+				Throwable cause = CompletableFutures.unwrap(throwable);
+
+				if (cause instanceof HttpTimeoutException)
+				{
+					cause = toTimeoutException((HttpTimeoutException) cause, request, limits);
+				}
+
+				result.completeExceptionally(cause);
+				return;
+			}
+
+			// closing the body cancels the stream, and with it any blocked read, if the result is cancelled
+			result.whenComplete((value, failure) ->
+			{
+				if (failure != null)
+				{
+					closeQuietly(response.body());
+				}
+			});
+
+			// reading the body blocks until it arrives
+			getExecutor().execute(() ->
+			{
+				try
+				{
+					result.complete(toResponse(request, response, limits));
+				}
+				catch (IOException exception)
+				{
+					result.completeExceptionally(exception);
+				}
+			});
+		});
+
+		return CompletableFutures.cancelOnFailure(result, sent);
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Reads the response body, decoding any content coding as the encoded bytes arrive from the stream, while
+	 * enforcing the maximum body size and total timeout.
+	 */
+	private static HttpResponse toResponse(HttpRequest request, java.net.http.HttpResponse<InputStream> response,
+		ResponseLimits limits) throws IOException
+	{
+		Map<String, List<String>> headers = response.headers().map();
+		CountingInputStream encoded = new CountingInputStream(response.body());
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		boolean truncated;
+
+		// closing the body unblocks any read in progress once the total timeout is reached
+		CompletableFuture<Void> deadline = newDeadline(request, limits);
+		deadline.thenRun(() -> closeQuietly(response.body()));
+
+		try (InputStream decoded = ContentEncodings.decode(encoded, response.headers().allValues("Content-Encoding")))
+		{
+			truncated = copy(decoded, body, limits, deadline);
+		}
+		finally
+		{
+			deadline.cancel(false);
+		}
+
+		// HTTP/2 has no reason phrase
+		return new HttpResponse(response.uri().toURL(), response.statusCode(), "", headers, body.toByteArray())
+			.withEncodedLength(encoded.getCount())
+			.withTruncated(truncated);
+	}
+
+	/**
+	 * Copies the specified decoded body while enforcing the maximum body size and the specified total timeout
+	 * deadline.
+	 *
+	 * @return {@code true} if the body was truncated
+	 */
+	private static boolean copy(InputStream in, ByteArrayOutputStream out, ResponseLimits limits,
+		CompletableFuture<Void> deadline) throws IOException
+	{
+		long maxBodySize = limits.getMaxBodySize();
+		byte[] buffer = new byte[BUFFER_SIZE];
+
+		while (true)
+		{
+			int read;
+
+			try
+			{
+				read = in.read(buffer);
+			}
+			catch (IOException exception)
+			{
+				if (!deadline.isDone() || deadline.isCancelled())
+				{
+					throw exception;
+				}
+
+				if (!limits.isTruncate())
+				{
+					throw (IOException) new TotalTimeoutException("Total timeout exceeded receiving response")
+						.initCause(exception);
+				}
+
+				return true;
+			}
+
+			if (read == -1)
+			{
+				return false;
+			}
+
+			if (read > maxBodySize - out.size())
+			{
+				if (!limits.isTruncate())
+				{
+					throw new BodyTooLargeException(maxBodySize);
+				}
+
+				out.write(buffer, 0, (int) (maxBodySize - out.size()));
+				return true;
+			}
+
+			out.write(buffer, 0, read);
+		}
+	}
+
+	/**
+	 * Gets a future that completes when the total timeout for the specified request is reached.
+	 *
+	 * @return the deadline, which never completes if there is no total timeout
+	 */
+	private static CompletableFuture<Void> newDeadline(HttpRequest request, ResponseLimits limits)
+	{
+		if (limits.getTotalTimeoutMillis() == 0)
+		{
+			return new CompletableFuture<>();
+		}
+
+		return CompletableFutures.delay(Math.max(getRemainingNanos(request, limits), 0), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Gets the time left until the total timeout for the specified request, which must have a total timeout.
+	 */
+	private static long getRemainingNanos(HttpRequest request, ResponseLimits limits)
+	{
+		long startNanos = request.isStarted() ? request.getStartNanos() : System.nanoTime();
+
+		return startNanos + TimeUnit.MILLISECONDS.toNanos(limits.getTotalTimeoutMillis()) - System.nanoTime();
+	}
+
+	private static IOException toTimeoutException(HttpTimeoutException exception, HttpRequest request,
+		ResponseLimits limits)
+	{
+		if (limits.getTotalTimeoutMillis() == 0 || getRemainingNanos(request, limits) > 0)
+		{
+			return exception;
+		}
+
+		return (IOException) new TotalTimeoutException("Total timeout exceeded waiting for response")
+			.initCause(exception);
+	}
+
+	private static void closeQuietly(InputStream in)
+	{
+		try
+		{
+			in.close();
+		}
+		catch (IOException exception)
+		{
+			// ignore
+		}
+	}
+
+	private java.net.http.HttpRequest newClientRequest(HttpRequest request, ResponseLimits limits)
+		throws IOException
+	{
+		Duration timeout = this.timeout;
+
+		if (limits.getTotalTimeoutMillis() > 0)
+		{
+			long remainingNanos = getRemainingNanos(request, limits);
+
+			if (remainingNanos <= 0)
+			{
+				throw new TotalTimeoutException("Total timeout exceeded sending request");
+			}
+
+			if (Duration.ofNanos(remainingNanos).compareTo(timeout) < 0)
+			{
+				timeout = Duration.ofNanos(remainingNanos);
+			}
+		}
+
+
+		byte[] body = request.getBody();
+		BodyPublisher publisher = (body.length > 0) ? BodyPublishers.ofByteArray(body) : BodyPublishers.noBody();
+
+		java.net.http.HttpRequest.Builder builder = java.net.http.HttpRequest.newBuilder(toUri(request.getUrl()))
+			.method(request.getMethod(), publisher)
+			.timeout(timeout);
+
+		if (request.getHeader("Accept-Encoding") == null)
+		{
+			builder.header("Accept-Encoding", ContentEncodings.ACCEPT_ENCODING);
+		}
+
+		for (Map.Entry<String, String> header : request.getHeaders().entrySet())
+		{
+			if (!RESTRICTED_HEADERS.contains(header.getKey()))
+			{
+				builder.header(header.getKey(), header.getValue());
+			}
+		}
+
+		String cookieHeader = request.getCookieHeader();
+
+		if (cookieHeader != null)
+		{
+			builder.header("Cookie", cookieHeader);
+		}
+
+		return builder.build();
+	}
+
+	private static URI toUri(URL url) throws IOException
+	{
+		try
+		{
+			return url.toURI();
+		}
+		catch (URISyntaxException exception)
+		{
+			// quote any illegal characters
+			try
+			{
+				return new URI(url.getProtocol(), url.getUserInfo(), url.getHost(), url.getPort(), url.getPath(),
+					url.getQuery(), url.getRef());
+			}
+			catch (URISyntaxException exception2)
+			{
+				throw new IOException("Invalid URL: " + url, exception2);
+			}
+		}
+	}
+
+	private static Set<String> newCaseInsensitiveSet(String... elements)
+	{
+		Set<String> set = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+		for (String element : elements)
+		{
+			set.add(element);
+		}
+
+		return set;
+	}
+}
@@ -0,0 +1,212 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.http2;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpClient.Redirect;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.hobsoft.microbrowser.spi.http.BodyTooLargeException;
+import org.hobsoft.microbrowser.spi.http.HttpRequest;
+import org.hobsoft.microbrowser.spi.http.HttpResponse;
+import org.hobsoft.microbrowser.spi.http.ResponseLimits;
+import org.hobsoft.microbrowser.spi.http.TotalTimeoutException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests {@code Http2Transport}.
+ */
+public class Http2TransportTest
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// initializer
+	// ----------------------------------------------------------------------------------------------------------------
+
+	static
+	{
+		Logger.getLogger("com.squareup.okhttp.mockwebserver").setLevel(Level.WARNING);
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private MockWebServer server = new MockWebServer();
+	
+	private ExpectedException thrown = ExpectedException.none();
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// test case methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Rule
+	public MockWebServer getServer()
+	{
+		return server;
+	}
+	
+	@Rule
+	public ExpectedException getThrown()
+	{
+		return thrown;
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// tests
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Test
+	public void constructorWithClientThatFollowsRedirectsThrowsException()
+	{
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("client must not follow redirects");
+		
+		new Http2Transport(HttpClient.newBuilder().followRedirects(Redirect.NORMAL).build());
+	}
+	
+	@Test
+	public void executeReturnsResponse() throws IOException
+	{
+		server.enqueue(new MockResponse().setResponseCode(201).addHeader("Content-Type", "text/html; charset=UTF-8")
+			.setBody("x"));
+		
+		HttpResponse actual = new Http2Transport().execute(new HttpRequest(HttpRequest.GET, url("/")));
+		
+		assertThat(actual.getStatusCode(), is(201));
+		assertThat(actual.getCharset(), is("UTF-8"));
+		assertThat(new String(actual.getBody(), StandardCharsets.UTF_8), is("x"));
+	}
+	
+	@Test
+	public void executeSendsHeadersAndCookies() throws IOException, InterruptedException
+	{
+		server.enqueue(new MockResponse());
+		HttpRequest request = new HttpRequest(HttpRequest.GET, url("/")).withHeader("User-Agent", "x")
+			.withCookies(Collections.singletonMap("a", "b"));
+		
+		new Http2Transport().execute(request);
+		
+		RecordedRequest actual = server.takeRequest();
+		assertThat(actual.getHeader("User-Agent"), is("x"));
+		assertThat(actual.getHeader("Cookie"), is("a=b"));
+	}
+	
+	@Test
+	public void executeWithPostSendsBody() throws IOException, InterruptedException
+	{
+		server.enqueue(new MockResponse());
+		HttpRequest request = new HttpRequest(HttpRequest.POST, url("/"), Collections.singletonMap("Content-Type",
+			"text/plain"), Collections.<String, String>emptyMap(), "x=y".getBytes(StandardCharsets.UTF_8));
+		
+		new Http2Transport().execute(request);
+		
+		RecordedRequest actual = server.takeRequest();
+		assertThat(actual.getMethod(), is("POST"));
+		assertThat(actual.getHeader("Content-Type"), is("text/plain"));
+		assertThat(actual.getBody().readUtf8(), is("x=y"));
+	}
+	
+	@Test
+	public void executeWithBodyExceedingMaxBodySizeThrowsException() throws IOException
+	{
+		server.enqueue(new MockResponse().setBody("abcd"));
+		Http2Transport transport = new Http2Transport().limits(ResponseLimits.DEFAULT.withMaxBodySize(3));
+		
+		thrown.expect(BodyTooLargeException.class);
+		
+		transport.execute(new HttpRequest(HttpRequest.GET, url("/")));
+	}
+	
+	@Test
+	public void executeWithBodyExceedingMaxBodySizeAndTruncateReturnsTruncatedBody() throws IOException
+	{
+		server.enqueue(new MockResponse().setBody("abcd"));
+		Http2Transport transport = new Http2Transport().limits(ResponseLimits.DEFAULT.withMaxBodySize(3)
+			.withTruncate(true));
+		
+		HttpResponse actual = transport.execute(new HttpRequest(HttpRequest.GET, url("/")));
+		
+		assertThat(new String(actual.getBody(), StandardCharsets.UTF_8), is("abc"));
+		assertThat(actual.isTruncated(), is(true));
+	}
+	
+	@Test
+	public void executeWithSlowBodyExceedingTotalTimeoutThrowsException() throws IOException
+	{
+		server.enqueue(new MockResponse().setBody("abcdef").throttleBody(1, 100, TimeUnit.MILLISECONDS));
+		Http2Transport transport = new Http2Transport().limits(ResponseLimits.DEFAULT.withTotalTimeout(250,
+			TimeUnit.MILLISECONDS));
+		
+		thrown.expect(TotalTimeoutException.class);
+		
+		transport.execute(new HttpRequest(HttpRequest.GET, url("/")));
+	}
+	
+	@Test
+	public void executeWithRedirectFollowsRedirectWithCookies() throws IOException, InterruptedException
+	{
+		server.enqueue(new MockResponse().setResponseCode(302).addHeader("Location", "/b")
+			.addHeader("Set-Cookie", "x=y"));
+		server.enqueue(new MockResponse().setBody("b"));
+		
+		HttpResponse actual = new Http2Transport().execute(new HttpRequest(HttpRequest.GET, url("/a")));
+		
+		server.takeRequest();
+		RecordedRequest redirect = server.takeRequest();
+		assertThat(redirect.getPath(), is("/b"));
+		assertThat(redirect.getHeader("Cookie"), is("x=y"));
+		assertThat(actual.getUrl(), is(url("/b")));
+		assertThat(actual.getCookies(), is(Collections.singletonMap("x", "y")));
+	}
+	
+	@Test
+	public void executeAsyncWithRedirectFollowsRedirectWithCookies() throws InterruptedException, ExecutionException
+	{
+		server.enqueue(new MockResponse().setResponseCode(302).addHeader("Location", "/b")
+			.addHeader("Set-Cookie", "x=y"));
+		server.enqueue(new MockResponse().setBody("b"));
+		
+		HttpResponse actual = new Http2Transport().executeAsync(new HttpRequest(HttpRequest.GET, url("/a"))).get();
+		
+		server.takeRequest();
+		assertThat(server.takeRequest().getHeader("Cookie"), is("x=y"));
+		assertThat(new String(actual.getBody(), StandardCharsets.UTF_8), is("b"));
+		assertThat(actual.getCookies(), is(Collections.singletonMap("x", "y")));
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private URL url(String path)
+	{
+		return server.url(path).url();
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.jsoup;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.hobsoft.microbrowser.Link;
+import org.hobsoft.microbrowser.MicrodataDocument;
+import org.hobsoft.microbrowser.spi.CompletableFutures;
+import org.hobsoft.microbrowser.spi.http.HttpRequest;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Base {@code Link} that is followed by the browser of a jsoup document.
+ */
+abstract class AbstractJsoupLink implements Link
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private final JsoupMicrodataDocument document;
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	AbstractJsoupLink(JsoupMicrodataDocument document)
+	{
+		this.document = checkNotNull(document, "document");
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// Link methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public final MicrodataDocument follow()
+	{
+		JsoupMicrodataDocument nextDocument;
+		
+		try
+		{
+			nextDocument = document.getBrowser().navigate(getRequest(), document.getCookies(), false);
+		}
+		catch (IOException exception)
+		{
+			throw JsoupMicrobrowser.newException("Error fetching page: " + getHref(), exception);
+		}
+		
+		return nextDocument;
+	}
+	
+	public final CompletableFuture<MicrodataDocument> followAsync()
+	{
+		HttpRequest request = getRequest();
+		
+		return document.getBrowser().navigateAsync(request, document.getCookies(), false,
+			"Error fetching page: " + getHref());
+	}
+	
+	public final CompletableFuture<MicrodataDocument> followAsync(long timeout, TimeUnit unit)
+	{
+		return CompletableFutures.withTimeout(followAsync(), timeout, unit);
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// protected methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	protected final JsoupMicrodataDocument getDocument()
+	{
+		return document;
+	}
+	
+	/**
+	 * Gets the {@code href} attribute of this link as written, before it is resolved against the base URI.
+	 */
+	protected abstract String getHrefAttribute();
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private HttpRequest getRequest()
+	{
+		URL href = getHref();
+		checkArgument(href != null, "Invalid URL: " + getHrefAttribute());
+		
+		return new HttpRequest(HttpRequest.GET, href);
+	}
+}
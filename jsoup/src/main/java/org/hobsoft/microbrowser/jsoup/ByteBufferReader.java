@@ -0,0 +1,255 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.jsoup;
+
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+
+/**
+ * {@code Reader} that decodes the remaining bytes of a {@code ByteBuffer} directly into the caller's buffer.
+ * <p>
+ * Unlike reading through an {@code InputStreamReader}, or decoding the bytes into a {@code String}, no intermediate
+ * copy of the bytes or characters is made. Malformed and unmappable input is replaced.
+ */
+final class ByteBufferReader extends Reader
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// constants
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static final Charset DEFAULT_CHARSET = Charset.forName("UTF-8");
+
+	private static final int PRESCAN_LENGTH = 1024;
+
+	private static final Pattern DECLARED_CHARSET = Pattern.compile("<(?:meta\\s[^>]*?charset|\\?xml\\s[^>]*?encoding)"
+		+ "\\s*=\\s*[\"']?([\\w.:-]+)", Pattern.CASE_INSENSITIVE);
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private final ByteBuffer bytes;
+
+	private final CharsetDecoder decoder;
+
+	private CharBuffer spill;
+
+	private boolean flushing;
+
+	private boolean finished;
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	ByteBufferReader(ByteBuffer bytes, Charset charset)
+	{
+		this.bytes = checkNotNull(bytes, "bytes");
+
+		decoder = charset.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// Reader methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Override
+	public int read(char[] buffer, int offset, int length)
+	{
+		checkPositionIndexes(offset, offset + length, buffer.length);
+
+		if (length == 0)
+		{
+			return 0;
+		}
+
+		if (spill != null && spill.hasRemaining())
+		{
+			buffer[offset] = spill.get();
+			return 1;
+		}
+
+		CharBuffer chars = CharBuffer.wrap(buffer, offset, length);
+		decode(chars);
+
+		// a single char cannot hold a surrogate pair, so decode it aside
+		if (chars.position() == offset && !finished)
+		{
+			spill = CharBuffer.allocate(2);
+			decode(spill);
+			spill.flip();
+
+			return read(buffer, offset, length);
+		}
+
+		int count = chars.position() - offset;
+
+		return (count == 0) ? -1 : count;
+	}
+
+	@Override
+	public boolean ready()
+	{
+		return true;
+	}
+
+	@Override
+	public void close()
+	{
+		// nothing to release
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// package-private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Determines the charset of the specified HTML or XML document from its first bytes, and skips any byte order mark.
+	 * <p>
+	 * A byte order mark takes precedence over the declared charset, which takes precedence over a charset declared by
+	 * the document itself within its first kilobyte. Otherwise the document is assumed to be UTF-8.
+	 *
+	 * @param bytes
+	 *            the document, whose position is advanced past any byte order mark
+	 * @param declaredCharset
+	 *            the charset name declared by the response, or {@code null} if none
+	 * @return the charset
+	 */
+	static Charset sniffCharset(ByteBuffer bytes, String declaredCharset)
+	{
+		Charset bomCharset = skipByteOrderMark(bytes);
+
+		if (bomCharset != null)
+		{
+			return bomCharset;
+		}
+
+		if (declaredCharset != null)
+		{
+			return Charset.forName(declaredCharset);
+		}
+
+		return prescanCharset(bytes);
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private void decode(CharBuffer chars)
+	{
+		if (finished)
+		{
+			return;
+		}
+
+		if (!flushing)
+		{
+			if (decoder.decode(bytes, chars, true).isOverflow())
+			{
+				return;
+			}
+
+			flushing = true;
+		}
+
+		if (decoder.flush(chars).isUnderflow())
+		{
+			finished = true;
+		}
+	}
+
+	private static Charset skipByteOrderMark(ByteBuffer bytes)
+	{
+		int position = bytes.position();
+		int remaining = bytes.remaining();
+
+		if (remaining >= 3 && unsigned(bytes, position) == 0xEF && unsigned(bytes, position + 1) == 0xBB
+			&& unsigned(bytes, position + 2) == 0xBF)
+		{
+			bytes.position(position + 3);
+			return DEFAULT_CHARSET;
+		}
+
+		if (remaining >= 2 && unsigned(bytes, position) == 0xFE && unsigned(bytes, position + 1) == 0xFF)
+		{
+			bytes.position(position + 2);
+			return Charset.forName("UTF-16BE");
+		}
+
+		if (remaining >= 2 && unsigned(bytes, position) == 0xFF && unsigned(bytes, position + 1) == 0xFE)
+		{
+			bytes.position(position + 2);
+			return Charset.forName("UTF-16LE");
+		}
+
+		return null;
+	}
+
+	private static Charset prescanCharset(ByteBuffer bytes)
+	{
+		int length = Math.min(bytes.remaining(), PRESCAN_LENGTH);
+		char[] prefix = new char[length];
+
+		// charset declarations are ASCII in every ASCII-compatible encoding
+		for (int index = 0; index < length; index++)
+		{
+			prefix[index] = (char) unsigned(bytes, bytes.position() + index);
+		}
+
+		Matcher matcher = DECLARED_CHARSET.matcher(CharBuffer.wrap(prefix));
+
+		if (matcher.find())
+		{
+			String charsetName = matcher.group(1).toUpperCase(Locale.ENGLISH);
+
+			// a document that can be read as ASCII is not UTF-16, whatever it declares
+			if (!charsetName.startsWith("UTF-16") && isSupported(charsetName))
+			{
+				return Charset.forName(charsetName);
+			}
+		}
+
+		return DEFAULT_CHARSET;
+	}
+
+	private static boolean isSupported(String charsetName)
+	{
+		try
+		{
+			return Charset.isSupported(charsetName);
+		}
+		catch (IllegalArgumentException exception)
+		{
+			return false;
+		}
+	}
+
+	private static int unsigned(ByteBuffer bytes, int index)
+	{
+		return bytes.get(index) & 0xFF;
+	}
+}
@@ -0,0 +1,971 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.jsoup;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.jsoup.nodes.Attribute;
+import org.jsoup.nodes.Attributes;
+import org.jsoup.nodes.Comment;
+import org.jsoup.nodes.DataNode;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.DocumentType;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.FormElement;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.parser.ParseSettings;
+import org.jsoup.parser.Tag;
+import org.jsoup.select.NodeVisitor;
+
+import static org.hobsoft.microbrowser.spi.Urls.newUrlOrNull;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Strings.nullToEmpty;
+
+/**
+ * Copy of a jsoup {@code Document} that keeps its nodes in a table of parallel arrays rather than as node objects.
+ * <p>
+ * Nodes are numbered in document order, with the document itself as node zero, so the descendants of a node are the
+ * nodes that follow it up to the end of its subtree. Each node is linked to its parent, first child and next sibling
+ * by number. Element names and attribute keys are shared within the table, while text, data, comments and attribute
+ * values are copied into a single character buffer. Other nodes, such as XML declarations, are kept as data holding
+ * their markup.
+ * <p>
+ * Items by type and links by relation are indexed by node number when the table is built, while other lookups scan
+ * the table comparing attribute values in place. Lookups match as the jsoup evaluators in {@code Selectors} and the
+ * keys of a {@code DocumentIndex} do. An equivalent jsoup document, whose nodes correspond one for one with those of
+ * the table, can be built when one is needed.
+ */
+final class CompactDocument
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// constants
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * The number of the document node.
+	 */
+	static final int ROOT = 0;
+
+	/**
+	 * The number that denotes no node.
+	 */
+	static final int NONE = -1;
+
+	private static final byte DOCUMENT = 0;
+
+	private static final byte ELEMENT = 1;
+
+	private static final byte FORM = 2;
+
+	private static final byte TEXT = 3;
+
+	private static final byte DATA = 4;
+
+	private static final byte COMMENT = 5;
+
+	private static final byte DOCUMENT_TYPE = 6;
+
+	private static final int INITIAL_CAPACITY = 256;
+
+	// jsoup looks at the parent of text and five levels above it for preformatted elements
+	private static final int MAX_PREFORMATTED_DEPTH = 6;
+
+	private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+	private static final Set<String> ANY_TAG = Collections.emptySet();
+
+	private static final Set<String> LINK_TAGS = new HashSet<String>(Arrays.asList("a", "link"));
+
+	private static final Set<String> FORM_TAGS = Collections.singleton("form");
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private final String location;
+
+	private final String baseUri;
+
+	private final URL baseUrl;
+
+	private final Charset charset;
+
+	private int nodeCount;
+
+	private byte[] kinds;
+
+	private int[] parents;
+
+	private int[] firstChildren;
+
+	private int[] nextSiblings;
+
+	// the index of the name of each element
+	private int[] names;
+
+	// the first attribute and attribute count of each element, or the character range of any other node
+	private int[] dataOffsets;
+
+	private int[] dataLengths;
+
+	private String[] tagNames;
+
+	private boolean[] blockTags;
+
+	private boolean[] preformattedTags;
+
+	private int attributeCount;
+
+	private int[] attributeKeys;
+
+	private int[] attributeValueOffsets;
+
+	private int[] attributeValueLengths;
+
+	private String[] keys;
+
+	private int charCount;
+
+	private char[] chars;
+
+	// the items by normalized type and the links by normalized whole relation and relation token, in document order
+	private final Map<String, List<Integer>> itemsByType;
+
+	private final Map<String, List<Integer>> linksByRel;
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	CompactDocument(Document document)
+	{
+		checkNotNull(document, "document");
+
+		location = document.location();
+		baseUri = document.baseUri();
+		baseUrl = newUrlOrNull(baseUri);
+		charset = document.outputSettings().charset();
+
+		kinds = new byte[INITIAL_CAPACITY];
+		parents = new int[INITIAL_CAPACITY];
+		firstChildren = new int[INITIAL_CAPACITY];
+		nextSiblings = new int[INITIAL_CAPACITY];
+		names = new int[INITIAL_CAPACITY];
+		dataOffsets = new int[INITIAL_CAPACITY];
+		dataLengths = new int[INITIAL_CAPACITY];
+		attributeKeys = new int[INITIAL_CAPACITY];
+		attributeValueOffsets = new int[INITIAL_CAPACITY];
+		attributeValueLengths = new int[INITIAL_CAPACITY];
+		chars = new char[INITIAL_CAPACITY * 8];
+		itemsByType = new HashMap<String, List<Integer>>();
+		linksByRel = new HashMap<String, List<Integer>>();
+
+		Builder builder = new Builder();
+		document.traverse(builder);
+		builder.finish();
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// package-private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Gets the number of nodes in this table, including the document node.
+	 */
+	int size()
+	{
+		return nodeCount;
+	}
+
+	/**
+	 * Gets the items with the specified type, in document order.
+	 */
+	List<Integer> getItems(String type)
+	{
+		return get(itemsByType, normalize(type));
+	}
+
+	/**
+	 * Gets the links whose whole relation or any relation token is the specified relation, in document order.
+	 */
+	List<Integer> getLinks(String rel)
+	{
+		return get(linksByRel, normalize(checkNotNull(rel, "rel")));
+	}
+
+	/**
+	 * Gets the first property with the specified name within the specified item.
+	 *
+	 * @return the property, or {@code NONE} if there is none
+	 */
+	int getProperty(int item, String name)
+	{
+		return next(item, getEnd(item), ANY_TAG, "itemprop", name);
+	}
+
+	/**
+	 * Gets the links whose whole relation or any relation token is the specified relation within the specified item,
+	 * in document order.
+	 */
+	List<Integer> getLinks(int item, String rel)
+	{
+		List<Integer> links = getLinks(rel);
+
+		return links.subList(indexOf(links, item), indexOf(links, getEnd(item)));
+	}
+
+	/**
+	 * Gets the first form with the specified name within the specified item.
+	 *
+	 * @return the form, or {@code NONE} if there is none
+	 */
+	int getForm(int item, String name)
+	{
+		return next(item, getEnd(item), FORM_TAGS, "name", name);
+	}
+
+	boolean isElement(int node)
+	{
+		return kinds[node] == ELEMENT || kinds[node] == FORM;
+	}
+
+	/**
+	 * Gets the number of the first node after the subtree of the specified node.
+	 */
+	int getEnd(int node)
+	{
+		for (int index = node; index != NONE; index = parents[index])
+		{
+			if (nextSiblings[index] != NONE)
+			{
+				return nextSiblings[index];
+			}
+		}
+
+		return nodeCount;
+	}
+
+	String getTagName(int node)
+	{
+		return tagNames[names[node]];
+	}
+
+	/**
+	 * Gets the value of the specified attribute of the specified element, ignoring the case of its name.
+	 *
+	 * @return the value, or {@code null} if the element has no such attribute
+	 */
+	String getAttribute(int node, String name)
+	{
+		int attribute = getAttributeIndex(node, name);
+
+		if (attribute == NONE)
+		{
+			return null;
+		}
+
+		return new String(chars, attributeValueOffsets[attribute], attributeValueLengths[attribute]);
+	}
+
+	/**
+	 * Gets the value of the specified attribute of the specified element resolved against the base URI, as
+	 * {@code Element.absUrl} does.
+	 *
+	 * @return the absolute URL, or an empty string if the element has no such attribute or it cannot be resolved
+	 */
+	String getAbsoluteUrl(int node, String name)
+	{
+		String value = getAttribute(node, name);
+
+		if (value == null || baseUrl == null)
+		{
+			return "";
+		}
+
+		// java.net.URL drops the last path segment when resolving a query, whereas jsoup keeps it
+		String reference = value.startsWith("?") ? baseUrl.getPath() + value : value;
+
+		try
+		{
+			return new URL(baseUrl, reference).toExternalForm();
+		}
+		catch (MalformedURLException exception)
+		{
+			return "";
+		}
+	}
+
+	/**
+	 * Gets the combined text of the specified element and its descendants, normalizing whitespace as
+	 * {@code Element.text} does.
+	 */
+	String getText(int node)
+	{
+		StringBuilder text = new StringBuilder();
+		int end = getEnd(node);
+
+		for (int index = node; index < end; index++)
+		{
+			if (kinds[index] == TEXT)
+			{
+				appendText(text, index);
+			}
+			else if (isElement(index) && text.length() > 0 && isSeparator(index) && !endsWithSpace(text))
+			{
+				text.append(' ');
+			}
+		}
+
+		return text.toString().trim();
+	}
+
+	/**
+	 * Builds a new jsoup document from this table, whose forms list the controls that they contain.
+	 */
+	Document inflate()
+	{
+		Document document = new Document(location);
+		document.setBaseUri(baseUri);
+		document.outputSettings().charset(charset);
+
+		Node[] nodes = new Node[nodeCount];
+		int[] forms = new int[nodeCount];
+		nodes[ROOT] = document;
+		forms[ROOT] = NONE;
+
+		for (int index = ROOT + 1; index < nodeCount; index++)
+		{
+			int parent = parents[index];
+			Node node = newNode(index);
+
+			((Element) nodes[parent]).appendChild(node);
+			nodes[index] = node;
+			forms[index] = (kinds[index] == FORM) ? index : forms[parent];
+
+			if (node instanceof Element && forms[index] != NONE && ((Element) node).tag().isFormListed())
+			{
+				((FormElement) nodes[forms[index]]).addElement((Element) node);
+			}
+		}
+
+		return document;
+	}
+
+	/**
+	 * Gets the node of the specified jsoup document, built by {@code inflate}, that corresponds to the specified node
+	 * of this table.
+	 */
+	Node getNode(Document document, int node)
+	{
+		if (node == ROOT)
+		{
+			return document;
+		}
+
+		int parent = parents[node];
+		int position = 0;
+
+		for (int sibling = firstChildren[parent]; sibling != node; sibling = nextSiblings[sibling])
+		{
+			position++;
+		}
+
+		return getNode(document, parent).childNode(position);
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Gets the first element from the specified node up to the specified end with any of the specified tag names whose
+	 * attribute has the specified value, ignoring case and surrounding whitespace.
+	 */
+	private int next(int from, int end, Set<String> tagNames, String attributeName, String value)
+	{
+		String trimmedValue = checkNotNull(value, attributeName).trim();
+
+		for (int node = from; node < end; node++)
+		{
+			if (isElement(node) && (tagNames.isEmpty() || tagNames.contains(getTagName(node))))
+			{
+				int attribute = getAttributeIndex(node, attributeName);
+
+				if (attribute != NONE && attributeEquals(attribute, trimmedValue))
+				{
+					return node;
+				}
+			}
+		}
+
+		return NONE;
+	}
+
+	/**
+	 * Gets whether the value of the specified attribute, without surrounding whitespace, equals the specified value
+	 * ignoring case, comparing the characters in place rather than copying them.
+	 */
+	private boolean attributeEquals(int attribute, String value)
+	{
+		int start = attributeValueOffsets[attribute];
+		int end = start + attributeValueLengths[attribute];
+
+		// trim as String.trim does
+		while (start < end && chars[start] <= ' ')
+		{
+			start++;
+		}
+
+		while (end > start && chars[end - 1] <= ' ')
+		{
+			end--;
+		}
+
+		if (end - start != value.length())
+		{
+			return false;
+		}
+
+		for (int index = 0; index < value.length(); index++)
+		{
+			if (!equalsIgnoreCase(chars[start + index], value.charAt(index)))
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private int getAttributeIndex(int node, String name)
+	{
+		if (!isElement(node) && kinds[node] != DOCUMENT_TYPE)
+		{
+			return NONE;
+		}
+
+		int first = dataOffsets[node];
+
+		for (int attribute = first; attribute < first + dataLengths[node]; attribute++)
+		{
+			if (keys[attributeKeys[attribute]].equalsIgnoreCase(name))
+			{
+				return attribute;
+			}
+		}
+
+		return NONE;
+	}
+
+	private String getData(int node)
+	{
+		return new String(chars, dataOffsets[node], dataLengths[node]);
+	}
+
+	private void appendText(StringBuilder text, int node)
+	{
+		int offset = dataOffsets[node];
+		int end = offset + dataLengths[node];
+
+		if (isPreformatted(parents[node]))
+		{
+			text.append(chars, offset, end - offset);
+			return;
+		}
+
+		boolean lastWasWhitespace = endsWithSpace(text);
+
+		for (int index = offset; index < end; index++)
+		{
+			char c = chars[index];
+
+			if (isWhitespace(c))
+			{
+				if (!lastWasWhitespace)
+				{
+					text.append(' ');
+					lastWasWhitespace = true;
+				}
+			}
+			else if (!isInvisible(c))
+			{
+				text.append(c);
+				lastWasWhitespace = false;
+			}
+		}
+	}
+
+	private boolean isSeparator(int node)
+	{
+		return blockTags[names[node]] || "br".equals(getTagName(node));
+	}
+
+	private boolean isPreformatted(int node)
+	{
+		int depth = 0;
+
+		for (int index = node; index != NONE && isElement(index) && depth < MAX_PREFORMATTED_DEPTH;
+			index = parents[index])
+		{
+			if (preformattedTags[names[index]])
+			{
+				return true;
+			}
+
+			depth++;
+		}
+
+		return false;
+	}
+
+	private Node newNode(int node)
+	{
+		switch (kinds[node])
+		{
+			case ELEMENT:
+				return new Element(newTag(node), baseUri, newAttributes(node));
+
+			case FORM:
+				return new FormElement(newTag(node), baseUri, newAttributes(node));
+
+			case TEXT:
+				return new TextNode(getData(node));
+
+			case DATA:
+				return new DataNode(getData(node));
+
+			case COMMENT:
+				return new Comment(getData(node));
+
+			case DOCUMENT_TYPE:
+				return new DocumentType(nullToEmpty(getAttribute(node, "name")),
+					nullToEmpty(getAttribute(node, "publicId")), nullToEmpty(getAttribute(node, "systemId")));
+
+			default:
+				throw new AssertionError(kinds[node]);
+		}
+	}
+
+	private Tag newTag(int node)
+	{
+		// names are already normalized by the parser that built the original document
+		return Tag.valueOf(getTagName(node), ParseSettings.preserveCase);
+	}
+
+	private Attributes newAttributes(int node)
+	{
+		Attributes attributes = new Attributes();
+		int first = dataOffsets[node];
+
+		for (int attribute = first; attribute < first + dataLengths[node]; attribute++)
+		{
+			attributes.put(keys[attributeKeys[attribute]], new String(chars, attributeValueOffsets[attribute],
+				attributeValueLengths[attribute]));
+		}
+
+		return attributes;
+	}
+
+	private static List<Integer> get(Map<String, List<Integer>> nodesByKey, String key)
+	{
+		List<Integer> nodes = nodesByKey.get(key);
+
+		return (nodes != null) ? nodes : Collections.<Integer>emptyList();
+	}
+
+	/**
+	 * Gets the index of the first of the specified nodes, in document order, that is not before the specified node.
+	 */
+	private static int indexOf(List<Integer> nodes, int node)
+	{
+		int low = 0;
+		int high = nodes.size();
+
+		while (low < high)
+		{
+			int middle = (low + high) >>> 1;
+
+			if (nodes.get(middle) < node)
+			{
+				low = middle + 1;
+			}
+			else
+			{
+				high = middle;
+			}
+		}
+
+		return low;
+	}
+
+	private static boolean equalsIgnoreCase(char a, char b)
+	{
+		// compare as String.equalsIgnoreCase does
+		char upperA = Character.toUpperCase(a);
+		char upperB = Character.toUpperCase(b);
+
+		return a == b || upperA == upperB || Character.toLowerCase(upperA) == Character.toLowerCase(upperB);
+	}
+
+	private static String normalize(String value)
+	{
+		return value.trim().toLowerCase(Locale.ENGLISH);
+	}
+
+	private static boolean endsWithSpace(StringBuilder text)
+	{
+		return text.length() > 0 && text.charAt(text.length() - 1) == ' ';
+	}
+
+	private static boolean isWhitespace(char c)
+	{
+		return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r' || c == '\u00A0';
+	}
+
+	private static boolean isInvisible(char c)
+	{
+		// zero-width space and soft hyphen
+		return c == '\u200B' || c == '\u00AD';
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// types
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Visitor that appends each node of a jsoup document to the table in document order.
+	 */
+	private final class Builder implements NodeVisitor
+	{
+		private final Map<String, Integer> tagNameIndexes;
+
+		private final Map<String, Integer> keyIndexes;
+
+		private int[] lastChildren;
+
+		private int[] openNodes;
+
+		Builder()
+		{
+			tagNameIndexes = new HashMap<String, Integer>();
+			keyIndexes = new HashMap<String, Integer>();
+			lastChildren = new int[INITIAL_CAPACITY];
+			openNodes = new int[16];
+		}
+
+		public void head(Node node, int depth)
+		{
+			int parent = (depth > 0) ? openNodes[depth - 1] : NONE;
+			int index = addNode(node, parent);
+
+			if (depth >= openNodes.length)
+			{
+				openNodes = Arrays.copyOf(openNodes, openNodes.length * 2);
+			}
+
+			openNodes[depth] = index;
+		}
+
+		public void tail(Node node, int depth)
+		{
+			// nothing to do on leaving a node
+		}
+
+		/**
+		 * Releases the spare capacity of the table.
+		 */
+		void finish()
+		{
+			kinds = Arrays.copyOf(kinds, nodeCount);
+			parents = Arrays.copyOf(parents, nodeCount);
+			firstChildren = Arrays.copyOf(firstChildren, nodeCount);
+			nextSiblings = Arrays.copyOf(nextSiblings, nodeCount);
+			names = Arrays.copyOf(names, nodeCount);
+			dataOffsets = Arrays.copyOf(dataOffsets, nodeCount);
+			dataLengths = Arrays.copyOf(dataLengths, nodeCount);
+			attributeKeys = Arrays.copyOf(attributeKeys, attributeCount);
+			attributeValueOffsets = Arrays.copyOf(attributeValueOffsets, attributeCount);
+			attributeValueLengths = Arrays.copyOf(attributeValueLengths, attributeCount);
+			chars = Arrays.copyOf(chars, charCount);
+
+			tagNames = toArray(tagNameIndexes);
+			keys = toArray(keyIndexes);
+			freeze(itemsByType);
+			freeze(linksByRel);
+			blockTags = new boolean[tagNames.length];
+			preformattedTags = new boolean[tagNames.length];
+
+			for (int index = 0; index < tagNames.length; index++)
+			{
+				Tag tag = Tag.valueOf(tagNames[index], ParseSettings.preserveCase);
+				blockTags[index] = tag.isBlock();
+				preformattedTags[index] = tag.preserveWhitespace();
+			}
+		}
+
+		private int addNode(Node node, int parent)
+		{
+			if (nodeCount == kinds.length)
+			{
+				growNodes();
+			}
+
+			int index = nodeCount++;
+			parents[index] = parent;
+			firstChildren[index] = NONE;
+			nextSiblings[index] = NONE;
+			names[index] = NONE;
+
+			if (parent != NONE)
+			{
+				if (firstChildren[parent] == NONE)
+				{
+					firstChildren[parent] = index;
+				}
+				else
+				{
+					nextSiblings[lastChildren[parent]] = index;
+				}
+
+				lastChildren[parent] = index;
+			}
+
+			kinds[index] = getKind(node);
+
+			switch (kinds[index])
+			{
+				case ELEMENT:
+				case FORM:
+					names[index] = getIndex(tagNameIndexes, ((Element) node).tagName());
+					addAttributes(index, node);
+					addToIndexes(index, (Element) node);
+					break;
+
+				case DOCUMENT:
+				case DOCUMENT_TYPE:
+					addAttributes(index, node);
+					break;
+
+				case TEXT:
+					addData(index, ((TextNode) node).getWholeText());
+					break;
+
+				case DATA:
+					addData(index, (node instanceof DataNode) ? ((DataNode) node).getWholeData() : node.outerHtml());
+					break;
+
+				case COMMENT:
+					addData(index, ((Comment) node).getData());
+					break;
+
+				default:
+					throw new AssertionError(kinds[index]);
+			}
+
+			return index;
+		}
+
+		private void addAttributes(int node, Node source)
+		{
+			dataOffsets[node] = attributeCount;
+			dataLengths[node] = 0;
+
+			if (kinds[node] == DOCUMENT)
+			{
+				return;
+			}
+
+			for (Attribute attribute : source.attributes())
+			{
+				if (attributeCount == attributeKeys.length)
+				{
+					growAttributes();
+				}
+
+				attributeKeys[attributeCount] = getIndex(keyIndexes, attribute.getKey());
+				attributeValueOffsets[attributeCount] = charCount;
+				attributeValueLengths[attributeCount] = append(attribute.getValue());
+				attributeCount++;
+				dataLengths[node]++;
+			}
+		}
+
+		private void addToIndexes(int node, Element element)
+		{
+			// match attribute names ignoring case as the table lookups do
+			Attributes attributes = element.attributes();
+
+			if (attributes.hasKeyIgnoreCase("itemscope") && attributes.hasKeyIgnoreCase("itemtype"))
+			{
+				put(itemsByType, normalize(attributes.getIgnoreCase("itemtype")), node);
+			}
+
+			if (LINK_TAGS.contains(element.tagName()) && attributes.hasKeyIgnoreCase("rel"))
+			{
+				String key = normalize(attributes.getIgnoreCase("rel"));
+
+				put(linksByRel, key, node);
+
+				for (String token : WHITESPACE.split(key))
+				{
+					put(linksByRel, token, node);
+				}
+			}
+		}
+
+		private void put(Map<String, List<Integer>> nodesByKey, String key, int node)
+		{
+			List<Integer> nodes = nodesByKey.get(key);
+
+			if (nodes == null)
+			{
+				nodes = new ArrayList<Integer>();
+				nodesByKey.put(key, nodes);
+			}
+
+			// tolerate repeated tokens and a token that is the whole relation
+			if (nodes.isEmpty() || nodes.get(nodes.size() - 1) != node)
+			{
+				nodes.add(node);
+			}
+		}
+
+		private void freeze(Map<String, List<Integer>> nodesByKey)
+		{
+			for (Map.Entry<String, List<Integer>> entry : nodesByKey.entrySet())
+			{
+				entry.setValue(Collections.unmodifiableList(new ArrayList<Integer>(entry.getValue())));
+			}
+		}
+
+		private void addData(int node, String data)
+		{
+			dataOffsets[node] = charCount;
+			dataLengths[node] = append(data);
+		}
+
+		private int append(String value)
+		{
+			int length = value.length();
+
+			if (charCount + length > chars.length)
+			{
+				chars = Arrays.copyOf(chars, Math.max(chars.length * 2, charCount + length));
+			}
+
+			value.getChars(0, length, chars, charCount);
+			charCount += length;
+
+			return length;
+		}
+
+		private void growNodes()
+		{
+			int capacity = kinds.length * 2;
+
+			kinds = Arrays.copyOf(kinds, capacity);
+			parents = Arrays.copyOf(parents, capacity);
+			firstChildren = Arrays.copyOf(firstChildren, capacity);
+			nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+			names = Arrays.copyOf(names, capacity);
+			dataOffsets = Arrays.copyOf(dataOffsets, capacity);
+			dataLengths = Arrays.copyOf(dataLengths, capacity);
+			lastChildren = Arrays.copyOf(lastChildren, capacity);
+		}
+
+		private void growAttributes()
+		{
+			int capacity = attributeKeys.length * 2;
+
+			attributeKeys = Arrays.copyOf(attributeKeys, capacity);
+			attributeValueOffsets = Arrays.copyOf(attributeValueOffsets, capacity);
+			attributeValueLengths = Arrays.copyOf(attributeValueLengths, capacity);
+		}
+
+		private byte getKind(Node node)
+		{
+			if (node instanceof Document)
+			{
+				return DOCUMENT;
+			}
+
+			if (node instanceof FormElement)
+			{
+				return FORM;
+			}
+
+			if (node instanceof Element)
+			{
+				return ELEMENT;
+			}
+
+			if (node instanceof TextNode)
+			{
+				return TEXT;
+			}
+
+			if (node instanceof Comment)
+			{
+				return COMMENT;
+			}
+
+			if (node instanceof DocumentType)
+			{
+				return DOCUMENT_TYPE;
+			}
+
+			// keep data and any other node as markup
+			return DATA;
+		}
+
+		private int getIndex(Map<String, Integer> indexes, String value)
+		{
+			Integer index = indexes.get(value);
+
+			if (index == null)
+			{
+				index = indexes.size();
+				indexes.put(value, index);
+			}
+
+			return index;
+		}
+
+		private String[] toArray(Map<String, Integer> indexes)
+		{
+			String[] values = new String[indexes.size()];
+
+			for (Map.Entry<String, Integer> entry : indexes.entrySet())
+			{
+				values[entry.getValue()] = entry.getKey();
+			}
+
+			return values;
+		}
+	}
+}
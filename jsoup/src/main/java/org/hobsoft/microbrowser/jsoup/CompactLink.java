@@ -0,0 +1,85 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.jsoup;
+
+import java.net.URL;
+
+import org.jsoup.nodes.Element;
+
+import static org.hobsoft.microbrowser.spi.Urls.newUrlOrNull;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Strings.nullToEmpty;
+
+/**
+ * {@code Link} adapter to an element of a {@code CompactDocument}.
+ */
+class CompactLink extends AbstractJsoupLink
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private final CompactDocument compactDocument;
+	
+	private final int node;
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	CompactLink(JsoupMicrodataDocument document, CompactDocument compactDocument, int node)
+	{
+		super(document);
+		
+		this.compactDocument = checkNotNull(compactDocument, "compactDocument");
+		this.node = node;
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// Link methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public String getRel()
+	{
+		return nullToEmpty(compactDocument.getAttribute(node, "rel"));
+	}
+	
+	public URL getHref()
+	{
+		return newUrlOrNull(compactDocument.getAbsoluteUrl(node, "href"));
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// Unwrappable methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public <T> T unwrap(Class<T> type)
+	{
+		checkArgument(Element.class.equals(type), "Cannot unwrap to: %s", type);
+		
+		return type.cast(getDocument().getElement(node));
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// AbstractJsoupLink methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Override
+	protected String getHrefAttribute()
+	{
+		return nullToEmpty(compactDocument.getAttribute(node, "href"));
+	}
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.jsoup;
+
+import java.net.URL;
+import java.util.List;
+
+import org.hobsoft.microbrowser.Form;
+import org.hobsoft.microbrowser.FormNotFoundException;
+import org.hobsoft.microbrowser.Link;
+import org.hobsoft.microbrowser.MicrodataItem;
+import org.hobsoft.microbrowser.MicrodataProperty;
+import org.hobsoft.microbrowser.MicrodataPropertyNotFoundException;
+import org.hobsoft.microbrowser.spi.AbstractHypermedia;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.FormElement;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+
+import static org.hobsoft.microbrowser.spi.Urls.newUrlOrNull;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Strings.nullToEmpty;
+
+/**
+ * {@code MicrodataItem} adapter to an element of a {@code CompactDocument}.
+ * <p>
+ * Forms are mutable, so they are found in the jsoup document that is built from the table on first use.
+ */
+class CompactMicrodataItem extends AbstractHypermedia implements MicrodataItem
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private final JsoupMicrodataDocument document;
+	
+	private final CompactDocument compactDocument;
+	
+	private final int node;
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	CompactMicrodataItem(JsoupMicrodataDocument document, CompactDocument compactDocument, int node)
+	{
+		this.document = checkNotNull(document, "document");
+		this.compactDocument = checkNotNull(compactDocument, "compactDocument");
+		this.node = node;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// MicrodataItem methods
+	// ----------------------------------------------------------------------------------------------------------------
+	
+	public URL getId()
+	{
+		return newUrlOrNull(nullToEmpty(compactDocument.getAttribute(node, "itemid")));
+	}
+
+	public URL getType()
+	{
+		return newUrlOrNull(nullToEmpty(compactDocument.getAttribute(node, "itemtype")));
+	}
+
+	public MicrodataProperty getProperty(String name)
+	{
+		int property = compactDocument.getProperty(node, name);
+		
+		if (property == CompactDocument.NONE)
+		{
+			throw new MicrodataPropertyNotFoundException(name);
+		}
+		
+		return new CompactMicrodataProperty(document, compactDocument, property);
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// Hypermedia methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public List<Link> getLinks(String rel)
+	{
+		List<Integer> links = compactDocument.getLinks(node, rel);
+		
+		return Lists.transform(links, new Function<Integer, Link>()
+		{
+			public Link apply(Integer link)
+			{
+				return new CompactLink(document, compactDocument, link);
+			}
+		});
+	}
+	
+	public Form getForm(String name)
+	{
+		int form = compactDocument.getForm(node, name);
+		
+		if (form == CompactDocument.NONE)
+		{
+			throw new FormNotFoundException(name);
+		}
+		
+		return new JsoupForm(document, (FormElement) document.getElement(form));
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// Unwrappable methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public <T> T unwrap(Class<T> type)
+	{
+		checkArgument(Element.class.equals(type), "Cannot unwrap to: %s", type);
+		
+		return type.cast(document.getElement(node));
+	}
+}
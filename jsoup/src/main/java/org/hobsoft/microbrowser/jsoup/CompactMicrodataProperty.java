@@ -0,0 +1,82 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.jsoup;
+
+import org.hobsoft.microbrowser.spi.AbstractMicrodataProperty;
+import org.jsoup.nodes.Element;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Strings.nullToEmpty;
+
+/**
+ * {@code MicrodataProperty} adapter to an element of a {@code CompactDocument}.
+ */
+class CompactMicrodataProperty extends AbstractMicrodataProperty
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private final JsoupMicrodataDocument document;
+	
+	private final CompactDocument compactDocument;
+	
+	private final int node;
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	CompactMicrodataProperty(JsoupMicrodataDocument document, CompactDocument compactDocument, int node)
+	{
+		this.document = checkNotNull(document, "document");
+		this.compactDocument = checkNotNull(compactDocument, "compactDocument");
+		this.node = node;
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// Unwrappable methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public <T> T unwrap(Class<T> type)
+	{
+		checkArgument(Element.class.equals(type), "Cannot unwrap to: %s", type);
+		
+		return type.cast(document.getElement(node));
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// AbstractMicrodataProperty methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Override
+	protected String getElementName()
+	{
+		return compactDocument.getTagName(node);
+	}
+
+	@Override
+	protected String getAttribute(String name, boolean absoluteUrl)
+	{
+		return absoluteUrl ? compactDocument.getAbsoluteUrl(node, name)
+			: nullToEmpty(compactDocument.getAttribute(node, name));
+	}
+
+	@Override
+	protected String getText()
+	{
+		return compactDocument.getText(node);
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.jsoup;
+
+import java.net.URL;
+
+import static org.hobsoft.microbrowser.spi.Urls.newUrlOrNull;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Immutable {@code Link} that retains only the relation and URL of a link, and is followed by the browser of the
+ * document that it was detached from.
+ */
+class DetachedLink extends AbstractJsoupLink
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private final String rel;
+	
+	private final String absoluteHref;
+	
+	private final String hrefAttribute;
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	DetachedLink(JsoupMicrodataDocument document, String rel, String absoluteHref, String hrefAttribute)
+	{
+		super(document);
+		
+		this.rel = checkNotNull(rel, "rel");
+		this.absoluteHref = checkNotNull(absoluteHref, "absoluteHref");
+		this.hrefAttribute = checkNotNull(hrefAttribute, "hrefAttribute");
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// Link methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public String getRel()
+	{
+		return rel;
+	}
+	
+	public URL getHref()
+	{
+		return newUrlOrNull(absoluteHref);
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// Unwrappable methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public <T> T unwrap(Class<T> type)
+	{
+		throw new IllegalArgumentException("Cannot unwrap to: " + type);
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// AbstractJsoupLink methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Override
+	protected String getHrefAttribute()
+	{
+		return hrefAttribute;
+	}
+}
@@ -0,0 +1,179 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.jsoup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.FormElement;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Index of the items, links and forms of a jsoup {@code Document} by item type, link relation and form name.
+ * <p>
+ * Elements are added in document order, so each lookup returns them in document order without traversing the
+ * document. Keys match as attribute selectors do, ignoring case and surrounding whitespace. A link is indexed by its
+ * whole relation and by each of its relation tokens. The index reflects the structure of the document when it was
+ * built.
+ */
+final class DocumentIndex
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// constants
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private final Document document;
+
+	private final Map<String, List<Element>> itemsByType;
+
+	private final Map<String, List<Element>> linksByRel;
+
+	private final Map<String, FormElement> formsByName;
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	DocumentIndex(Document document)
+	{
+		this.document = checkNotNull(document, "document");
+
+		itemsByType = new HashMap<String, List<Element>>();
+		linksByRel = new HashMap<String, List<Element>>();
+		formsByName = new HashMap<String, FormElement>();
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// package-private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Adds the specified element of the document to this index, after any elements already added.
+	 */
+	void add(Element element)
+	{
+		if (element.hasAttr("itemscope") && element.hasAttr("itemtype"))
+		{
+			put(itemsByType, normalize(element.attr("itemtype")), element);
+		}
+
+		String tagName = element.tagName();
+
+		if (("a".equals(tagName) || "link".equals(tagName)) && element.hasAttr("rel"))
+		{
+			addLink(element);
+		}
+
+		if (element instanceof FormElement && element.hasAttr("name"))
+		{
+			String name = normalize(element.attr("name"));
+
+			if (!formsByName.containsKey(name))
+			{
+				formsByName.put(name, (FormElement) element);
+			}
+		}
+	}
+
+	Document getDocument()
+	{
+		return document;
+	}
+
+	List<Element> getItems(String type)
+	{
+		return get(itemsByType, normalize(type));
+	}
+
+	List<Element> getLinks(String rel)
+	{
+		return get(linksByRel, normalize(rel));
+	}
+
+	/**
+	 * Gets the first form with the specified name.
+	 *
+	 * @return the form, or {@code null} if there is none
+	 */
+	FormElement getForm(String name)
+	{
+		return formsByName.get(normalize(name));
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private void addLink(Element element)
+	{
+		String rel = normalize(element.attr("rel"));
+
+		put(linksByRel, rel, element);
+
+		String[] tokens = WHITESPACE.split(rel);
+
+		if (tokens.length > 1)
+		{
+			for (String token : tokens)
+			{
+				List<Element> links = linksByRel.get(token);
+
+				// tolerate repeated tokens
+				if (links == null || links.get(links.size() - 1) != element)
+				{
+					put(linksByRel, token, element);
+				}
+			}
+		}
+	}
+
+	private static void put(Map<String, List<Element>> elementsByKey, String key, Element element)
+	{
+		List<Element> elements = elementsByKey.get(key);
+
+		if (elements == null)
+		{
+			elements = new ArrayList<Element>(1);
+			elementsByKey.put(key, elements);
+		}
+
+		elements.add(element);
+	}
+
+	private static List<Element> get(Map<String, List<Element>> elementsByKey, String key)
+	{
+		List<Element> elements = elementsByKey.get(key);
+
+		return (elements != null) ? Collections.unmodifiableList(elements) : Collections.<Element>emptyList();
+	}
+
+	private static String normalize(String value)
+	{
+		return value.trim().toLowerCase(Locale.ENGLISH);
+	}
+}
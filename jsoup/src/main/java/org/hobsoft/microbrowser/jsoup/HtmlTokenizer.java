@@ -0,0 +1,358 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.jsoup;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jsoup.parser.Parser;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Tokenizer that reports the tags and text of HTML to a listener as each character arrives, without building any
+ * nodes.
+ * <p>
+ * Comments and the contents of scripts and styles are skipped, and the contents of text areas and titles are read as
+ * text rather than markup. Only the tag being read is retained, so memory does not grow with the size of the page.
+ * Tags are not balanced, so listeners that need nesting must track it themselves.
+ */
+final class HtmlTokenizer
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// constants
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static final int MAX_TAG_LENGTH = 8192;
+
+	private static final Pattern ATTRIBUTE = Pattern.compile("([^\\s\"'>/=]+)(?:\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)'"
+		+ "|([^\\s\"'>]+)))?");
+
+	private static final Set<String> VOID_ELEMENTS = new HashSet<String>(Arrays.asList("area", "base", "br", "col",
+		"embed", "hr", "img", "input", "link", "meta", "param", "source", "track", "wbr"));
+
+	private static final Set<String> RAW_TEXT_ELEMENTS = new HashSet<String>(Arrays.asList("script", "style"));
+
+	private static final Set<String> RCDATA_ELEMENTS = new HashSet<String>(Arrays.asList("textarea", "title"));
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// types
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Receives the tags and text of HTML in document order.
+	 */
+	interface Listener
+	{
+		/**
+		 * Receives a start tag.
+		 *
+		 * @param name
+		 *            the lower-case element name
+		 * @param attributes
+		 *            the attribute values by lower-case name, with character references decoded
+		 * @param empty
+		 *            whether the element is void or self-closing, and so has no end tag
+		 */
+		void startTag(String name, Map<String, String> attributes, boolean empty);
+
+		/**
+		 * Receives an end tag.
+		 *
+		 * @param name
+		 *            the lower-case element name
+		 */
+		void endTag(String name);
+
+		/**
+		 * Receives a character of text, whose character references are not decoded.
+		 *
+		 * @param c
+		 *            the character
+		 */
+		void text(char c);
+	}
+
+	/**
+	 * The lexical state between characters.
+	 */
+	private enum State
+	{
+		TEXT,
+		TAG,
+		COMMENT,
+		RAW_TEXT,
+		RCDATA
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private final Listener listener;
+
+	private final StringBuilder tag;
+
+	private State state;
+
+	private char quote;
+
+	private String rawTextEndTag;
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	HtmlTokenizer(Listener listener)
+	{
+		this.listener = checkNotNull(listener, "listener");
+
+		tag = new StringBuilder();
+		state = State.TEXT;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// package-private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	void scan(char c)
+	{
+		switch (state)
+		{
+			case TEXT:
+				if (c == '<')
+				{
+					startTag();
+				}
+				else
+				{
+					listener.text(c);
+				}
+				break;
+
+			case TAG:
+				scanTag(c);
+				break;
+
+			case COMMENT:
+				tag.append(c);
+				if (c == '>' && endsWith("--"))
+				{
+					state = State.TEXT;
+				}
+				break;
+
+			case RAW_TEXT:
+			case RCDATA:
+				scanRawText(c);
+				break;
+
+			default:
+				throw new AssertionError(state);
+		}
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private void startTag()
+	{
+		tag.setLength(0);
+		quote = 0;
+		state = State.TAG;
+	}
+
+	private void scanTag(char c)
+	{
+		if (tag.length() == 0 && !isTagStart(c))
+		{
+			// a less-than sign in text
+			state = State.TEXT;
+			listener.text('<');
+			scan(c);
+			return;
+		}
+
+		if (quote != 0)
+		{
+			if (c == quote)
+			{
+				quote = 0;
+			}
+		}
+		else if (c == '>')
+		{
+			state = State.TEXT;
+			endTag(tag.toString());
+			return;
+		}
+		else if ((c == '"' || c == '\'') && tag.length() > 0 && tag.indexOf("=") != -1)
+		{
+			quote = c;
+		}
+
+		tag.append(c);
+
+		if (tag.length() == 3 && "!--".contentEquals(tag))
+		{
+			state = State.COMMENT;
+		}
+		else if (tag.length() > MAX_TAG_LENGTH)
+		{
+			// not markup that we can use
+			state = State.TEXT;
+		}
+	}
+
+	private void scanRawText(char c)
+	{
+		tag.append(c);
+
+		// drop, or report as text, whatever can no longer begin the end tag
+		while (tag.length() > 0 && !isEndTagPrefix())
+		{
+			if (state == State.RCDATA)
+			{
+				listener.text(tag.charAt(0));
+			}
+
+			tag.deleteCharAt(0);
+		}
+
+		if (tag.length() == rawTextEndTag.length())
+		{
+			// resume at the end tag's closing bracket
+			tag.setLength(0);
+			tag.append(rawTextEndTag.substring(1));
+			quote = 0;
+			state = State.TAG;
+		}
+	}
+
+	private boolean isEndTagPrefix()
+	{
+		return tag.length() <= rawTextEndTag.length() && rawTextEndTag.regionMatches(true, 0, tag.toString(), 0,
+			tag.length());
+	}
+
+	private boolean endsWith(String suffix)
+	{
+		int length = tag.length() - 1;
+
+		return length >= suffix.length() && suffix.contentEquals(tag.subSequence(length - suffix.length(), length));
+	}
+
+	private void endTag(String text)
+	{
+		if (text.startsWith("/"))
+		{
+			String name = getName(text.substring(1));
+
+			if (!name.isEmpty())
+			{
+				listener.endTag(name);
+			}
+		}
+		else if (!text.startsWith("!") && !text.startsWith("?"))
+		{
+			openElement(getName(text), text);
+		}
+	}
+
+	private void openElement(String name, String text)
+	{
+		if (name.isEmpty())
+		{
+			return;
+		}
+
+		boolean empty = text.endsWith("/") || VOID_ELEMENTS.contains(name);
+
+		listener.startTag(name, getAttributes(text.substring(name.length())), empty);
+
+		if (!empty && (RAW_TEXT_ELEMENTS.contains(name) || RCDATA_ELEMENTS.contains(name)))
+		{
+			rawTextEndTag = "</" + name;
+			tag.setLength(0);
+			state = RAW_TEXT_ELEMENTS.contains(name) ? State.RAW_TEXT : State.RCDATA;
+		}
+	}
+
+	private static boolean isTagStart(char c)
+	{
+		return Character.isLetter(c) || c == '/' || c == '!' || c == '?';
+	}
+
+	private static String getName(String text)
+	{
+		int end = 0;
+
+		while (end < text.length() && Character.isLetterOrDigit(text.charAt(end)))
+		{
+			end++;
+		}
+
+		return text.substring(0, end).toLowerCase(Locale.ENGLISH);
+	}
+
+	private static Map<String, String> getAttributes(String text)
+	{
+		Map<String, String> attributes = new HashMap<String, String>();
+		Matcher matcher = ATTRIBUTE.matcher(text);
+
+		while (matcher.find())
+		{
+			String value = firstNonNull(matcher.group(2), matcher.group(3), matcher.group(4));
+
+			if (value == null)
+			{
+				value = "";
+			}
+			else if (value.indexOf('&') != -1)
+			{
+				value = Parser.unescapeEntities(value, true);
+			}
+
+			String name = matcher.group(1).toLowerCase(Locale.ENGLISH);
+
+			// the first of any duplicate attributes applies
+			if (!attributes.containsKey(name))
+			{
+				attributes.put(name, value);
+			}
+		}
+
+		return attributes;
+	}
+
+	private static String firstNonNull(String... values)
+	{
+		for (String value : values)
+		{
+			if (value != null)
+			{
+				return value;
+			}
+		}
+
+		return null;
+	}
+}
@@ -14,24 +14,32 @@
 package org.hobsoft.microbrowser.jsoup;
 
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.net.URL;
+import java.net.URLEncoder;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.hobsoft.microbrowser.Control;
 import org.hobsoft.microbrowser.ControlGroup;
 import org.hobsoft.microbrowser.ControlNotFoundException;
-import org.hobsoft.microbrowser.MicrobrowserException;
 import org.hobsoft.microbrowser.MicrodataDocument;
 import org.hobsoft.microbrowser.spi.AbstractForm;
 import org.hobsoft.microbrowser.spi.DefaultControlGroup;
-import org.jsoup.Connection;
+import org.hobsoft.microbrowser.spi.http.HttpRequest;
+import org.jsoup.Connection.KeyVal;
 import org.jsoup.nodes.Element;
 import org.jsoup.nodes.FormElement;
 import org.jsoup.select.Elements;
+import org.jsoup.select.Selector;
 
 import com.google.common.base.Function;
 import com.google.common.collect.Lists;
 
+import static org.hobsoft.microbrowser.jsoup.Selectors.byControl;
+import static org.hobsoft.microbrowser.jsoup.Selectors.bySubmit;
 import static org.hobsoft.microbrowser.spi.Urls.newUrlOrNull;
 
 import static com.google.common.base.Preconditions.checkArgument;
@@ -43,6 +51,16 @@ import static com.google.common.base.Preconditions.checkState;
  */
 class JsoupForm extends AbstractForm
 {
+	// ----------------------------------------------------------------------------------------------------------------
+	// constants
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static final String CHARSET = "UTF-8";
+	
+	private static final String FORM_URL_ENCODED = "application/x-www-form-urlencoded; charset=" + CHARSET;
+	
+	private static final Map<String, String> NO_COOKIES = Collections.<String, String>emptyMap();
+	
 	// ----------------------------------------------------------------------------------------------------------------
 	// fields
 	// ----------------------------------------------------------------------------------------------------------------
@@ -72,7 +90,7 @@ class JsoupForm extends AbstractForm
 	
 	public ControlGroup getControlGroup(String name)
 	{
-		Elements elements = element.select(byControl(name));
+		Elements elements = Selector.select(byControl(name), element);
 		
 		if (elements.isEmpty())
 		{
@@ -84,23 +102,36 @@ class JsoupForm extends AbstractForm
 
 	public MicrodataDocument submit()
 	{
-		getSubmit();
-		checkArgument(getAction() != null, "Invalid action: " + element.attr("action"));
-		
 		JsoupMicrodataDocument nextDocument;
 		
 		try
 		{
-			nextDocument = new JsoupMicrodataDocument(document.getCookies(), getConnection().execute());
+			nextDocument = document.getBrowser().navigate(getSubmitRequest(), document.getCookies(), false);
 		}
 		catch (IOException exception)
 		{
-			throw new MicrobrowserException("Error submitting form", exception);
+			throw JsoupMicrobrowser.newException("Error submitting form", exception);
 		}
 		
 		return nextDocument;
 	}
 	
+	public CompletableFuture<MicrodataDocument> submitAsync()
+	{
+		HttpRequest request;
+		
+		try
+		{
+			request = getSubmitRequest();
+		}
+		catch (IOException exception)
+		{
+			throw JsoupMicrobrowser.newException("Error submitting form", exception);
+		}
+		
+		return document.getBrowser().navigateAsync(request, document.getCookies(), false, "Error submitting form");
+	}
+	
 	// ----------------------------------------------------------------------------------------------------------------
 	// Unwrappable methods
 	// ----------------------------------------------------------------------------------------------------------------
@@ -116,11 +147,6 @@ class JsoupForm extends AbstractForm
 	// private methods
 	// ----------------------------------------------------------------------------------------------------------------
 	
-	private static String byControl(String name)
-	{
-		return String.format("input[name=%1$s], textarea[name=%1$s]", name);
-	}
-	
 	private static ControlGroup newControlGroup(Elements elements)
 	{
 		List<Control> controls = Lists.transform(elements, new Function<Element, Control>()
@@ -159,10 +185,54 @@ class JsoupForm extends AbstractForm
 		return control;
 	}
 
-	private Connection getConnection()
+	private HttpRequest getSubmitRequest() throws IOException
 	{
-		return element.submit()
-			.cookies(document.getCookies());
+		getSubmit();
+		checkArgument(getAction() != null, "Invalid action: " + element.attr("action"));
+		
+		return getRequest();
+	}
+	
+	private HttpRequest getRequest() throws IOException
+	{
+		URL action = getAction();
+		String data = encode(element.formData());
+		
+		if ("POST".equalsIgnoreCase(element.attr("method")))
+		{
+			Map<String, String> headers = Collections.singletonMap("Content-Type", FORM_URL_ENCODED);
+			
+			return new HttpRequest(HttpRequest.POST, action, headers, NO_COOKIES, data.getBytes(CHARSET));
+		}
+		
+		if (data.isEmpty())
+		{
+			return new HttpRequest(HttpRequest.GET, action);
+		}
+		
+		String query = (action.getQuery() != null) ? action.getQuery() + "&" + data : data;
+		URL url = new URL(action.getProtocol() + "://" + action.getAuthority() + action.getPath() + "?" + query);
+		
+		return new HttpRequest(HttpRequest.GET, url);
+	}
+	
+	private static String encode(List<KeyVal> data) throws UnsupportedEncodingException
+	{
+		StringBuilder encoded = new StringBuilder();
+		
+		for (KeyVal keyVal : data)
+		{
+			if (encoded.length() > 0)
+			{
+				encoded.append('&');
+			}
+			
+			encoded.append(URLEncoder.encode(keyVal.key(), CHARSET))
+				.append('=')
+				.append(URLEncoder.encode(keyVal.value(), CHARSET));
+		}
+		
+		return encoded.toString();
 	}
 	
 	private URL getAction()
@@ -183,14 +253,9 @@ class JsoupForm extends AbstractForm
 
 	private Element getSubmit()
 	{
-		Elements elements = element.select(bySubmit());
+		Elements elements = Selector.select(bySubmit(), element);
 		checkState(!elements.isEmpty(), "Missing form submit button");
 		
 		return elements.first();
 	}
-	
-	private static String bySubmit()
-	{
-		return "input[type=submit], button[type=submit], button:not([type])";
-	}
 }
@@ -13,15 +13,8 @@
  */
 package org.hobsoft.microbrowser.jsoup;
 
-import java.io.IOException;
 import java.net.URL;
 
-import org.hobsoft.microbrowser.Link;
-import org.hobsoft.microbrowser.MicrobrowserException;
-import org.hobsoft.microbrowser.MicrodataDocument;
-import org.jsoup.Connection;
-import org.jsoup.Connection.Method;
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Element;
 
 import static org.hobsoft.microbrowser.spi.Urls.newUrlOrNull;
@@ -32,14 +25,12 @@ import static com.google.common.base.Preconditions.checkNotNull;
 /**
  * {@code Link} adapter to a jsoup {@code Element}.
  */
-class JsoupLink implements Link
+class JsoupLink extends AbstractJsoupLink
 {
 	// ----------------------------------------------------------------------------------------------------------------
 	// fields
 	// ----------------------------------------------------------------------------------------------------------------
 
-	private final JsoupMicrodataDocument document;
-	
 	private final Element element;
 
 	// ----------------------------------------------------------------------------------------------------------------
@@ -48,7 +39,8 @@ class JsoupLink implements Link
 
 	JsoupLink(JsoupMicrodataDocument document, Element element)
 	{
-		this.document = checkNotNull(document, "document");
+		super(document);
+		
 		this.element = checkNotNull(element, "element");
 	}
 	
@@ -66,22 +58,6 @@ class JsoupLink implements Link
 		return newUrlOrNull(element.absUrl("href"));
 	}
 
-	public MicrodataDocument follow()
-	{
-		JsoupMicrodataDocument nextDocument;
-		
-		try
-		{
-			nextDocument = new JsoupMicrodataDocument(document.getCookies(), getConnection().execute());
-		}
-		catch (IOException exception)
-		{
-			throw new MicrobrowserException("Error fetching page: " + getHref(), exception);
-		}
-		
-		return nextDocument;
-	}
-	
 	// ----------------------------------------------------------------------------------------------------------------
 	// Unwrappable methods
 	// ----------------------------------------------------------------------------------------------------------------
@@ -94,16 +70,12 @@ class JsoupLink implements Link
 	}
 	
 	// ----------------------------------------------------------------------------------------------------------------
-	// private methods
+	// AbstractJsoupLink methods
 	// ----------------------------------------------------------------------------------------------------------------
 
-	private Connection getConnection()
+	@Override
+	protected String getHrefAttribute()
 	{
-		URL href = getHref();
-		checkArgument(href != null, "Invalid URL: " + element.attr("href"));
-		
-		return Jsoup.connect(href.toString())
-			.method(Method.GET)
-			.cookies(document.getCookies());
+		return element.attr("href");
 	}
 }
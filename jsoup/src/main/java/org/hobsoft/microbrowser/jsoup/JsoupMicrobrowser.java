@@ -13,43 +13,501 @@
  */
 package org.hobsoft.microbrowser.jsoup;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.Reader;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.regex.Pattern;
 
+import org.hobsoft.microbrowser.CircuitBreakerOpenException;
 import org.hobsoft.microbrowser.Microbrowser;
 import org.hobsoft.microbrowser.MicrobrowserException;
 import org.hobsoft.microbrowser.MicrodataDocument;
-import org.jsoup.Connection.Method;
-import org.jsoup.Connection.Response;
-import org.jsoup.Jsoup;
+import org.hobsoft.microbrowser.ResponseTimeoutException;
+import org.hobsoft.microbrowser.ResponseTooLargeException;
+import org.hobsoft.microbrowser.spi.CompletableFutures;
+import org.hobsoft.microbrowser.spi.http.BodyTooLargeException;
+import org.hobsoft.microbrowser.spi.http.CircuitOpenException;
+import org.hobsoft.microbrowser.spi.http.HttpRequest;
+import org.hobsoft.microbrowser.spi.http.HttpResponse;
+import org.hobsoft.microbrowser.spi.http.PooledTransport;
+import org.hobsoft.microbrowser.spi.http.ResponseLimits;
+import org.hobsoft.microbrowser.spi.http.Transport;
+import org.jsoup.HttpStatusException;
+import org.jsoup.UnsupportedMimeTypeException;
+import org.jsoup.helper.HttpConnection;
+import org.jsoup.nodes.Document;
+import org.jsoup.parser.Parser;
 
 import static org.hobsoft.microbrowser.spi.Urls.newUrl;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
 /**
- * {@code Microbrowser} implementation that uses jsoup.
+ * {@code Microbrowser} implementation that uses jsoup, fetching pages through a chain of {@code Transport}s.
  */
 public class JsoupMicrobrowser implements Microbrowser
 {
+	// ----------------------------------------------------------------------------------------------------------------
+	// constants
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static final Map<String, String> NO_COOKIES = Collections.<String, String>emptyMap();
+
+	private static final Pattern XML_CONTENT_TYPE = Pattern.compile("(application|text)/\\w*\\+?xml.*");
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private final Transport transport;
+
+	private final Map<byte[], Document> documentsByBody;
+
+	private volatile Prefetcher prefetcher;
+
+	private volatile ParsePolicy parsePolicy;
+
+	private volatile StringPool stringPool;
+
+	private final List<PruneListener> pruneListeners;
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Creates a browser that sends requests with a {@code PooledTransport}, which reuses connections and remembers
+	 * permanent redirects.
+	 */
+	public JsoupMicrobrowser()
+	{
+		this(new PooledTransport());
+	}
+
+	/**
+	 * Creates a browser that enforces the specified limits while receiving each response.
+	 *
+	 * @param limits
+	 *            the size and time limits, where a body that exceeds its maximum size fails with a
+	 *            {@code ResponseTooLargeException} and a timeout fails with a {@code ResponseTimeoutException} unless
+	 *            the limits truncate the body
+	 */
+	public JsoupMicrobrowser(ResponseLimits limits)
+	{
+		this(new PooledTransport().limits(limits));
+	}
+
+	/**
+	 * Creates a browser that sends requests with the specified transport.
+	 * <p>
+	 * Any behaviour beyond that of a {@code PooledTransport} is opt-in, by wrapping it in decorators such as a
+	 * {@code CachingTransport}, {@code CoalescingTransport}, {@code RetryingTransport}, {@code ThrottlingTransport} or
+	 * {@code CircuitBreakerTransport}, each configured by its own setters. Requests that a circuit breaker refuses fail
+	 * with a {@code CircuitBreakerOpenException}, and each caller of coalesced requests still receives its own
+	 * document.
+	 *
+	 * @param transport
+	 *            the transport chain to send requests with
+	 */
+	public JsoupMicrobrowser(Transport transport)
+	{
+		this.transport = checkNotNull(transport, "transport");
+		
+		// body arrays compare by identity and are only shared by responses that are reused by a cache
+		documentsByBody = Collections.synchronizedMap(new WeakHashMap<byte[], Document>());
+		prefetcher = new Prefetcher(transport, PrefetchPolicy.NONE);
+		parsePolicy = ParsePolicy.DEFAULT;
+		pruneListeners = new CopyOnWriteArrayList<PruneListener>();
+	}
+
 	// ----------------------------------------------------------------------------------------------------------------
 	// Microbrowser methods
 	// ----------------------------------------------------------------------------------------------------------------
 
 	public MicrodataDocument get(String url)
 	{
-		newUrl(url);
+		HttpRequest request = new HttpRequest(HttpRequest.GET, newUrl(url));
+
+		try
+		{
+			return navigate(request, NO_COOKIES, true);
+		}
+		catch (IOException exception)
+		{
+			throw newException("Error fetching page: " + url, exception);
+		}
+	}
+	
+	public CompletableFuture<MicrodataDocument> getAsync(String url)
+	{
+		HttpRequest request = new HttpRequest(HttpRequest.GET, newUrl(url));
 		
+		return navigateAsync(request, NO_COOKIES, true, "Error fetching page: " + url);
+	}
+	
+	public CompletableFuture<MicrodataDocument> getAsync(String url, long timeout, TimeUnit unit)
+	{
+		return CompletableFutures.withTimeout(getAsync(url), timeout, unit);
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// public methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Navigates to the specified URL, receiving the page only until it contains everything that the specified query
+	 * needs.
+	 * <p>
+	 * The connection is closed as soon as the query is satisfied, and the document contains only the part of the page
+	 * received until then. A page that does not satisfy the query is received in full.
+	 *
+	 * @param url
+	 *            the URL to navigate to
+	 * @param query
+	 *            the items and links that are needed
+	 * @return the document, which may be partial
+	 */
+	public MicrodataDocument get(String url, PageQuery query)
+	{
+		HttpRequest request = newQueryRequest(url, query);
+
 		try
 		{
-			Response response = Jsoup.connect(url)
-				.method(Method.GET)
-				.ignoreHttpErrors(true)
-				.execute();
-			
-			return new JsoupMicrodataDocument(Collections.<String, String>emptyMap(), response);
+			return navigate(request, NO_COOKIES, true);
+		}
+		catch (IOException exception)
+		{
+			throw newException("Error fetching page: " + url, exception);
+		}
+	}
+
+	/**
+	 * Asynchronously navigates to the specified URL, receiving the page only until it contains everything that the
+	 * specified query needs.
+	 *
+	 * @param url
+	 *            the URL to navigate to
+	 * @param query
+	 *            the items and links that are needed
+	 * @return a future for the document, which may be partial
+	 * @see #get(String, PageQuery)
+	 */
+	public CompletableFuture<MicrodataDocument> getAsync(String url, PageQuery query)
+	{
+		HttpRequest request = newQueryRequest(url, query);
+
+		return navigateAsync(request, NO_COOKIES, true, "Error fetching page: " + url);
+	}
+
+	/**
+	 * Fetches the specified URL and reads the microdata of the page to the specified handler, without parsing the page
+	 * into a document.
+	 * <p>
+	 * This suits extracting items from many pages, since memory is proportional to the nesting depth of each page
+	 * rather than to its size, but the page cannot then be navigated from.
+	 *
+	 * @param url
+	 *            the URL to fetch
+	 * @param handler
+	 *            the handler to receive the items and properties of the page
+	 */
+	public void extract(String url, MicrodataHandler handler)
+	{
+		checkNotNull(handler, "handler");
+		HttpRequest request = new HttpRequest(HttpRequest.GET, newUrl(url));
+
+		try
+		{
+			HttpResponse response = prefetcher.execute(newRequest(request, NO_COOKIES));
+			checkResponse(response, true);
+
+			MicrodataExtractor.extract(response, handler);
 		}
 		catch (IOException exception)
 		{
-			throw new MicrobrowserException("Error fetching page: " + url, exception);
+			throw newException("Error fetching page: " + url, exception);
+		}
+	}
+
+	/**
+	 * Sets which links of each document are fetched before they are followed, discarding any links already prefetched.
+	 *
+	 * @param policy
+	 *            the prefetch policy, or {@code PrefetchPolicy.NONE} to disable prefetching
+	 * @return this browser
+	 */
+	public JsoupMicrobrowser prefetch(PrefetchPolicy policy)
+	{
+		prefetcher = new Prefetcher(transport, policy);
+		return this;
+	}
+
+	/**
+	 * Sets which nodes are dropped from each document as it is parsed, and how many attribute strings are shared
+	 * between documents, discarding any documents already parsed.
+	 *
+	 * @param policy
+	 *            the parse policy, or {@code ParsePolicy.DEFAULT} to keep every node
+	 * @return this browser
+	 */
+	public JsoupMicrobrowser parsePolicy(ParsePolicy policy)
+	{
+		parsePolicy = checkNotNull(policy, "policy");
+		stringPool = (policy.getMaxPooledStrings() > 0) ? new StringPool(policy.getMaxPooledStrings()) : null;
+		documentsByBody.clear();
+		return this;
+	}
+
+	/**
+	 * Adds a listener that is told how many nodes the parse policy drops each time a document is parsed.
+	 *
+	 * @param listener
+	 *            the listener to add
+	 */
+	public void addPruneListener(PruneListener listener)
+	{
+		pruneListeners.add(checkNotNull(listener, "listener"));
+	}
+
+	public void removePruneListener(PruneListener listener)
+	{
+		pruneListeners.remove(listener);
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// package-private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	ParsePolicy getParsePolicy()
+	{
+		return parsePolicy;
+	}
+
+	/**
+	 * Gets the number of parsed documents retained for reuse with cacheable responses.
+	 */
+	int getRetainedDocumentCount()
+	{
+		return documentsByBody.size();
+	}
+
+	/**
+	 * Executes the specified request with the specified cookies and returns the response as a document.
+	 */
+	JsoupMicrodataDocument navigate(HttpRequest request, Map<String, String> cookies, boolean ignoreHttpErrors)
+		throws IOException
+	{
+		Prefetcher prefetcher = this.prefetcher;
+		HttpResponse response = prefetcher.execute(newRequest(request, cookies));
+
+		checkResponse(response, ignoreHttpErrors);
+
+		JsoupMicrodataDocument document = new JsoupMicrodataDocument(this, cookies, response);
+		prefetcher.prefetch(document);
+		return document;
+	}
+
+	/**
+	 * Asynchronously executes the specified request with the specified cookies and returns the response as a document.
+	 * Any error completes the returned future with a {@code MicrobrowserException} that has the specified message.
+	 */
+	CompletableFuture<MicrodataDocument> navigateAsync(HttpRequest request, final Map<String, String> cookies,
+		final boolean ignoreHttpErrors, final String errorMessage)
+	{
+		final Prefetcher prefetcher = this.prefetcher;
+		CompletableFuture<HttpResponse> response = prefetcher.executeAsync(newRequest(request, cookies));
+		final CompletableFuture<MicrodataDocument> document = new CompletableFuture<MicrodataDocument>();
+		
+		response.whenComplete(new BiConsumer<HttpResponse, Throwable>()
+		{
+			public void accept(HttpResponse result, Throwable throwable)
+			{
+				if (throwable != null)
+				{
+					document.completeExceptionally(newException(errorMessage, CompletableFutures.unwrap(throwable)));
+					return;
+				}
+				
+				try
+				{
+					checkResponse(result, ignoreHttpErrors);
+					
+					JsoupMicrodataDocument nextDocument = new JsoupMicrodataDocument(JsoupMicrobrowser.this, cookies,
+						result);
+					prefetcher.prefetch(nextDocument);
+					document.complete(nextDocument);
+				}
+				catch (IOException exception)
+				{
+					document.completeExceptionally(newException(errorMessage, exception));
+				}
+			}
+		});
+		
+		// abort the request if the document is cancelled or times out
+		return CompletableFutures.cancelOnFailure(document, response);
+	}
+
+	/**
+	 * Parses the specified response into a new document, reusing the result of any previous parse of its body.
+	 * <p>
+	 * Documents parsed from cacheable responses are retained for as long as their response body is, so that a response
+	 * reused by a cache, including one revalidated with {@code 304 Not Modified}, is not parsed again. Documents are
+	 * not retained when the parse policy is compact.
+	 */
+	Document parse(HttpResponse response)
+	{
+		Document document = documentsByBody.get(response.getBody());
+		
+		if (document == null)
+		{
+			document = parseBody(response);
+			prune(document, response);
+			
+			StringPool stringPool = this.stringPool;
+			
+			if (stringPool != null)
+			{
+				stringPool.intern(document);
+			}
+			
+			// a compact document only needs the parse while it is being built
+			if (!isCacheable(response) || parsePolicy.isCompact())
+			{
+				return document;
+			}
+			
+			documentsByBody.put(response.getBody(), document);
+		}
+		
+		// callers may modify the document, such as by setting form control values
+		return document.clone();
+	}
+
+	/**
+	 * Creates an exception for the specified failure to fetch a page, whose type reflects any limit that was reached or
+	 * whether the request was not sent because its origin is failing.
+	 */
+	static MicrobrowserException newException(String message, Throwable cause)
+	{
+		if (cause instanceof CircuitOpenException)
+		{
+			return new CircuitBreakerOpenException(message, cause);
+		}
+
+		if (cause instanceof BodyTooLargeException)
+		{
+			return new ResponseTooLargeException(message, cause);
+		}
+
+		if (cause instanceof SocketTimeoutException)
+		{
+			return new ResponseTimeoutException(message, cause);
+		}
+
+		return new MicrobrowserException(message, cause);
+	}
+
+	/**
+	 * Gets the request to send for the specified request with the specified cookies, starting it so that any total
+	 * timeout covers the whole transport chain.
+	 */
+	static HttpRequest newRequest(HttpRequest request, Map<String, String> cookies)
+	{
+		HttpRequest cookieRequest = request.withCookies(cookies);
+
+		if (cookieRequest.getHeader("User-Agent") == null)
+		{
+			cookieRequest = cookieRequest.withHeader("User-Agent", HttpConnection.DEFAULT_UA);
+		}
+
+		return cookieRequest.start();
+	}
+
+	static boolean isXml(String contentType)
+	{
+		return contentType != null && XML_CONTENT_TYPE.matcher(contentType).matches();
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private void prune(Document document, HttpResponse response)
+	{
+		ParsePolicy policy = parsePolicy;
+
+		if (!policy.isPruning())
+		{
+			return;
+		}
+
+		Pruner pruner = new Pruner(policy);
+		pruner.prune(document);
+
+		for (PruneListener listener : pruneListeners)
+		{
+			listener.pruned(response.getUrl(), pruner.getNodeCount(), pruner.getByteCount());
+		}
+	}
+
+	private static HttpRequest newQueryRequest(String url, PageQuery query)
+	{
+		return new HttpRequest(HttpRequest.GET, newUrl(url)).withBodyScanner(new PageQueryScanner(query));
+	}
+
+	/**
+	 * Parses the body of the specified response by decoding it incrementally as the parser reads it, rather than
+	 * copying it and decoding it into a string first.
+	 */
+	private static Document parseBody(HttpResponse response)
+	{
+		Parser parser = isXml(response.getContentType()) ? Parser.xmlParser() : Parser.htmlParser();
+		ByteBuffer body = ByteBuffer.wrap(response.getBody());
+		Charset charset = ByteBufferReader.sniffCharset(body, response.getCharset());
+		
+		// the parser requires mark support
+		Reader reader = new BufferedReader(new ByteBufferReader(body, charset));
+		
+		Document document = parser.parseInput(reader, response.getUrl().toExternalForm());
+		document.outputSettings().charset(charset);
+		
+		return document;
+	}
+
+	private static boolean isCacheable(HttpResponse response)
+	{
+		return response.getHeader("Cache-Control") != null || response.getHeader("ETag") != null
+			|| response.getHeader("Last-Modified") != null;
+	}
+
+	private static void checkResponse(HttpResponse response, boolean ignoreHttpErrors) throws IOException
+	{
+		int statusCode = response.getStatusCode();
+		String url = response.getUrl().toString();
+
+		if ((statusCode < 200 || statusCode >= 400) && !ignoreHttpErrors)
+		{
+			throw new HttpStatusException("HTTP error fetching URL", statusCode, url);
+		}
+
+		String contentType = response.getContentType();
+
+		if (contentType != null && !contentType.startsWith("text/") && !isXml(contentType))
+		{
+			throw new UnsupportedMimeTypeException("Unhandled content type. Must be text/*, application/xml, or "
+				+ "application/xhtml+xml", contentType, url);
 		}
 	}
 }
@@ -13,10 +13,10 @@
  */
 package org.hobsoft.microbrowser.jsoup;
 
-import java.io.IOException;
-import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -24,13 +24,19 @@ import org.hobsoft.microbrowser.CookieNotFoundException;
 import org.hobsoft.microbrowser.Form;
 import org.hobsoft.microbrowser.FormNotFoundException;
 import org.hobsoft.microbrowser.Link;
+import org.hobsoft.microbrowser.MicrodataDocument;
 import org.hobsoft.microbrowser.MicrodataItem;
+import org.hobsoft.microbrowser.MicrodataProperty;
 import org.hobsoft.microbrowser.spi.AbstractMicrodataDocument;
-import org.jsoup.Connection.Response;
+import org.hobsoft.microbrowser.spi.DetachedMicrodataDocument;
+import org.hobsoft.microbrowser.spi.DetachedMicrodataItem;
+import org.hobsoft.microbrowser.spi.DetachedMicrodataProperty;
+import org.hobsoft.microbrowser.spi.http.HttpResponse;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.nodes.FormElement;
-import org.jsoup.select.Elements;
+import org.jsoup.nodes.Node;
+import org.jsoup.select.NodeVisitor;
 
 import com.google.common.base.Function;
 import com.google.common.collect.Lists;
@@ -39,9 +45,25 @@ import static org.hobsoft.microbrowser.spi.Urls.newUrl;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.base.Strings.nullToEmpty;
 
 /**
  * {@code MicrodataDocument} adapter to a jsoup {@code Document}.
+ * <p>
+ * A document created from a response retains only the response until its content is first needed, when the response
+ * is parsed exactly once. Cookies are available without parsing the response.
+ * <p>
+ * Items, links and forms are found through a {@code DocumentIndex} that is built when the document is sanitized, rather
+ * than by selecting them from the whole document on each lookup.
+ * <p>
+ * When the parse policy is compact, the parsed document is instead kept as a {@code CompactDocument}, which serves
+ * items, properties and links. A jsoup document is only built from it, and indexed, when a form or the document
+ * itself is needed.
+ * <p>
+ * Once detached, the document releases its content and reads its items and links from the
+ * {@code DetachedMicrodataDocument} that it produced, which has no forms. A compact document is detached without
+ * building a jsoup document.
  */
 class JsoupMicrodataDocument extends AbstractMicrodataDocument
 {
@@ -57,9 +79,19 @@ class JsoupMicrodataDocument extends AbstractMicrodataDocument
 	// fields
 	// ----------------------------------------------------------------------------------------------------------------
 
+	private final JsoupMicrobrowser browser;
+	
 	private final Map<String, String> cookies;
 	
-	private final Document document;
+	private final boolean compact;
+	
+	private HttpResponse response;
+	
+	private volatile DocumentIndex index;
+	
+	private volatile CompactDocument compactDocument;
+	
+	private volatile DetachedMicrodataDocument detached;
 	
 	// ----------------------------------------------------------------------------------------------------------------
 	// constructors
@@ -67,18 +99,24 @@ class JsoupMicrodataDocument extends AbstractMicrodataDocument
 	
 	JsoupMicrodataDocument()
 	{
-		this(NO_COOKIES, new Document(DEFAULT_BASE_URI));
+		this(new JsoupMicrobrowser(), NO_COOKIES, new Document(DEFAULT_BASE_URI));
 	}
 
-	JsoupMicrodataDocument(Map<String, String> cookies, Document document)
+	JsoupMicrodataDocument(JsoupMicrobrowser browser, Map<String, String> cookies, Document document)
 	{
+		this.browser = checkNotNull(browser, "browser");
 		this.cookies = checkNotNull(cookies, "cookies");
-		this.document = sanitize(checkNotNull(document, "document"));
+		compact = false;
+		index = sanitize(checkNotNull(document, "document"));
 	}
 	
-	JsoupMicrodataDocument(Map<String, String> cookies, Response response) throws IOException
+	JsoupMicrodataDocument(JsoupMicrobrowser browser, Map<String, String> cookies, HttpResponse response)
 	{
-		this(union(cookies, response.cookies()), response.parse());
+		this.browser = checkNotNull(browser, "browser");
+		this.cookies = union(checkNotNull(cookies, "cookies"), response.getCookies());
+		this.response = response;
+		
+		compact = browser.getParsePolicy().isCompact();
 	}
 	
 	// ----------------------------------------------------------------------------------------------------------------
@@ -87,7 +125,28 @@ class JsoupMicrodataDocument extends AbstractMicrodataDocument
 
 	public List<MicrodataItem> getItems(String type)
 	{
-		Elements elements = document.select(byItemType(newUrl(type)));
+		DetachedMicrodataDocument detached = this.detached;
+		
+		if (detached != null)
+		{
+			return detached.getItems(type);
+		}
+		
+		final CompactDocument compactDocument = getCompactDocument();
+		
+		if (compactDocument != null)
+		{
+			return Lists.transform(compactDocument.getItems(newUrl(type).toString()),
+				new Function<Integer, MicrodataItem>()
+				{
+					public MicrodataItem apply(Integer node)
+					{
+						return new CompactMicrodataItem(JsoupMicrodataDocument.this, compactDocument, node);
+					}
+				});
+		}
+		
+		List<Element> elements = getIndex().getItems(newUrl(type).toString());
 		
 		return Lists.transform(elements, new Function<Element, MicrodataItem>()
 		{
@@ -110,13 +169,51 @@ class JsoupMicrodataDocument extends AbstractMicrodataDocument
 		return value;
 	}
 	
+	public synchronized MicrodataDocument detach()
+	{
+		if (detached == null)
+		{
+			CompactDocument compactDocument = getCompactDocument();
+			
+			// a compact document is copied as it is, rather than building a jsoup document to copy
+			detached = (compactDocument != null) ? newDetachedDocument(compactDocument)
+				: newDetachedDocument(getIndex().getDocument());
+			
+			// the content is now read from the detached document
+			index = null;
+			compactDocument = null;
+		}
+		
+		return detached;
+	}
+	
 	// ----------------------------------------------------------------------------------------------------------------
 	// Hypermedia methods
 	// ----------------------------------------------------------------------------------------------------------------
 
 	public List<Link> getLinks(String rel)
 	{
-		Elements elements = document.select(byLink(rel));
+		DetachedMicrodataDocument detached = this.detached;
+		
+		if (detached != null)
+		{
+			return detached.getLinks(rel);
+		}
+		
+		final CompactDocument compactDocument = getCompactDocument();
+		
+		if (compactDocument != null)
+		{
+			return Lists.transform(compactDocument.getLinks(checkNotNull(rel, "rel")), new Function<Integer, Link>()
+			{
+				public Link apply(Integer node)
+				{
+					return new CompactLink(JsoupMicrodataDocument.this, compactDocument, node);
+				}
+			});
+		}
+		
+		List<Element> elements = getIndex().getLinks(checkNotNull(rel, "rel"));
 		
 		return Lists.transform(elements, new Function<Element, Link>()
 		{
@@ -129,14 +226,21 @@ class JsoupMicrodataDocument extends AbstractMicrodataDocument
 
 	public Form getForm(String name)
 	{
-		Elements elements = document.select(byForm(name));
+		DetachedMicrodataDocument detached = this.detached;
+		
+		if (detached != null)
+		{
+			return detached.getForm(name);
+		}
+		
+		FormElement form = getIndex().getForm(checkNotNull(name, "name"));
 		
-		if (elements.isEmpty())
+		if (form == null)
 		{
 			throw new FormNotFoundException(name);
 		}
 		
-		return new JsoupForm(this, (FormElement) elements.first());
+		return new JsoupForm(this, form);
 	}
 	
 	// ----------------------------------------------------------------------------------------------------------------
@@ -146,8 +250,9 @@ class JsoupMicrodataDocument extends AbstractMicrodataDocument
 	public <T> T unwrap(Class<T> type)
 	{
 		checkArgument(Document.class.equals(type), "Cannot unwrap to: %s", type);
+		checkState(detached == null, "Document is detached");
 		
-		return type.cast(document);
+		return type.cast(getIndex().getDocument());
 	}
 	
 	// ----------------------------------------------------------------------------------------------------------------
@@ -159,18 +264,259 @@ class JsoupMicrodataDocument extends AbstractMicrodataDocument
 		return cookies;
 	}
 	
+	// ----------------------------------------------------------------------------------------------------------------
+	// package-private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	JsoupMicrobrowser getBrowser()
+	{
+		return browser;
+	}
+	
+	/**
+	 * Gets the element of the jsoup document that corresponds to the specified node of the compact document, building
+	 * the jsoup document on first use.
+	 */
+	Element getElement(int node)
+	{
+		return (Element) getCompactDocument().getNode(getIndex().getDocument(), node);
+	}
+	
 	// ----------------------------------------------------------------------------------------------------------------
 	// private methods
 	// ----------------------------------------------------------------------------------------------------------------
 
-	private static Document sanitize(Document document)
+	/**
+	 * Gets the index of the jsoup document, parsing the response, or building the document from the compact document,
+	 * on first use.
+	 */
+	private DocumentIndex getIndex()
+	{
+		DocumentIndex result = index;
+		
+		if (result == null)
+		{
+			synchronized (this)
+			{
+				result = index;
+				
+				if (result == null)
+				{
+					checkState(detached == null, "Document is detached");
+					
+					CompactDocument compactDocument = getCompactDocument();
+					result = sanitize((compactDocument != null) ? compactDocument.inflate() : browser.parse(response));
+					index = result;
+					
+					// the body is no longer needed
+					response = null;
+				}
+			}
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Gets the compact document, parsing the response on first use.
+	 *
+	 * @return the compact document, or {@code null} if this document is not compact
+	 */
+	private CompactDocument getCompactDocument()
+	{
+		if (!compact)
+		{
+			return null;
+		}
+		
+		CompactDocument result = compactDocument;
+		
+		if (result == null)
+		{
+			synchronized (this)
+			{
+				result = compactDocument;
+				
+				if (result == null)
+				{
+					checkState(detached == null, "Document is detached");
+					
+					result = new CompactDocument(browser.parse(response));
+					compactDocument = result;
+					
+					// the body is no longer needed
+					response = null;
+				}
+			}
+		}
+		
+		return result;
+	}
+
+	/**
+	 * Copies the items and links of the specified jsoup document, and the cookies of this document, into a detached
+	 * document. An element that is a property or link of several items is copied once and shared between them.
+	 */
+	private DetachedMicrodataDocument newDetachedDocument(Document document)
+	{
+		Map<Element, MicrodataProperty> propertiesByElement = new IdentityHashMap<Element, MicrodataProperty>();
+		Map<Element, Link> linksByElement = new IdentityHashMap<Element, Link>();
+		List<Element> itemElements = new ArrayList<Element>();
+		List<Link> documentLinks = new ArrayList<Link>();
+		
+		for (Element element : document.getAllElements())
+		{
+			if (element.hasAttr("itemprop"))
+			{
+				propertiesByElement.put(element, new DetachedMicrodataProperty(element.attr("itemprop"),
+					new JsoupMicrodataProperty(element).getValue()));
+			}
+			
+			if (isLink(element))
+			{
+				Link link = new DetachedLink(this, element.attr("rel"), element.absUrl("href"), element.attr("href"));
+				linksByElement.put(element, link);
+				documentLinks.add(link);
+			}
+			
+			if (element.hasAttr("itemscope") && element.hasAttr("itemtype"))
+			{
+				itemElements.add(element);
+			}
+		}
+		
+		List<DetachedMicrodataItem> documentItems = new ArrayList<DetachedMicrodataItem>();
+		
+		for (Element itemElement : itemElements)
+		{
+			documentItems.add(newDetachedItem(itemElement, propertiesByElement, linksByElement));
+		}
+		
+		return new DetachedMicrodataDocument(documentItems, documentLinks, cookies);
+	}
+
+	/**
+	 * Copies the items and links of the specified compact document, and the cookies of this document, into a detached
+	 * document, in the same way as a jsoup document.
+	 */
+	private DetachedMicrodataDocument newDetachedDocument(CompactDocument compactDocument)
+	{
+		MicrodataProperty[] propertiesByNode = new MicrodataProperty[compactDocument.size()];
+		Link[] linksByNode = new Link[compactDocument.size()];
+		List<Integer> itemNodes = new ArrayList<Integer>();
+		List<Link> documentLinks = new ArrayList<Link>();
+		
+		for (int node = CompactDocument.ROOT; node < compactDocument.size(); node++)
+		{
+			if (!compactDocument.isElement(node))
+			{
+				continue;
+			}
+			
+			String name = compactDocument.getAttribute(node, "itemprop");
+			
+			if (name != null)
+			{
+				propertiesByNode[node] = new DetachedMicrodataProperty(name,
+					new CompactMicrodataProperty(this, compactDocument, node).getValue());
+			}
+			
+			if (isLink(compactDocument, node))
+			{
+				String href = nullToEmpty(compactDocument.getAttribute(node, "href"));
+				Link link = new DetachedLink(this, compactDocument.getAttribute(node, "rel"),
+					compactDocument.getAbsoluteUrl(node, "href"), href);
+				linksByNode[node] = link;
+				documentLinks.add(link);
+			}
+			
+			if (compactDocument.getAttribute(node, "itemscope") != null
+				&& compactDocument.getAttribute(node, "itemtype") != null)
+			{
+				itemNodes.add(node);
+			}
+		}
+		
+		List<DetachedMicrodataItem> documentItems = new ArrayList<DetachedMicrodataItem>();
+		
+		for (int itemNode : itemNodes)
+		{
+			documentItems.add(newDetachedItem(compactDocument, itemNode, propertiesByNode, linksByNode));
+		}
+		
+		return new DetachedMicrodataDocument(documentItems, documentLinks, cookies);
+	}
+
+	private static DetachedMicrodataItem newDetachedItem(CompactDocument compactDocument, int itemNode,
+		MicrodataProperty[] propertiesByNode, Link[] linksByNode)
+	{
+		List<MicrodataProperty> itemProperties = new ArrayList<MicrodataProperty>();
+		List<Link> itemLinks = new ArrayList<Link>();
+		int end = compactDocument.getEnd(itemNode);
+		
+		for (int node = itemNode; node < end; node++)
+		{
+			if (propertiesByNode[node] != null)
+			{
+				itemProperties.add(propertiesByNode[node]);
+			}
+			
+			if (linksByNode[node] != null)
+			{
+				itemLinks.add(linksByNode[node]);
+			}
+		}
+		
+		return new DetachedMicrodataItem(compactDocument.getAttribute(itemNode, "itemtype"),
+			nullToEmpty(compactDocument.getAttribute(itemNode, "itemid")), itemProperties, itemLinks);
+	}
+
+	private static DetachedMicrodataItem newDetachedItem(Element itemElement,
+		Map<Element, MicrodataProperty> propertiesByElement, Map<Element, Link> linksByElement)
+	{
+		List<MicrodataProperty> itemProperties = new ArrayList<MicrodataProperty>();
+		List<Link> itemLinks = new ArrayList<Link>();
+		
+		for (Element element : itemElement.getAllElements())
+		{
+			MicrodataProperty property = propertiesByElement.get(element);
+			
+			if (property != null)
+			{
+				itemProperties.add(property);
+			}
+			
+			Link link = linksByElement.get(element);
+			
+			if (link != null)
+			{
+				itemLinks.add(link);
+			}
+		}
+		
+		return new DetachedMicrodataItem(itemElement.attr("itemtype"), itemElement.attr("itemid"), itemProperties,
+			itemLinks);
+	}
+
+	/**
+	 * Sanitizes the specified document and indexes it in the same traversal, only revisiting forms whose radio controls
+	 * may need sanitizing.
+	 */
+	private static DocumentIndex sanitize(Document document)
 	{
-		for (FormElement form : document.getAllElements().forms())
+		SanitizingVisitor visitor = new SanitizingVisitor(new DocumentIndex(document));
+		document.traverse(visitor);
+		
+		// radio controls can only conflict when more than one is checked
+		if (visitor.checkedRadioCount > 1)
 		{
-			sanitizeRadioControls(form);
+			for (FormElement form : visitor.forms)
+			{
+				sanitizeRadioControls(form);
+			}
 		}
 		
-		return document;
+		return visitor.index;
 	}
 
 	/**
@@ -203,19 +549,72 @@ class JsoupMicrodataDocument extends AbstractMicrodataDocument
 		union.putAll(map2);
 		return union;
 	}
-
-	private static String byItemType(URL itemType)
+	
+	private static boolean isLink(Element element)
 	{
-		return String.format("[itemscope][itemtype=%s]", itemType);
+		String tagName = element.tagName();
+		
+		return ("a".equals(tagName) || "link".equals(tagName)) && element.hasAttr("rel");
 	}
-
-	private static String byLink(String rel)
+	
+	private static boolean isLink(CompactDocument compactDocument, int node)
+	{
+		String tagName = compactDocument.getTagName(node);
+		
+		return ("a".equals(tagName) || "link".equals(tagName)) && compactDocument.getAttribute(node, "rel") != null;
+	}
+	
+	private static boolean isCheckedRadio(Element element)
 	{
-		return String.format("a[rel=%1$s], link[rel=%1$s]", rel);
+		return "input".equals(element.tagName()) && "radio".equals(element.attr("type"))
+			&& element.hasAttr("checked");
 	}
 	
-	private static String byForm(String name)
+	// ----------------------------------------------------------------------------------------------------------------
+	// types
+	// ----------------------------------------------------------------------------------------------------------------
+	
+	/**
+	 * Visitor that indexes each element and notes the forms and checked radio controls in a single traversal.
+	 */
+	private static final class SanitizingVisitor implements NodeVisitor
 	{
-		return String.format("form[name=%s]", name);
+		private final DocumentIndex index;
+		
+		private final List<FormElement> forms;
+		
+		private int checkedRadioCount;
+		
+		SanitizingVisitor(DocumentIndex index)
+		{
+			this.index = index;
+			
+			forms = new ArrayList<FormElement>(0);
+		}
+		
+		public void head(Node node, int depth)
+		{
+			if (!(node instanceof Element))
+			{
+				return;
+			}
+			
+			Element element = (Element) node;
+			index.add(element);
+			
+			if (element instanceof FormElement)
+			{
+				forms.add((FormElement) element);
+			}
+			else if (isCheckedRadio(element))
+			{
+				checkedRadioCount++;
+			}
+		}
+		
+		public void tail(Node node, int depth)
+		{
+			// nothing to do on leaving a node
+		}
 	}
 }
@@ -26,10 +26,14 @@ import org.hobsoft.microbrowser.spi.AbstractHypermedia;
 import org.jsoup.nodes.Element;
 import org.jsoup.nodes.FormElement;
 import org.jsoup.select.Elements;
+import org.jsoup.select.Selector;
 
 import com.google.common.base.Function;
 import com.google.common.collect.Lists;
 
+import static org.hobsoft.microbrowser.jsoup.Selectors.byForm;
+import static org.hobsoft.microbrowser.jsoup.Selectors.byItemProp;
+import static org.hobsoft.microbrowser.jsoup.Selectors.byLink;
 import static org.hobsoft.microbrowser.spi.Urls.newUrlOrNull;
 
 import static com.google.common.base.Preconditions.checkArgument;
@@ -74,7 +78,7 @@ class JsoupMicrodataItem extends AbstractHypermedia implements MicrodataItem
 
 	public MicrodataProperty getProperty(String name)
 	{
-		Elements elements = element.select(byItemProp(name));
+		Elements elements = Selector.select(byItemProp(name), element);
 		
 		if (elements.isEmpty())
 		{
@@ -90,7 +94,7 @@ class JsoupMicrodataItem extends AbstractHypermedia implements MicrodataItem
 
 	public List<Link> getLinks(String rel)
 	{
-		Elements elements = element.select(byLink(rel));
+		Elements elements = Selector.select(byLink(rel), element);
 		
 		return Lists.transform(elements, new Function<Element, Link>()
 		{
@@ -103,7 +107,7 @@ class JsoupMicrodataItem extends AbstractHypermedia implements MicrodataItem
 	
 	public Form getForm(String name)
 	{
-		Elements elements = element.select(byForm(name));
+		Elements elements = Selector.select(byForm(name), element);
 		
 		if (elements.isEmpty())
 		{
@@ -123,23 +127,4 @@ class JsoupMicrodataItem extends AbstractHypermedia implements MicrodataItem
 		
 		return type.cast(element);
 	}
-	
-	// ----------------------------------------------------------------------------------------------------------------
-	// private methods
-	// ----------------------------------------------------------------------------------------------------------------
-
-	private static String byItemProp(String itemProp)
-	{
-		return String.format("[itemprop=%s]", itemProp);
-	}
-	
-	private static String byLink(String rel)
-	{
-		return String.format("a[rel=%1$s], link[rel=%1$s]", rel);
-	}
-	
-	private static String byForm(String name)
-	{
-		return String.format("form[name=%s]", name);
-	}
 }
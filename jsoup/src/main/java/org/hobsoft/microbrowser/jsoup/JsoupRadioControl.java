@@ -15,6 +15,9 @@ package org.hobsoft.microbrowser.jsoup;
 
 import org.jsoup.nodes.Element;
 import org.jsoup.nodes.FormElement;
+import org.jsoup.select.Evaluator;
+
+import static org.hobsoft.microbrowser.jsoup.Selectors.byRadioControl;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
@@ -41,7 +44,16 @@ class JsoupRadioControl extends JsoupCheckboxControl
 	{
 		checkArgument(!UNCHECKED_VALUE.equals(value), "Cannot uncheck radio control");
 		
-		getForm().elements().select(byControlGroup()).removeAttr("checked");
+		FormElement form = getForm();
+		Evaluator byControlGroup = byRadioControl(getName());
+		
+		for (Element control : form.elements())
+		{
+			if (byControlGroup.matches(form, control))
+			{
+				control.removeAttr("checked");
+			}
+		}
 		
 		super.setValue(value);
 	}
@@ -62,11 +74,14 @@ class JsoupRadioControl extends JsoupCheckboxControl
 
 	private FormElement getForm()
 	{
-		return (FormElement) getElement().parents().select("form").first();
-	}
-
-	private String byControlGroup()
-	{
-		return String.format("[type=radio][name=%s]", getName());
+		for (Element parent : getElement().parents())
+		{
+			if (parent instanceof FormElement)
+			{
+				return (FormElement) parent;
+			}
+		}
+		
+		return null;
 	}
 }
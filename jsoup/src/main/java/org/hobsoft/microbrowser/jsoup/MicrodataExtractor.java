@@ -0,0 +1,516 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.jsoup;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.hobsoft.microbrowser.spi.http.HttpResponse;
+import org.jsoup.parser.Parser;
+
+import static org.hobsoft.microbrowser.spi.Urls.newUrlOrNull;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Reads the microdata of a page to a {@code MicrodataHandler} as the page is tokenized, without building any nodes.
+ * <p>
+ * Only the names of the open elements, and the attributes and text of the open properties, are retained, so memory is
+ * proportional to the nesting depth of the page rather than to its size. Elements whose end tags HTML lets a page omit,
+ * such as paragraphs, list items, table cells and options, are closed by the start tags that imply their end. Other
+ * elements left open are closed by the end tag of an element that contains them, or by the end of the page. Text is
+ * normalized as {@code Element.text} does, keeping the whitespace of preformatted elements.
+ */
+final class MicrodataExtractor implements HtmlTokenizer.Listener
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// constants
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static final int BUFFER_SIZE = 4096;
+
+	// elements that separate their text from adjacent text, as for a parsed document
+	private static final Set<String> BLOCK_ELEMENTS = new HashSet<String>(Arrays.asList("address", "article", "aside",
+		"blockquote", "br", "dd", "div", "dl", "dt", "fieldset", "figcaption", "figure", "footer", "form", "h1", "h2",
+		"h3", "h4", "h5", "h6", "header", "hr", "li", "main", "nav", "ol", "p", "pre", "section", "table", "td", "th",
+		"tr", "ul"));
+
+	// elements whose start tag closes an open paragraph
+	private static final Set<String> PARAGRAPH_CLOSERS = new HashSet<String>(Arrays.asList("address", "article",
+		"aside", "blockquote", "center", "dd", "details", "dialog", "dir", "div", "dl", "dt", "fieldset", "figcaption",
+		"figure", "footer", "form", "h1", "h2", "h3", "h4", "h5", "h6", "header", "hgroup", "hr", "li", "listing",
+		"main", "menu", "nav", "ol", "p", "plaintext", "pre", "section", "summary", "ul", "xmp"));
+
+	// elements that bound the search for an open paragraph
+	private static final Set<String> BUTTON_SCOPE = new HashSet<String>(Arrays.asList("applet", "button", "caption",
+		"html", "marquee", "object", "table", "td", "template", "th"));
+
+	// elements that bound the search for an open list item or description
+	private static final Set<String> LIST_ITEM_SCOPE = new HashSet<String>(Arrays.asList("applet", "article", "aside",
+		"blockquote", "body", "button", "caption", "center", "details", "dir", "dl", "fieldset", "figcaption",
+		"figure", "footer", "form", "h1", "h2", "h3", "h4", "h5", "h6", "header", "html", "main", "marquee", "menu",
+		"nav", "object", "ol", "pre", "section", "select", "table", "td", "template", "th", "ul"));
+
+	private static final Set<String> TABLE_SCOPE = new HashSet<String>(Arrays.asList("html", "table", "template"));
+
+	private static final Set<String> SELECT_SCOPE = new HashSet<String>(Arrays.asList("datalist", "select"));
+
+	private static final Map<String, ImpliedEnd> IMPLIED_ENDS_BY_START;
+
+	// elements whose text keeps its whitespace, as jsoup's tags that preserve whitespace
+	private static final Set<String> PREFORMATTED_ELEMENTS = new HashSet<String>(Arrays.asList("plaintext", "pre",
+		"textarea", "title"));
+
+	// elements whose first newline is not part of their text
+	private static final Set<String> LEADING_NEWLINE_ELEMENTS = new HashSet<String>(Arrays.asList("listing", "pre"));
+
+	// jsoup looks at the parent of text and five levels above it for preformatted elements
+	private static final int MAX_PREFORMATTED_DEPTH = 6;
+
+	private static final int MAX_REFERENCE_LENGTH = 32;
+
+	static
+	{
+		IMPLIED_ENDS_BY_START = new HashMap<String, ImpliedEnd>();
+
+		IMPLIED_ENDS_BY_START.put("li", new ImpliedEnd(LIST_ITEM_SCOPE, "li"));
+		IMPLIED_ENDS_BY_START.put("dd", new ImpliedEnd(LIST_ITEM_SCOPE, "dd", "dt"));
+		IMPLIED_ENDS_BY_START.put("dt", new ImpliedEnd(LIST_ITEM_SCOPE, "dd", "dt"));
+
+		IMPLIED_ENDS_BY_START.put("td", new ImpliedEnd(TABLE_SCOPE, "td", "th"));
+		IMPLIED_ENDS_BY_START.put("th", new ImpliedEnd(TABLE_SCOPE, "td", "th"));
+		IMPLIED_ENDS_BY_START.put("tr", new ImpliedEnd(TABLE_SCOPE, "td", "th", "tr"));
+		IMPLIED_ENDS_BY_START.put("tbody", new ImpliedEnd(TABLE_SCOPE, "tbody", "td", "tfoot", "th", "thead", "tr"));
+		IMPLIED_ENDS_BY_START.put("tfoot", new ImpliedEnd(TABLE_SCOPE, "tbody", "td", "tfoot", "th", "thead", "tr"));
+		IMPLIED_ENDS_BY_START.put("thead", new ImpliedEnd(TABLE_SCOPE, "tbody", "td", "tfoot", "th", "thead", "tr"));
+
+		IMPLIED_ENDS_BY_START.put("option", new ImpliedEnd(SELECT_SCOPE, "option"));
+		IMPLIED_ENDS_BY_START.put("optgroup", new ImpliedEnd(SELECT_SCOPE, "optgroup", "option"));
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private final MicrodataHandler handler;
+
+	private final HtmlTokenizer tokenizer;
+
+	private final List<OpenElement> openElements;
+
+	private final List<OpenElement> openProperties;
+
+	private URL baseUrl;
+
+	private boolean baseElementSeen;
+
+	private int openItemCount;
+
+	private boolean preformatted;
+
+	private boolean skipNewline;
+
+	// the character reference being read, or null if none
+	private StringBuilder reference;
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	MicrodataExtractor(URL baseUrl, MicrodataHandler handler)
+	{
+		this.baseUrl = checkNotNull(baseUrl, "baseUrl");
+		this.handler = checkNotNull(handler, "handler");
+
+		tokenizer = new HtmlTokenizer(this);
+		openElements = new ArrayList<OpenElement>();
+		openProperties = new ArrayList<OpenElement>();
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// HtmlTokenizer.Listener methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public void startTag(String name, Map<String, String> attributes, boolean empty)
+	{
+		endText();
+		closeImpliedElements(name);
+
+		if ("base".equals(name) && !baseElementSeen && attributes.containsKey("href"))
+		{
+			setBaseUrl(attributes.get("href"));
+		}
+
+		if (BLOCK_ELEMENTS.contains(name))
+		{
+			appendSeparator();
+		}
+
+		OpenElement element = new OpenElement(name);
+
+		if (openItemCount > 0 && attributes.containsKey("itemprop"))
+		{
+			element.attributes = attributes;
+			element.text = new StringBuilder();
+			openProperties.add(element);
+		}
+
+		if (attributes.containsKey("itemscope"))
+		{
+			element.item = true;
+			openItemCount++;
+			handler.startItem(newUrlOrNull(attributes.get("itemtype")), newUrlOrNull(attributes.get("itemid")));
+		}
+
+		openElements.add(element);
+		updatePreformatted();
+
+		if (empty)
+		{
+			closeElements(openElements.size() - 1);
+		}
+		else
+		{
+			skipNewline = LEADING_NEWLINE_ELEMENTS.contains(name);
+		}
+	}
+
+	public void endTag(String name)
+	{
+		endText();
+
+		for (int index = openElements.size() - 1; index >= 0; index--)
+		{
+			if (openElements.get(index).name.equals(name))
+			{
+				closeElements(index);
+				return;
+			}
+		}
+	}
+
+	public void text(char c)
+	{
+		if (skipNewline)
+		{
+			skipNewline = false;
+
+			if (c == '\n')
+			{
+				return;
+			}
+		}
+
+		if (openProperties.isEmpty())
+		{
+			return;
+		}
+
+		if (reference != null)
+		{
+			if ((Character.isLetterOrDigit(c) || c == '#' || c == ';') && reference.length() < MAX_REFERENCE_LENGTH)
+			{
+				reference.append(c);
+
+				if (c == ';')
+				{
+					endReference();
+				}
+
+				return;
+			}
+
+			endReference();
+		}
+
+		if (c == '&')
+		{
+			reference = new StringBuilder().append(c);
+		}
+		else
+		{
+			appendText(c);
+		}
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// package-private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Reads the microdata of the specified response.
+	 */
+	static void extract(HttpResponse response, MicrodataHandler handler) throws IOException
+	{
+		ByteBuffer body = ByteBuffer.wrap(response.getBody());
+		Charset charset = ByteBufferReader.sniffCharset(body, response.getCharset());
+
+		new MicrodataExtractor(response.getUrl(), handler).extract(new ByteBufferReader(body, charset));
+	}
+
+	/**
+	 * Reads the microdata of the page read by the specified reader.
+	 */
+	void extract(Reader reader) throws IOException
+	{
+		char[] buffer = new char[BUFFER_SIZE];
+		int count;
+
+		while ((count = reader.read(buffer)) != -1)
+		{
+			for (int index = 0; index < count; index++)
+			{
+				tokenizer.scan(buffer[index]);
+			}
+		}
+
+		endText();
+
+		if (!openElements.isEmpty())
+		{
+			closeElements(0);
+		}
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private void setBaseUrl(String href)
+	{
+		baseElementSeen = true;
+
+		try
+		{
+			baseUrl = new URL(baseUrl, href);
+		}
+		catch (MalformedURLException exception)
+		{
+			// keep the page URL
+		}
+	}
+
+	/**
+	 * Closes the open elements whose end is implied by the start tag of the specified element.
+	 */
+	private void closeImpliedElements(String name)
+	{
+		ImpliedEnd impliedEnd = IMPLIED_ENDS_BY_START.get(name);
+
+		if (impliedEnd != null)
+		{
+			closeElement(impliedEnd.names, impliedEnd.scope);
+		}
+
+		if (PARAGRAPH_CLOSERS.contains(name))
+		{
+			closeElement(Collections.singleton("p"), BUTTON_SCOPE);
+		}
+	}
+
+	/**
+	 * Closes the innermost open element with any of the specified names, unless an element with any of the specified
+	 * scope names is found first.
+	 */
+	private void closeElement(Set<String> names, Set<String> scope)
+	{
+		for (int index = openElements.size() - 1; index >= 0; index--)
+		{
+			String name = openElements.get(index).name;
+
+			if (names.contains(name))
+			{
+				closeElements(index);
+				return;
+			}
+
+			if (scope.contains(name))
+			{
+				return;
+			}
+		}
+	}
+
+	private void updatePreformatted()
+	{
+		preformatted = false;
+
+		for (int index = openElements.size() - 1; index >= Math.max(0, openElements.size() - MAX_PREFORMATTED_DEPTH);
+			index--)
+		{
+			preformatted |= PREFORMATTED_ELEMENTS.contains(openElements.get(index).name);
+		}
+	}
+
+	/**
+	 * Ends the run of text before a tag, decoding any character reference that it ends with.
+	 */
+	private void endText()
+	{
+		skipNewline = false;
+
+		if (reference != null)
+		{
+			endReference();
+		}
+	}
+
+	private void endReference()
+	{
+		String decoded = Parser.unescapeEntities(reference.toString(), false);
+		reference = null;
+
+		for (int index = 0; index < decoded.length(); index++)
+		{
+			appendText(decoded.charAt(index));
+		}
+	}
+
+	private void appendText(char c)
+	{
+		for (OpenElement property : openProperties)
+		{
+			property.appendText(c, preformatted);
+		}
+	}
+
+	private void appendSeparator()
+	{
+		for (OpenElement property : openProperties)
+		{
+			property.appendSeparator();
+		}
+	}
+
+	/**
+	 * Closes the open element at the specified index and every element opened after it, innermost first.
+	 */
+	private void closeElements(int fromIndex)
+	{
+		for (int index = openElements.size() - 1; index >= fromIndex; index--)
+		{
+			OpenElement element = openElements.remove(index);
+
+			if (element.item)
+			{
+				openItemCount--;
+				handler.endItem();
+			}
+
+			if (element.text != null)
+			{
+				openProperties.remove(openProperties.size() - 1);
+				handler.property(new StreamedMicrodataProperty(element.name, element.attributes, baseUrl,
+					element.getText()));
+			}
+		}
+
+		updatePreformatted();
+	}
+
+	private static boolean isWhitespace(char c)
+	{
+		return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r' || c == '\u00A0';
+	}
+
+	private static boolean isInvisible(char c)
+	{
+		// zero-width space and soft hyphen
+		return c == '\u200B' || c == '\u00AD';
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// types
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * The open elements that the start tag of an element closes, and the elements that bound the search for them.
+	 */
+	private static final class ImpliedEnd
+	{
+		private final Set<String> scope;
+
+		private final Set<String> names;
+
+		ImpliedEnd(Set<String> scope, String... names)
+		{
+			this.scope = scope;
+			this.names = new HashSet<String>(Arrays.asList(names));
+		}
+	}
+
+	/**
+	 * An element whose end tag has not yet been read.
+	 */
+	private static final class OpenElement
+	{
+		private final String name;
+
+		private boolean item;
+
+		private Map<String, String> attributes;
+
+		private StringBuilder text;
+
+		OpenElement(String name)
+		{
+			this.name = name;
+		}
+
+		/**
+		 * Appends the specified character to the text of this property, collapsing whitespace and dropping invisible
+		 * characters unless the text is preformatted.
+		 */
+		void appendText(char c, boolean preformatted)
+		{
+			if (preformatted)
+			{
+				text.append(c);
+			}
+			else if (isWhitespace(c))
+			{
+				appendSeparator();
+			}
+			else if (!isInvisible(c))
+			{
+				text.append(c);
+			}
+		}
+
+		void appendSeparator()
+		{
+			if (text.length() > 0 && text.charAt(text.length() - 1) != ' ')
+			{
+				text.append(' ');
+			}
+		}
+
+		String getText()
+		{
+			return text.toString().trim();
+		}
+	}
+}
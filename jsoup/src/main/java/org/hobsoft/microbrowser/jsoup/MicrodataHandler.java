@@ -0,0 +1,52 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.jsoup;
+
+import java.net.URL;
+
+import org.hobsoft.microbrowser.MicrodataProperty;
+
+/**
+ * Receives the microdata of a page in document order as it is read, without the page being parsed into a document.
+ * <p>
+ * Each item is reported by {@code startItem} when its start tag is read and by {@code endItem} once its element ends.
+ * Each property is reported once its element ends, to the innermost item that contains it, so that its value is
+ * complete. A property whose element is itself an item is therefore reported after that item ends. Properties outside
+ * any item are not reported.
+ */
+public interface MicrodataHandler
+{
+	/**
+	 * Receives the start of an item.
+	 * 
+	 * @param type
+	 *            the item type, or {@code null} if not specified
+	 * @param id
+	 *            the item id, or {@code null} if not specified
+	 */
+	void startItem(URL type, URL id);
+
+	/**
+	 * Receives a property of the current item.
+	 * 
+	 * @param property
+	 *            the property, whose value is determined as for a property of a parsed document
+	 */
+	void property(MicrodataProperty property);
+
+	/**
+	 * Receives the end of the current item.
+	 */
+	void endItem();
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.jsoup;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Immutable declaration of the parts of a page that a navigation needs, so that the rest of the page need not be
+ * received.
+ * <p>
+ * A page is received until the first complete item of each item type, and a link with each relation, have been seen.
+ * The document then contains everything up to that point, and nothing after it.
+ */
+public final class PageQuery
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private final Set<String> itemTypes;
+
+	private final Set<String> rels;
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private PageQuery(Set<String> itemTypes, Set<String> rels)
+	{
+		this.itemTypes = itemTypes;
+		this.rels = rels;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// public methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Gets a query for the first item of the specified type.
+	 *
+	 * @param type
+	 *            the item type URL
+	 * @return the new query
+	 */
+	public static PageQuery item(String type)
+	{
+		return new PageQuery(Collections.<String>emptySet(), Collections.<String>emptySet()).andItem(type);
+	}
+
+	/**
+	 * Gets a query for a link with the specified relation.
+	 *
+	 * @param rel
+	 *            the link relation
+	 * @return the new query
+	 */
+	public static PageQuery link(String rel)
+	{
+		return new PageQuery(Collections.<String>emptySet(), Collections.<String>emptySet()).andLink(rel);
+	}
+
+	public Set<String> getItemTypes()
+	{
+		return itemTypes;
+	}
+
+	public Set<String> getRels()
+	{
+		return rels;
+	}
+
+	public PageQuery andItem(String type)
+	{
+		return new PageQuery(add(itemTypes, checkNotNull(type, "type")), rels);
+	}
+
+	public PageQuery andLink(String rel)
+	{
+		return new PageQuery(itemTypes, add(rels, checkNotNull(rel, "rel")));
+	}
+
+	@Override
+	public String toString()
+	{
+		return "PageQuery[itemTypes=" + itemTypes + ", rels=" + rels + "]";
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static Set<String> add(Set<String> set, String element)
+	{
+		Set<String> newSet = new LinkedHashSet<String>(set);
+		newSet.add(element);
+		return Collections.unmodifiableSet(newSet);
+	}
+}
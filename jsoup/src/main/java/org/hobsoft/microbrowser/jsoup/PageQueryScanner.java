@@ -0,0 +1,209 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.jsoup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.hobsoft.microbrowser.spi.http.BodyScanner;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@code BodyScanner} that is satisfied once a page contains everything that a {@code PageQuery} needs.
+ * <p>
+ * The body is tokenized into tags as it arrives, without building any nodes, by treating each byte as a character.
+ * This finds the markup of pages in any ASCII-compatible encoding. An item is complete once the end tag that balances
+ * its start tag has been seen.
+ */
+class PageQueryScanner implements BodyScanner
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// constants
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private final PageQuery query;
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	PageQueryScanner(PageQuery query)
+	{
+		this.query = checkNotNull(query, "query");
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// BodyScanner methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public Scan newScan()
+	{
+		return new PageScan(query);
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// types
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * A scan of a single page.
+	 */
+	private static final class PageScan implements Scan, HtmlTokenizer.Listener
+	{
+		private final Set<String> pendingItemTypes;
+
+		private final Set<String> pendingRels;
+
+		private final List<OpenItem> openItems;
+
+		private final HtmlTokenizer tokenizer;
+
+		PageScan(PageQuery query)
+		{
+			pendingItemTypes = normalize(query.getItemTypes());
+			pendingRels = normalize(query.getRels());
+			openItems = new ArrayList<OpenItem>();
+			tokenizer = new HtmlTokenizer(this);
+		}
+
+		public boolean update(byte[] bytes, int offset, int length)
+		{
+			for (int index = offset; index < offset + length; index++)
+			{
+				tokenizer.scan((char) (bytes[index] & 0xFF));
+			}
+
+			return isSatisfied();
+		}
+
+		public void startTag(String name, Map<String, String> attributes, boolean empty)
+		{
+			for (OpenItem openItem : openItems)
+			{
+				if (!empty && openItem.name.equals(name))
+				{
+					openItem.depth++;
+				}
+			}
+
+			if (("a".equals(name) || "link".equals(name)) && attributes.containsKey("rel"))
+			{
+				String rel = normalize(attributes.get("rel"));
+				pendingRels.remove(rel);
+				pendingRels.removeAll(Arrays.asList(WHITESPACE.split(rel)));
+			}
+
+			if (attributes.containsKey("itemscope") && attributes.containsKey("itemtype"))
+			{
+				openItem(name, normalize(attributes.get("itemtype")), empty);
+			}
+		}
+
+		public void endTag(String name)
+		{
+			Iterator<OpenItem> iterator = openItems.iterator();
+
+			while (iterator.hasNext())
+			{
+				OpenItem openItem = iterator.next();
+
+				if (openItem.name.equals(name) && --openItem.depth == 0)
+				{
+					pendingItemTypes.remove(openItem.type);
+					iterator.remove();
+				}
+			}
+		}
+
+		public void text(char c)
+		{
+			// only tags are needed
+		}
+
+		private boolean isSatisfied()
+		{
+			return pendingItemTypes.isEmpty() && pendingRels.isEmpty() && openItems.isEmpty();
+		}
+
+		private void openItem(String name, String type, boolean empty)
+		{
+			if (pendingItemTypes.contains(type))
+			{
+				if (empty)
+				{
+					pendingItemTypes.remove(type);
+				}
+				else
+				{
+					openItems.add(new OpenItem(name, type));
+				}
+			}
+		}
+
+		/**
+		 * Normalizes item types and relations in the same way as {@code DocumentIndex}, so that the scan is satisfied
+		 * by exactly the items and links that its lookups find.
+		 */
+		private static Set<String> normalize(Set<String> values)
+		{
+			Set<String> normalizedValues = new HashSet<String>();
+
+			for (String value : values)
+			{
+				normalizedValues.add(normalize(value));
+			}
+
+			return normalizedValues;
+		}
+
+		private static String normalize(String value)
+		{
+			return value.trim().toLowerCase(Locale.ENGLISH);
+		}
+	}
+
+	/**
+	 * An item whose end tag has not yet been seen.
+	 */
+	private static final class OpenItem
+	{
+		private final String name;
+
+		private final String type;
+
+		private int depth;
+
+		OpenItem(String name, String type)
+		{
+			this.name = name;
+			this.type = type;
+
+			depth = 1;
+		}
+	}
+}
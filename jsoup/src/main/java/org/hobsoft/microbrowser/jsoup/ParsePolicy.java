@@ -0,0 +1,179 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.jsoup;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Immutable policy that determines which nodes that cannot affect microdata or forms are dropped from each parsed
+ * document, so that documents retained in history and caches are smaller.
+ * <p>
+ * By default every node is kept. Scripts and styles are only dropped when they carry no microdata or form attributes,
+ * and whitespace-only text is only dropped where it cannot separate words of text, such as between block elements and
+ * outside preformatted text and form controls.
+ * <p>
+ * Attribute keys and short attribute values can also be shared between all the documents that a browser parses, by
+ * pooling up to a maximum number of distinct strings. By default no strings are pooled.
+ * <p>
+ * Documents can also be kept compact, as a table of nodes with their text and attribute values in a single character
+ * buffer, rather than as jsoup nodes. Items, properties and links are then read from the table, and a jsoup document
+ * is only built from it when a form or the jsoup document itself is needed. By default documents are not compact.
+ */
+public final class ParsePolicy
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// constants
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * The policy that keeps every node.
+	 */
+	public static final ParsePolicy DEFAULT = new ParsePolicy(false, false, false, false, 0, false);
+
+	/**
+	 * The policy that drops scripts, styles, comments and whitespace-only text.
+	 */
+	public static final ParsePolicy PRUNED = new ParsePolicy(true, true, true, true, 0, false);
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private final boolean pruneScripts;
+
+	private final boolean pruneStyles;
+
+	private final boolean pruneComments;
+
+	private final boolean pruneWhitespace;
+
+	private final int maxPooledStrings;
+
+	private final boolean compact;
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private ParsePolicy(boolean pruneScripts, boolean pruneStyles, boolean pruneComments, boolean pruneWhitespace,
+		int maxPooledStrings, boolean compact)
+	{
+		this.pruneScripts = pruneScripts;
+		this.pruneStyles = pruneStyles;
+		this.pruneComments = pruneComments;
+		this.pruneWhitespace = pruneWhitespace;
+		this.maxPooledStrings = maxPooledStrings;
+		this.compact = compact;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// public methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public boolean isPruneScripts()
+	{
+		return pruneScripts;
+	}
+
+	public boolean isPruneStyles()
+	{
+		return pruneStyles;
+	}
+
+	public boolean isPruneComments()
+	{
+		return pruneComments;
+	}
+
+	public boolean isPruneWhitespace()
+	{
+		return pruneWhitespace;
+	}
+
+	/**
+	 * Gets the maximum number of distinct attribute strings that are shared between documents.
+	 *
+	 * @return the maximum number of pooled strings, or zero if strings are not pooled
+	 */
+	public int getMaxPooledStrings()
+	{
+		return maxPooledStrings;
+	}
+
+	/**
+	 * Gets whether documents are kept as a compact table of nodes rather than as jsoup nodes.
+	 *
+	 * @return {@code true} if documents are compact
+	 */
+	public boolean isCompact()
+	{
+		return compact;
+	}
+
+	/**
+	 * Gets whether this policy drops any nodes.
+	 *
+	 * @return {@code true} if any kind of node is dropped
+	 */
+	public boolean isPruning()
+	{
+		return pruneScripts || pruneStyles || pruneComments || pruneWhitespace;
+	}
+
+	public ParsePolicy withPruneScripts(boolean newPruneScripts)
+	{
+		return new ParsePolicy(newPruneScripts, pruneStyles, pruneComments, pruneWhitespace, maxPooledStrings,
+			compact);
+	}
+
+	public ParsePolicy withPruneStyles(boolean newPruneStyles)
+	{
+		return new ParsePolicy(pruneScripts, newPruneStyles, pruneComments, pruneWhitespace, maxPooledStrings,
+			compact);
+	}
+
+	public ParsePolicy withPruneComments(boolean newPruneComments)
+	{
+		return new ParsePolicy(pruneScripts, pruneStyles, newPruneComments, pruneWhitespace, maxPooledStrings,
+			compact);
+	}
+
+	public ParsePolicy withPruneWhitespace(boolean newPruneWhitespace)
+	{
+		return new ParsePolicy(pruneScripts, pruneStyles, pruneComments, newPruneWhitespace, maxPooledStrings,
+			compact);
+	}
+
+	public ParsePolicy withMaxPooledStrings(int newMaxPooledStrings)
+	{
+		checkArgument(newMaxPooledStrings >= 0, "newMaxPooledStrings must not be negative: %s", newMaxPooledStrings);
+
+		return new ParsePolicy(pruneScripts, pruneStyles, pruneComments, pruneWhitespace, newMaxPooledStrings,
+			compact);
+	}
+
+	public ParsePolicy withCompact(boolean newCompact)
+	{
+		return new ParsePolicy(pruneScripts, pruneStyles, pruneComments, pruneWhitespace, maxPooledStrings,
+			newCompact);
+	}
+
+	@Override
+	public String toString()
+	{
+		return "ParsePolicy[pruneScripts=" + pruneScripts + ", pruneStyles=" + pruneStyles + ", pruneComments="
+			+ pruneComments + ", pruneWhitespace=" + pruneWhitespace + ", maxPooledStrings=" + maxPooledStrings
+			+ ", compact=" + compact + "]";
+	}
+}
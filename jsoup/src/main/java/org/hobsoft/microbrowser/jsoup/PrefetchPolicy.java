@@ -0,0 +1,160 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.jsoup;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Immutable policy that determines which links of each document are fetched speculatively before they are followed.
+ * <p>
+ * By default no links are prefetched. Once link relations are specified, the links of each new document with those
+ * relations are fetched in the background, with at most two prefetches in progress at once. Prefetched responses are
+ * retained until they are followed, for up to a minute, and while their total body size is within 4 MB; beyond that
+ * the least recently prefetched responses are discarded first.
+ */
+public final class PrefetchPolicy
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// constants
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * The policy that prefetches nothing.
+	 */
+	public static final PrefetchPolicy NONE = new PrefetchPolicy(Collections.<String>emptySet(), 2, 4L * 1024 * 1024,
+		60000);
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private final Set<String> rels;
+
+	private final int maxConcurrent;
+
+	private final long maxBytes;
+
+	private final long maxAgeMillis;
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private PrefetchPolicy(Set<String> rels, int maxConcurrent, long maxBytes, long maxAgeMillis)
+	{
+		this.rels = rels;
+		this.maxConcurrent = maxConcurrent;
+		this.maxBytes = maxBytes;
+		this.maxAgeMillis = maxAgeMillis;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// public methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Gets a policy that prefetches links with the specified relations and is otherwise the default.
+	 *
+	 * @param rels
+	 *            the link relations to prefetch, such as {@code next} or {@code item}
+	 * @return the new policy
+	 */
+	public static PrefetchPolicy forRels(String... rels)
+	{
+		return NONE.withRels(rels);
+	}
+
+	/**
+	 * Gets the relations of the links to prefetch.
+	 *
+	 * @return the link relations, in the order that they are prefetched
+	 */
+	public Set<String> getRels()
+	{
+		return rels;
+	}
+
+	/**
+	 * Gets the maximum number of prefetches in progress at once, after which further links are not prefetched.
+	 *
+	 * @return the maximum number of concurrent prefetches
+	 */
+	public int getMaxConcurrent()
+	{
+		return maxConcurrent;
+	}
+
+	/**
+	 * Gets the maximum total body size of the prefetched responses that are retained.
+	 *
+	 * @return the maximum number of body bytes
+	 */
+	public long getMaxBytes()
+	{
+		return maxBytes;
+	}
+
+	/**
+	 * Gets how long a prefetched response is retained for when it is not followed.
+	 *
+	 * @return the maximum age in milliseconds
+	 */
+	public long getMaxAgeMillis()
+	{
+		return maxAgeMillis;
+	}
+
+	public PrefetchPolicy withRels(String... newRels)
+	{
+		Set<String> relSet = new LinkedHashSet<String>(Arrays.asList(checkNotNull(newRels, "newRels")));
+		checkArgument(!relSet.contains(null), "newRels must not contain null");
+
+		return new PrefetchPolicy(Collections.unmodifiableSet(relSet), maxConcurrent, maxBytes, maxAgeMillis);
+	}
+
+	public PrefetchPolicy withMaxConcurrent(int newMaxConcurrent)
+	{
+		checkArgument(newMaxConcurrent >= 1, "newMaxConcurrent must be positive: %s", newMaxConcurrent);
+
+		return new PrefetchPolicy(rels, newMaxConcurrent, maxBytes, maxAgeMillis);
+	}
+
+	public PrefetchPolicy withMaxBytes(long newMaxBytes)
+	{
+		checkArgument(newMaxBytes >= 1, "newMaxBytes must be positive: %s", newMaxBytes);
+
+		return new PrefetchPolicy(rels, maxConcurrent, newMaxBytes, maxAgeMillis);
+	}
+
+	public PrefetchPolicy withMaxAge(long duration, TimeUnit unit)
+	{
+		checkArgument(duration > 0, "duration must be positive: %s", duration);
+
+		return new PrefetchPolicy(rels, maxConcurrent, maxBytes, unit.toMillis(duration));
+	}
+
+	@Override
+	public String toString()
+	{
+		return "PrefetchPolicy[rels=" + rels + ", maxConcurrent=" + maxConcurrent + ", maxBytes=" + maxBytes
+			+ ", maxAgeMillis=" + maxAgeMillis + "]";
+	}
+}
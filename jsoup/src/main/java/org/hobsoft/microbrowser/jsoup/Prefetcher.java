@@ -0,0 +1,331 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.jsoup;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import org.hobsoft.microbrowser.Link;
+import org.hobsoft.microbrowser.spi.CompletableFutures;
+import org.hobsoft.microbrowser.spi.http.BodyScanner;
+import org.hobsoft.microbrowser.spi.http.HttpRequest;
+import org.hobsoft.microbrowser.spi.http.HttpResponse;
+import org.hobsoft.microbrowser.spi.http.Transport;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@code Transport} decorator that fetches the links of documents ahead of time according to a prefetch policy, and
+ * answers a later request for such a link with its prefetched response.
+ * <p>
+ * A prefetched response is used at most once. A request that arrives while its prefetch is still in progress waits for
+ * it, and prefetches that fail or are truncated are discarded so that the link is fetched afresh when it is followed.
+ * A prefetch stops receiving its body, and is discarded, as soon as the body exceeds the byte budget, on transports
+ * that support body scanning.
+ */
+class Prefetcher implements Transport
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private final Transport delegate;
+
+	private final PrefetchPolicy policy;
+
+	private final Semaphore permits;
+
+	private final Cache<String, Prefetch> prefetches;
+
+	private final BodyScanner maxBytesScanner;
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	Prefetcher(Transport delegate, PrefetchPolicy policy)
+	{
+		this.delegate = checkNotNull(delegate, "delegate");
+		this.policy = checkNotNull(policy, "policy");
+
+		permits = new Semaphore(policy.getMaxConcurrent());
+		prefetches = CacheBuilder.newBuilder()
+			.maximumWeight(policy.getMaxBytes())
+			.weigher(new Weigher<String, Prefetch>()
+			{
+				public int weigh(String key, Prefetch prefetch)
+				{
+					return prefetch.getWeight();
+				}
+			})
+			.expireAfterWrite(policy.getMaxAgeMillis(), TimeUnit.MILLISECONDS)
+			.build();
+		maxBytesScanner = new MaxBytesScanner(policy.getMaxBytes());
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// Transport methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public HttpResponse execute(HttpRequest request) throws IOException
+	{
+		CompletableFuture<HttpResponse> prefetched = take(request);
+
+		if (prefetched == null)
+		{
+			return delegate.execute(request);
+		}
+
+		HttpResponse response;
+
+		try
+		{
+			response = prefetched.get();
+		}
+		catch (InterruptedException exception)
+		{
+			Thread.currentThread().interrupt();
+			throw (IOException) new InterruptedIOException("Interrupted fetching URL " + request.getUrl())
+				.initCause(exception);
+		}
+		catch (ExecutionException exception)
+		{
+			return delegate.execute(request);
+		}
+
+		return response.isTruncated() ? delegate.execute(request) : response;
+	}
+
+	public CompletableFuture<HttpResponse> executeAsync(final HttpRequest request)
+	{
+		CompletableFuture<HttpResponse> prefetched = take(request);
+
+		if (prefetched == null)
+		{
+			return delegate.executeAsync(request);
+		}
+
+		final CompletableFuture<HttpResponse> result = new CompletableFuture<HttpResponse>();
+
+		prefetched.whenComplete(new BiConsumer<HttpResponse, Throwable>()
+		{
+			public void accept(HttpResponse response, Throwable throwable)
+			{
+				if (throwable == null && !response.isTruncated())
+				{
+					result.complete(response);
+				}
+				else if (!result.isDone())
+				{
+					complete(result, delegate.executeAsync(request));
+				}
+			}
+		});
+
+		return result;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// package-private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Starts prefetching the links of the specified document that the policy selects, within its budget.
+	 */
+	void prefetch(JsoupMicrodataDocument document)
+	{
+		for (String rel : policy.getRels())
+		{
+			for (Link link : document.getLinks(rel))
+			{
+				URL href = link.getHref();
+
+				if (href != null && !prefetch(JsoupMicrobrowser.newRequest(new HttpRequest(HttpRequest.GET, href),
+					document.getCookies())))
+				{
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of prefetched responses, including those in progress, that have not yet been used.
+	 */
+	long getPrefetchCount()
+	{
+		prefetches.cleanUp();
+		return prefetches.size();
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Starts prefetching the specified request unless it has already been prefetched.
+	 *
+	 * @return {@code false} if the concurrency budget is exhausted
+	 */
+	private boolean prefetch(HttpRequest request)
+	{
+		final String key = getKey(request);
+
+		if (prefetches.getIfPresent(key) != null)
+		{
+			return true;
+		}
+
+		if (!permits.tryAcquire())
+		{
+			return false;
+		}
+
+		final Prefetch prefetch = new Prefetch(delegate.executeAsync(request.withBodyScanner(maxBytesScanner)));
+		prefetches.put(key, prefetch);
+
+		prefetch.getResponse().whenComplete(new BiConsumer<HttpResponse, Throwable>()
+		{
+			public void accept(HttpResponse response, Throwable throwable)
+			{
+				permits.release();
+
+				Map<String, Prefetch> prefetchesByKey = prefetches.asMap();
+
+				if (throwable != null || response.isTruncated() || response.getBody().length > policy.getMaxBytes())
+				{
+					prefetchesByKey.remove(key, prefetch);
+				}
+				else
+				{
+					// reinsert to weigh the completed response against the byte budget
+					prefetchesByKey.replace(key, prefetch, prefetch);
+				}
+			}
+		});
+
+		return true;
+	}
+
+	private static void complete(final CompletableFuture<HttpResponse> result, CompletableFuture<HttpResponse> future)
+	{
+		CompletableFutures.cancelOnFailure(result, future);
+
+		future.whenComplete(new BiConsumer<HttpResponse, Throwable>()
+		{
+			public void accept(HttpResponse response, Throwable throwable)
+			{
+				if (throwable != null)
+				{
+					result.completeExceptionally(CompletableFutures.unwrap(throwable));
+				}
+				else
+				{
+					result.complete(response);
+				}
+			}
+		});
+	}
+
+	private CompletableFuture<HttpResponse> take(HttpRequest request)
+	{
+		if (!HttpRequest.GET.equals(request.getMethod()))
+		{
+			return null;
+		}
+
+		Prefetch prefetch = prefetches.asMap().remove(getKey(request));
+
+		return (prefetch != null) ? prefetch.getResponse() : null;
+	}
+
+	private static String getKey(HttpRequest request)
+	{
+		return request.getUrl().toExternalForm() + "\n" + request.getHeaders() + "\n" + request.getCookieHeader();
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// types
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * {@code BodyScanner} that stops receiving a body once it exceeds a maximum size, so that a prefetch too large for
+	 * the byte budget is abandoned rather than received in full.
+	 */
+	private static final class MaxBytesScanner implements BodyScanner
+	{
+		private final long maxBytes;
+
+		MaxBytesScanner(long maxBytes)
+		{
+			this.maxBytes = maxBytes;
+		}
+
+		public Scan newScan()
+		{
+			return new Scan()
+			{
+				private long bytes;
+
+				public boolean update(byte[] buffer, int offset, int length)
+				{
+					bytes += length;
+					return bytes > maxBytes;
+				}
+			};
+		}
+	}
+
+	/**
+	 * A prefetch that may still be in progress.
+	 */
+	private static final class Prefetch
+	{
+		private final CompletableFuture<HttpResponse> response;
+
+		Prefetch(CompletableFuture<HttpResponse> response)
+		{
+			this.response = response;
+		}
+
+		public CompletableFuture<HttpResponse> getResponse()
+		{
+			return response;
+		}
+
+		/**
+		 * Gets the body size of the response, or zero while it is in progress.
+		 */
+		public int getWeight()
+		{
+			if (!response.isDone() || response.isCompletedExceptionally())
+			{
+				return 0;
+			}
+
+			return response.join().getBody().length;
+		}
+	}
+}
@@ -0,0 +1,34 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.jsoup;
+
+import java.net.URL;
+
+/**
+ * Listens to the nodes that a {@code ParsePolicy} drops from each parsed document.
+ */
+public interface PruneListener
+{
+	/**
+	 * Invoked after nodes are dropped from the document parsed from the specified URL.
+	 *
+	 * @param url
+	 *            the URL of the document
+	 * @param nodes
+	 *            the number of nodes dropped, including the descendants of dropped elements
+	 * @param bytes
+	 *            the approximate number of bytes of character data no longer retained
+	 */
+	void pruned(URL url, int nodes, long bytes);
+}
@@ -0,0 +1,215 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.jsoup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.jsoup.nodes.Attribute;
+import org.jsoup.nodes.Comment;
+import org.jsoup.nodes.DataNode;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.select.NodeVisitor;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Drops the nodes of a jsoup document that a {@code ParsePolicy} selects, counting the nodes and character data
+ * dropped.
+ */
+final class Pruner implements NodeVisitor
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// constants
+	// ----------------------------------------------------------------------------------------------------------------
+
+	// elements whose whitespace is significant to their text or to form values
+	private static final Set<String> WHITESPACE_ELEMENTS = new HashSet<String>(Arrays.asList("listing", "option",
+		"plaintext", "pre", "textarea", "title"));
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private final ParsePolicy policy;
+
+	private final List<Node> prunedNodes;
+
+	private int nodeCount;
+
+	private long charCount;
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	Pruner(ParsePolicy policy)
+	{
+		this.policy = checkNotNull(policy, "policy");
+
+		prunedNodes = new ArrayList<Node>();
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// NodeVisitor methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public void head(Node node, int depth)
+	{
+		if (isPrunable(node))
+		{
+			prunedNodes.add(node);
+		}
+	}
+
+	public void tail(Node node, int depth)
+	{
+		// nothing to do on leaving a node
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// package-private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Drops the selected nodes of the specified node's descendants.
+	 */
+	void prune(Node root)
+	{
+		// remove after traversing, since the traversal cannot tolerate removal of the current node
+		root.traverse(this);
+
+		for (Node node : prunedNodes)
+		{
+			count(node);
+			node.remove();
+		}
+
+		prunedNodes.clear();
+	}
+
+	int getNodeCount()
+	{
+		return nodeCount;
+	}
+
+	/**
+	 * Gets the approximate number of bytes of character data dropped, at two bytes for each character.
+	 */
+	long getByteCount()
+	{
+		return charCount * 2;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private boolean isPrunable(Node node)
+	{
+		if (node instanceof Comment)
+		{
+			return policy.isPruneComments();
+		}
+
+		if (node instanceof TextNode)
+		{
+			return policy.isPruneWhitespace() && isInsignificantWhitespace((TextNode) node);
+		}
+
+		if (node instanceof Element)
+		{
+			Element element = (Element) node;
+			String tagName = element.tagName();
+
+			return (("script".equals(tagName) && policy.isPruneScripts())
+				|| ("style".equals(tagName) && policy.isPruneStyles()))
+				&& !hasMicrodataOrFormAttribute(element);
+		}
+
+		return false;
+	}
+
+	private void count(Node node)
+	{
+		node.traverse(new NodeVisitor()
+		{
+			public void head(Node descendant, int depth)
+			{
+				nodeCount++;
+				charCount += getCharCount(descendant);
+			}
+
+			public void tail(Node descendant, int depth)
+			{
+				// nothing to do on leaving a node
+			}
+		});
+	}
+
+	private static boolean isInsignificantWhitespace(TextNode text)
+	{
+		Node parent = text.parent();
+
+		return text.isBlank()
+			&& !(parent instanceof Element && WHITESPACE_ELEMENTS.contains(((Element) parent).tagName()))
+			&& isBlockOrNone(text.previousSibling())
+			&& isBlockOrNone(text.nextSibling());
+	}
+
+	private static boolean isBlockOrNone(Node sibling)
+	{
+		return sibling == null || (sibling instanceof Element && ((Element) sibling).isBlock());
+	}
+
+	private static boolean hasMicrodataOrFormAttribute(Element element)
+	{
+		for (Attribute attribute : element.attributes())
+		{
+			String key = attribute.getKey();
+
+			if (key.startsWith("item") || "name".equals(key) || "form".equals(key))
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private static int getCharCount(Node node)
+	{
+		if (node instanceof TextNode)
+		{
+			return ((TextNode) node).getWholeText().length();
+		}
+
+		if (node instanceof DataNode)
+		{
+			return ((DataNode) node).getWholeData().length();
+		}
+
+		if (node instanceof Comment)
+		{
+			return ((Comment) node).getData().length();
+		}
+
+		return 0;
+	}
+}
@@ -0,0 +1,236 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.jsoup;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.QueryParser;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Factory for the jsoup evaluators that find microdata, links, forms and controls.
+ * <p>
+ * Evaluators are built directly rather than parsed from CSS selectors, so arguments need no escaping, and are cached by
+ * query kind and argument so that repeated lookups reuse them.
+ */
+final class Selectors
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// constants
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static final int MAX_EVALUATORS = 1024;
+
+	private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+	private static final Set<String> ANY_TAG = Collections.emptySet();
+
+	private static final Set<String> LINK_TAGS = new HashSet<String>(Arrays.asList("a", "link"));
+
+	private static final Set<String> FORM_TAGS = Collections.singleton("form");
+
+	private static final Set<String> CONTROL_TAGS = new HashSet<String>(Arrays.asList("input", "textarea"));
+
+	private static final Evaluator SUBMIT = QueryParser.parse("input[type=submit], button[type=submit], "
+		+ "button:not([type])");
+
+	private static final Cache<String, Evaluator> EVALUATORS = CacheBuilder.newBuilder()
+		.maximumSize(MAX_EVALUATORS)
+		.build();
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private Selectors()
+	{
+		throw new AssertionError();
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// package-private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	static Evaluator byItemProp(String itemProp)
+	{
+		return get("itemprop", ANY_TAG, "itemprop", itemProp);
+	}
+
+	static Evaluator byLink(String rel)
+	{
+		String key = "link:" + checkNotNull(rel, "rel");
+		Evaluator evaluator = EVALUATORS.getIfPresent(key);
+
+		if (evaluator == null)
+		{
+			evaluator = new TokenEvaluator(LINK_TAGS, "rel", rel);
+			EVALUATORS.put(key, evaluator);
+		}
+
+		return evaluator;
+	}
+
+	static Evaluator byForm(String name)
+	{
+		return get("form", FORM_TAGS, "name", name);
+	}
+
+	static Evaluator byControl(String name)
+	{
+		return get("control", CONTROL_TAGS, "name", name);
+	}
+
+	static Evaluator byRadioControl(String name)
+	{
+		String key = "radio:" + checkNotNull(name, "name");
+		Evaluator evaluator = EVALUATORS.getIfPresent(key);
+
+		if (evaluator == null)
+		{
+			evaluator = new AttributeEvaluator(ANY_TAG, "name", name, new AttributeEvaluator(ANY_TAG, "type", "radio",
+				null));
+			EVALUATORS.put(key, evaluator);
+		}
+
+		return evaluator;
+	}
+
+	static Evaluator bySubmit()
+	{
+		return SUBMIT;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static Evaluator get(String kind, Set<String> tagNames, String attributeName, String value)
+	{
+		String key = kind + ":" + checkNotNull(value, attributeName);
+		Evaluator evaluator = EVALUATORS.getIfPresent(key);
+
+		if (evaluator == null)
+		{
+			// concurrent misses build equivalent evaluators, so either may be kept
+			evaluator = new AttributeEvaluator(tagNames, attributeName, value, null);
+			EVALUATORS.put(key, evaluator);
+		}
+
+		return evaluator;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// types
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Evaluator that matches elements with any of the specified tag names whose attribute has the specified value,
+	 * ignoring case and surrounding whitespace as an attribute selector does, and that match any next evaluator.
+	 */
+	private static final class AttributeEvaluator extends Evaluator
+	{
+		private final Set<String> tagNames;
+
+		private final String attributeName;
+
+		private final String value;
+
+		private final Evaluator next;
+
+		AttributeEvaluator(Set<String> tagNames, String attributeName, String value, Evaluator next)
+		{
+			this.tagNames = tagNames;
+			this.attributeName = attributeName;
+			this.value = value.trim();
+			this.next = next;
+		}
+
+		@Override
+		public boolean matches(Element root, Element element)
+		{
+			return (tagNames.isEmpty() || tagNames.contains(element.tagName()))
+				&& element.hasAttr(attributeName)
+				&& value.equalsIgnoreCase(element.attr(attributeName).trim())
+				&& (next == null || next.matches(root, element));
+		}
+
+		@Override
+		public String toString()
+		{
+			return tagNames + "[" + attributeName + "=" + value + "]" + ((next != null) ? next : "");
+		}
+	}
+
+	/**
+	 * Evaluator that matches elements with any of the specified tag names whose attribute has the specified value as
+	 * its whole value or as one of its whitespace-separated tokens, ignoring case and surrounding whitespace.
+	 */
+	private static final class TokenEvaluator extends Evaluator
+	{
+		private final Set<String> tagNames;
+
+		private final String attributeName;
+
+		private final String value;
+
+		TokenEvaluator(Set<String> tagNames, String attributeName, String value)
+		{
+			this.tagNames = tagNames;
+			this.attributeName = attributeName;
+			this.value = value.trim();
+		}
+
+		@Override
+		public boolean matches(Element root, Element element)
+		{
+			if (!(tagNames.isEmpty() || tagNames.contains(element.tagName())) || !element.hasAttr(attributeName))
+			{
+				return false;
+			}
+
+			String attributeValue = element.attr(attributeName).trim();
+
+			if (value.equalsIgnoreCase(attributeValue))
+			{
+				return true;
+			}
+
+			for (String token : WHITESPACE.split(attributeValue))
+			{
+				if (value.equalsIgnoreCase(token))
+				{
+					return true;
+				}
+			}
+
+			return false;
+		}
+
+		@Override
+		public String toString()
+		{
+			return tagNames + "[" + attributeName + "~=" + value + "]";
+		}
+	}
+}
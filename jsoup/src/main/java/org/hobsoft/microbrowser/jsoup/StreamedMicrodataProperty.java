@@ -0,0 +1,108 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.jsoup;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Map;
+
+import org.hobsoft.microbrowser.spi.AbstractMicrodataProperty;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@code MicrodataProperty} read from a page by a {@code MicrodataExtractor}, retaining only its element name,
+ * attributes and text.
+ */
+class StreamedMicrodataProperty extends AbstractMicrodataProperty
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private final String elementName;
+	
+	private final Map<String, String> attributes;
+	
+	private final URL baseUrl;
+	
+	private final String text;
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	StreamedMicrodataProperty(String elementName, Map<String, String> attributes, URL baseUrl, String text)
+	{
+		this.elementName = checkNotNull(elementName, "elementName");
+		this.attributes = checkNotNull(attributes, "attributes");
+		this.baseUrl = checkNotNull(baseUrl, "baseUrl");
+		this.text = checkNotNull(text, "text");
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// Unwrappable methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public <T> T unwrap(Class<T> type)
+	{
+		// no element is retained to unwrap to
+		throw new IllegalArgumentException("Cannot unwrap to: " + type);
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// AbstractMicrodataProperty methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Override
+	protected String getElementName()
+	{
+		return elementName;
+	}
+
+	@Override
+	protected String getAttribute(String name, boolean absoluteUrl)
+	{
+		String value = attributes.get(name);
+		
+		if (value == null)
+		{
+			return "";
+		}
+		
+		return absoluteUrl ? resolve(value) : value;
+	}
+
+	@Override
+	protected String getText()
+	{
+		return text;
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private String resolve(String url)
+	{
+		try
+		{
+			return new URL(baseUrl, url).toExternalForm();
+		}
+		catch (MalformedURLException exception)
+		{
+			return "";
+		}
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.jsoup;
+
+import java.util.concurrent.ConcurrentMap;
+
+import org.jsoup.nodes.Attribute;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.select.NodeVisitor;
+
+import com.google.common.cache.CacheBuilder;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Bounded pool of strings that replaces the attribute keys and short attribute values of documents with shared
+ * instances, so that strings repeated across many documents, such as item properties, item types and link relations,
+ * are retained once.
+ * <p>
+ * The least recently used strings are evicted once the pool is full, which only loses sharing for later documents.
+ * Tag names need no pooling, since jsoup already shares them between documents.
+ */
+final class StringPool implements NodeVisitor
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// constants
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * The maximum length of an attribute value that is pooled, beyond which values are unlikely to repeat.
+	 */
+	static final int MAX_VALUE_LENGTH = 64;
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private final ConcurrentMap<String, String> strings;
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	StringPool(int maxSize)
+	{
+		checkArgument(maxSize >= 1, "maxSize must be positive: %s", maxSize);
+
+		strings = CacheBuilder.newBuilder()
+			.maximumSize(maxSize)
+			.<String, String>build()
+			.asMap();
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// NodeVisitor methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public void head(Node node, int depth)
+	{
+		if (!(node instanceof Element))
+		{
+			return;
+		}
+
+		for (Attribute attribute : node.attributes())
+		{
+			String key = attribute.getKey();
+			String pooledKey = intern(key);
+
+			if (pooledKey != key)
+			{
+				attribute.setKey(pooledKey);
+			}
+
+			String value = attribute.getValue();
+
+			// boolean attributes may have no value
+			if (value != null && value.length() <= MAX_VALUE_LENGTH)
+			{
+				String pooledValue = intern(value);
+
+				if (pooledValue != value)
+				{
+					attribute.setValue(pooledValue);
+				}
+			}
+		}
+	}
+
+	public void tail(Node node, int depth)
+	{
+		// nothing to do on leaving a node
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// package-private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Replaces the attribute keys and short attribute values of the specified node and its descendants with pooled
+	 * instances.
+	 */
+	void intern(Node root)
+	{
+		root.traverse(this);
+	}
+
+	/**
+	 * Gets the pooled instance of the specified string, adding it to the pool if it is absent.
+	 */
+	String intern(String string)
+	{
+		String pooled = strings.putIfAbsent(string, string);
+
+		return (pooled != null) ? pooled : string;
+	}
+
+	long size()
+	{
+		return strings.size();
+	}
+}
@@ -0,0 +1,184 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.jsoup;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.FormElement;
+import org.jsoup.nodes.Node;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests {@code CompactDocument}.
+ */
+public class CompactDocumentTest
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// tests
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Test
+	public void getItemsReturnsItemsInDocumentOrder()
+	{
+		CompactDocument document = newDocument("<div itemscope itemtype='http://i' id='a'><div itemscope "
+			+ "itemtype='http://i' id='b'></div></div><div itemtype='http://i' id='c'></div>");
+		
+		assertThat(ids(document, document.getItems("http://i")), contains("a", "b"));
+	}
+	
+	@Test
+	public void getLinksWithRelTokenReturnsLinks()
+	{
+		CompactDocument document = newDocument("<a rel='next prefetch' id='a'></a><link rel='Next' id='b'>"
+			+ "<span rel='next' id='c'></span>");
+		
+		assertThat(ids(document, document.getLinks("next")), contains("a", "b"));
+	}
+	
+	@Test
+	public void getLinksWithinItemReturnsLinksWithRelToken()
+	{
+		CompactDocument document = newDocument("<a rel='next' id='a'></a><div itemscope id='i'><a rel='next' id='b'>"
+			+ "</a><a rel='next prefetch' id='c'></a></div><a rel='next' id='d'></a>");
+		
+		assertThat(ids(document, document.getLinks(find(document, "i"), "next")), contains("b", "c"));
+	}
+	
+	@Test
+	public void getLinksWithRepeatedRelTokenReturnsLinkOnce()
+	{
+		CompactDocument document = newDocument("<a rel='next Next' id='a'></a>");
+		
+		assertThat(ids(document, document.getLinks("next")), contains("a"));
+	}
+	
+	@Test
+	public void getPropertyReturnsFirstPropertyWithinItem()
+	{
+		CompactDocument document = newDocument("<p itemprop='x' id='a'></p><div id='i'><p itemprop=' X ' id='b'></p>"
+			+ "<p itemprop='x' id='c'></p></div>");
+		
+		int property = document.getProperty(find(document, "i"), "x");
+		
+		assertThat(document.getAttribute(property, "id"), is("b"));
+	}
+	
+	@Test
+	public void getPropertyWithUnknownNameReturnsNone()
+	{
+		CompactDocument document = newDocument("<div id='i'><p itemprop='x'></p></div>");
+		
+		assertThat(document.getProperty(find(document, "i"), "y"), is(CompactDocument.NONE));
+	}
+	
+	@Test
+	public void getTextNormalizesWhitespaceAsElementText()
+	{
+		CompactDocument document = newDocument("<div id='a'> a  <b>b</b>\n<p>c</p><br>e <pre>f  g</pre></div>");
+		
+		assertThat(document.getText(find(document, "a")), is("a b c e f  g"));
+	}
+	
+	@Test
+	public void getAbsoluteUrlResolvesAgainstBaseUri()
+	{
+		CompactDocument document = new CompactDocument(Jsoup.parse("<base href='http://x/y/'><a href='z' id='a'></a>",
+			"http://localhost/"));
+		
+		assertThat(document.getAbsoluteUrl(find(document, "a"), "href"), is("http://x/y/z"));
+	}
+	
+	@Test
+	public void getAbsoluteUrlWithQueryResolvesAsElement()
+	{
+		Document original = Jsoup.parse("<a href='?q' id='a'></a>", "http://localhost/x/y");
+		CompactDocument document = new CompactDocument(original);
+		String expected = original.getElementById("a").absUrl("href");
+		
+		assertThat(document.getAbsoluteUrl(find(document, "a"), "href"), is(expected));
+	}
+	
+	@Test
+	public void inflateBuildsEquivalentDocument()
+	{
+		Document original = Jsoup.parse("<!DOCTYPE html><title>t</title><script>x();</script><!-- c --><p a='1'>a"
+			+ " <i>b</i><input checked></p>");
+		
+		Document actual = new CompactDocument(original).inflate();
+		
+		assertThat(actual.outerHtml(), is(original.outerHtml()));
+	}
+	
+	@Test
+	public void inflateListsControlsOfForms()
+	{
+		CompactDocument document = newDocument("<form><input name='a'><div><textarea name='b'></textarea></div>"
+			+ "</form><input name='c'>");
+		
+		FormElement form = (FormElement) document.inflate().select("form").first();
+		
+		assertThat(form.elements().eachAttr("name"), contains("a", "b"));
+	}
+	
+	@Test
+	public void getNodeReturnsCorrespondingNode()
+	{
+		CompactDocument document = newDocument("<p>a<!-- b --><i id='c'></i></p>");
+		Document inflated = document.inflate();
+		
+		assertThat(document.getNode(inflated, find(document, "c")), is(sameInstance((Node) inflated.getElementById("c"))));
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static CompactDocument newDocument(String html)
+	{
+		return new CompactDocument(Jsoup.parse(html));
+	}
+	
+	private static int find(CompactDocument document, String id)
+	{
+		for (int node = CompactDocument.ROOT; node < document.size(); node++)
+		{
+			if (id.equals(document.getAttribute(node, "id")))
+			{
+				return node;
+			}
+		}
+		
+		throw new AssertionError("No node with id: " + id);
+	}
+	
+	private static List<String> ids(CompactDocument document, List<Integer> nodes)
+	{
+		List<String> ids = new ArrayList<String>();
+		
+		for (int node : nodes)
+		{
+			ids.add(document.getAttribute(node, "id"));
+		}
+		
+		return ids;
+	}
+}
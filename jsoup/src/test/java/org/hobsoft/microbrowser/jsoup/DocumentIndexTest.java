@@ -0,0 +1,124 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.jsoup;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests {@code DocumentIndex}.
+ */
+public class DocumentIndexTest
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// tests
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Test
+	public void getItemsReturnsItemsInDocumentOrder()
+	{
+		DocumentIndex index = newIndex("<div itemscope itemtype='http://i' id='a'><div itemscope itemtype='http://i' "
+			+ "id='b'></div></div><div itemtype='http://i' id='c'></div>");
+		
+		assertThat(ids(index.getItems("http://i")), contains("a", "b"));
+	}
+	
+	@Test
+	public void getLinksWithRelTokenReturnsLinks()
+	{
+		DocumentIndex index = newIndex("<a rel='next prefetch' id='a'></a><link rel='next' id='b'>"
+			+ "<span rel='next' id='c'></span>");
+		
+		assertThat(ids(index.getLinks("next")), contains("a", "b"));
+	}
+	
+	@Test
+	public void getLinksWithWholeRelReturnsLinks()
+	{
+		DocumentIndex index = newIndex("<a rel=' next  prefetch ' id='a'></a>");
+		
+		assertThat(ids(index.getLinks("next  prefetch")), contains("a"));
+	}
+	
+	@Test
+	public void getLinksWithRepeatedRelTokenReturnsLinkOnce()
+	{
+		DocumentIndex index = newIndex("<a rel='next next' id='a'></a>");
+		
+		assertThat(ids(index.getLinks("next")), contains("a"));
+	}
+	
+	@Test
+	public void getLinksIgnoresCase()
+	{
+		DocumentIndex index = newIndex("<a rel='Next' id='a'></a>");
+		
+		assertThat(ids(index.getLinks("NEXT")), contains("a"));
+	}
+	
+	@Test
+	public void getFormReturnsFirstFormWithName()
+	{
+		DocumentIndex index = newIndex("<form name='f' id='a'></form><form name='f' id='b'></form>");
+		
+		assertThat(index.getForm("f").id(), is("a"));
+	}
+	
+	@Test
+	public void getFormWithUnknownNameReturnsNull()
+	{
+		DocumentIndex index = newIndex("<form name='f'></form>");
+		
+		assertThat(index.getForm("g"), is(nullValue()));
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static DocumentIndex newIndex(String html)
+	{
+		Document document = Jsoup.parse(html);
+		DocumentIndex index = new DocumentIndex(document);
+		
+		for (Element element : document.getAllElements())
+		{
+			index.add(element);
+		}
+		
+		return index;
+	}
+	
+	private static List<String> ids(List<Element> elements)
+	{
+		List<String> ids = new ArrayList<String>();
+		
+		for (Element element : elements)
+		{
+			ids.add(element.id());
+		}
+		
+		return ids;
+	}
+}
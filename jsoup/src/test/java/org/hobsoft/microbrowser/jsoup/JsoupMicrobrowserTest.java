@@ -0,0 +1,763 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.jsoup;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hobsoft.microbrowser.CircuitBreakerOpenException;
+import org.hobsoft.microbrowser.MicrobrowserException;
+import org.hobsoft.microbrowser.MicrodataDocument;
+import org.hobsoft.microbrowser.MicrodataItem;
+import org.hobsoft.microbrowser.ResponseTimeoutException;
+import org.hobsoft.microbrowser.ResponseTooLargeException;
+import org.hobsoft.microbrowser.spi.http.BodyScanner;
+import org.hobsoft.microbrowser.spi.http.BodyTooLargeException;
+import org.hobsoft.microbrowser.spi.http.CircuitOpenException;
+import org.hobsoft.microbrowser.spi.http.HttpRequest;
+import org.hobsoft.microbrowser.spi.http.HttpResponse;
+import org.hobsoft.microbrowser.spi.http.TotalTimeoutException;
+import org.hobsoft.microbrowser.spi.http.Transport;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.Test;
+
+import com.google.common.base.Strings;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests {@code JsoupMicrobrowser}.
+ */
+public class JsoupMicrobrowserTest
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private JsoupMicrobrowser browser = new JsoupMicrobrowser();
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// tests
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Test
+	public void parseWithCacheableResponseReusesDocumentForSameBody() throws IOException
+	{
+		byte[] body = "<p>a</p>".getBytes("UTF-8");
+		browser.parse(newResponse(Collections.singletonMap("ETag", Collections.singletonList("\"x\"")), body));
+		body[3] = 'b';
+		
+		Document actual = browser.parse(newResponse(Collections.singletonMap("ETag",
+			Collections.singletonList("\"x\"")), body));
+		
+		assertThat(actual.select("p").text(), is("a"));
+	}
+	
+	@Test
+	public void parseWithUncacheableResponseParsesBody() throws IOException
+	{
+		byte[] body = "<p>a</p>".getBytes("UTF-8");
+		browser.parse(newResponse(Collections.<String, List<String>>emptyMap(), body));
+		body[3] = 'b';
+		
+		Document actual = browser.parse(newResponse(Collections.<String, List<String>>emptyMap(), body));
+		
+		assertThat(actual.select("p").text(), is("b"));
+	}
+	
+	@Test
+	public void parseWithCacheableResponseReturnsIndependentDocuments() throws IOException
+	{
+		HttpResponse response = newResponse(Collections.singletonMap("ETag", Collections.singletonList("\"x\"")),
+			"<p>a</p>".getBytes("UTF-8"));
+		browser.parse(response).select("p").first().text("b");
+		
+		Document actual = browser.parse(response);
+		
+		assertThat(actual.select("p").text(), is("a"));
+	}
+	
+	@Test
+	public void parseWithContentTypeCharsetDecodesBody() throws IOException
+	{
+		HttpResponse response = newResponse(Collections.singletonMap("Content-Type",
+			Collections.singletonList("text/html; charset=ISO-8859-1")), "<p>\u00e9</p>".getBytes("ISO-8859-1"));
+		
+		Document actual = browser.parse(response);
+		
+		assertThat(actual.select("p").text(), is("\u00e9"));
+	}
+	
+	@Test
+	public void parseWithMetaCharsetDecodesBody() throws IOException
+	{
+		HttpResponse response = newResponse(Collections.<String, List<String>>emptyMap(),
+			"<meta charset='ISO-8859-1'><p>\u00e9</p>".getBytes("ISO-8859-1"));
+		
+		Document actual = browser.parse(response);
+		
+		assertThat(actual.select("p").text(), is("\u00e9"));
+	}
+	
+	@Test
+	public void parseWithByteOrderMarkDecodesBody() throws IOException
+	{
+		HttpResponse response = newResponse(Collections.singletonMap("Content-Type",
+			Collections.singletonList("text/html; charset=ISO-8859-1")), "\ufeff<p>\u00e9</p>".getBytes("UTF-16LE"));
+		
+		Document actual = browser.parse(response);
+		
+		assertThat(actual.select("p").text(), is("\u00e9"));
+	}
+	
+	@Test
+	public void parseWithoutCharsetDecodesBodyAsUtf8() throws IOException
+	{
+		HttpResponse response = newResponse(Collections.<String, List<String>>emptyMap(),
+			"<p>\u20ac\ud83d\ude00</p>".getBytes("UTF-8"));
+		
+		Document actual = browser.parse(response);
+		
+		assertThat(actual.select("p").text(), is("\u20ac\ud83d\ude00"));
+	}
+	
+	@Test
+	public void parseWithPrunedPolicyDropsScriptsStylesAndComments() throws IOException
+	{
+		browser.parsePolicy(ParsePolicy.PRUNED);
+		HttpResponse response = newResponse(Collections.<String, List<String>>emptyMap(),
+			"<style>p {}</style><script>x();</script><!-- c --><p>a</p>".getBytes("UTF-8"));
+		
+		Document actual = browser.parse(response);
+		
+		assertThat(actual.body().html(), is("<p>a</p>"));
+	}
+	
+	@Test
+	public void parseWithPrunedPolicyKeepsScriptWithMicrodata() throws IOException
+	{
+		browser.parsePolicy(ParsePolicy.PRUNED);
+		HttpResponse response = newResponse(Collections.<String, List<String>>emptyMap(),
+			"<div itemscope><script itemprop='x'>y</script></div>".getBytes("UTF-8"));
+		
+		Document actual = browser.parse(response);
+		
+		assertThat(actual.select("script").size(), is(1));
+	}
+	
+	@Test
+	public void parseWithPrunedPolicyKeepsWhitespaceBetweenInlineElements() throws IOException
+	{
+		browser.parsePolicy(ParsePolicy.PRUNED);
+		HttpResponse response = newResponse(Collections.<String, List<String>>emptyMap(),
+			"<div>\n<p><b>a</b> <i>b</i></p>\n</div>".getBytes("UTF-8"));
+		
+		Document actual = browser.parse(response);
+		
+		assertThat(actual.select("div").html(), is("<p><b>a</b> <i>b</i></p>"));
+	}
+	
+	@Test
+	public void parseWithPruneListenerReportsNodesAndBytes() throws IOException
+	{
+		final List<String> reports = new ArrayList<String>();
+		browser.parsePolicy(ParsePolicy.PRUNED).addPruneListener(new PruneListener()
+		{
+			public void pruned(URL url, int nodes, long bytes)
+			{
+				reports.add(url + " " + nodes + " " + bytes);
+			}
+		});
+		HttpResponse response = newResponse(Collections.<String, List<String>>emptyMap(),
+			"<script>x();</script><p>a</p>".getBytes("UTF-8"));
+		
+		browser.parse(response);
+		
+		assertThat(reports, contains("http://localhost/ 2 8"));
+	}
+	
+	@Test
+	public void parseWithDefaultPolicyKeepsComments() throws IOException
+	{
+		HttpResponse response = newResponse(Collections.<String, List<String>>emptyMap(),
+			"<p>a</p><!-- c -->".getBytes("UTF-8"));
+		
+		Document actual = browser.parse(response);
+		
+		assertThat(actual.body().childNodeSize(), is(2));
+	}
+	
+	@Test
+	public void parseWithPooledStringsSharesAttributeValues() throws IOException
+	{
+		browser.parsePolicy(ParsePolicy.DEFAULT.withMaxPooledStrings(100));
+		Document document1 = browser.parse(newResponse(Collections.<String, List<String>>emptyMap(),
+			"<p itemprop='name'>a</p>".getBytes("UTF-8")));
+		
+		Document document2 = browser.parse(newResponse(Collections.<String, List<String>>emptyMap(),
+			"<p itemprop='name'>b</p>".getBytes("UTF-8")));
+		
+		assertThat(document2.select("p").first().attributes().asList().get(0).getValue(),
+			is(sameInstance(document1.select("p").first().attributes().asList().get(0).getValue())));
+	}
+	
+	@Test
+	public void parseWithPooledStringsDoesNotShareLongAttributeValues() throws IOException
+	{
+		browser.parsePolicy(ParsePolicy.DEFAULT.withMaxPooledStrings(100));
+		String value = Strings.repeat("x", StringPool.MAX_VALUE_LENGTH + 1);
+		Document document1 = browser.parse(newResponse(Collections.<String, List<String>>emptyMap(),
+			("<p title='" + value + "'>a</p>").getBytes("UTF-8")));
+		
+		Document document2 = browser.parse(newResponse(Collections.<String, List<String>>emptyMap(),
+			("<p title='" + value + "'>b</p>").getBytes("UTF-8")));
+		
+		assertThat(document2.select("p").attr("title"), is(not(sameInstance(document1.select("p").attr("title")))));
+	}
+	
+	@Test
+	public void newExceptionWithBodyTooLargeReturnsResponseTooLargeException()
+	{
+		MicrobrowserException actual = JsoupMicrobrowser.newException("x", new BodyTooLargeException(1));
+		
+		assertThat(actual, instanceOf(ResponseTooLargeException.class));
+	}
+	
+	@Test
+	public void newExceptionWithSocketTimeoutReturnsResponseTimeoutException()
+	{
+		MicrobrowserException actual = JsoupMicrobrowser.newException("x", new SocketTimeoutException());
+		
+		assertThat(actual, instanceOf(ResponseTimeoutException.class));
+	}
+	
+	@Test
+	public void newExceptionWithTotalTimeoutReturnsResponseTimeoutException()
+	{
+		MicrobrowserException actual = JsoupMicrobrowser.newException("x", new TotalTimeoutException("y"));
+		
+		assertThat(actual, instanceOf(ResponseTimeoutException.class));
+	}
+	
+	@Test
+	public void newExceptionWithCircuitOpenReturnsCircuitBreakerOpenException()
+	{
+		MicrobrowserException actual = JsoupMicrobrowser.newException("x", new CircuitOpenException("y"));
+		
+		assertThat(actual, instanceOf(CircuitBreakerOpenException.class));
+	}
+	
+	@Test
+	public void newExceptionWithIOExceptionReturnsMicrobrowserException()
+	{
+		MicrobrowserException actual = JsoupMicrobrowser.newException("x", new IOException());
+		
+		assertThat(actual.getClass().getName(), is(MicrobrowserException.class.getName()));
+	}
+	
+	@Test
+	public void getWithPrefetchPolicyPrefetchesLinksWithRel()
+	{
+		FakeTransport transport = new FakeTransport("/1", "<a rel='next' href='/2'>2</a><a rel='prev' href='/0'>0</a>");
+		
+		new JsoupMicrobrowser(transport).prefetch(PrefetchPolicy.forRels("next")).get("http://localhost/1");
+		
+		assertThat(transport.getPaths(), contains("/1", "/2"));
+	}
+	
+	@Test
+	public void followWithPrefetchedLinkUsesPrefetchedResponse()
+	{
+		FakeTransport transport = new FakeTransport("/1", "<a rel='next' href='/2'>2</a>");
+		JsoupMicrobrowser browser = new JsoupMicrobrowser(transport).prefetch(PrefetchPolicy.forRels("next"));
+		
+		browser.get("http://localhost/1").getLink("next").follow();
+		
+		assertThat(transport.getPaths(), contains("/1", "/2"));
+	}
+	
+	@Test
+	public void followAsyncWithPrefetchedLinkUsesPrefetchedResponse()
+	{
+		FakeTransport transport = new FakeTransport("/1", "<a rel='next' href='/2'>2</a>");
+		JsoupMicrobrowser browser = new JsoupMicrobrowser(transport).prefetch(PrefetchPolicy.forRels("next"));
+		
+		browser.get("http://localhost/1").getLink("next").followAsync().join();
+		
+		assertThat(transport.getPaths(), contains("/1", "/2"));
+	}
+	
+	@Test
+	public void getWithPrefetchPolicyPrefetchesWithinConcurrencyBudget()
+	{
+		FakeTransport transport = new FakeTransport("/1", "<a rel='item' href='/a'>a</a><a rel='item' href='/b'>b</a>");
+		transport.setPending(true);
+		JsoupMicrobrowser browser = new JsoupMicrobrowser(transport)
+			.prefetch(PrefetchPolicy.forRels("item").withMaxConcurrent(1));
+		
+		browser.get("http://localhost/1");
+		
+		assertThat(transport.getPaths(), contains("/1", "/a"));
+	}
+	
+	@Test
+	public void getWithPrefetchPolicyStopsPrefetchExceedingMaxBytes()
+	{
+		FakeTransport transport = new FakeTransport("/1", "<a rel='next' href='/2'>2</a>");
+		
+		new JsoupMicrobrowser(transport).prefetch(PrefetchPolicy.forRels("next").withMaxBytes(4))
+			.get("http://localhost/1");
+		
+		BodyScanner.Scan scan = transport.getLastRequest().getBodyScanner().newScan();
+		assertThat(Arrays.asList(scan.update(new byte[4], 0, 4), scan.update(new byte[1], 0, 1)),
+			contains(false, true));
+	}
+	
+	@Test
+	public void followAsyncWithFailedPrefetchFetchesLink()
+	{
+		FakeTransport transport = new FakeTransport("/1", "<a rel='next' href='/2'>2</a>");
+		transport.setPending(true);
+		JsoupMicrobrowser browser = new JsoupMicrobrowser(transport).prefetch(PrefetchPolicy.forRels("next"));
+		CompletableFuture<MicrodataDocument> actual = browser.get("http://localhost/1").getLink("next").followAsync();
+		transport.setPending(false);
+		
+		transport.getPendingResponses().get(0).completeExceptionally(new IOException());
+		
+		actual.join();
+		assertThat(transport.getPaths(), contains("/1", "/2", "/2"));
+	}
+	
+	@Test
+	public void followAsyncWithTruncatedPrefetchFetchesLink() throws IOException
+	{
+		FakeTransport transport = new FakeTransport("/1", "<a rel='next' href='/2'>2</a>");
+		transport.setPending(true);
+		JsoupMicrobrowser browser = new JsoupMicrobrowser(transport).prefetch(PrefetchPolicy.forRels("next"));
+		CompletableFuture<MicrodataDocument> actual = browser.get("http://localhost/1").getLink("next").followAsync();
+		transport.setPending(false);
+		
+		transport.getPendingResponses().get(0).complete(new HttpResponse(new URL("http://localhost/2"), 200, "OK",
+			Collections.<String, List<String>>emptyMap(), "<a rel='partial' href='/3'>".getBytes("UTF-8"))
+			.withTruncated(true));
+		
+		assertThat(actual.join().getLinks("partial").isEmpty(), is(true));
+		assertThat(transport.getPaths(), contains("/1", "/2", "/2"));
+	}
+	
+	@Test
+	public void getWithoutPrefetchPolicyDoesNotPrefetch()
+	{
+		FakeTransport transport = new FakeTransport("/1", "<a rel='next' href='/2'>2</a>");
+		
+		new JsoupMicrobrowser(transport).get("http://localhost/1");
+		
+		assertThat(transport.getPaths(), contains("/1"));
+	}
+	
+	@Test
+	public void getAsyncWhenCancelledClosesConnection() throws IOException
+	{
+		ServerSocket serverSocket = new ServerSocket(0);
+		
+		try
+		{
+			serverSocket.setSoTimeout(5000);
+			CompletableFuture<MicrodataDocument> future = browser.getAsync("http://localhost:"
+				+ serverSocket.getLocalPort() + "/");
+			Socket socket = serverSocket.accept();
+			
+			try
+			{
+				socket.setSoTimeout(5000);
+				readRequest(socket.getInputStream());
+				
+				future.cancel(true);
+				
+				assertThat(socket.getInputStream().read(), is(-1));
+			}
+			finally
+			{
+				socket.close();
+			}
+		}
+		finally
+		{
+			serverSocket.close();
+		}
+	}
+	
+	@Test
+	public void getDoesNotParseResponse()
+	{
+		ParseCountingMicrobrowser browser = new ParseCountingMicrobrowser(new FakeTransport("/1", "<p>a</p>"));
+		
+		browser.get("http://localhost/1");
+		
+		assertThat(browser.getParseCount(), is(0));
+	}
+	
+	@Test
+	public void getLinksParsesResponseOnce()
+	{
+		ParseCountingMicrobrowser browser = new ParseCountingMicrobrowser(new FakeTransport("/1",
+			"<a rel='next' href='/2'>2</a>"));
+		MicrodataDocument document = browser.get("http://localhost/1");
+		
+		document.getLinks("next");
+		document.getLinks("prev");
+		
+		assertThat(browser.getParseCount(), is(1));
+	}
+	
+	@Test
+	public void getLinksConcurrentlyParsesResponseOnce() throws InterruptedException
+	{
+		ParseCountingMicrobrowser browser = new ParseCountingMicrobrowser(new FakeTransport("/1",
+			"<a rel='next' href='/2'>2</a>"));
+		final MicrodataDocument document = browser.get("http://localhost/1");
+		List<Thread> threads = new ArrayList<Thread>();
+		
+		for (int index = 0; index < 4; index++)
+		{
+			Thread thread = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					document.getLinks("next");
+				}
+			});
+			thread.start();
+			threads.add(thread);
+		}
+		
+		for (Thread thread : threads)
+		{
+			thread.join();
+		}
+		
+		assertThat(browser.getParseCount(), is(1));
+	}
+	
+	@Test
+	public void getCookieDoesNotParseResponse() throws IOException
+	{
+		ParseCountingMicrobrowser browser = new ParseCountingMicrobrowser(new FakeTransport("/1", "<p>a</p>"));
+		HttpResponse response = newResponse(Collections.singletonMap("Set-Cookie", Collections.singletonList("x=y")),
+			"<p>a</p>".getBytes("UTF-8"));
+		
+		new JsoupMicrodataDocument(browser, Collections.<String, String>emptyMap(), response).getCookie("x");
+		
+		assertThat(browser.getParseCount(), is(0));
+	}
+	
+	@Test
+	public void newDocumentWithCheckedRadioControlsChecksLastInGroup()
+	{
+		Document document = new JsoupMicrodataDocument(browser, Collections.<String, String>emptyMap(),
+			Jsoup.parse("<form><input type='radio' name='r' id='a' checked><input type='radio' name='r' id='b' "
+				+ "checked><input type='radio' name='s' id='c' checked></form>")).unwrap(Document.class);
+		
+		assertThat(document.select("[checked]").eachAttr("id"), contains("b", "c"));
+	}
+	
+	@Test
+	public void newDocumentWithoutFormIndexesLinks()
+	{
+		MicrodataDocument document = new JsoupMicrodataDocument(browser, Collections.<String, String>emptyMap(),
+			Jsoup.parse("<input type='radio' name='r' checked><input type='radio' name='r' checked>"
+				+ "<a rel='next' href='http://localhost/2'>2</a>"));
+		
+		assertThat(document.getLinks("next").size(), is(1));
+	}
+	
+	@Test
+	public void getItemWithCompactPolicyReturnsPropertyValues()
+	{
+		JsoupMicrobrowser browser = new JsoupMicrobrowser(new FakeTransport("/1", "<div itemscope itemtype='http://i'>"
+			+ "<a itemprop='x' href='/2'>2</a><p itemprop='y'> a <b>b</b></p></div>"));
+		browser.parsePolicy(ParsePolicy.DEFAULT.withCompact(true));
+		
+		MicrodataItem item = browser.get("http://localhost/1").getItem("http://i");
+		
+		assertThat(Arrays.asList(item.getProperty("x").getValue(), item.getProperty("y").getValue()),
+			contains("http://localhost/2", "a b"));
+	}
+	
+	@Test
+	public void getFormWithCompactPolicyRetainsControlValues()
+	{
+		JsoupMicrobrowser browser = new JsoupMicrobrowser(new FakeTransport("/1",
+			"<form name='f'><input name='a'></form>"));
+		browser.parsePolicy(ParsePolicy.DEFAULT.withCompact(true));
+		MicrodataDocument document = browser.get("http://localhost/1");
+		
+		document.getForm("f").setControlValue("a", "b");
+		
+		assertThat(document.getForm("f").getControlValue("a"), is("b"));
+	}
+	
+	@Test
+	public void unwrapWithCompactPolicyParsesResponseOnce()
+	{
+		ParseCountingMicrobrowser browser = new ParseCountingMicrobrowser(new FakeTransport("/1",
+			"<a rel='next' href='/2'>2</a>"));
+		browser.parsePolicy(ParsePolicy.DEFAULT.withCompact(true));
+		MicrodataDocument document = browser.get("http://localhost/1");
+		
+		document.getLinks("next");
+		document.unwrap(Document.class);
+		
+		assertThat(browser.getParseCount(), is(1));
+	}
+	
+	@Test
+	public void getLinksAfterDetachDoesNotParseResponseAgain()
+	{
+		ParseCountingMicrobrowser browser = new ParseCountingMicrobrowser(new FakeTransport("/1",
+			"<a rel='next' href='/2'>2</a>"));
+		MicrodataDocument document = browser.get("http://localhost/1");
+		document.detach();
+		
+		document.getLinks("next");
+		
+		assertThat(browser.getParseCount(), is(1));
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void unwrapAfterDetachThrowsException()
+	{
+		MicrodataDocument document = new JsoupMicrobrowser(new FakeTransport("/1", "<p>a</p>"))
+			.get("http://localhost/1");
+		document.detach();
+		
+		document.unwrap(Document.class);
+	}
+	
+	@Test
+	public void detachWithCompactPolicyReturnsPropertyValues()
+	{
+		JsoupMicrobrowser browser = new JsoupMicrobrowser(new FakeTransport("/1", "<div itemscope itemtype='http://i'>"
+			+ "<div itemscope itemtype='http://j'><p itemprop='x'>a</p></div><p itemprop='x'>b</p></div>"));
+		browser.parsePolicy(ParsePolicy.DEFAULT.withCompact(true));
+		
+		MicrodataDocument document = browser.get("http://localhost/1").detach();
+		
+		assertThat(Arrays.asList(document.getItem("http://i").getProperty("x").getValue(),
+			document.getItem("http://j").getProperty("x").getValue()), contains("a", "a"));
+	}
+	
+	@Test
+	public void detachWithCompactPolicyReturnsLinks()
+	{
+		JsoupMicrobrowser browser = new JsoupMicrobrowser(new FakeTransport("/1", "<div itemscope itemtype='http://i'>"
+			+ "<a rel='next' href='/2'>2</a></div>"));
+		browser.parsePolicy(ParsePolicy.DEFAULT.withCompact(true));
+		
+		MicrodataDocument document = browser.get("http://localhost/1").detach();
+		
+		assertThat(Arrays.asList(document.getLink("next").getHref().toString(),
+			document.getItem("http://i").getLink("next").getHref().toString()),
+			contains("http://localhost/2", "http://localhost/2"));
+	}
+	
+	@Test
+	public void parseWithCacheableResponseRetainsDocument() throws IOException
+	{
+		HttpResponse response = newResponse(Collections.singletonMap("ETag", Collections.singletonList("\"a\"")),
+			"<p>a</p>".getBytes("UTF-8"));
+		
+		browser.parse(response);
+		
+		assertThat(browser.getRetainedDocumentCount(), is(1));
+	}
+	
+	@Test
+	public void parseWithCacheableResponseAndCompactPolicyDoesNotRetainDocument() throws IOException
+	{
+		HttpResponse response = newResponse(Collections.singletonMap("ETag", Collections.singletonList("\"a\"")),
+			"<p>a</p>".getBytes("UTF-8"));
+		browser.parsePolicy(ParsePolicy.DEFAULT.withCompact(true));
+		
+		browser.parse(response);
+		
+		assertThat(browser.getRetainedDocumentCount(), is(0));
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static HttpResponse newResponse(Map<String, List<String>> headers, byte[] body) throws IOException
+	{
+		return new HttpResponse(new URL("http://localhost/"), 200, "OK", headers, body);
+	}
+	
+	private static void readRequest(InputStream in) throws IOException
+	{
+		int lineLength = 0;
+		int b;
+		
+		// read up to the blank line that ends the request headers
+		while ((b = in.read()) != -1)
+		{
+			if (b == '\n')
+			{
+				if (lineLength == 0)
+				{
+					return;
+				}
+				
+				lineLength = 0;
+			}
+			else if (b != '\r')
+			{
+				lineLength++;
+			}
+		}
+		
+		throw new EOFException();
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// types
+	// ----------------------------------------------------------------------------------------------------------------
+	
+	/**
+	 * {@code JsoupMicrobrowser} that counts the responses that it parses.
+	 */
+	private static class ParseCountingMicrobrowser extends JsoupMicrobrowser
+	{
+		private final AtomicInteger parseCount;
+		
+		ParseCountingMicrobrowser(Transport transport)
+		{
+			super(transport);
+			
+			parseCount = new AtomicInteger();
+		}
+		
+		@Override
+		Document parse(HttpResponse response)
+		{
+			parseCount.incrementAndGet();
+			return super.parse(response);
+		}
+		
+		public int getParseCount()
+		{
+			return parseCount.get();
+		}
+	}
+	
+	/**
+	 * {@code Transport} that returns a page for a single path, and an empty page otherwise, and records the paths
+	 * requested.
+	 */
+	private static class FakeTransport implements Transport
+	{
+		private final String path;
+		
+		private final String html;
+		
+		private final List<String> paths;
+		
+		private final List<CompletableFuture<HttpResponse>> pendingResponses;
+		
+		private boolean pending;
+		
+		private volatile HttpRequest lastRequest;
+		
+		FakeTransport(String path, String html)
+		{
+			this.path = path;
+			this.html = html;
+			
+			paths = Collections.synchronizedList(new ArrayList<String>());
+			pendingResponses = Collections.synchronizedList(new ArrayList<CompletableFuture<HttpResponse>>());
+		}
+		
+		public HttpResponse execute(HttpRequest request) throws IOException
+		{
+			paths.add(request.getUrl().getPath());
+			lastRequest = request;
+			
+			Map<String, List<String>> headers = Collections.singletonMap("Content-Type",
+				Collections.singletonList("text/html; charset=UTF-8"));
+			
+			String body = path.equals(request.getUrl().getPath()) ? html : "";
+			
+			return new HttpResponse(request.getUrl(), 200, "OK", headers, body.getBytes("UTF-8"));
+		}
+		
+		public CompletableFuture<HttpResponse> executeAsync(HttpRequest request)
+		{
+			if (pending)
+			{
+				paths.add(request.getUrl().getPath());
+				lastRequest = request;
+				CompletableFuture<HttpResponse> response = new CompletableFuture<HttpResponse>();
+				pendingResponses.add(response);
+				return response;
+			}
+			
+			try
+			{
+				return CompletableFuture.completedFuture(execute(request));
+			}
+			catch (IOException exception)
+			{
+				throw new AssertionError(exception);
+			}
+		}
+		
+		public List<String> getPaths()
+		{
+			return paths;
+		}
+		
+		public HttpRequest getLastRequest()
+		{
+			return lastRequest;
+		}
+		
+		public List<CompletableFuture<HttpResponse>> getPendingResponses()
+		{
+			return pendingResponses;
+		}
+		
+		public void setPending(boolean pending)
+		{
+			this.pending = pending;
+		}
+	}
+}
@@ -0,0 +1,276 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.jsoup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hobsoft.microbrowser.MicrodataProperty;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests {@code MicrodataExtractor}.
+ */
+public class MicrodataExtractorTest
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// constants
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static final String BASE_URL = "http://localhost/a/";
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// tests
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Test
+	public void extractWithItemReportsItem() throws IOException
+	{
+		List<String> events = extract("<div itemscope itemtype='http://i' itemid='http://x'></div>");
+		
+		assertThat(events, contains("startItem http://i http://x", "endItem"));
+	}
+	
+	@Test
+	public void extractWithPropertyReportsText() throws IOException
+	{
+		List<String> events = extract("<div itemscope><p itemprop='p'> a <b>b</b>\n c </p></div>");
+		
+		assertThat(events, contains("startItem null null", "p=a b c", "endItem"));
+	}
+	
+	@Test
+	public void extractWithPropertyDecodesCharacterReferences() throws IOException
+	{
+		List<String> events = extract("<div itemscope><p itemprop='p'>a &amp; b</p></div>");
+		
+		assertThat(events, contains("startItem null null", "p=a & b", "endItem"));
+	}
+	
+	@Test
+	public void extractWithMetaPropertyReportsContent() throws IOException
+	{
+		List<String> events = extract("<div itemscope><meta itemprop='p' content='a'></div>");
+		
+		assertThat(events, contains("startItem null null", "p=a", "endItem"));
+	}
+	
+	@Test
+	public void extractWithLinkPropertyReportsAbsoluteHref() throws IOException
+	{
+		List<String> events = extract("<div itemscope><a itemprop='p' href='b'>c</a></div>");
+		
+		assertThat(events, contains("startItem null null", "p=http://localhost/a/b", "endItem"));
+	}
+	
+	@Test
+	public void extractWithBaseElementResolvesHrefAgainstBase() throws IOException
+	{
+		List<String> events = extract("<base href='/z/'><div itemscope><img itemprop='p' src='b'></div>");
+		
+		assertThat(events, contains("startItem null null", "p=http://localhost/z/b", "endItem"));
+	}
+	
+	@Test
+	public void extractWithEmptyMeterPropertyReportsZero() throws IOException
+	{
+		List<String> events = extract("<div itemscope><meter itemprop='p'></meter></div>");
+		
+		assertThat(events, contains("startItem null null", "p=0", "endItem"));
+	}
+	
+	@Test
+	public void extractWithTimePropertyWithoutDatetimeReportsText() throws IOException
+	{
+		List<String> events = extract("<div itemscope><time itemprop='p'>2000</time></div>");
+		
+		assertThat(events, contains("startItem null null", "p=2000", "endItem"));
+	}
+	
+	@Test
+	public void extractWithNestedItemReportsPropertiesToInnermostItem() throws IOException
+	{
+		List<String> events = extract("<div itemscope itemtype='http://i'><div itemprop='q' itemscope "
+			+ "itemtype='http://j'><span itemprop='r'>r</span></div><span itemprop='s'>s</span></div>");
+		
+		assertThat(events, contains("startItem http://i null", "startItem http://j null", "r=r", "endItem", "q=r",
+			"s=s", "endItem"));
+	}
+	
+	@Test
+	public void extractWithOmittedEndTagsClosesElements() throws IOException
+	{
+		List<String> events = extract("<ul itemscope><li itemprop='a'>a<li itemprop='b'>b</ul>");
+		
+		assertThat(events, contains("startItem null null", "a=a", "b=b", "endItem"));
+	}
+	
+	@Test
+	public void extractWithUnclosedItemEndsItem() throws IOException
+	{
+		List<String> events = extract("<div itemscope><span itemprop='p'>a");
+		
+		assertThat(events, contains("startItem null null", "p=a", "endItem"));
+	}
+	
+	@Test
+	public void extractWithPropertyOutsideItemReportsNothing() throws IOException
+	{
+		List<String> events = extract("<span itemprop='p'>a</span>");
+		
+		assertThat(events, contains());
+	}
+	
+	@Test
+	public void extractWithPropertyInScriptReportsNothing() throws IOException
+	{
+		List<String> events = extract("<div itemscope><script>x = '<b itemprop=\"p\">';</script></div>");
+		
+		assertThat(events, contains("startItem null null", "endItem"));
+	}
+	
+	@Test
+	public void extractWithOmittedListItemEndTagsMatchesDocument() throws IOException
+	{
+		assertMatchesDocument("<ul itemscope itemtype=http://i><li itemprop=a>x<li itemprop=b>y</ul>");
+	}
+	
+	@Test
+	public void extractWithOmittedParagraphEndTagsMatchesDocument() throws IOException
+	{
+		assertMatchesDocument("<div itemscope itemtype=http://i><p itemprop=a>x<p itemprop=b>y<div>z</div></div>");
+	}
+	
+	@Test
+	public void extractWithOmittedCellEndTagsMatchesDocument() throws IOException
+	{
+		assertMatchesDocument("<table itemscope itemtype=http://i><tr><td itemprop=a>x<th itemprop=b>y"
+			+ "<tr><td itemprop=c>z</table>");
+	}
+	
+	@Test
+	public void extractWithOmittedDescriptionEndTagsMatchesDocument() throws IOException
+	{
+		assertMatchesDocument("<dl itemscope itemtype=http://i><dt itemprop=a>x<dd itemprop=b>y<dt itemprop=c>z</dl>");
+	}
+	
+	@Test
+	public void extractWithOmittedOptionEndTagsMatchesDocument() throws IOException
+	{
+		assertMatchesDocument("<div itemscope itemtype=http://i><select><option itemprop=a>x<option itemprop=b>y"
+			+ "</select></div>");
+	}
+	
+	@Test
+	public void extractWithPreformattedPropertyMatchesDocument() throws IOException
+	{
+		assertMatchesDocument("<div itemscope itemtype=http://i><pre itemprop=a>\n x\n  <b>y</b>\t</pre></div>");
+	}
+	
+	@Test
+	public void extractWithTextAreaPropertyMatchesDocument() throws IOException
+	{
+		assertMatchesDocument("<div itemscope itemtype=http://i><textarea itemprop=a><b>t</b> &amp;</textarea></div>");
+	}
+	
+	@Test
+	public void extractWithTitlePropertyMatchesDocument() throws IOException
+	{
+		assertMatchesDocument("<div itemscope itemtype=http://i><title itemprop=a>a <b>b</b></title></div>");
+	}
+	
+	@Test
+	public void extractWithNonBreakingSpaceMatchesDocument() throws IOException
+	{
+		assertMatchesDocument("<div itemscope itemtype=http://i><span itemprop=a>x&nbsp; y&nbsp;</span></div>");
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static void assertMatchesDocument(String html) throws IOException
+	{
+		List<String> expected = new ArrayList<String>();
+		
+		for (Element element : Jsoup.parse(html, BASE_URL).select("[itemscope] [itemprop]"))
+		{
+			JsoupMicrodataProperty property = new JsoupMicrodataProperty(element);
+			expected.add(property.getName() + "=" + property.getValue());
+		}
+		
+		List<String> actual = new ArrayList<String>();
+		
+		for (String event : extract(html))
+		{
+			if (event.contains("="))
+			{
+				actual.add(event);
+			}
+		}
+		
+		assertThat(actual, is(expected));
+	}
+	
+
+	private static List<String> extract(String html) throws IOException
+	{
+		RecordingHandler handler = new RecordingHandler();
+		
+		new MicrodataExtractor(new URL(BASE_URL), handler).extract(new StringReader(html));
+		
+		return handler.getEvents();
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// types
+	// ----------------------------------------------------------------------------------------------------------------
+	
+	/**
+	 * {@code MicrodataHandler} that records the events that it receives.
+	 */
+	private static class RecordingHandler implements MicrodataHandler
+	{
+		private final List<String> events = new ArrayList<String>();
+		
+		public void startItem(URL type, URL id)
+		{
+			events.add("startItem " + type + " " + id);
+		}
+		
+		public void property(MicrodataProperty property)
+		{
+			events.add(property.getName() + "=" + property.getValue());
+		}
+		
+		public void endItem()
+		{
+			events.add("endItem");
+		}
+		
+		public List<String> getEvents()
+		{
+			return events;
+		}
+	}
+}
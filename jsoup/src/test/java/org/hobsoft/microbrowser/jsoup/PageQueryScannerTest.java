@@ -0,0 +1,172 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.jsoup;
+
+import java.io.UnsupportedEncodingException;
+
+import org.hobsoft.microbrowser.spi.http.BodyScanner.Scan;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests {@code PageQueryScanner}.
+ */
+public class PageQueryScannerTest
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// tests
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Test
+	public void updateWithLinkReturnsTrue() throws UnsupportedEncodingException
+	{
+		Scan scan = newScan(PageQuery.link("next"));
+		
+		assertThat(update(scan, "<p><a href='/2' rel='next'>"), is(true));
+	}
+	
+	@Test
+	public void updateWithLinkRelTokenReturnsTrue() throws UnsupportedEncodingException
+	{
+		Scan scan = newScan(PageQuery.link("next"));
+		
+		assertThat(update(scan, "<link rel=\"next prefetch\" href=\"/2\">"), is(true));
+	}
+	
+	@Test
+	public void updateWithOtherLinkReturnsFalse() throws UnsupportedEncodingException
+	{
+		Scan scan = newScan(PageQuery.link("next"));
+		
+		assertThat(update(scan, "<a rel='prev' href='/0'>"), is(false));
+	}
+	
+	@Test
+	public void updateWithLinkInCommentReturnsFalse() throws UnsupportedEncodingException
+	{
+		Scan scan = newScan(PageQuery.link("next"));
+		
+		assertThat(update(scan, "<!-- <a rel='next'> -->"), is(false));
+	}
+	
+	@Test
+	public void updateWithLinkInScriptReturnsFalse() throws UnsupportedEncodingException
+	{
+		Scan scan = newScan(PageQuery.link("next"));
+		
+		assertThat(update(scan, "<script>x = \"<a rel='next'>\";</script>"), is(false));
+	}
+	
+	@Test
+	public void updateWithLinkAfterScriptReturnsTrue() throws UnsupportedEncodingException
+	{
+		Scan scan = newScan(PageQuery.link("next"));
+		
+		assertThat(update(scan, "<script>x < y</script><a rel='next'>"), is(true));
+	}
+	
+	@Test
+	public void updateWithUnclosedItemReturnsFalse() throws UnsupportedEncodingException
+	{
+		Scan scan = newScan(PageQuery.item("http://i"));
+		
+		assertThat(update(scan, "<div itemscope itemtype='http://i'><div></div>"), is(false));
+	}
+	
+	@Test
+	public void updateWithClosedItemReturnsTrue() throws UnsupportedEncodingException
+	{
+		Scan scan = newScan(PageQuery.item("http://i"));
+		
+		assertThat(update(scan, "<div itemscope itemtype='http://i'><div></div></div>"), is(true));
+	}
+	
+	@Test
+	public void updateWithItemSplitAcrossUpdatesReturnsTrue() throws UnsupportedEncodingException
+	{
+		Scan scan = newScan(PageQuery.item("http://i"));
+		update(scan, "<div itemsc");
+		
+		assertThat(update(scan, "ope itemtype='http://i'></div>"), is(true));
+	}
+	
+	@Test
+	public void updateWithItemAndWithoutLinkReturnsFalse() throws UnsupportedEncodingException
+	{
+		Scan scan = newScan(PageQuery.item("http://i").andLink("next"));
+		
+		assertThat(update(scan, "<div itemscope itemtype='http://i'></div>"), is(false));
+	}
+	
+	@Test
+	public void updateWithLinkRelDifferentCaseMatchesDocumentIndex() throws UnsupportedEncodingException
+	{
+		String html = "<a rel='Next' href='/2'>";
+		Scan scan = newScan(PageQuery.link("next"));
+		
+		assertThat(update(scan, html), is(!newIndex(html).getLinks("next").isEmpty()));
+	}
+	
+	@Test
+	public void updateWithItemTypeTokenMatchesDocumentIndex() throws UnsupportedEncodingException
+	{
+		String html = "<div itemscope itemtype='http://a http://b'></div>";
+		Scan scan = newScan(PageQuery.item("http://a"));
+		
+		assertThat(update(scan, html), is(!newIndex(html).getItems("http://a").isEmpty()));
+	}
+	
+	@Test
+	public void updateWithItemTypesMatchesDocumentIndex() throws UnsupportedEncodingException
+	{
+		String html = "<div itemscope itemtype=' HTTP://A http://b'></div>";
+		Scan scan = newScan(PageQuery.item("http://a http://b"));
+		
+		assertThat(update(scan, html), is(!newIndex(html).getItems("http://a http://b").isEmpty()));
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static Scan newScan(PageQuery query)
+	{
+		return new PageQueryScanner(query).newScan();
+	}
+	
+	private static DocumentIndex newIndex(String html)
+	{
+		Document document = Jsoup.parse(html);
+		DocumentIndex index = new DocumentIndex(document);
+		
+		for (Element element : document.getAllElements())
+		{
+			index.add(element);
+		}
+		
+		return index;
+	}
+	
+	private static boolean update(Scan scan, String html) throws UnsupportedEncodingException
+	{
+		byte[] bytes = html.getBytes("UTF-8");
+		
+		return scan.update(bytes, 0, bytes.length);
+	}
+}
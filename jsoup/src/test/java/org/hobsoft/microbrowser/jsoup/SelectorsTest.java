@@ -0,0 +1,81 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.jsoup;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.select.Selector;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests {@code Selectors}.
+ */
+public class SelectorsTest
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// tests
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Test
+	public void byLinkReturnsCachedEvaluator()
+	{
+		assertThat(Selectors.byLink("next"), is(sameInstance(Selectors.byLink("next"))));
+	}
+	
+	@Test
+	public void byLinkWithSpecialCharactersMatchesLink()
+	{
+		Document document = Jsoup.parse("<a rel=\"x], a[rel='y\" id=\"a\"></a>");
+		
+		assertThat(Selector.select(Selectors.byLink("x], a[rel='y"), document).attr("id"), is("a"));
+	}
+	
+	@Test
+	public void byLinkIgnoresCaseAndWhitespace()
+	{
+		Document document = Jsoup.parse("<link rel=' Next ' id='a'>");
+		
+		assertThat(Selector.select(Selectors.byLink("next"), document).attr("id"), is("a"));
+	}
+	
+	@Test
+	public void byLinkWithRelTokenMatchesLink()
+	{
+		Document document = Jsoup.parse("<a rel='prefetch  Next' id='a'></a><a rel='nextpage' id='b'></a>");
+		
+		assertThat(Selector.select(Selectors.byLink("next"), document).attr("id"), is("a"));
+		assertThat(Selector.select(Selectors.byLink("next"), document).size(), is(1));
+	}
+	
+	@Test
+	public void byLinkDoesNotMatchOtherElements()
+	{
+		Document document = Jsoup.parse("<span rel='next'></span>");
+		
+		assertThat(Selector.select(Selectors.byLink("next"), document).isEmpty(), is(true));
+	}
+	
+	@Test
+	public void byRadioControlMatchesRadioControlWithName()
+	{
+		Document document = Jsoup.parse("<input type='radio' name='r' id='a'><input type='checkbox' name='r'>"
+			+ "<input type='radio' name='s'>");
+		
+		assertThat(Selector.select(Selectors.byRadioControl("r"), document).size(), is(1));
+	}
+}
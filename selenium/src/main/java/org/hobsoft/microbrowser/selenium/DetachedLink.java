@@ -0,0 +1,118 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.selenium;
+
+import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.hobsoft.microbrowser.Link;
+import org.hobsoft.microbrowser.MicrodataDocument;
+import org.hobsoft.microbrowser.spi.CompletableFutures;
+import org.openqa.selenium.WebDriver;
+
+import static org.hobsoft.microbrowser.spi.Urls.newUrlOrNull;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Immutable {@code Link} that retains only the relation and URL of a link, and is followed by navigating the driver
+ * of the document that it was detached from to its URL.
+ */
+class DetachedLink implements Link
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private final WebDriver driver;
+	
+	private final String rel;
+	
+	private final String href;
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	DetachedLink(WebDriver driver, String rel, String href)
+	{
+		this.driver = checkNotNull(driver, "driver");
+		this.rel = checkNotNull(rel, "rel");
+		this.href = checkNotNull(href, "href");
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// Link methods
+	// ----------------------------------------------------------------------------------------------------------------
+	
+	public String getRel()
+	{
+		return rel;
+	}
+	
+	public URL getHref()
+	{
+		return newUrlOrNull(href);
+	}
+
+	public MicrodataDocument follow()
+	{
+		URL url = getHref();
+		checkArgument(url != null, "Invalid URL: " + href);
+
+		driver.navigate().to(url);
+		
+		return new SeleniumMicrodataDocument(driver);
+	}
+	
+	public CompletableFuture<MicrodataDocument> followAsync()
+	{
+		checkArgument(getHref() != null, "Invalid URL: " + href);
+		
+		return CompletableFutures.supplyAsync(new Callable<MicrodataDocument>()
+		{
+			public MicrodataDocument call()
+			{
+				return follow();
+			}
+		}, CompletableFutures.getDefaultExecutor());
+	}
+	
+	public CompletableFuture<MicrodataDocument> followAsync(long timeout, TimeUnit unit)
+	{
+		return CompletableFutures.withTimeout(followAsync(), timeout, unit);
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// Unwrappable methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public <T> T unwrap(Class<T> type)
+	{
+		throw new IllegalArgumentException("Cannot unwrap to: " + type);
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// Object methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Override
+	public String toString()
+	{
+		return String.format("%s[rel=%s, href=%s]", getClass().getName(), rel, getHref());
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.selenium;
+
+import java.net.URL;
+
+import org.openqa.selenium.By;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Factory for the Selenium locators that find microdata, links, forms and controls.
+ * <p>
+ * Arguments are escaped as CSS strings, and locators are cached by query kind and argument so that repeated lookups
+ * reuse them.
+ */
+final class Selectors
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// constants
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static final int MAX_LOCATORS = 1024;
+
+	private static final By ANY_ITEM = By.cssSelector("[itemscope][itemtype]");
+
+	private static final By ANY_ITEM_PROP = By.cssSelector("[itemprop]");
+
+	private static final By ANY_LINK = By.cssSelector("a[rel], link[rel]");
+
+	private static final By SUBMIT = By.cssSelector("input[type='submit'], button[type='submit'], button:not([type])");
+
+	private static final Cache<String, By> LOCATORS = CacheBuilder.newBuilder()
+		.maximumSize(MAX_LOCATORS)
+		.build();
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private Selectors()
+	{
+		throw new AssertionError();
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// package-private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	static By byItemType(URL itemType)
+	{
+		return get("itemtype", "[itemscope][itemtype=%s]", itemType.toString());
+	}
+
+	static By byItemProp(String itemProp)
+	{
+		return get("itemprop", "[itemprop=%s]", itemProp);
+	}
+
+	static By byLink(String rel)
+	{
+		// match the whole relation as well as each relation token, since a token cannot contain whitespace
+		return get("link", "a[rel=%1$s], link[rel=%1$s], a[rel~=%1$s], link[rel~=%1$s]", rel);
+	}
+
+	static By byAnyItem()
+	{
+		return ANY_ITEM;
+	}
+
+	static By byAnyItemProp()
+	{
+		return ANY_ITEM_PROP;
+	}
+
+	static By byAnyLink()
+	{
+		return ANY_LINK;
+	}
+
+	static By byForm(String name)
+	{
+		return get("form", "form[name=%s]", name);
+	}
+
+	static By byControl(String name)
+	{
+		return get("control", "input[name=%1$s], textarea[name=%1$s]", name);
+	}
+
+	static By bySubmit()
+	{
+		return SUBMIT;
+	}
+
+	/**
+	 * Gets the specified string as a quoted CSS string.
+	 */
+	static String quote(String string)
+	{
+		StringBuilder builder = new StringBuilder(string.length() + 2).append('\'');
+
+		for (int index = 0; index < string.length(); index++)
+		{
+			char c = string.charAt(index);
+
+			if (c == '\'' || c == '\\')
+			{
+				builder.append('\\').append(c);
+			}
+			else if (c < 0x20 || c == 0x7F)
+			{
+				// control characters, such as newlines, can only be written as hexadecimal escapes
+				builder.append('\\').append(Integer.toHexString(c)).append(' ');
+			}
+			else
+			{
+				builder.append(c);
+			}
+		}
+
+		return builder.append('\'').toString();
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static By get(String kind, String format, String argument)
+	{
+		String key = kind + ":" + checkNotNull(argument, kind);
+		By locator = LOCATORS.getIfPresent(key);
+
+		if (locator == null)
+		{
+			// concurrent misses build equivalent locators, so either may be kept
+			locator = By.cssSelector(String.format(format, quote(argument)));
+			LOCATORS.put(key, locator);
+		}
+
+		return locator;
+	}
+}
@@ -15,20 +15,24 @@ package org.hobsoft.microbrowser.selenium;
 
 import java.net.URL;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 
 import org.hobsoft.microbrowser.Control;
 import org.hobsoft.microbrowser.ControlGroup;
 import org.hobsoft.microbrowser.ControlNotFoundException;
 import org.hobsoft.microbrowser.MicrodataDocument;
 import org.hobsoft.microbrowser.spi.AbstractForm;
+import org.hobsoft.microbrowser.spi.CompletableFutures;
 import org.hobsoft.microbrowser.spi.DefaultControlGroup;
-import org.openqa.selenium.By;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
 
 import com.google.common.base.Function;
 import com.google.common.collect.Lists;
 
+import static org.hobsoft.microbrowser.selenium.Selectors.byControl;
+import static org.hobsoft.microbrowser.selenium.Selectors.bySubmit;
 import static org.hobsoft.microbrowser.spi.Urls.newUrlOrNull;
 
 import static com.google.common.base.Preconditions.checkArgument;
@@ -89,6 +93,22 @@ class SeleniumForm extends AbstractForm
 		return new SeleniumMicrodataDocument(driver);
 	}
 	
+	public CompletableFuture<MicrodataDocument> submitAsync()
+	{
+		final WebElement submit = getSubmit();
+		checkArgument(getAction() != null, "Invalid action: " + element.getAttribute("action"));
+		
+		return CompletableFutures.supplyAsync(new Callable<MicrodataDocument>()
+		{
+			public MicrodataDocument call()
+			{
+				submit.click();
+				
+				return new SeleniumMicrodataDocument(driver);
+			}
+		}, CompletableFutures.getDefaultExecutor());
+	}
+	
 	// ----------------------------------------------------------------------------------------------------------------
 	// Unwrappable methods
 	// ----------------------------------------------------------------------------------------------------------------
@@ -116,11 +136,6 @@ class SeleniumForm extends AbstractForm
 		return newUrlOrNull(action);
 	}
 	
-	private static By byControl(String name)
-	{
-		return By.cssSelector(String.format("input[name='%1$s'], textarea[name='%1$s']", name));
-	}
-
 	private static ControlGroup newControlGroup(List<WebElement> elements)
 	{
 		List<Control> controls = Lists.transform(elements, new Function<WebElement, Control>()
@@ -166,9 +181,4 @@ class SeleniumForm extends AbstractForm
 		
 		return elements.get(0);
 	}
-
-	private static By bySubmit()
-	{
-		return By.cssSelector("input[type='submit'], button[type='submit'], button:not([type])");
-	}
 }
@@ -14,9 +14,13 @@
 package org.hobsoft.microbrowser.selenium;
 
 import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.hobsoft.microbrowser.Link;
 import org.hobsoft.microbrowser.MicrodataDocument;
+import org.hobsoft.microbrowser.spi.CompletableFutures;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
 
@@ -78,6 +82,24 @@ class SeleniumLink implements Link
 		return new SeleniumMicrodataDocument(driver);
 	}
 	
+	public CompletableFuture<MicrodataDocument> followAsync()
+	{
+		checkArgument(getHref() != null, "Invalid URL: " + element.getAttribute("href"));
+		
+		return CompletableFutures.supplyAsync(new Callable<MicrodataDocument>()
+		{
+			public MicrodataDocument call()
+			{
+				return follow();
+			}
+		}, CompletableFutures.getDefaultExecutor());
+	}
+	
+	public CompletableFuture<MicrodataDocument> followAsync(long timeout, TimeUnit unit)
+	{
+		return CompletableFutures.withTimeout(followAsync(), timeout, unit);
+	}
+	
 	// ----------------------------------------------------------------------------------------------------------------
 	// Unwrappable methods
 	// ----------------------------------------------------------------------------------------------------------------
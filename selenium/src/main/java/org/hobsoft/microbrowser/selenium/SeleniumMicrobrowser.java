@@ -13,8 +13,13 @@
  */
 package org.hobsoft.microbrowser.selenium;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
 import org.hobsoft.microbrowser.Microbrowser;
 import org.hobsoft.microbrowser.MicrodataDocument;
+import org.hobsoft.microbrowser.spi.CompletableFutures;
 import org.openqa.selenium.WebDriver;
 
 import static org.hobsoft.microbrowser.spi.Urls.newUrl;
@@ -23,6 +28,9 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
  * {@code Microbrowser} implementation that uses Selenium.
+ * <p>
+ * Since {@code WebDriver} navigation blocks, asynchronous navigation runs on a separate thread and cannot be aborted
+ * once started. The driver must not be used by other threads until the navigation completes.
  */
 public class SeleniumMicrobrowser implements Microbrowser
 {
@@ -53,4 +61,22 @@ public class SeleniumMicrobrowser implements Microbrowser
 		
 		return new SeleniumMicrodataDocument(driver);
 	}
+	
+	public CompletableFuture<MicrodataDocument> getAsync(final String url)
+	{
+		newUrl(url);
+		
+		return CompletableFutures.supplyAsync(new Callable<MicrodataDocument>()
+		{
+			public MicrodataDocument call()
+			{
+				return get(url);
+			}
+		}, CompletableFutures.getDefaultExecutor());
+	}
+	
+	public CompletableFuture<MicrodataDocument> getAsync(String url, long timeout, TimeUnit unit)
+	{
+		return CompletableFutures.withTimeout(getAsync(url), timeout, unit);
+	}
 }
@@ -13,16 +13,22 @@
  */
 package org.hobsoft.microbrowser.selenium;
 
-import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.hobsoft.microbrowser.CookieNotFoundException;
 import org.hobsoft.microbrowser.Form;
 import org.hobsoft.microbrowser.FormNotFoundException;
 import org.hobsoft.microbrowser.Link;
+import org.hobsoft.microbrowser.MicrodataDocument;
 import org.hobsoft.microbrowser.MicrodataItem;
+import org.hobsoft.microbrowser.MicrodataProperty;
 import org.hobsoft.microbrowser.spi.AbstractMicrodataDocument;
-import org.openqa.selenium.By;
+import org.hobsoft.microbrowser.spi.DetachedMicrodataDocument;
+import org.hobsoft.microbrowser.spi.DetachedMicrodataItem;
+import org.hobsoft.microbrowser.spi.DetachedMicrodataProperty;
 import org.openqa.selenium.Cookie;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
@@ -30,13 +36,23 @@ import org.openqa.selenium.WebElement;
 import com.google.common.base.Function;
 import com.google.common.collect.Lists;
 
+import static org.hobsoft.microbrowser.selenium.Selectors.byAnyItem;
+import static org.hobsoft.microbrowser.selenium.Selectors.byAnyItemProp;
+import static org.hobsoft.microbrowser.selenium.Selectors.byAnyLink;
+import static org.hobsoft.microbrowser.selenium.Selectors.byForm;
+import static org.hobsoft.microbrowser.selenium.Selectors.byItemType;
+import static org.hobsoft.microbrowser.selenium.Selectors.byLink;
 import static org.hobsoft.microbrowser.spi.Urls.newUrl;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Strings.nullToEmpty;
 
 /**
  * {@code MicrodataDocument} adapter to a Selenium {@code WebDriver}.
+ * <p>
+ * Detaching copies the items, links and cookies of the current page into a {@code DetachedMicrodataDocument}, whose
+ * links are followed by navigating the driver. This document itself continues to read whichever page the driver shows.
  */
 class SeleniumMicrodataDocument extends AbstractMicrodataDocument
 {
@@ -84,6 +100,44 @@ class SeleniumMicrodataDocument extends AbstractMicrodataDocument
 		return cookie.getValue();
 	}
 	
+	public MicrodataDocument detach()
+	{
+		// the page is held by the driver, so this document keeps reading it while the copy is left unchanged
+		Map<WebElement, MicrodataProperty> propertiesByElement = new HashMap<WebElement, MicrodataProperty>();
+		Map<WebElement, Link> linksByElement = new HashMap<WebElement, Link>();
+		List<Link> documentLinks = new ArrayList<Link>();
+		
+		for (WebElement element : driver.findElements(byAnyItemProp()))
+		{
+			propertiesByElement.put(element, new DetachedMicrodataProperty(element.getAttribute("itemprop"),
+				new SeleniumMicrodataProperty(element).getValue()));
+		}
+		
+		for (WebElement element : driver.findElements(byAnyLink()))
+		{
+			Link link = new DetachedLink(driver, element.getAttribute("rel"),
+				nullToEmpty(element.getAttribute("href")));
+			linksByElement.put(element, link);
+			documentLinks.add(link);
+		}
+		
+		List<DetachedMicrodataItem> documentItems = new ArrayList<DetachedMicrodataItem>();
+		
+		for (WebElement element : driver.findElements(byAnyItem()))
+		{
+			documentItems.add(newDetachedItem(element, propertiesByElement, linksByElement));
+		}
+		
+		Map<String, String> cookies = new HashMap<String, String>();
+		
+		for (Cookie cookie : driver.manage().getCookies())
+		{
+			cookies.put(cookie.getName(), cookie.getValue());
+		}
+		
+		return new DetachedMicrodataDocument(documentItems, documentLinks, cookies);
+	}
+	
 	// ----------------------------------------------------------------------------------------------------------------
 	// Hypermedia methods
 	// ----------------------------------------------------------------------------------------------------------------
@@ -128,18 +182,34 @@ class SeleniumMicrodataDocument extends AbstractMicrodataDocument
 	// private methods
 	// ----------------------------------------------------------------------------------------------------------------
 
-	private static By byItemType(URL itemType)
+	private static DetachedMicrodataItem newDetachedItem(WebElement itemElement,
+		Map<WebElement, MicrodataProperty> propertiesByElement, Map<WebElement, Link> linksByElement)
 	{
-		return By.cssSelector(String.format("[itemscope][itemtype='%s']", itemType));
-	}
-	
-	private static By byLink(String rel)
-	{
-		return By.cssSelector(String.format("a[rel='%1$s'], link[rel='%1$s']", rel));
-	}
-	
-	private static By byForm(String name)
-	{
-		return By.cssSelector(String.format("form[name='%s']", name));
+		List<MicrodataProperty> itemProperties = new ArrayList<MicrodataProperty>();
+		List<Link> itemLinks = new ArrayList<Link>();
+		
+		// Selenium elements are equal when they refer to the same element, so these match those of the document
+		for (WebElement element : itemElement.findElements(byAnyItemProp()))
+		{
+			MicrodataProperty property = propertiesByElement.get(element);
+			
+			if (property != null)
+			{
+				itemProperties.add(property);
+			}
+		}
+		
+		for (WebElement element : itemElement.findElements(byAnyLink()))
+		{
+			Link link = linksByElement.get(element);
+			
+			if (link != null)
+			{
+				itemLinks.add(link);
+			}
+		}
+		
+		return new DetachedMicrodataItem(itemElement.getAttribute("itemtype"),
+			nullToEmpty(itemElement.getAttribute("itemid")), itemProperties, itemLinks);
 	}
 }
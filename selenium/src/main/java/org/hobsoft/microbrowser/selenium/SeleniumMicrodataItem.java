@@ -23,13 +23,15 @@ import org.hobsoft.microbrowser.MicrodataItem;
 import org.hobsoft.microbrowser.MicrodataProperty;
 import org.hobsoft.microbrowser.MicrodataPropertyNotFoundException;
 import org.hobsoft.microbrowser.spi.AbstractHypermedia;
-import org.openqa.selenium.By;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
 
 import com.google.common.base.Function;
 import com.google.common.collect.Lists;
 
+import static org.hobsoft.microbrowser.selenium.Selectors.byForm;
+import static org.hobsoft.microbrowser.selenium.Selectors.byItemProp;
+import static org.hobsoft.microbrowser.selenium.Selectors.byLink;
 import static org.hobsoft.microbrowser.spi.Urls.newUrlOrNull;
 
 import static com.google.common.base.Preconditions.checkArgument;
@@ -123,23 +125,4 @@ class SeleniumMicrodataItem extends AbstractHypermedia implements MicrodataItem
 		
 		return type.cast(element);
 	}
-	
-	// ----------------------------------------------------------------------------------------------------------------
-	// private methods
-	// ----------------------------------------------------------------------------------------------------------------
-
-	private static By byItemProp(String itemProp)
-	{
-		return By.cssSelector(String.format("[itemprop='%s']", itemProp));
-	}
-	
-	private static By byLink(String rel)
-	{
-		return By.cssSelector(String.format("a[rel='%1$s'], link[rel='%1$s']", rel));
-	}
-
-	private static By byForm(String name)
-	{
-		return By.cssSelector(String.format("form[name='%s']", name));
-	}
 }
@@ -13,8 +13,12 @@
  */
 package org.hobsoft.microbrowser.spi;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
 import org.hobsoft.microbrowser.Control;
 import org.hobsoft.microbrowser.Form;
+import org.hobsoft.microbrowser.MicrodataDocument;
 
 /**
  * Base {@code Form} implementation.
@@ -41,4 +45,9 @@ public abstract class AbstractForm implements Form
 		
 		return this;
 	}
+	
+	public final CompletableFuture<MicrodataDocument> submitAsync(long timeout, TimeUnit unit)
+	{
+		return CompletableFutures.withTimeout(submitAsync(), timeout, unit);
+	}
 }
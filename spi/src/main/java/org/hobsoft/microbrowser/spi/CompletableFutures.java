@@ -0,0 +1,314 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.spi;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Utility methods for working with {@code CompletableFuture}s.
+ */
+public final class CompletableFutures
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// constants
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static final ExecutorService DEFAULT_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+		.setDaemon(true)
+		.setNameFormat("microbrowser-%d")
+		.build());
+
+	private static final ScheduledThreadPoolExecutor TIMER = newTimer();
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private CompletableFutures()
+	{
+		throw new AssertionError();
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// public methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Gets the executor used to run blocking tasks when no other executor is specified.
+	 *
+	 * @return the shared executor, whose threads are daemon threads
+	 */
+	public static Executor getDefaultExecutor()
+	{
+		return DEFAULT_EXECUTOR;
+	}
+
+	/**
+	 * Runs the specified blocking task on the specified executor.
+	 * <p>
+	 * Unlike {@code CompletableFuture.supplyAsync}, cancelling the returned future interrupts the task.
+	 *
+	 * @param task
+	 *            the task to run
+	 * @param executor
+	 *            the executor to run the task on
+	 * @return a future for the result of the task, which completes exceptionally with any exception thrown by the task
+	 */
+	public static <T> CompletableFuture<T> supplyAsync(final Callable<T> task, Executor executor)
+	{
+		checkNotNull(task, "task");
+		checkNotNull(executor, "executor");
+
+		final CompletableFuture<T> future = new CompletableFuture<T>();
+
+		final FutureTask<Void> futureTask = new FutureTask<Void>(new Runnable()
+		{
+			public void run()
+			{
+				try
+				{
+					future.complete(task.call());
+				}
+				catch (Throwable throwable)
+				{
+					future.completeExceptionally(throwable);
+				}
+			}
+		}, null);
+
+		cancelOnFailure(future, futureTask);
+		executor.execute(futureTask);
+
+		return future;
+	}
+
+	/**
+	 * Completes the specified future exceptionally with a {@code TimeoutException} if it has not completed within the
+	 * specified time.
+	 *
+	 * @param future
+	 *            the future to time out
+	 * @param timeout
+	 *            the maximum time to wait
+	 * @param unit
+	 *            the time unit of the timeout
+	 * @return the specified future
+	 */
+	public static <T> CompletableFuture<T> withTimeout(final CompletableFuture<T> future, final long timeout,
+		final TimeUnit unit)
+	{
+		checkNotNull(future, "future");
+		checkArgument(timeout >= 0, "timeout must be non-negative: %s", timeout);
+		checkNotNull(unit, "unit");
+
+		final ScheduledFuture<?> timer = TIMER.schedule(new Runnable()
+		{
+			public void run()
+			{
+				future.completeExceptionally(new TimeoutException("Timed out after " + timeout + " "
+					+ unit.toString().toLowerCase()));
+			}
+		}, timeout, unit);
+
+		future.whenComplete(new BiConsumer<T, Throwable>()
+		{
+			public void accept(T result, Throwable throwable)
+			{
+				timer.cancel(false);
+			}
+		});
+
+		return future;
+	}
+
+	/**
+	 * Gets a future that completes after the specified delay.
+	 * <p>
+	 * Cancelling the returned future releases its timer.
+	 *
+	 * @param delay
+	 *            the time to wait
+	 * @param unit
+	 *            the time unit of the delay
+	 * @return a future that completes with {@code null} once the delay has elapsed
+	 */
+	public static CompletableFuture<Void> delay(long delay, TimeUnit unit)
+	{
+		checkArgument(delay >= 0, "delay must be non-negative: %s", delay);
+		checkNotNull(unit, "unit");
+
+		final CompletableFuture<Void> future = new CompletableFuture<Void>();
+
+		ScheduledFuture<?> timer = TIMER.schedule(new Runnable()
+		{
+			public void run()
+			{
+				future.complete(null);
+			}
+		}, delay, unit);
+
+		return cancelOnFailure(future, timer);
+	}
+
+	/**
+	 * Cancels the specified upstream future when the specified future completes exceptionally, for example when it is
+	 * cancelled or times out.
+	 *
+	 * @param future
+	 *            the future to observe
+	 * @param upstream
+	 *            the future to cancel
+	 * @return the specified future
+	 */
+	public static <T> CompletableFuture<T> cancelOnFailure(CompletableFuture<T> future, final Future<?> upstream)
+	{
+		checkNotNull(upstream, "upstream");
+
+		future.whenComplete(new BiConsumer<T, Throwable>()
+		{
+			public void accept(T result, Throwable throwable)
+			{
+				if (throwable != null)
+				{
+					upstream.cancel(true);
+				}
+			}
+		});
+
+		return future;
+	}
+
+	/**
+	 * Combines the specified futures into a single future for all of their results, as a structured unit.
+	 * <p>
+	 * The returned future completes exceptionally as soon as any of the specified futures fails, and completing it
+	 * exceptionally in any way, including a failure, cancellation or timeout, cancels the futures that are still in
+	 * progress.
+	 *
+	 * @param futures
+	 *            the futures to combine
+	 * @return a future for the results, in the same order as the specified futures
+	 */
+	public static <T> CompletableFuture<List<T>> allAsList(List<? extends CompletableFuture<? extends T>> futures)
+	{
+		final List<CompletableFuture<? extends T>> children = new ArrayList<CompletableFuture<? extends T>>(futures);
+		final CompletableFuture<List<T>> result = new CompletableFuture<List<T>>();
+		final AtomicInteger remaining = new AtomicInteger(children.size());
+
+		for (CompletableFuture<? extends T> child : children)
+		{
+			cancelOnFailure(result, child);
+
+			child.whenComplete(new BiConsumer<T, Throwable>()
+			{
+				public void accept(T value, Throwable throwable)
+				{
+					if (throwable != null)
+					{
+						result.completeExceptionally(unwrap(throwable));
+					}
+					else if (remaining.decrementAndGet() == 0)
+					{
+						result.complete(join(children));
+					}
+				}
+			});
+		}
+
+		if (children.isEmpty())
+		{
+			result.complete(Collections.<T>emptyList());
+		}
+
+		return result;
+	}
+
+	public static <T> CompletableFuture<T> failedFuture(Throwable throwable)
+	{
+		CompletableFuture<T> future = new CompletableFuture<T>();
+		future.completeExceptionally(throwable);
+		return future;
+	}
+
+	/**
+	 * Gets the underlying cause of an exception that completed a future.
+	 *
+	 * @param throwable
+	 *            the exception
+	 * @return the cause of the exception if it is a {@code CompletionException} or {@code ExecutionException},
+	 *         otherwise the exception itself
+	 */
+	public static Throwable unwrap(Throwable throwable)
+	{
+		Throwable cause = throwable;
+
+		while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+			&& cause.getCause() != null)
+		{
+			cause = cause.getCause();
+		}
+
+		return cause;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static <T> List<T> join(List<CompletableFuture<? extends T>> futures)
+	{
+		List<T> results = new ArrayList<T>(futures.size());
+
+		for (CompletableFuture<? extends T> future : futures)
+		{
+			results.add(future.join());
+		}
+
+		return results;
+	}
+
+	private static ScheduledThreadPoolExecutor newTimer()
+	{
+		ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder()
+			.setDaemon(true)
+			.setNameFormat("microbrowser-timer-%d")
+			.build());
+
+		timer.setRemoveOnCancelPolicy(true);
+
+		return timer;
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.spi;
+
+import java.util.List;
+import java.util.Map;
+
+import org.hobsoft.microbrowser.CookieNotFoundException;
+import org.hobsoft.microbrowser.Form;
+import org.hobsoft.microbrowser.FormNotFoundException;
+import org.hobsoft.microbrowser.Link;
+import org.hobsoft.microbrowser.MicrodataDocument;
+import org.hobsoft.microbrowser.MicrodataItem;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+
+import static org.hobsoft.microbrowser.spi.DetachedMicrodataItem.normalize;
+import static org.hobsoft.microbrowser.spi.Urls.newUrl;
+
+/**
+ * Immutable {@code MicrodataDocument} that retains only the items, links and cookies of a document.
+ * <p>
+ * Each engine copies its document into detached items, properties and links, sharing a copy between the items that
+ * contain the same element, and its links are followed by the engine that they were detached from. Items match by
+ * type ignoring case and surrounding whitespace, and links by whole relation or relation token. Detached documents
+ * have no forms and cannot be unwrapped.
+ */
+public final class DetachedMicrodataDocument extends AbstractMicrodataDocument
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private final ImmutableListMultimap<String, MicrodataItem> itemsByType;
+	
+	private final List<Link> links;
+	
+	private final Map<String, String> cookies;
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Creates a detached document.
+	 * 
+	 * @param items
+	 *            the items of the document, in document order
+	 * @param links
+	 *            the links of the document, in document order
+	 * @param cookies
+	 *            the cookie values of the document by name
+	 */
+	public DetachedMicrodataDocument(List<DetachedMicrodataItem> items, List<? extends Link> links,
+		Map<String, String> cookies)
+	{
+		ImmutableListMultimap.Builder<String, MicrodataItem> documentItems = ImmutableListMultimap.builder();
+		
+		for (DetachedMicrodataItem item : items)
+		{
+			documentItems.put(normalize(item.getItemType()), item);
+		}
+		
+		itemsByType = documentItems.build();
+		this.links = ImmutableList.<Link>copyOf(links);
+		this.cookies = ImmutableMap.copyOf(cookies);
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// MicrodataDocument methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public List<MicrodataItem> getItems(String type)
+	{
+		return itemsByType.get(normalize(newUrl(type).toString()));
+	}
+	
+	public String getCookie(String name)
+	{
+		String value = cookies.get(name);
+		
+		if (value == null)
+		{
+			throw new CookieNotFoundException(name);
+		}
+		
+		return value;
+	}
+	
+	public MicrodataDocument detach()
+	{
+		return this;
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// Hypermedia methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public List<Link> getLinks(String rel)
+	{
+		return DetachedMicrodataItem.getLinks(links, rel);
+	}
+
+	public Form getForm(String name)
+	{
+		throw new FormNotFoundException(name);
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// Unwrappable methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public <T> T unwrap(Class<T> type)
+	{
+		throw new IllegalArgumentException("Cannot unwrap to: " + type);
+	}
+}
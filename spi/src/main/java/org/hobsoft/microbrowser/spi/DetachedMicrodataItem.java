@@ -0,0 +1,165 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.spi;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+import org.hobsoft.microbrowser.Form;
+import org.hobsoft.microbrowser.FormNotFoundException;
+import org.hobsoft.microbrowser.Link;
+import org.hobsoft.microbrowser.MicrodataItem;
+import org.hobsoft.microbrowser.MicrodataProperty;
+import org.hobsoft.microbrowser.MicrodataPropertyNotFoundException;
+
+import com.google.common.collect.ImmutableList;
+
+import static org.hobsoft.microbrowser.spi.Urls.newUrlOrNull;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Immutable {@code MicrodataItem} that retains only the type, id, properties and links of an item.
+ * <p>
+ * Properties match by name ignoring case and surrounding whitespace, and links by whole relation or relation token as
+ * a {@code DetachedMicrodataDocument} does. Detached items have no forms.
+ */
+public final class DetachedMicrodataItem extends AbstractHypermedia implements MicrodataItem
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// constants
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private final String itemType;
+	
+	private final String itemId;
+	
+	private final List<MicrodataProperty> properties;
+	
+	private final List<Link> links;
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public DetachedMicrodataItem(String itemType, String itemId, List<MicrodataProperty> properties,
+		List<? extends Link> links)
+	{
+		this.itemType = checkNotNull(itemType, "itemType");
+		this.itemId = checkNotNull(itemId, "itemId");
+		this.properties = ImmutableList.copyOf(properties);
+		this.links = ImmutableList.<Link>copyOf(links);
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// MicrodataItem methods
+	// ----------------------------------------------------------------------------------------------------------------
+	
+	public URL getId()
+	{
+		return newUrlOrNull(itemId);
+	}
+
+	public URL getType()
+	{
+		return newUrlOrNull(itemType);
+	}
+
+	public MicrodataProperty getProperty(String name)
+	{
+		String key = checkNotNull(name, "name").trim();
+		
+		for (MicrodataProperty property : properties)
+		{
+			if (key.equalsIgnoreCase(property.getName().trim()))
+			{
+				return property;
+			}
+		}
+		
+		throw new MicrodataPropertyNotFoundException(name);
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// Hypermedia methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public List<Link> getLinks(String rel)
+	{
+		return getLinks(links, rel);
+	}
+	
+	public Form getForm(String name)
+	{
+		throw new FormNotFoundException(name);
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// Unwrappable methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public <T> T unwrap(Class<T> type)
+	{
+		throw new IllegalArgumentException("Cannot unwrap to: " + type);
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// package-private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Gets the type of this item as written.
+	 */
+	String getItemType()
+	{
+		return itemType;
+	}
+	
+	/**
+	 * Gets the specified links whose whole relation or any relation token is the specified relation, ignoring case and
+	 * surrounding whitespace.
+	 */
+	static List<Link> getLinks(List<Link> links, String rel)
+	{
+		String key = normalize(checkNotNull(rel, "rel"));
+		List<Link> relLinks = new ArrayList<Link>();
+		
+		for (Link link : links)
+		{
+			String linkRel = normalize(link.getRel());
+			
+			if (linkRel.equals(key) || Arrays.asList(WHITESPACE.split(linkRel)).contains(key))
+			{
+				relLinks.add(link);
+			}
+		}
+		
+		return relLinks;
+	}
+	
+	static String normalize(String value)
+	{
+		return value.trim().toLowerCase(Locale.ENGLISH);
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.spi;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Immutable {@code MicrodataProperty} that retains only the name and resolved value of a property.
+ */
+public final class DetachedMicrodataProperty extends AbstractMicrodataProperty
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private final String name;
+	
+	private final String value;
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public DetachedMicrodataProperty(String name, String value)
+	{
+		this.name = checkNotNull(name, "name");
+		this.value = checkNotNull(value, "value");
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// Unwrappable methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public <T> T unwrap(Class<T> type)
+	{
+		throw new IllegalArgumentException("Cannot unwrap to: " + type);
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// AbstractMicrodataProperty methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Override
+	protected String getElementName()
+	{
+		// the value is already resolved, so it is read as the text of an element without a value attribute
+		return "";
+	}
+
+	@Override
+	protected String getAttribute(String attributeName, boolean absoluteUrl)
+	{
+		return "itemprop".equals(attributeName) ? name : "";
+	}
+
+	@Override
+	protected String getText()
+	{
+		return value;
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.spi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.hobsoft.microbrowser.Hypermedia;
+import org.hobsoft.microbrowser.Link;
+import org.hobsoft.microbrowser.MicrodataDocument;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Utility methods for working with {@code Link}s.
+ */
+public final class Links
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private Links()
+	{
+		throw new AssertionError();
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// public methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Follows all the specified links concurrently.
+	 * <p>
+	 * The links are followed as a structured unit: if any link fails then the others are cancelled, and cancelling the
+	 * returned future cancels them all. The links must belong to an engine that supports concurrent navigation, such as
+	 * jsoup; combine with a {@code PooledTransport} that uses a {@linkplain VirtualThreads#newExecutor() virtual thread
+	 * executor} to follow very large numbers of links without exhausting platform threads.
+	 * 
+	 * @param links
+	 *            the links to follow
+	 * @return a future for the responses as microdata documents, in the same order as the links
+	 * @throws IllegalArgumentException
+	 *             if any href is not a valid URL
+	 */
+	public static CompletableFuture<List<MicrodataDocument>> followAll(List<? extends Link> links)
+	{
+		List<CompletableFuture<MicrodataDocument>> futures = new ArrayList<CompletableFuture<MicrodataDocument>>();
+		
+		try
+		{
+			for (Link link : links)
+			{
+				futures.add(link.followAsync());
+			}
+		}
+		catch (RuntimeException exception)
+		{
+			cancelAll(futures);
+			throw exception;
+		}
+		
+		return CompletableFutures.allAsList(futures);
+	}
+	
+	/**
+	 * Follows all the links with the specified relationship concurrently.
+	 * 
+	 * @param hypermedia
+	 *            the container of the links to follow
+	 * @param rel
+	 *            the relationship of the links to follow
+	 * @return a future for the responses as microdata documents, in document order
+	 * @throws IllegalArgumentException
+	 *             if any href is not a valid URL
+	 * @see #followAll(List)
+	 */
+	public static CompletableFuture<List<MicrodataDocument>> followAll(Hypermedia hypermedia, String rel)
+	{
+		checkNotNull(hypermedia, "hypermedia");
+		
+		return followAll(hypermedia.getLinks(rel));
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static void cancelAll(List<CompletableFuture<MicrodataDocument>> futures)
+	{
+		for (CompletableFuture<MicrodataDocument> future : futures)
+		{
+			future.cancel(true);
+		}
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.spi;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Utility methods for working with virtual threads when the runtime supports them.
+ * <p>
+ * Virtual threads are available on Java 21 and later. They are looked up reflectively so that this module continues
+ * to run on earlier versions.
+ */
+public final class VirtualThreads
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// constants
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static final Method NEW_EXECUTOR_METHOD = findNewExecutorMethod();
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private VirtualThreads()
+	{
+		throw new AssertionError();
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// public methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public static boolean isAvailable()
+	{
+		return NEW_EXECUTOR_METHOD != null;
+	}
+
+	/**
+	 * Creates an executor that runs each task on a new virtual thread.
+	 * <p>
+	 * This is suitable for {@code PooledTransport}, which blocks a thread for each asynchronous request in progress.
+	 *
+	 * @return the executor
+	 * @throws UnsupportedOperationException
+	 *             if the runtime does not support virtual threads
+	 */
+	public static ExecutorService newExecutor()
+	{
+		if (!isAvailable())
+		{
+			throw new UnsupportedOperationException("Virtual threads require Java 21 or later");
+		}
+
+		try
+		{
+			return (ExecutorService) NEW_EXECUTOR_METHOD.invoke(null);
+		}
+		catch (IllegalAccessException exception)
+		{
+			throw new IllegalStateException("Cannot create virtual thread executor", exception);
+		}
+		catch (InvocationTargetException exception)
+		{
+			throw new IllegalStateException("Cannot create virtual thread executor", exception.getCause());
+		}
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static Method findNewExecutorMethod()
+	{
+		try
+		{
+			return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		}
+		catch (NoSuchMethodException exception)
+		{
+			return null;
+		}
+	}
+}
@@ -0,0 +1,417 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.spi.http;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+
+import org.hobsoft.microbrowser.spi.CompletableFutures;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Base {@code Transport} implementation that follows redirects.
+ * <p>
+ * Permanent redirects, {@code 301 Moved Permanently} and {@code 308 Permanent Redirect}, received for {@code GET}
+ * requests are remembered unless their response forbids caching, so that later {@code GET} requests to the same URL are
+ * sent directly to the redirect target. Any cookies set by the skipped redirect responses are not sent again. Temporary
+ * redirects are always followed anew.
+ */
+public abstract class AbstractTransport implements Transport
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// constants
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static final int MAX_REDIRECTS = 20;
+
+	private static final int DEFAULT_MAX_PERMANENT_REDIRECTS = 1000;
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private volatile Cache<String, URL> permanentRedirects;
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	protected AbstractTransport()
+	{
+		permanentRedirects = newPermanentRedirects(DEFAULT_MAX_PERMANENT_REDIRECTS);
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// Transport methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public final HttpResponse execute(HttpRequest request) throws IOException
+	{
+		checkProtocol(request.getUrl());
+		request = request.start();
+
+		Map<String, String> cookies = new LinkedHashMap<String, String>();
+		HttpRequest nextRequest = resolvePermanentRedirects(request);
+		int redirects = 0;
+
+		while (true)
+		{
+			HttpResponse response = send(nextRequest);
+			cookies.putAll(response.getCookies());
+
+			HttpRequest redirectRequest = getRedirectRequest(request, nextRequest, response, cookies, redirects);
+			rememberPermanentRedirect(nextRequest, response, redirectRequest);
+
+			if (redirectRequest == null)
+			{
+				return withCookies(response, cookies);
+			}
+
+			nextRequest = redirectRequest;
+			redirects++;
+		}
+	}
+
+	public final CompletableFuture<HttpResponse> executeAsync(HttpRequest request)
+	{
+		try
+		{
+			checkProtocol(request.getUrl());
+		}
+		catch (MalformedURLException exception)
+		{
+			return CompletableFutures.failedFuture(exception);
+		}
+
+		request = request.start();
+		CompletableFuture<HttpResponse> result = new CompletableFuture<HttpResponse>();
+
+		executeAsync(request, resolvePermanentRedirects(request), new LinkedHashMap<String, String>(), 0, result);
+
+		return result;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// public methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Forgets all remembered permanent redirects.
+	 */
+	public void clearPermanentRedirects()
+	{
+		permanentRedirects.invalidateAll();
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// protected methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Sets the maximum number of permanent redirects to remember, discarding those already remembered.
+	 *
+	 * @param maxPermanentRedirects
+	 *            the maximum number of redirects, where the least recently used are forgotten first, or zero to always
+	 *            follow permanent redirects anew
+	 */
+	protected final void setMaxPermanentRedirects(int maxPermanentRedirects)
+	{
+		checkArgument(maxPermanentRedirects >= 0, "maxPermanentRedirects must be non-negative: %s",
+			maxPermanentRedirects);
+
+		permanentRedirects = newPermanentRedirects(maxPermanentRedirects);
+	}
+
+	/**
+	 * Exchanges a single request and response without following redirects.
+	 *
+	 * @param request
+	 *            the request to send
+	 * @return the response
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	protected abstract HttpResponse send(HttpRequest request) throws IOException;
+
+	/**
+	 * Exchanges a single request and response without following redirects, closing any connection in use if the
+	 * exchange is cancelled.
+	 * <p>
+	 * By default this ignores the cancellation and calls {@link #send(HttpRequest)}. Subclasses that block on a
+	 * connection should override this to register the connection with the cancellation.
+	 *
+	 * @param request
+	 *            the request to send
+	 * @param cancellation
+	 *            the cancellation of the asynchronous exchange
+	 * @return the response
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	protected HttpResponse send(HttpRequest request, Cancellation cancellation) throws IOException
+	{
+		return send(request);
+	}
+
+	/**
+	 * Asynchronously exchanges a single request and response without following redirects.
+	 * <p>
+	 * By default this runs {@link #send(HttpRequest, Cancellation)} on the {@linkplain #getExecutor() executor} and
+	 * both interrupts it and cancels the exchange when the returned future is cancelled. Subclasses with a non-blocking
+	 * implementation should override this.
+	 *
+	 * @param request
+	 *            the request to send
+	 * @return a future for the response
+	 */
+	protected CompletableFuture<HttpResponse> sendAsync(final HttpRequest request)
+	{
+		final Cancellation cancellation = new Cancellation();
+
+		CompletableFuture<HttpResponse> future = CompletableFutures.supplyAsync(new Callable<HttpResponse>()
+		{
+			public HttpResponse call() throws IOException
+			{
+				return send(request, cancellation);
+			}
+		}, getExecutor());
+
+		future.whenComplete(new BiConsumer<HttpResponse, Throwable>()
+		{
+			public void accept(HttpResponse response, Throwable throwable)
+			{
+				if (throwable != null)
+				{
+					cancellation.cancel();
+				}
+			}
+		});
+
+		return future;
+	}
+
+	/**
+	 * Gets the executor that runs blocking sends for asynchronous requests.
+	 *
+	 * @return the executor
+	 */
+	protected Executor getExecutor()
+	{
+		return CompletableFutures.getDefaultExecutor();
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private void executeAsync(final HttpRequest request, final HttpRequest nextRequest,
+		final Map<String, String> cookies, final int redirects, final CompletableFuture<HttpResponse> result)
+	{
+		final CompletableFuture<HttpResponse> sent = sendAsync(nextRequest);
+
+		// abort the exchange in progress if the result is cancelled or times out
+		CompletableFutures.cancelOnFailure(result, sent);
+
+		sent.whenComplete(new BiConsumer<HttpResponse, Throwable>()
+		{
+			public void accept(HttpResponse response, Throwable throwable)
+			{
+				if (throwable != null)
+				{
+					result.completeExceptionally(CompletableFutures.unwrap(throwable));
+					return;
+				}
+
+				HttpRequest redirectRequest;
+
+				try
+				{
+					cookies.putAll(response.getCookies());
+					redirectRequest = getRedirectRequest(request, nextRequest, response, cookies, redirects);
+					rememberPermanentRedirect(nextRequest, response, redirectRequest);
+				}
+				catch (IOException exception)
+				{
+					result.completeExceptionally(exception);
+					return;
+				}
+
+				if (redirectRequest == null)
+				{
+					result.complete(withCookies(response, cookies));
+				}
+				else if (!result.isDone())
+				{
+					executeAsync(request, redirectRequest, cookies, redirects + 1, result);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Gets the request to send in place of the specified request by skipping any remembered permanent redirects.
+	 */
+	private HttpRequest resolvePermanentRedirects(HttpRequest request)
+	{
+		if (!HttpRequest.GET.equals(request.getMethod()))
+		{
+			return request;
+		}
+
+		URL url = request.getUrl();
+
+		// bound the chain in case remembered redirects form a cycle
+		for (int redirects = 0; redirects < MAX_REDIRECTS; redirects++)
+		{
+			URL target = permanentRedirects.getIfPresent(url.toExternalForm());
+
+			if (target == null)
+			{
+				break;
+			}
+
+			url = target;
+		}
+
+		if (url == request.getUrl())
+		{
+			return request;
+		}
+
+		return request.withUrl(url);
+	}
+
+	private void rememberPermanentRedirect(HttpRequest request, HttpResponse response, HttpRequest redirectRequest)
+	{
+		int statusCode = response.getStatusCode();
+
+		if (redirectRequest == null || !HttpRequest.GET.equals(request.getMethod())
+			|| (statusCode != 301 && statusCode != 308))
+		{
+			return;
+		}
+
+		CacheControl cacheControl = CacheControl.parse(response.getHeaders("Cache-Control"));
+
+		if (cacheControl.isNoStore() || cacheControl.isNoCache())
+		{
+			return;
+		}
+
+		permanentRedirects.put(request.getUrl().toExternalForm(), redirectRequest.getUrl());
+	}
+
+	private static Cache<String, URL> newPermanentRedirects(int maxPermanentRedirects)
+	{
+		return CacheBuilder.newBuilder()
+			.maximumSize(maxPermanentRedirects)
+			.build();
+	}
+
+	/**
+	 * Gets the request to follow the specified response with.
+	 *
+	 * @return the redirect request, or {@code null} if the response is not a redirect
+	 */
+	private static HttpRequest getRedirectRequest(HttpRequest request, HttpRequest lastRequest,
+		HttpResponse response, Map<String, String> cookies, int redirects) throws IOException
+	{
+		String location = response.getHeader("Location");
+
+		if (!isRedirect(response.getStatusCode()) || location == null)
+		{
+			return null;
+		}
+
+		if (redirects == MAX_REDIRECTS)
+		{
+			throw new IOException("Too many redirects occurred trying to load URL " + request.getUrl());
+		}
+
+		return newRedirectRequest(lastRequest, response, location, cookies);
+	}
+
+	private static HttpResponse withCookies(HttpResponse response, Map<String, String> cookies)
+	{
+		return cookies.equals(response.getCookies()) ? response : response.withCookies(cookies);
+	}
+
+	private static boolean isRedirect(int statusCode)
+	{
+		return statusCode == 301 || statusCode == 302 || statusCode == 303 || statusCode == 307 || statusCode == 308;
+	}
+
+	private static HttpRequest newRedirectRequest(HttpRequest request, HttpResponse response, String location,
+		Map<String, String> cookies) throws IOException
+	{
+		URL url;
+
+		try
+		{
+			url = new URL(response.getUrl(), location);
+		}
+		catch (MalformedURLException exception)
+		{
+			throw new IOException("Invalid redirect location: " + location, exception);
+		}
+
+		checkProtocol(url);
+
+		int statusCode = response.getStatusCode();
+		HttpRequest redirectRequest;
+
+		if (statusCode == 307 || statusCode == 308)
+		{
+			redirectRequest = request.withUrl(url);
+		}
+		else
+		{
+			// always redirect with a GET and drop any request body
+			redirectRequest = new HttpRequest(HttpRequest.GET, url).withCookies(request.getCookies())
+				.withBodyScanner(request.getBodyScanner())
+				.withStartOf(request);
+
+			for (Map.Entry<String, String> header : request.getHeaders().entrySet())
+			{
+				if (!"Content-Type".equalsIgnoreCase(header.getKey()))
+				{
+					redirectRequest = redirectRequest.withHeader(header.getKey(), header.getValue());
+				}
+			}
+		}
+
+		return redirectRequest.withCookies(cookies);
+	}
+
+	private static void checkProtocol(URL url) throws MalformedURLException
+	{
+		String protocol = url.getProtocol();
+
+		if (!"http".equals(protocol) && !"https".equals(protocol))
+		{
+			throw new MalformedURLException("Only http & https protocols supported");
+		}
+	}
+}
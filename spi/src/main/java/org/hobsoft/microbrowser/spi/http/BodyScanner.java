@@ -0,0 +1,50 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.spi.http;
+
+/**
+ * Decides while a response body is being received whether enough of it has arrived.
+ * <p>
+ * A transport that supports scanning passes the decoded body of each response to a new scan as it arrives, and stops
+ * receiving the body once the scan is satisfied. The response is then truncated and its connection is not reused.
+ * Transports that do not support scanning, and responses served from a cache, have complete bodies.
+ */
+public interface BodyScanner
+{
+	/**
+	 * Starts scanning a new response body.
+	 *
+	 * @return the scan, which is used by a single thread
+	 */
+	Scan newScan();
+
+	/**
+	 * The state of scanning a single response body.
+	 */
+	interface Scan
+	{
+		/**
+		 * Scans the next part of the body.
+		 *
+		 * @param bytes
+		 *            the buffer holding the decoded bytes
+		 * @param offset
+		 *            the offset of the bytes within the buffer
+		 * @param length
+		 *            the number of bytes
+		 * @return {@code true} if enough of the body has now been received
+		 */
+		boolean update(byte[] bytes, int offset, int length);
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.spi.http;
+
+import java.util.List;
+
+/**
+ * Parsed {@code Cache-Control} response directives that are relevant to a private cache.
+ */
+final class CacheControl
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private boolean noStore;
+
+	private boolean noCache;
+
+	private long maxAgeSeconds;
+
+	private long staleWhileRevalidateSeconds;
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private CacheControl()
+	{
+		maxAgeSeconds = -1;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// public methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Parses the specified {@code Cache-Control} header values.
+	 *
+	 * @param values
+	 *            the header values, each of which may contain several comma-separated directives
+	 * @return the directives
+	 */
+	public static CacheControl parse(List<String> values)
+	{
+		CacheControl cacheControl = new CacheControl();
+
+		for (String value : values)
+		{
+			for (String directive : value.split(","))
+			{
+				cacheControl.parseDirective(directive.trim());
+			}
+		}
+
+		return cacheControl;
+	}
+
+	public boolean isNoStore()
+	{
+		return noStore;
+	}
+
+	public boolean isNoCache()
+	{
+		return noCache;
+	}
+
+	/**
+	 * Gets the {@code max-age} directive.
+	 *
+	 * @return the maximum age in seconds, or {@code -1} if not present
+	 */
+	public long getMaxAgeSeconds()
+	{
+		return maxAgeSeconds;
+	}
+
+	/**
+	 * Gets the {@code stale-while-revalidate} directive.
+	 *
+	 * @return the time in seconds that a stale response may be used while it is revalidated, or zero if not present
+	 */
+	public long getStaleWhileRevalidateSeconds()
+	{
+		return staleWhileRevalidateSeconds;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private void parseDirective(String directive)
+	{
+		int equals = directive.indexOf('=');
+		String name = (equals != -1) ? directive.substring(0, equals).trim() : directive;
+		String argument = (equals != -1) ? directive.substring(equals + 1).trim().replace("\"", "") : null;
+
+		if ("no-store".equalsIgnoreCase(name))
+		{
+			noStore = true;
+		}
+		else if ("no-cache".equalsIgnoreCase(name))
+		{
+			noCache = true;
+		}
+		else if ("max-age".equalsIgnoreCase(name))
+		{
+			maxAgeSeconds = parseSeconds(argument);
+
+			// treat an invalid max-age as already stale
+			if (maxAgeSeconds == -1)
+			{
+				maxAgeSeconds = 0;
+			}
+		}
+		else if ("stale-while-revalidate".equalsIgnoreCase(name))
+		{
+			staleWhileRevalidateSeconds = Math.max(parseSeconds(argument), 0);
+		}
+	}
+
+	private static long parseSeconds(String argument)
+	{
+		if (argument == null)
+		{
+			return -1;
+		}
+
+		try
+		{
+			return Math.max(Long.parseLong(argument), 0);
+		}
+		catch (NumberFormatException exception)
+		{
+			return -1;
+		}
+	}
+}
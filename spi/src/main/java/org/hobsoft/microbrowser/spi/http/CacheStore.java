@@ -0,0 +1,65 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.spi.http;
+
+import java.io.IOException;
+
+/**
+ * Defines storage for the responses held by a {@code CachingTransport}.
+ */
+public interface CacheStore
+{
+	/**
+	 * Gets the response stored under the specified key.
+	 *
+	 * @param key
+	 *            the cache key
+	 * @return the stored response, or {@code null} if none is stored
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	CachedResponse get(String key) throws IOException;
+
+	/**
+	 * Stores the specified response under the specified key, replacing any response already stored under it.
+	 * <p>
+	 * A store may decline to store a response, for example if it is larger than the store's capacity.
+	 *
+	 * @param key
+	 *            the cache key
+	 * @param response
+	 *            the response to store
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	void put(String key, CachedResponse response) throws IOException;
+
+	/**
+	 * Removes any response stored under the specified key.
+	 *
+	 * @param key
+	 *            the cache key
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	void remove(String key) throws IOException;
+
+	/**
+	 * Removes all stored responses.
+	 *
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	void clear() throws IOException;
+}
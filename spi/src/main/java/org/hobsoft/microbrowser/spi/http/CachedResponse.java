@@ -0,0 +1,94 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.spi.http;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * An immutable response held by a {@code CacheStore}, together with the information needed to select and reuse it.
+ */
+public final class CachedResponse
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private final HttpResponse response;
+
+	private final Map<String, String> varyValues;
+
+	private final long requestTimeMillis;
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Creates a new cached response.
+	 *
+	 * @param response
+	 *            the response
+	 * @param varyValues
+	 *            the values of the request headers nominated by the response's {@code Vary} header, where a
+	 *            {@code null} value denotes an absent header
+	 * @param requestTimeMillis
+	 *            the time that the request for the response was sent, in milliseconds since the epoch
+	 */
+	public CachedResponse(HttpResponse response, Map<String, String> varyValues, long requestTimeMillis)
+	{
+		this.response = checkNotNull(response, "response");
+		this.varyValues = Collections.unmodifiableMap(caseInsensitiveCopy(checkNotNull(varyValues, "varyValues")));
+		this.requestTimeMillis = requestTimeMillis;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// public methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public HttpResponse getResponse()
+	{
+		return response;
+	}
+
+	public Map<String, String> getVaryValues()
+	{
+		return varyValues;
+	}
+
+	public long getRequestTimeMillis()
+	{
+		return requestTimeMillis;
+	}
+
+	@Override
+	public String toString()
+	{
+		return response.toString();
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static Map<String, String> caseInsensitiveCopy(Map<String, String> map)
+	{
+		Map<String, String> copy = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+		copy.putAll(map);
+		return copy;
+	}
+}
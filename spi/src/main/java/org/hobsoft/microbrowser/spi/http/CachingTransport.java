@@ -0,0 +1,526 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.spi.http;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import org.hobsoft.microbrowser.spi.CompletableFutures;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Ticker;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@code Transport} decorator that caches responses as a private HTTP cache.
+ * <p>
+ * Successful {@code GET} responses are stored under their request URL and cookies, so that a response for one session
+ * is never reused for another, together with the request headers nominated by their {@code Vary} header. A stored
+ * response is reused without contacting the server while it is fresh according to its {@code Cache-Control: max-age}
+ * directive, and for its {@code stale-while-revalidate} period after that while it is revalidated in the background.
+ * Otherwise it is revalidated with {@code If-None-Match} and {@code If-Modified-Since}, and a {@code 304 Not Modified}
+ * response reuses the stored body. Responses with {@code no-store} are never stored and those with {@code no-cache} are
+ * always revalidated.
+ * <p>
+ * Responses are held by a {@code CacheStore}, which by default is a {@code MemoryCacheStore}. A store that fails is
+ * treated as empty rather than failing the request. Responses reused from a store that retains them in memory share
+ * the same body array, so engines may reuse work derived from it, such as a parsed document.
+ */
+public class CachingTransport implements Transport
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// constants
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static final long DEFAULT_MAX_BYTES = 10 * 1024 * 1024;
+
+	private static final Map<String, String> NO_COOKIES = Collections.<String, String>emptyMap();
+
+	private static final Set<String> UNMERGED_HEADERS = newCaseInsensitiveSet("Connection", "Content-Encoding",
+		"Content-Length", "Keep-Alive", "Set-Cookie", "Transfer-Encoding");
+
+	/**
+	 * Wall-clock time source, since request times may outlive this process in a persistent store.
+	 */
+	private static final Ticker WALL_CLOCK = new Ticker()
+	{
+		@Override
+		public long read()
+		{
+			return TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+		}
+	};
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private final Transport delegate;
+
+	private final CacheStore store;
+
+	private final Ticker ticker;
+
+	private final Set<String> revalidatingKeys;
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public CachingTransport(Transport delegate)
+	{
+		this(delegate, DEFAULT_MAX_BYTES);
+	}
+
+	/**
+	 * Creates a caching transport that stores responses in memory with the specified capacity.
+	 *
+	 * @param delegate
+	 *            the transport to execute requests that cannot be answered from the cache
+	 * @param maxBytes
+	 *            the maximum total size of the stored response bodies
+	 */
+	public CachingTransport(Transport delegate, long maxBytes)
+	{
+		this(delegate, new MemoryCacheStore(maxBytes));
+	}
+
+	/**
+	 * Creates a caching transport that stores responses in the specified store.
+	 *
+	 * @param delegate
+	 *            the transport to execute requests that cannot be answered from the cache
+	 * @param store
+	 *            the store to hold responses in
+	 */
+	public CachingTransport(Transport delegate, CacheStore store)
+	{
+		this(delegate, store, WALL_CLOCK);
+	}
+
+	CachingTransport(Transport delegate, CacheStore store, Ticker ticker)
+	{
+		this.delegate = checkNotNull(delegate, "delegate");
+		this.store = checkNotNull(store, "store");
+		this.ticker = checkNotNull(ticker, "ticker");
+
+		revalidatingKeys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// Transport methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public HttpResponse execute(HttpRequest request) throws IOException
+	{
+		if (!isCacheable(request))
+		{
+			invalidate(request);
+			return delegate.execute(request);
+		}
+
+		long requestTimeMillis = getTimeMillis();
+		CachedResponse cachedResponse = lookup(request);
+		HttpResponse usableResponse = getUsableResponse(request, cachedResponse, requestTimeMillis);
+
+		if (usableResponse != null)
+		{
+			return usableResponse;
+		}
+
+		HttpResponse response = delegate.execute(newConditionalRequest(request, cachedResponse));
+
+		return update(request, cachedResponse, response, requestTimeMillis);
+	}
+
+	public CompletableFuture<HttpResponse> executeAsync(final HttpRequest request)
+	{
+		if (!isCacheable(request))
+		{
+			invalidate(request);
+			return delegate.executeAsync(request);
+		}
+
+		final long requestTimeMillis = getTimeMillis();
+		final CachedResponse cachedResponse = lookup(request);
+		HttpResponse usableResponse = getUsableResponse(request, cachedResponse, requestTimeMillis);
+
+		if (usableResponse != null)
+		{
+			return CompletableFuture.completedFuture(usableResponse);
+		}
+
+		CompletableFuture<HttpResponse> sent = delegate.executeAsync(newConditionalRequest(request, cachedResponse));
+		final CompletableFuture<HttpResponse> result = new CompletableFuture<HttpResponse>();
+
+		sent.whenComplete(new BiConsumer<HttpResponse, Throwable>()
+		{
+			public void accept(HttpResponse response, Throwable throwable)
+			{
+				if (throwable != null)
+				{
+					result.completeExceptionally(CompletableFutures.unwrap(throwable));
+					return;
+				}
+
+				result.complete(update(request, cachedResponse, response, requestTimeMillis));
+			}
+		});
+
+		// abort the request if the result is cancelled or times out
+		return CompletableFutures.cancelOnFailure(result, sent);
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// public methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Removes all stored responses.
+	 *
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public void invalidateAll() throws IOException
+	{
+		store.clear();
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static boolean isCacheable(HttpRequest request)
+	{
+		// requests that are already conditional are the caller's to manage
+		return HttpRequest.GET.equals(request.getMethod())
+			&& request.getHeader("If-None-Match") == null
+			&& request.getHeader("If-Modified-Since") == null;
+	}
+
+	/**
+	 * Invalidates any stored response for the URL of the specified request if it could change the resource.
+	 */
+	private void invalidate(HttpRequest request)
+	{
+		if (!HttpRequest.GET.equals(request.getMethod()) && !"HEAD".equals(request.getMethod()))
+		{
+			remove(getKey(request));
+		}
+	}
+
+	private CachedResponse lookup(HttpRequest request)
+	{
+		CachedResponse cachedResponse;
+
+		try
+		{
+			cachedResponse = store.get(getKey(request));
+		}
+		catch (IOException exception)
+		{
+			// treat a failed store as empty
+			return null;
+		}
+
+		return (cachedResponse != null && matches(cachedResponse, request)) ? cachedResponse : null;
+	}
+
+	/**
+	 * Gets the stored response if it can be used without waiting for revalidation.
+	 *
+	 * @return the stored response, or {@code null} if it must be revalidated first
+	 */
+	private HttpResponse getUsableResponse(HttpRequest request, CachedResponse cachedResponse, long nowMillis)
+	{
+		if (cachedResponse == null)
+		{
+			return null;
+		}
+
+		HttpResponse response = cachedResponse.getResponse();
+		CacheControl cacheControl = CacheControl.parse(response.getHeaders("Cache-Control"));
+		long freshMillis = getFreshMillis(cacheControl);
+		long ageMillis = getAgeMillis(cachedResponse, nowMillis);
+
+		if (ageMillis < freshMillis)
+		{
+			return response;
+		}
+
+		if (freshMillis > 0
+			&& ageMillis < freshMillis + TimeUnit.SECONDS.toMillis(cacheControl.getStaleWhileRevalidateSeconds()))
+		{
+			revalidateInBackground(request, cachedResponse);
+			return response;
+		}
+
+		return null;
+	}
+
+	private void revalidateInBackground(final HttpRequest request, final CachedResponse cachedResponse)
+	{
+		final String key = getKey(request);
+
+		if (!revalidatingKeys.add(key))
+		{
+			return;
+		}
+
+		final long requestTimeMillis = getTimeMillis();
+		CompletableFuture<HttpResponse> sent = delegate.executeAsync(newConditionalRequest(request, cachedResponse));
+
+		sent.whenComplete(new BiConsumer<HttpResponse, Throwable>()
+		{
+			public void accept(HttpResponse response, Throwable throwable)
+			{
+				if (throwable == null)
+				{
+					update(request, cachedResponse, response, requestTimeMillis);
+				}
+
+				// a failed revalidation leaves the stale response to be revalidated by a later request
+				revalidatingKeys.remove(key);
+			}
+		});
+	}
+
+	private static HttpRequest newConditionalRequest(HttpRequest request, CachedResponse cachedResponse)
+	{
+		if (cachedResponse == null)
+		{
+			return request;
+		}
+
+		HttpResponse response = cachedResponse.getResponse();
+
+		return request
+			.withHeader("If-None-Match", response.getHeader("ETag"))
+			.withHeader("If-Modified-Since", response.getHeader("Last-Modified"));
+	}
+
+	/**
+	 * Updates the cache with the specified response.
+	 *
+	 * @return the response to return to the caller
+	 */
+	private HttpResponse update(HttpRequest request, CachedResponse cachedResponse, HttpResponse response,
+		long requestTimeMillis)
+	{
+		String key = getKey(request);
+
+		if (cachedResponse != null && response.getStatusCode() == 304)
+		{
+			HttpResponse storedResponse = merge(cachedResponse.getResponse(), response);
+			put(key, newCachedResponse(request, storedResponse, requestTimeMillis));
+
+			return storedResponse.withCookies(response.getCookies());
+		}
+
+		if (isStorable(response))
+		{
+			// cookies are applied once by the caller rather than each time the response is reused
+			put(key, newCachedResponse(request, response.withCookies(NO_COOKIES), requestTimeMillis));
+		}
+		else
+		{
+			remove(key);
+		}
+
+		return response;
+	}
+
+	private void put(String key, CachedResponse cachedResponse)
+	{
+		try
+		{
+			store.put(key, cachedResponse);
+		}
+		catch (IOException exception)
+		{
+			// the response is still usable even though it could not be stored
+			remove(key);
+		}
+	}
+
+	private void remove(String key)
+	{
+		try
+		{
+			store.remove(key);
+		}
+		catch (IOException exception)
+		{
+			// ignore, since storage is best effort
+		}
+	}
+
+	private long getTimeMillis()
+	{
+		return TimeUnit.NANOSECONDS.toMillis(ticker.read());
+	}
+
+	private static boolean isStorable(HttpResponse response)
+	{
+		CacheControl cacheControl = CacheControl.parse(response.getHeaders("Cache-Control"));
+
+		if (response.getStatusCode() != 200 || response.isTruncated() || cacheControl.isNoStore()
+			|| getVaryHeaders(response).contains("*"))
+		{
+			return false;
+		}
+
+		// responses that can be neither reused nor revalidated are not worth storing
+		return cacheControl.getMaxAgeSeconds() != -1 || response.getHeader("ETag") != null
+			|| response.getHeader("Last-Modified") != null;
+	}
+
+	/**
+	 * Gets how long a response is fresh for, where a response without {@code max-age} or with {@code no-cache} must
+	 * always be revalidated.
+	 */
+	private static long getFreshMillis(CacheControl cacheControl)
+	{
+		if (cacheControl.isNoCache())
+		{
+			return 0;
+		}
+
+		return TimeUnit.SECONDS.toMillis(Math.max(cacheControl.getMaxAgeSeconds(), 0));
+	}
+
+	/**
+	 * Gets the current age of a response, conservatively measured from when its request was sent.
+	 */
+	private static long getAgeMillis(CachedResponse cachedResponse, long nowMillis)
+	{
+		String age = cachedResponse.getResponse().getHeader("Age");
+		long initialAgeSeconds = 0;
+
+		if (age != null)
+		{
+			try
+			{
+				initialAgeSeconds = Math.max(Long.parseLong(age.trim()), 0);
+			}
+			catch (NumberFormatException exception)
+			{
+				initialAgeSeconds = 0;
+			}
+		}
+
+		return TimeUnit.SECONDS.toMillis(initialAgeSeconds) + (nowMillis - cachedResponse.getRequestTimeMillis());
+	}
+
+	/**
+	 * Updates a stored response with the headers of a {@code 304 Not Modified} response.
+	 */
+	private static HttpResponse merge(HttpResponse storedResponse, HttpResponse notModifiedResponse)
+	{
+		Map<String, List<String>> headers = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+		headers.putAll(storedResponse.getHeaders());
+		headers.remove("Age");
+
+		for (Entry<String, List<String>> header : notModifiedResponse.getHeaders().entrySet())
+		{
+			if (!UNMERGED_HEADERS.contains(header.getKey()))
+			{
+				headers.put(header.getKey(), header.getValue());
+			}
+		}
+
+		return new HttpResponse(storedResponse.getUrl(), storedResponse.getStatusCode(),
+			storedResponse.getStatusMessage(), headers, NO_COOKIES, storedResponse.getBody())
+			.withEncodedLength(storedResponse.getEncodedLength());
+	}
+
+	private static CachedResponse newCachedResponse(HttpRequest request, HttpResponse response,
+		long requestTimeMillis)
+	{
+		Map<String, String> varyValues = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+
+		for (String name : getVaryHeaders(response))
+		{
+			varyValues.put(name, getRequestHeader(request, name));
+		}
+
+		return new CachedResponse(response, varyValues, requestTimeMillis);
+	}
+
+	private static boolean matches(CachedResponse cachedResponse, HttpRequest request)
+	{
+		for (Entry<String, String> varyValue : cachedResponse.getVaryValues().entrySet())
+		{
+			if (!Objects.equal(getRequestHeader(request, varyValue.getKey()), varyValue.getValue()))
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static String getKey(HttpRequest request)
+	{
+		String cookieHeader = request.getCookieHeader();
+
+		return request.getUrl().toExternalForm() + ((cookieHeader != null) ? "\n" + cookieHeader : "");
+	}
+
+	private static Set<String> getVaryHeaders(HttpResponse response)
+	{
+		Set<String> names = newCaseInsensitiveSet();
+
+		for (String value : response.getHeaders("Vary"))
+		{
+			for (String name : value.split(","))
+			{
+				if (name.trim().length() > 0)
+				{
+					names.add(name.trim());
+				}
+			}
+		}
+
+		return names;
+	}
+
+	private static String getRequestHeader(HttpRequest request, String name)
+	{
+		return "Cookie".equalsIgnoreCase(name) ? request.getCookieHeader() : request.getHeader(name);
+	}
+
+	private static Set<String> newCaseInsensitiveSet(String... elements)
+	{
+		Set<String> set = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
+
+		for (String element : elements)
+		{
+			set.add(element);
+		}
+
+		return set;
+	}
+}
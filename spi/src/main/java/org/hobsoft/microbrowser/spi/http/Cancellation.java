@@ -0,0 +1,116 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.spi.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * Signals that an asynchronous exchange has been cancelled by closing the resource it is blocked on.
+ * <p>
+ * Threads blocked in socket I/O ignore interrupts, so a transport registers the connection in use while it exchanges a
+ * request and the connection is closed as soon as the exchange is cancelled.
+ */
+public final class Cancellation
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private boolean cancelled;
+
+	private Closeable resource;
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// public methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Registers the resource to close if the exchange is cancelled, replacing any resource already registered.
+	 *
+	 * @param resource
+	 *            the resource in use
+	 * @throws InterruptedIOException
+	 *             if the exchange has already been cancelled, in which case the resource is closed
+	 */
+	public void register(Closeable resource) throws InterruptedIOException
+	{
+		synchronized (this)
+		{
+			if (!cancelled)
+			{
+				this.resource = resource;
+				return;
+			}
+		}
+
+		closeQuietly(resource);
+		throw new InterruptedIOException("Exchange cancelled");
+	}
+
+	/**
+	 * Unregisters any resource once it is no longer in use by the exchange.
+	 */
+	public synchronized void unregister()
+	{
+		resource = null;
+	}
+
+	/**
+	 * Cancels the exchange and closes any resource in use.
+	 */
+	public void cancel()
+	{
+		Closeable resource;
+
+		synchronized (this)
+		{
+			cancelled = true;
+			resource = this.resource;
+			this.resource = null;
+		}
+
+		if (resource != null)
+		{
+			closeQuietly(resource);
+		}
+	}
+
+	/**
+	 * Gets whether the exchange has been cancelled.
+	 *
+	 * @return {@code true} if the exchange has been cancelled
+	 */
+	public synchronized boolean isCancelled()
+	{
+		return cancelled;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static void closeQuietly(Closeable resource)
+	{
+		try
+		{
+			resource.close();
+		}
+		catch (IOException exception)
+		{
+			// ignore
+		}
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.spi.http;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Input stream that decodes an HTTP/1.1 chunked transfer-coded body.
+ */
+final class ChunkedInputStream extends InputStream
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private final InputStream in;
+
+	private long chunkRemaining;
+
+	private boolean eof;
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	ChunkedInputStream(InputStream in)
+	{
+		this.in = checkNotNull(in, "in");
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// InputStream methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Override
+	public int read() throws IOException
+	{
+		byte[] b = new byte[1];
+
+		return (read(b, 0, 1) == -1) ? -1 : (b[0] & 0xff);
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException
+	{
+		if (len == 0)
+		{
+			return 0;
+		}
+
+		if (!nextChunk())
+		{
+			return -1;
+		}
+
+		int read = in.read(b, off, (int) Math.min(len, chunkRemaining));
+
+		if (read == -1)
+		{
+			throw new EOFException("Unexpected end of stream reading chunk");
+		}
+
+		chunkRemaining -= read;
+
+		return read;
+	}
+
+	/**
+	 * Does not close the underlying stream, since the connection may be reused.
+	 */
+	@Override
+	public void close()
+	{
+		// no-op
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private boolean nextChunk() throws IOException
+	{
+		if (eof)
+		{
+			return false;
+		}
+
+		if (chunkRemaining > 0)
+		{
+			return true;
+		}
+
+		chunkRemaining = readChunkSize();
+
+		if (chunkRemaining == 0)
+		{
+			// consume any trailers up to the terminating empty line
+			PooledConnection.skipHeaders(in);
+
+			eof = true;
+			return false;
+		}
+
+		return true;
+	}
+
+	private long readChunkSize() throws IOException
+	{
+		String line = PooledConnection.readLine(in);
+
+		// consume the CRLF that terminates the previous chunk
+		if (line != null && line.isEmpty())
+		{
+			line = PooledConnection.readLine(in);
+		}
+
+		if (line == null)
+		{
+			throw new EOFException("Unexpected end of stream reading chunk size");
+		}
+
+		int extension = line.indexOf(';');
+		String size = (extension != -1) ? line.substring(0, extension) : line;
+
+		try
+		{
+			return Long.parseLong(size.trim(), 16);
+		}
+		catch (NumberFormatException exception)
+		{
+			throw new IOException("Invalid chunk size: " + line);
+		}
+	}
+}
@@ -0,0 +1,32 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.spi.http;
+
+/**
+ * Listens to state changes of the circuits of a {@code CircuitBreakerTransport}.
+ */
+public interface CircuitBreakerListener
+{
+	/**
+	 * Invoked after the circuit for the specified origin changes state.
+	 *
+	 * @param origin
+	 *            the origin, such as {@code https://example.com:443}
+	 * @param from
+	 *            the previous state
+	 * @param to
+	 *            the new state
+	 */
+	void stateChanged(String origin, CircuitState from, CircuitState to);
+}
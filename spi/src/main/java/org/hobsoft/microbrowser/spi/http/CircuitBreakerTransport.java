@@ -0,0 +1,576 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.spi.http;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import org.hobsoft.microbrowser.spi.CompletableFutures;
+
+import com.google.common.base.Ticker;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@code Transport} decorator that stops sending requests to an origin that is failing.
+ * <p>
+ * Each origin has a circuit that is initially closed, while the outcomes of its most recent requests are recorded. A
+ * request fails when it throws an I/O error or its response status is {@code 5xx}, and is slow when it takes longer
+ * than the slow call threshold. Once enough requests have been recorded and either the failure rate or the slow call
+ * rate reaches its threshold, the circuit opens and requests fail immediately with a {@code CircuitOpenException}.
+ * After the open duration the circuit is half-open and lets a few trial requests through, which close the circuit if
+ * they all succeed or reopen it otherwise. Requests that are cancelled, or that fail because of the request itself,
+ * are not recorded.
+ */
+public class CircuitBreakerTransport implements Transport
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// constants
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static final int DEFAULT_WINDOW_SIZE = 20;
+
+	private static final int DEFAULT_MINIMUM_CALLS = 10;
+
+	private static final int DEFAULT_FAILURE_RATE = 50;
+
+	private static final long DEFAULT_SLOW_CALL_SECONDS = 10;
+
+	private static final int DEFAULT_SLOW_CALL_RATE = 100;
+
+	private static final long DEFAULT_OPEN_SECONDS = 30;
+
+	private static final int DEFAULT_HALF_OPEN_CALLS = 1;
+
+	private static final byte FAILED = 1;
+
+	private static final byte SLOW = 2;
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private final Transport delegate;
+
+	private final Ticker ticker;
+
+	private final ConcurrentMap<String, Circuit> circuitsByOrigin;
+
+	private final List<CircuitBreakerListener> listeners;
+
+	private volatile int windowSize;
+
+	private volatile int minimumCalls;
+
+	private volatile int failureRate;
+
+	private volatile long slowCallNanos;
+
+	private volatile int slowCallRate;
+
+	private volatile long openNanos;
+
+	private volatile int halfOpenCalls;
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public CircuitBreakerTransport(Transport delegate)
+	{
+		this(delegate, Ticker.systemTicker());
+	}
+
+	CircuitBreakerTransport(Transport delegate, Ticker ticker)
+	{
+		this.delegate = checkNotNull(delegate, "delegate");
+		this.ticker = checkNotNull(ticker, "ticker");
+
+		circuitsByOrigin = new ConcurrentHashMap<String, Circuit>();
+		listeners = new CopyOnWriteArrayList<CircuitBreakerListener>();
+		windowSize = DEFAULT_WINDOW_SIZE;
+		minimumCalls = DEFAULT_MINIMUM_CALLS;
+		failureRate = DEFAULT_FAILURE_RATE;
+		slowCallNanos = TimeUnit.SECONDS.toNanos(DEFAULT_SLOW_CALL_SECONDS);
+		slowCallRate = DEFAULT_SLOW_CALL_RATE;
+		openNanos = TimeUnit.SECONDS.toNanos(DEFAULT_OPEN_SECONDS);
+		halfOpenCalls = DEFAULT_HALF_OPEN_CALLS;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// Transport methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public HttpResponse execute(HttpRequest request) throws IOException
+	{
+		Circuit circuit = getCircuit(request.getUrl());
+		int generation = circuit.acquire();
+		long startNanos = ticker.read();
+		HttpResponse response = null;
+		IOException failure = null;
+
+		try
+		{
+			response = delegate.execute(request);
+			return response;
+		}
+		catch (IOException exception)
+		{
+			failure = exception;
+			throw exception;
+		}
+		finally
+		{
+			circuit.record(generation, response, failure, ticker.read() - startNanos);
+		}
+	}
+
+	public CompletableFuture<HttpResponse> executeAsync(HttpRequest request)
+	{
+		final Circuit circuit = getCircuit(request.getUrl());
+		final int generation;
+
+		try
+		{
+			generation = circuit.acquire();
+		}
+		catch (CircuitOpenException exception)
+		{
+			return CompletableFutures.failedFuture(exception);
+		}
+
+		final long startNanos = ticker.read();
+		CompletableFuture<HttpResponse> sent = delegate.executeAsync(request);
+
+		sent.whenComplete(new BiConsumer<HttpResponse, Throwable>()
+		{
+			public void accept(HttpResponse response, Throwable throwable)
+			{
+				Throwable cause = (throwable != null) ? CompletableFutures.unwrap(throwable) : null;
+
+				circuit.record(generation, response, cause, ticker.read() - startNanos);
+			}
+		});
+
+		return sent;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// public methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Sets how many of the most recent requests to each origin are recorded, for origins that are first requested
+	 * afterwards.
+	 *
+	 * @param windowSize
+	 *            the number of requests to record
+	 * @param minimumCalls
+	 *            the number of requests that must be recorded before the circuit can open
+	 * @return this transport
+	 */
+	public CircuitBreakerTransport slidingWindow(int windowSize, int minimumCalls)
+	{
+		checkArgument(windowSize >= 1, "windowSize must be positive: %s", windowSize);
+		checkArgument(minimumCalls >= 1 && minimumCalls <= windowSize, "minimumCalls must be between 1 and "
+			+ "windowSize: %s", minimumCalls);
+
+		this.windowSize = windowSize;
+		this.minimumCalls = minimumCalls;
+		return this;
+	}
+
+	/**
+	 * Sets the percentage of recorded requests that must fail to open the circuit.
+	 *
+	 * @param percent
+	 *            the failure rate threshold
+	 * @return this transport
+	 */
+	public CircuitBreakerTransport failureRate(int percent)
+	{
+		checkArgument(percent >= 1 && percent <= 100, "percent must be between 1 and 100: %s", percent);
+
+		failureRate = percent;
+		return this;
+	}
+
+	/**
+	 * Sets when requests are slow and the percentage of recorded requests that must be slow to open the circuit.
+	 *
+	 * @param duration
+	 *            the time after which a request is slow
+	 * @param unit
+	 *            the time unit of the duration
+	 * @param percent
+	 *            the slow call rate threshold
+	 * @return this transport
+	 */
+	public CircuitBreakerTransport slowCallRate(long duration, TimeUnit unit, int percent)
+	{
+		checkArgument(duration > 0, "duration must be positive: %s", duration);
+		checkArgument(percent >= 1 && percent <= 100, "percent must be between 1 and 100: %s", percent);
+
+		slowCallNanos = unit.toNanos(duration);
+		slowCallRate = percent;
+		return this;
+	}
+
+	/**
+	 * Sets how long a circuit stays open before trial requests are let through.
+	 *
+	 * @param duration
+	 *            the open duration
+	 * @param unit
+	 *            the time unit of the duration
+	 * @return this transport
+	 */
+	public CircuitBreakerTransport openDuration(long duration, TimeUnit unit)
+	{
+		checkArgument(duration >= 0, "duration must be non-negative: %s", duration);
+
+		openNanos = unit.toNanos(duration);
+		return this;
+	}
+
+	/**
+	 * Sets how many trial requests a half-open circuit lets through.
+	 *
+	 * @param halfOpenCalls
+	 *            the number of trial requests, all of which must succeed to close the circuit
+	 * @return this transport
+	 */
+	public CircuitBreakerTransport halfOpenCalls(int halfOpenCalls)
+	{
+		checkArgument(halfOpenCalls >= 1, "halfOpenCalls must be positive: %s", halfOpenCalls);
+
+		this.halfOpenCalls = halfOpenCalls;
+		return this;
+	}
+
+	public void addListener(CircuitBreakerListener listener)
+	{
+		listeners.add(checkNotNull(listener, "listener"));
+	}
+
+	public void removeListener(CircuitBreakerListener listener)
+	{
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Gets the state of the circuit for the origin of the specified URL.
+	 *
+	 * @param url
+	 *            a URL of the origin
+	 * @return the circuit state, which is {@code CLOSED} for an origin that has not been requested
+	 */
+	public CircuitState getState(URL url)
+	{
+		Circuit circuit = circuitsByOrigin.get(getOrigin(url));
+
+		return (circuit != null) ? circuit.getState() : CircuitState.CLOSED;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private Circuit getCircuit(URL url)
+	{
+		String origin = getOrigin(url);
+		Circuit circuit = circuitsByOrigin.get(origin);
+
+		if (circuit == null)
+		{
+			Circuit newCircuit = new Circuit(origin, windowSize);
+			circuit = circuitsByOrigin.putIfAbsent(origin, newCircuit);
+
+			if (circuit == null)
+			{
+				circuit = newCircuit;
+			}
+		}
+
+		return circuit;
+	}
+
+	private void fireStateChanged(String origin, CircuitState from, CircuitState to)
+	{
+		if (from != to)
+		{
+			for (CircuitBreakerListener listener : listeners)
+			{
+				listener.stateChanged(origin, from, to);
+			}
+		}
+	}
+
+	private static String getOrigin(URL url)
+	{
+		int port = (url.getPort() != -1) ? url.getPort() : url.getDefaultPort();
+
+		return url.getProtocol() + "://" + url.getHost().toLowerCase(Locale.ENGLISH) + ":" + port;
+	}
+
+	/**
+	 * Gets whether the specified exception indicates a failure of the origin rather than of the request itself.
+	 */
+	private static boolean isFailure(Throwable throwable)
+	{
+		if (!(throwable instanceof IOException) || throwable instanceof BodyTooLargeException
+			|| throwable instanceof MalformedURLException || throwable instanceof CircuitOpenException)
+		{
+			return false;
+		}
+
+		return !(throwable instanceof InterruptedIOException) || throwable instanceof SocketTimeoutException;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// types
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * The circuit for a single origin, whose outcomes are recorded in a ring buffer.
+	 * <p>
+	 * Each state change increments the circuit's generation, so that the outcomes of requests permitted by an earlier
+	 * state are ignored.
+	 */
+	private final class Circuit
+	{
+		private final String origin;
+
+		private final byte[] outcomes;
+
+		private int next;
+
+		private int calls;
+
+		private int failures;
+
+		private int slowCalls;
+
+		private CircuitState state;
+
+		private int generation;
+
+		private long openedNanos;
+
+		private int trialCalls;
+
+		private int trialSuccesses;
+
+		Circuit(String origin, int windowSize)
+		{
+			this.origin = origin;
+
+			outcomes = new byte[windowSize];
+			state = CircuitState.CLOSED;
+		}
+
+		public synchronized CircuitState getState()
+		{
+			return state;
+		}
+
+		/**
+		 * Gets permission to send a request.
+		 *
+		 * @return the generation of the state that permitted the request
+		 * @throws CircuitOpenException
+		 *             if the circuit is open, or is half-open with all of its trial requests in progress
+		 */
+		public int acquire() throws CircuitOpenException
+		{
+			CircuitState from;
+			CircuitState to;
+			boolean permitted;
+			int permittedGeneration;
+
+			synchronized (this)
+			{
+				from = state;
+
+				if (state == CircuitState.OPEN && ticker.read() - openedNanos >= openNanos)
+				{
+					transition(CircuitState.HALF_OPEN);
+				}
+
+				permitted = state == CircuitState.CLOSED
+					|| (state == CircuitState.HALF_OPEN && trialCalls < halfOpenCalls);
+
+				if (permitted && state == CircuitState.HALF_OPEN)
+				{
+					trialCalls++;
+				}
+
+				to = state;
+				permittedGeneration = generation;
+			}
+
+			fireStateChanged(origin, from, to);
+
+			if (!permitted)
+			{
+				throw new CircuitOpenException(origin);
+			}
+
+			return permittedGeneration;
+		}
+
+		/**
+		 * Records the outcome of a request.
+		 *
+		 * @param requestGeneration
+		 *            the generation that permitted the request
+		 * @param response
+		 *            the response, or {@code null} if the request failed
+		 * @param throwable
+		 *            the reason that the request failed, or {@code null} if it succeeded
+		 * @param elapsedNanos
+		 *            how long the request took
+		 */
+		public void record(int requestGeneration, HttpResponse response, Throwable throwable, long elapsedNanos)
+		{
+			boolean ignored = response == null && !isFailure(throwable);
+			byte outcome = 0;
+
+			if (response == null || response.getStatusCode() >= 500)
+			{
+				outcome |= FAILED;
+			}
+
+			if (elapsedNanos >= slowCallNanos)
+			{
+				outcome |= SLOW;
+			}
+
+			CircuitState from;
+			CircuitState to;
+
+			synchronized (this)
+			{
+				from = state;
+
+				if (requestGeneration == generation)
+				{
+					record(ignored, outcome);
+				}
+
+				to = state;
+			}
+
+			fireStateChanged(origin, from, to);
+		}
+
+		private void record(boolean ignored, byte outcome)
+		{
+			if (state == CircuitState.HALF_OPEN)
+			{
+				recordTrial(ignored, outcome);
+			}
+			else if (state == CircuitState.CLOSED && !ignored)
+			{
+				add(outcome);
+
+				if (calls >= minimumCalls && (failures * 100 >= failureRate * calls
+					|| slowCalls * 100 >= slowCallRate * calls))
+				{
+					transition(CircuitState.OPEN);
+				}
+			}
+		}
+
+		private void recordTrial(boolean ignored, byte outcome)
+		{
+			if (ignored)
+			{
+				// release the trial for another request
+				trialCalls--;
+			}
+			else if (outcome != 0)
+			{
+				transition(CircuitState.OPEN);
+			}
+			else
+			{
+				trialSuccesses++;
+
+				if (trialSuccesses >= halfOpenCalls)
+				{
+					transition(CircuitState.CLOSED);
+				}
+			}
+		}
+
+		private void add(byte outcome)
+		{
+			if (calls == outcomes.length)
+			{
+				count(outcomes[next], -1);
+			}
+			else
+			{
+				calls++;
+			}
+
+			outcomes[next] = outcome;
+			count(outcome, 1);
+			next = (next + 1) % outcomes.length;
+		}
+
+		private void count(byte outcome, int delta)
+		{
+			if ((outcome & FAILED) != 0)
+			{
+				failures += delta;
+			}
+
+			if ((outcome & SLOW) != 0)
+			{
+				slowCalls += delta;
+			}
+		}
+
+		private void transition(CircuitState newState)
+		{
+			state = newState;
+			generation++;
+			next = 0;
+			calls = 0;
+			failures = 0;
+			slowCalls = 0;
+			trialCalls = 0;
+			trialSuccesses = 0;
+
+			if (newState == CircuitState.OPEN)
+			{
+				openedNanos = ticker.read();
+			}
+		}
+	}
+}
@@ -0,0 +1,35 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.spi.http;
+
+/**
+ * The state of a circuit breaker for an origin.
+ */
+public enum CircuitState
+{
+	/**
+	 * Requests are sent and their outcomes are recorded.
+	 */
+	CLOSED,
+
+	/**
+	 * Requests fail immediately without being sent.
+	 */
+	OPEN,
+
+	/**
+	 * A limited number of trial requests are sent to decide whether to close or reopen the circuit.
+	 */
+	HALF_OPEN
+}
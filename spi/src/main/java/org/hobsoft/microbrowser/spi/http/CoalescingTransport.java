@@ -0,0 +1,328 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.spi.http;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+
+import org.hobsoft.microbrowser.spi.CompletableFutures;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@code Transport} decorator that coalesces concurrent identical {@code GET} requests into a single request.
+ * <p>
+ * While a {@code GET} request is in progress, any other {@code GET} request with the same URL, headers and cookies
+ * waits for its response instead of being sent. All such callers receive the same immutable response. An asynchronous
+ * request is only aborted once every caller waiting for it has cancelled or timed out. Requests with a body scanner
+ * may receive a truncated body, and so are never coalesced.
+ */
+public class CoalescingTransport implements Transport
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private final Transport delegate;
+
+	private final ConcurrentMap<String, Flight> flights;
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public CoalescingTransport(Transport delegate)
+	{
+		this.delegate = checkNotNull(delegate, "delegate");
+
+		flights = new ConcurrentHashMap<String, Flight>();
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// Transport methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public HttpResponse execute(HttpRequest request) throws IOException
+	{
+		if (!isCoalescable(request))
+		{
+			return delegate.execute(request);
+		}
+
+		String key = getKey(request);
+		Flight newFlight = new Flight();
+		Flight flight = join(key, newFlight);
+		boolean leader = (flight == newFlight);
+
+		try
+		{
+			if (!leader)
+			{
+				return await(flight);
+			}
+
+			HttpResponse response = delegate.execute(request);
+			flight.getResponse().complete(response);
+			return response;
+		}
+		catch (IOException exception)
+		{
+			// fail any waiters with the same exception
+			flight.getResponse().completeExceptionally(exception);
+			throw exception;
+		}
+		catch (RuntimeException exception)
+		{
+			flight.getResponse().completeExceptionally(exception);
+			throw exception;
+		}
+		finally
+		{
+			if (leader)
+			{
+				flights.remove(key, flight);
+
+				// release any waiters if the request failed with an error
+				flight.getResponse().completeExceptionally(new IOException("Error fetching URL " + request.getUrl()));
+			}
+
+			flight.leave();
+		}
+	}
+
+	public CompletableFuture<HttpResponse> executeAsync(HttpRequest request)
+	{
+		if (!isCoalescable(request))
+		{
+			return delegate.executeAsync(request);
+		}
+
+		final String key = getKey(request);
+		Flight newFlight = new Flight();
+		final Flight flight = join(key, newFlight);
+		CompletableFuture<HttpResponse> waiter = newWaiter(flight);
+
+		if (flight == newFlight)
+		{
+			CompletableFuture<HttpResponse> sent = delegate.executeAsync(request);
+			flight.setUpstream(sent);
+
+			sent.whenComplete(new BiConsumer<HttpResponse, Throwable>()
+			{
+				public void accept(HttpResponse response, Throwable throwable)
+				{
+					flights.remove(key, flight);
+
+					if (throwable != null)
+					{
+						flight.getResponse().completeExceptionally(CompletableFutures.unwrap(throwable));
+					}
+					else
+					{
+						flight.getResponse().complete(response);
+					}
+				}
+			});
+		}
+
+		return waiter;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Joins the request in progress with the specified key, or otherwise starts the specified new request.
+	 *
+	 * @return the joined request, or the new request if there was none to join
+	 */
+	private Flight join(String key, Flight newFlight)
+	{
+		newFlight.join();
+
+		while (true)
+		{
+			Flight existingFlight = flights.putIfAbsent(key, newFlight);
+
+			if (existingFlight == null)
+			{
+				return newFlight;
+			}
+
+			if (existingFlight.join())
+			{
+				return existingFlight;
+			}
+
+			// the existing request is being aborted
+			flights.remove(key, existingFlight);
+		}
+	}
+
+	private static CompletableFuture<HttpResponse> newWaiter(final Flight flight)
+	{
+		final CompletableFuture<HttpResponse> waiter = new CompletableFuture<HttpResponse>();
+
+		flight.getResponse().whenComplete(new BiConsumer<HttpResponse, Throwable>()
+		{
+			public void accept(HttpResponse response, Throwable throwable)
+			{
+				if (throwable != null)
+				{
+					waiter.completeExceptionally(CompletableFutures.unwrap(throwable));
+				}
+				else
+				{
+					waiter.complete(response);
+				}
+			}
+		});
+
+		waiter.whenComplete(new BiConsumer<HttpResponse, Throwable>()
+		{
+			public void accept(HttpResponse response, Throwable throwable)
+			{
+				flight.leave();
+			}
+		});
+
+		return waiter;
+	}
+
+	private static HttpResponse await(Flight flight) throws IOException
+	{
+		try
+		{
+			return flight.getResponse().get();
+		}
+		catch (InterruptedException exception)
+		{
+			Thread.currentThread().interrupt();
+			throw (IOException) new InterruptedIOException("Interrupted waiting for response").initCause(exception);
+		}
+		catch (ExecutionException exception)
+		{
+			Throwable cause = exception.getCause();
+
+			if (cause instanceof IOException)
+			{
+				throw (IOException) cause;
+			}
+
+			if (cause instanceof RuntimeException)
+			{
+				throw (RuntimeException) cause;
+			}
+
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * Gets whether the specified request receives a whole body that can be shared with identical requests.
+	 */
+	private static boolean isCoalescable(HttpRequest request)
+	{
+		return HttpRequest.GET.equals(request.getMethod()) && request.getBodyScanner() == null;
+	}
+
+	private static String getKey(HttpRequest request)
+	{
+		return request.getMethod() + " " + request.getUrl().toExternalForm() + "\n" + request.getHeaders() + "\n"
+			+ request.getCookieHeader();
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// types
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * A request in progress together with the callers waiting for it.
+	 */
+	private static final class Flight
+	{
+		private final CompletableFuture<HttpResponse> response;
+
+		private Future<?> upstream;
+
+		private int waiterCount;
+
+		private boolean abandoned;
+
+		Flight()
+		{
+			response = new CompletableFuture<HttpResponse>();
+		}
+
+		public CompletableFuture<HttpResponse> getResponse()
+		{
+			return response;
+		}
+
+		/**
+		 * Adds a waiter to this flight.
+		 *
+		 * @return {@code false} if this flight is being aborted and so cannot be joined
+		 */
+		public synchronized boolean join()
+		{
+			if (abandoned)
+			{
+				return false;
+			}
+
+			waiterCount++;
+			return true;
+		}
+
+		/**
+		 * Removes a waiter from this flight, aborting the request if it has no more waiters.
+		 */
+		public synchronized void leave()
+		{
+			waiterCount--;
+
+			if (waiterCount == 0 && !response.isDone())
+			{
+				abandoned = true;
+				cancelUpstream();
+			}
+		}
+
+		public synchronized void setUpstream(Future<?> upstream)
+		{
+			this.upstream = upstream;
+
+			if (abandoned)
+			{
+				cancelUpstream();
+			}
+		}
+
+		private void cancelUpstream()
+		{
+			if (upstream != null)
+			{
+				upstream.cancel(true);
+			}
+		}
+	}
+}
@@ -0,0 +1,234 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.spi.http;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded per-route pool of idle keep-alive connections.
+ */
+final class ConnectionPool
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private final Map<String, LinkedList<PooledConnection>> idleConnectionsByRoute;
+
+	private int maxIdleConnectionsPerRoute;
+
+	private long idleTimeoutNanos;
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	ConnectionPool(int maxIdleConnectionsPerRoute, long idleTimeoutNanos)
+	{
+		idleConnectionsByRoute = new HashMap<String, LinkedList<PooledConnection>>();
+		this.maxIdleConnectionsPerRoute = maxIdleConnectionsPerRoute;
+		this.idleTimeoutNanos = idleTimeoutNanos;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// public methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public synchronized void setMaxIdleConnectionsPerRoute(int maxIdleConnectionsPerRoute)
+	{
+		this.maxIdleConnectionsPerRoute = maxIdleConnectionsPerRoute;
+	}
+
+	public synchronized void setIdleTimeoutNanos(long idleTimeoutNanos)
+	{
+		this.idleTimeoutNanos = idleTimeoutNanos;
+	}
+
+	/**
+	 * Takes the most recently used healthy idle connection for the specified route.
+	 *
+	 * @param route
+	 *            the route to connect to
+	 * @return the idle connection, or {@code null} if none are available
+	 */
+	public PooledConnection acquire(String route)
+	{
+		PooledConnection connection;
+
+		while ((connection = poll(route)) != null)
+		{
+			if (connection.isHealthy())
+			{
+				return connection;
+			}
+
+			connection.close();
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the specified connection to this pool, or closes it if the pool for its route is full.
+	 *
+	 * @param connection
+	 *            the connection that is now idle
+	 */
+	public void release(PooledConnection connection)
+	{
+		List<PooledConnection> evicted;
+		boolean pooled;
+
+		synchronized (this)
+		{
+			long now = System.nanoTime();
+			connection.setIdleSince(now);
+			evicted = evictExpired(now);
+
+			LinkedList<PooledConnection> idleConnections = getIdleConnections(connection.getRoute());
+			pooled = idleConnections.size() < maxIdleConnectionsPerRoute;
+
+			if (pooled)
+			{
+				idleConnections.addFirst(connection);
+			}
+		}
+
+		if (!pooled)
+		{
+			connection.close();
+		}
+
+		close(evicted);
+	}
+
+	/**
+	 * Closes all idle connections in this pool.
+	 */
+	public void evictAll()
+	{
+		List<PooledConnection> evicted = new ArrayList<PooledConnection>();
+
+		synchronized (this)
+		{
+			for (LinkedList<PooledConnection> idleConnections : idleConnectionsByRoute.values())
+			{
+				evicted.addAll(idleConnections);
+			}
+
+			idleConnectionsByRoute.clear();
+		}
+
+		close(evicted);
+	}
+
+	/**
+	 * Gets the number of idle connections for the specified route.
+	 *
+	 * @param route
+	 *            the route
+	 * @return the number of idle connections
+	 */
+	public synchronized int getIdleConnectionCount(String route)
+	{
+		LinkedList<PooledConnection> idleConnections = idleConnectionsByRoute.get(route);
+
+		return (idleConnections != null) ? idleConnections.size() : 0;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private synchronized PooledConnection poll(String route)
+	{
+		LinkedList<PooledConnection> idleConnections = idleConnectionsByRoute.get(route);
+
+		if (idleConnections == null)
+		{
+			return null;
+		}
+
+		long now = System.nanoTime();
+		PooledConnection connection = idleConnections.pollFirst();
+
+		while (connection != null && isExpired(connection, now))
+		{
+			connection.close();
+			connection = idleConnections.pollFirst();
+		}
+
+		if (idleConnections.isEmpty())
+		{
+			idleConnectionsByRoute.remove(route);
+		}
+
+		return connection;
+	}
+
+	private LinkedList<PooledConnection> getIdleConnections(String route)
+	{
+		LinkedList<PooledConnection> idleConnections = idleConnectionsByRoute.get(route);
+
+		if (idleConnections == null)
+		{
+			idleConnections = new LinkedList<PooledConnection>();
+			idleConnectionsByRoute.put(route, idleConnections);
+		}
+
+		return idleConnections;
+	}
+
+	private List<PooledConnection> evictExpired(long now)
+	{
+		List<PooledConnection> evicted = new ArrayList<PooledConnection>();
+		Iterator<LinkedList<PooledConnection>> routes = idleConnectionsByRoute.values().iterator();
+
+		while (routes.hasNext())
+		{
+			LinkedList<PooledConnection> idleConnections = routes.next();
+
+			// connections are ordered most recently used first, so expired connections are at the end
+			while (!idleConnections.isEmpty() && isExpired(idleConnections.getLast(), now))
+			{
+				evicted.add(idleConnections.removeLast());
+			}
+
+			if (idleConnections.isEmpty())
+			{
+				routes.remove();
+			}
+		}
+
+		return evicted;
+	}
+
+	private boolean isExpired(PooledConnection connection, long now)
+	{
+		return now - connection.getIdleSince() >= idleTimeoutNanos;
+	}
+
+	private static void close(List<PooledConnection> connections)
+	{
+		for (PooledConnection connection : connections)
+		{
+			connection.close();
+		}
+	}
+}
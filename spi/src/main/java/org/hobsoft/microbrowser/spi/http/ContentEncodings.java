@@ -0,0 +1,219 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.spi.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Utility methods for decoding HTTP content codings as a response body is read.
+ */
+public final class ContentEncodings
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// constants
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * The {@code Accept-Encoding} header value for the content codings that can be decoded.
+	 */
+	public static final String ACCEPT_ENCODING = "gzip, deflate";
+
+	private static final String GZIP = "gzip";
+
+	private static final String X_GZIP = "x-gzip";
+
+	private static final String DEFLATE = "deflate";
+
+	private static final String IDENTITY = "identity";
+
+	private static final int ZLIB_DEFLATE_METHOD = 8;
+
+	private static final int ZLIB_HEADER_CHECK = 31;
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private ContentEncodings()
+	{
+		throw new AssertionError();
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// public methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Gets whether the specified {@code Content-Encoding} header values can be decoded.
+	 *
+	 * @param contentEncodings
+	 *            the {@code Content-Encoding} header values
+	 * @return {@code true} if every content coding is supported
+	 */
+	public static boolean isSupported(List<String> contentEncodings)
+	{
+		for (String coding : parse(contentEncodings))
+		{
+			if (!GZIP.equals(coding) && !X_GZIP.equals(coding) && !DEFLATE.equals(coding))
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Wraps the specified encoded body stream with a stream that decodes it as it is read.
+	 * <p>
+	 * Codings are decoded in the reverse order that they were applied. Closing the returned stream releases any
+	 * decoder resources but does not close the specified stream, so that the connection it reads from can be reused.
+	 *
+	 * @param in
+	 *            the encoded body stream
+	 * @param contentEncodings
+	 *            the {@code Content-Encoding} header values
+	 * @return the decoded body stream, or a stream of the encoded body if any content coding is not supported
+	 * @throws IOException
+	 *             if the body is not validly encoded
+	 */
+	public static InputStream decode(InputStream in, List<String> contentEncodings) throws IOException
+	{
+		checkNotNull(in, "in");
+
+		InputStream decoded = new UnclosableInputStream(in);
+
+		if (!isSupported(contentEncodings))
+		{
+			return decoded;
+		}
+
+		List<String> codings = parse(contentEncodings);
+
+		for (int index = codings.size() - 1; index >= 0; index--)
+		{
+			PushbackInputStream pushback = new PushbackInputStream(decoded, 2);
+
+			// an empty body, such as that of a redirect, has no encoded header to read
+			if (peek(pushback, 1) == null)
+			{
+				return pushback;
+			}
+
+			decoded = DEFLATE.equals(codings.get(index)) ? inflate(pushback) : new GZIPInputStream(pushback);
+		}
+
+		return decoded;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static List<String> parse(List<String> contentEncodings)
+	{
+		List<String> codings = new ArrayList<String>();
+
+		if (contentEncodings != null)
+		{
+			for (String value : contentEncodings)
+			{
+				for (String token : value.split(","))
+				{
+					String coding = token.trim().toLowerCase();
+
+					if (!coding.isEmpty() && !IDENTITY.equals(coding))
+					{
+						codings.add(coding);
+					}
+				}
+			}
+		}
+
+		return codings;
+	}
+
+	/**
+	 * Inflates a {@code deflate} coded body, which is meant to be zlib-wrapped but is raw deflate from some servers.
+	 */
+	private static InputStream inflate(PushbackInputStream in) throws IOException
+	{
+		byte[] header = peek(in, 2);
+		boolean zlib = header != null && (header[0] & 0x0f) == ZLIB_DEFLATE_METHOD
+			&& (((header[0] & 0xff) << 8) | (header[1] & 0xff)) % ZLIB_HEADER_CHECK == 0;
+
+		return new InflaterInputStream(in, new Inflater(!zlib))
+		{
+			@Override
+			public void close() throws IOException
+			{
+				super.close();
+				inf.end();
+			}
+		};
+	}
+
+	private static byte[] peek(PushbackInputStream in, int length) throws IOException
+	{
+		byte[] bytes = new byte[length];
+		int read = 0;
+
+		while (read < length)
+		{
+			int count = in.read(bytes, read, length - read);
+
+			if (count == -1)
+			{
+				break;
+			}
+
+			read += count;
+		}
+
+		in.unread(bytes, 0, read);
+
+		return (read == length) ? bytes : null;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// types
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Input stream that does not close its underlying stream.
+	 */
+	private static final class UnclosableInputStream extends FilterInputStream
+	{
+		UnclosableInputStream(InputStream in)
+		{
+			super(in);
+		}
+
+		@Override
+		public void close()
+		{
+			// no-op
+		}
+	}
+}
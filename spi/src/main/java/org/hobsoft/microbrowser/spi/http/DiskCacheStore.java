@@ -0,0 +1,1026 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.spi.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * {@code CacheStore} that persists responses to disk so that a cache survives restarts.
+ * <p>
+ * Responses are appended to fixed-size segment files and located by an open-addressing hash index that maps the hash
+ * of each key to the position of its latest record. Both the index and the segments are memory-mapped, so reopening a
+ * store only needs to map its files and scan the index, and responses are read directly from the mapped segments.
+ * Recently read responses are softly retained so that repeated reads share the same body array.
+ * <p>
+ * The store is bounded by the total size of its segments. When a new segment would exceed this, the oldest segment is
+ * evicted together with its responses. Segments in which most responses have been replaced or removed are compacted in
+ * the background by copying their remaining responses to the newest segment.
+ * <p>
+ * A directory must only be used by one store at a time.
+ */
+public class DiskCacheStore implements CacheStore, Closeable
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// constants
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static final int DEFAULT_SEGMENT_SIZE = 8 * 1024 * 1024;
+
+	private static final String INDEX_FILE_NAME = "index";
+
+	private static final Pattern SEGMENT_FILE_NAME = Pattern.compile("segment-(\\d+)");
+
+	private static final int INDEX_MAGIC = 0x4d424349;
+
+	private static final int INDEX_VERSION = 1;
+
+	private static final int MAGIC_OFFSET = 0;
+
+	private static final int VERSION_OFFSET = 4;
+
+	private static final int SLOT_COUNT_OFFSET = 8;
+
+	private static final int ACTIVE_SEGMENT_OFFSET = 12;
+
+	private static final int ACTIVE_POSITION_OFFSET = 16;
+
+	private static final int HEADER_SIZE = 32;
+
+	private static final int INITIAL_SLOT_COUNT = 1024;
+
+	/**
+	 * The size of an index slot, which holds the key hash, segment id, record offset and record length.
+	 */
+	private static final int SLOT_SIZE = 24;
+
+	private static final int SLOT_HASH_OFFSET = 0;
+
+	private static final int SLOT_SEGMENT_OFFSET = 8;
+
+	private static final int SLOT_RECORD_OFFSET = 12;
+
+	private static final int SLOT_LENGTH_OFFSET = 16;
+
+	private static final int EMPTY_SLOT = 0;
+
+	private static final int DELETED_SLOT = -1;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private final File directory;
+
+	private final int segmentSize;
+
+	private final int maxSegments;
+
+	private final NavigableMap<Integer, Segment> segments;
+
+	private final Cache<Long, CachedResponse> recentResponses;
+
+	private final ExecutorService compactor;
+
+	private MappedByteBuffer index;
+
+	private int slotCount;
+
+	private int usedSlotCount;
+
+	private Segment activeSegment;
+
+	private boolean closed;
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Opens a disk store in the specified directory, creating it if necessary.
+	 *
+	 * @param directory
+	 *            the directory to store responses in
+	 * @param maxBytes
+	 *            the maximum total size of the segment files
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public DiskCacheStore(File directory, long maxBytes) throws IOException
+	{
+		this(directory, maxBytes, (int) Math.min(DEFAULT_SEGMENT_SIZE, maxBytes / 2));
+	}
+
+	DiskCacheStore(File directory, long maxBytes, int segmentSize) throws IOException
+	{
+		this.directory = checkNotNull(directory, "directory");
+		checkArgument(segmentSize > 0 && maxBytes >= 2L * segmentSize, "maxBytes must hold two segments: %s",
+			maxBytes);
+
+		this.segmentSize = segmentSize;
+		maxSegments = (int) Math.min(maxBytes / segmentSize, Integer.MAX_VALUE);
+		segments = new TreeMap<Integer, Segment>();
+		recentResponses = CacheBuilder.newBuilder().softValues().build();
+		compactor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+			.setDaemon(true)
+			.setNameFormat("microbrowser-cache-%d")
+			.build());
+
+		if (!directory.isDirectory() && !directory.mkdirs())
+		{
+			throw new IOException("Cannot create cache directory: " + directory);
+		}
+
+		open();
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// CacheStore methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public CachedResponse get(String key) throws IOException
+	{
+		long hash = hash(key);
+		long location;
+		ByteBuffer record;
+
+		synchronized (this)
+		{
+			checkOpen();
+
+			int slot = findSlot(hash);
+
+			if (slot == -1)
+			{
+				return null;
+			}
+
+			location = getLocation(getSlotSegmentId(slot), getSlotOffset(slot));
+			CachedResponse recentResponse = recentResponses.getIfPresent(location);
+
+			if (recentResponse != null)
+			{
+				return recentResponse;
+			}
+
+			record = getRecord(slot);
+		}
+
+		CachedResponse response = decode(record, key);
+
+		if (response != null)
+		{
+			recentResponses.put(location, response);
+		}
+
+		return response;
+	}
+
+	public void put(String key, CachedResponse response) throws IOException
+	{
+		long hash = hash(key);
+		byte[] record = encode(key, response);
+
+		synchronized (this)
+		{
+			checkOpen();
+
+			if (record.length > segmentSize)
+			{
+				remove(hash);
+				return;
+			}
+
+			int offset = append(record);
+			putSlot(hash, activeSegment.getId(), offset, record.length);
+			recentResponses.put(getLocation(activeSegment.getId(), offset), response);
+		}
+	}
+
+	public synchronized void remove(String key) throws IOException
+	{
+		checkOpen();
+
+		remove(hash(key));
+	}
+
+	public synchronized void clear() throws IOException
+	{
+		checkOpen();
+
+		for (Segment segment : new ArrayList<Segment>(segments.values()))
+		{
+			delete(segment);
+		}
+
+		int nextSegmentId = activeSegment.getId() + 1;
+
+		index = createIndex(new File(directory, INDEX_FILE_NAME), INITIAL_SLOT_COUNT);
+		slotCount = INITIAL_SLOT_COUNT;
+		usedSlotCount = 0;
+		recentResponses.invalidateAll();
+		startSegment(nextSegmentId);
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// Closeable methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Flushes this store to disk and closes it.
+	 */
+	public void close()
+	{
+		synchronized (this)
+		{
+			if (closed)
+			{
+				return;
+			}
+
+			index.force();
+
+			for (Segment segment : segments.values())
+			{
+				segment.getBuffer().force();
+			}
+
+			closed = true;
+		}
+
+		compactor.shutdown();
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// package-private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Copies the remaining responses of mostly unused segments to the newest segment and deletes them.
+	 */
+	synchronized void compact() throws IOException
+	{
+		if (closed)
+		{
+			return;
+		}
+
+		for (Segment segment : new ArrayList<Segment>(segments.values()))
+		{
+			if (isSparse(segment) && canCompact(segment))
+			{
+				compact(segment);
+			}
+		}
+	}
+
+	synchronized int getSegmentCount()
+	{
+		return segments.size();
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private void open() throws IOException
+	{
+		index = openIndex(new File(directory, INDEX_FILE_NAME));
+		slotCount = index.getInt(SLOT_COUNT_OFFSET);
+
+		for (int slot = 0; slot < slotCount; slot++)
+		{
+			loadSlot(slot);
+		}
+
+		int activeSegmentId = index.getInt(ACTIVE_SEGMENT_OFFSET);
+		activeSegment = getSegment(activeSegmentId);
+
+		if (activeSegment != null)
+		{
+			activeSegment.setPosition(index.getInt(ACTIVE_POSITION_OFFSET));
+		}
+		else
+		{
+			startSegment(Math.max(activeSegmentId, segments.isEmpty() ? 0 : segments.lastKey()) + 1);
+		}
+
+		deleteUnusedSegmentFiles();
+	}
+
+	private MappedByteBuffer openIndex(File file) throws IOException
+	{
+		if (file.length() >= HEADER_SIZE)
+		{
+			MappedByteBuffer buffer = map(file, file.length());
+
+			if (buffer.getInt(MAGIC_OFFSET) == INDEX_MAGIC && buffer.getInt(VERSION_OFFSET) == INDEX_VERSION
+				&& file.length() == getIndexSize(buffer.getInt(SLOT_COUNT_OFFSET)))
+			{
+				return buffer;
+			}
+		}
+
+		// any segments without a valid index are unusable and are deleted once the new index is open
+		return createIndex(file, INITIAL_SLOT_COUNT);
+	}
+
+	private static MappedByteBuffer createIndex(File file, int slotCount) throws IOException
+	{
+		if (file.exists() && !file.delete())
+		{
+			throw new IOException("Cannot delete cache index: " + file);
+		}
+
+		MappedByteBuffer buffer = map(file, getIndexSize(slotCount));
+		buffer.putInt(MAGIC_OFFSET, INDEX_MAGIC);
+		buffer.putInt(VERSION_OFFSET, INDEX_VERSION);
+		buffer.putInt(SLOT_COUNT_OFFSET, slotCount);
+
+		return buffer;
+	}
+
+	private void loadSlot(int slot) throws IOException
+	{
+		int segmentId = getSlotSegmentId(slot);
+
+		if (segmentId == EMPTY_SLOT)
+		{
+			return;
+		}
+
+		usedSlotCount++;
+
+		if (segmentId == DELETED_SLOT)
+		{
+			return;
+		}
+
+		Segment segment = getSegment(segmentId);
+
+		if (segment == null)
+		{
+			deleteSlot(slot);
+			return;
+		}
+
+		segment.addLiveBytes(getSlotLength(slot));
+	}
+
+	/**
+	 * Gets the specified segment, mapping its file if it exists but is not yet mapped.
+	 *
+	 * @return the segment, or {@code null} if it does not exist
+	 */
+	private Segment getSegment(int id) throws IOException
+	{
+		Segment segment = segments.get(id);
+		File file = getSegmentFile(id);
+
+		if (segment == null && id > 0 && file.length() == segmentSize)
+		{
+			segment = new Segment(id, file, map(file, segmentSize));
+			segments.put(id, segment);
+		}
+
+		return segment;
+	}
+
+	private void deleteUnusedSegmentFiles()
+	{
+		File[] files = directory.listFiles();
+
+		if (files == null)
+		{
+			return;
+		}
+
+		for (File file : files)
+		{
+			Matcher matcher = SEGMENT_FILE_NAME.matcher(file.getName());
+
+			if (matcher.matches() && !segments.containsKey(Integer.valueOf(matcher.group(1))))
+			{
+				delete(file);
+			}
+		}
+	}
+
+	private void startSegment(int id) throws IOException
+	{
+		File file = getSegmentFile(id);
+		activeSegment = new Segment(id, file, map(file, segmentSize));
+		segments.put(id, activeSegment);
+
+		index.putInt(ACTIVE_SEGMENT_OFFSET, id);
+		index.putInt(ACTIVE_POSITION_OFFSET, 0);
+
+		// the active segment is the newest, so is never evicted
+		while (segments.size() > maxSegments)
+		{
+			delete(segments.firstEntry().getValue());
+		}
+
+		scheduleCompaction();
+	}
+
+	/**
+	 * Appends the specified record to the active segment.
+	 *
+	 * @return the offset of the record within the active segment
+	 */
+	private int append(byte[] record) throws IOException
+	{
+		if (activeSegment.getPosition() + record.length > segmentSize)
+		{
+			startSegment(activeSegment.getId() + 1);
+		}
+
+		int offset = activeSegment.getPosition();
+
+		ByteBuffer buffer = activeSegment.getBuffer().duplicate();
+		buffer.position(offset);
+		buffer.put(record);
+
+		activeSegment.setPosition(offset + record.length);
+		index.putInt(ACTIVE_POSITION_OFFSET, activeSegment.getPosition());
+
+		return offset;
+	}
+
+	private ByteBuffer getRecord(int slot)
+	{
+		ByteBuffer record = segments.get(getSlotSegmentId(slot)).getBuffer().duplicate();
+		record.position(getSlotOffset(slot));
+		record.limit(getSlotOffset(slot) + getSlotLength(slot));
+
+		return record.slice();
+	}
+
+	private void compact(Segment segment) throws IOException
+	{
+		for (int slot = 0; slot < slotCount; slot++)
+		{
+			if (getSlotSegmentId(slot) != segment.getId())
+			{
+				continue;
+			}
+
+			ByteBuffer buffer = getRecord(slot);
+			byte[] record = new byte[buffer.remaining()];
+			buffer.get(record);
+
+			long oldLocation = getLocation(segment.getId(), getSlotOffset(slot));
+			long hash = getSlotHash(slot);
+			int offset = append(record);
+
+			putSlot(hash, activeSegment.getId(), offset, record.length);
+			moveRecentResponse(oldLocation, getLocation(activeSegment.getId(), offset));
+		}
+
+		delete(segment);
+	}
+
+	private void scheduleCompaction()
+	{
+		boolean sparse = false;
+
+		for (Segment segment : segments.values())
+		{
+			sparse |= isSparse(segment);
+		}
+
+		if (!sparse || closed)
+		{
+			return;
+		}
+
+		compactor.execute(new Runnable()
+		{
+			public void run()
+			{
+				try
+				{
+					compact();
+				}
+				catch (IOException exception)
+				{
+					// ignore, since segments are compacted again when the next segment is started
+				}
+			}
+		});
+	}
+
+	/**
+	 * Gets whether the specified segment can be compacted without evicting any segments.
+	 */
+	private boolean canCompact(Segment segment)
+	{
+		return segments.containsKey(segment.getId())
+			&& (segments.size() < maxSegments || segment.getLiveBytes() <= segmentSize - activeSegment.getPosition());
+	}
+
+	private boolean isSparse(Segment segment)
+	{
+		return segment != activeSegment && segment.getLiveBytes() * 2 < segmentSize;
+	}
+
+	private void moveRecentResponse(long oldLocation, long newLocation)
+	{
+		CachedResponse response = recentResponses.getIfPresent(oldLocation);
+
+		if (response != null)
+		{
+			recentResponses.invalidate(oldLocation);
+			recentResponses.put(newLocation, response);
+		}
+	}
+
+	private void delete(Segment segment)
+	{
+		for (int slot = 0; slot < slotCount; slot++)
+		{
+			if (getSlotSegmentId(slot) == segment.getId())
+			{
+				deleteSlot(slot);
+			}
+		}
+
+		segments.remove(segment.getId());
+
+		// the mapping remains valid until it is garbage collected
+		delete(segment.getFile());
+	}
+
+	private static void delete(File file)
+	{
+		// ignore failure, since unused segment files are deleted when the store is next opened
+		file.delete();
+	}
+
+	private void remove(long hash)
+	{
+		int slot = findSlot(hash);
+
+		if (slot != -1)
+		{
+			releaseSlot(slot);
+			deleteSlot(slot);
+		}
+	}
+
+	/**
+	 * Finds the slot for the specified key hash.
+	 *
+	 * @return the slot, or {@code -1} if there is none
+	 */
+	private int findSlot(long hash)
+	{
+		int slot = getFirstSlot(hash, slotCount);
+
+		for (int probes = 0; probes < slotCount; probes++)
+		{
+			int segmentId = getSlotSegmentId(slot);
+
+			if (segmentId == EMPTY_SLOT)
+			{
+				return -1;
+			}
+
+			if (segmentId != DELETED_SLOT && getSlotHash(slot) == hash)
+			{
+				return slot;
+			}
+
+			slot = (slot + 1) % slotCount;
+		}
+
+		return -1;
+	}
+
+	private int findFreeSlot(long hash)
+	{
+		int slot = getFirstSlot(hash, slotCount);
+
+		while (getSlotSegmentId(slot) != EMPTY_SLOT && getSlotSegmentId(slot) != DELETED_SLOT)
+		{
+			slot = (slot + 1) % slotCount;
+		}
+
+		return slot;
+	}
+
+	private void putSlot(long hash, int segmentId, int offset, int length) throws IOException
+	{
+		int slot = findSlot(hash);
+
+		if (slot != -1)
+		{
+			releaseSlot(slot);
+		}
+		else
+		{
+			// keep the load factor below three quarters so that probe sequences stay short
+			if ((usedSlotCount + 1) * 4L > slotCount * 3L)
+			{
+				resizeIndex();
+			}
+
+			slot = findFreeSlot(hash);
+
+			if (getSlotSegmentId(slot) == EMPTY_SLOT)
+			{
+				usedSlotCount++;
+			}
+		}
+
+		writeSlot(slot, hash, segmentId, offset, length);
+		segments.get(segmentId).addLiveBytes(length);
+	}
+
+	private void releaseSlot(int slot)
+	{
+		Segment segment = segments.get(getSlotSegmentId(slot));
+
+		if (segment != null)
+		{
+			segment.addLiveBytes(-getSlotLength(slot));
+		}
+	}
+
+	/**
+	 * Rehashes the live slots into a new index, doubling its size if more than half of the slots are live.
+	 */
+	private void resizeIndex() throws IOException
+	{
+		MappedByteBuffer oldIndex = index;
+		int oldSlotCount = slotCount;
+		int liveSlotCount = 0;
+
+		for (int slot = 0; slot < oldSlotCount; slot++)
+		{
+			liveSlotCount += (getSlotSegmentId(slot) > 0) ? 1 : 0;
+		}
+
+		File file = new File(directory, INDEX_FILE_NAME);
+		File newFile = new File(directory, INDEX_FILE_NAME + ".tmp");
+
+		slotCount = (liveSlotCount * 2 >= oldSlotCount) ? oldSlotCount * 2 : oldSlotCount;
+		index = createIndex(newFile, slotCount);
+		index.putInt(ACTIVE_SEGMENT_OFFSET, oldIndex.getInt(ACTIVE_SEGMENT_OFFSET));
+		index.putInt(ACTIVE_POSITION_OFFSET, oldIndex.getInt(ACTIVE_POSITION_OFFSET));
+		usedSlotCount = liveSlotCount;
+
+		for (int slot = 0; slot < oldSlotCount; slot++)
+		{
+			int position = getSlotPosition(slot);
+			int segmentId = oldIndex.getInt(position + SLOT_SEGMENT_OFFSET);
+
+			if (segmentId > 0)
+			{
+				long hash = oldIndex.getLong(position + SLOT_HASH_OFFSET);
+				writeSlot(findFreeSlot(hash), hash, segmentId, oldIndex.getInt(position + SLOT_RECORD_OFFSET),
+					oldIndex.getInt(position + SLOT_LENGTH_OFFSET));
+			}
+		}
+
+		index.force();
+
+		if (!newFile.renameTo(file))
+		{
+			throw new IOException("Cannot replace cache index: " + file);
+		}
+	}
+
+	private long getSlotHash(int slot)
+	{
+		return index.getLong(getSlotPosition(slot) + SLOT_HASH_OFFSET);
+	}
+
+	private int getSlotSegmentId(int slot)
+	{
+		return index.getInt(getSlotPosition(slot) + SLOT_SEGMENT_OFFSET);
+	}
+
+	private int getSlotOffset(int slot)
+	{
+		return index.getInt(getSlotPosition(slot) + SLOT_RECORD_OFFSET);
+	}
+
+	private int getSlotLength(int slot)
+	{
+		return index.getInt(getSlotPosition(slot) + SLOT_LENGTH_OFFSET);
+	}
+
+	private void writeSlot(int slot, long hash, int segmentId, int offset, int length)
+	{
+		int position = getSlotPosition(slot);
+
+		index.putLong(position + SLOT_HASH_OFFSET, hash);
+		index.putInt(position + SLOT_RECORD_OFFSET, offset);
+		index.putInt(position + SLOT_LENGTH_OFFSET, length);
+
+		// write the segment id last, since it marks the slot as used
+		index.putInt(position + SLOT_SEGMENT_OFFSET, segmentId);
+	}
+
+	private void deleteSlot(int slot)
+	{
+		index.putInt(getSlotPosition(slot) + SLOT_SEGMENT_OFFSET, DELETED_SLOT);
+	}
+
+	private void checkOpen()
+	{
+		checkState(!closed, "Cache store is closed");
+	}
+
+	private File getSegmentFile(int id)
+	{
+		return new File(directory, "segment-" + id);
+	}
+
+	private static int getFirstSlot(long hash, int slotCount)
+	{
+		return (int) ((hash & Long.MAX_VALUE) % slotCount);
+	}
+
+	private static int getSlotPosition(int slot)
+	{
+		return HEADER_SIZE + slot * SLOT_SIZE;
+	}
+
+	private static long getIndexSize(int slotCount)
+	{
+		return HEADER_SIZE + (long) slotCount * SLOT_SIZE;
+	}
+
+	private static long getLocation(int segmentId, int offset)
+	{
+		return ((long) segmentId << 32) | offset;
+	}
+
+	private static long hash(String key)
+	{
+		return Hashing.murmur3_128().hashString(key, UTF_8).asLong();
+	}
+
+	private static MappedByteBuffer map(File file, long size) throws IOException
+	{
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+
+		try
+		{
+			randomAccessFile.setLength(size);
+			return randomAccessFile.getChannel().map(MapMode.READ_WRITE, 0, size);
+		}
+		finally
+		{
+			randomAccessFile.close();
+		}
+	}
+
+	private static byte[] encode(String key, CachedResponse cachedResponse) throws IOException
+	{
+		HttpResponse response = cachedResponse.getResponse();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(response.getBody().length + 1024);
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		writeString(out, key);
+		out.writeLong(cachedResponse.getRequestTimeMillis());
+		writeMap(out, cachedResponse.getVaryValues());
+		writeString(out, response.getUrl().toExternalForm());
+		out.writeInt(response.getStatusCode());
+		writeString(out, response.getStatusMessage());
+		out.writeInt(response.getHeaders().size());
+
+		for (Entry<String, List<String>> header : response.getHeaders().entrySet())
+		{
+			writeString(out, header.getKey());
+			out.writeInt(header.getValue().size());
+
+			for (String value : header.getValue())
+			{
+				writeString(out, value);
+			}
+		}
+
+		writeMap(out, response.getCookies());
+		out.writeInt(response.getBody().length);
+		out.write(response.getBody());
+		out.flush();
+
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Decodes the specified record.
+	 *
+	 * @return the response, or {@code null} if the record is for a different key with the same hash
+	 */
+	private static CachedResponse decode(ByteBuffer record, String key) throws IOException
+	{
+		try
+		{
+			if (!key.equals(readString(record)))
+			{
+				return null;
+			}
+
+			long requestTimeMillis = record.getLong();
+			Map<String, String> varyValues = readMap(record);
+			URL url = new URL(readString(record));
+			int statusCode = record.getInt();
+			String statusMessage = readString(record);
+			Map<String, List<String>> headers = readHeaders(record);
+			Map<String, String> cookies = readMap(record);
+			byte[] body = new byte[record.getInt()];
+			record.get(body);
+
+			HttpResponse response = new HttpResponse(url, statusCode, statusMessage, headers, cookies, body);
+
+			return new CachedResponse(response, varyValues, requestTimeMillis);
+		}
+		catch (RuntimeException exception)
+		{
+			throw new IOException("Corrupt cache record: " + key, exception);
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String string) throws IOException
+	{
+		if (string == null)
+		{
+			out.writeInt(-1);
+			return;
+		}
+
+		byte[] bytes = string.getBytes(UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer buffer)
+	{
+		int length = buffer.getInt();
+
+		if (length == -1)
+		{
+			return null;
+		}
+
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+
+		return new String(bytes, UTF_8);
+	}
+
+	private static void writeMap(DataOutputStream out, Map<String, String> map) throws IOException
+	{
+		out.writeInt(map.size());
+
+		for (Entry<String, String> entry : map.entrySet())
+		{
+			writeString(out, entry.getKey());
+			writeString(out, entry.getValue());
+		}
+	}
+
+	private static Map<String, String> readMap(ByteBuffer buffer)
+	{
+		int size = buffer.getInt();
+		Map<String, String> map = new LinkedHashMap<String, String>();
+
+		for (int entryIndex = 0; entryIndex < size; entryIndex++)
+		{
+			map.put(readString(buffer), readString(buffer));
+		}
+
+		return map;
+	}
+
+	private static Map<String, List<String>> readHeaders(ByteBuffer buffer)
+	{
+		int size = buffer.getInt();
+		Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+
+		for (int headerIndex = 0; headerIndex < size; headerIndex++)
+		{
+			String name = readString(buffer);
+			int valueCount = buffer.getInt();
+			List<String> values = new ArrayList<String>(valueCount);
+
+			for (int valueIndex = 0; valueIndex < valueCount; valueIndex++)
+			{
+				values.add(readString(buffer));
+			}
+
+			headers.put(name, values);
+		}
+
+		return headers;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// types
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * A memory-mapped segment file.
+	 */
+	private static final class Segment
+	{
+		private final int id;
+
+		private final File file;
+
+		private final MappedByteBuffer buffer;
+
+		private int position;
+
+		private long liveBytes;
+
+		Segment(int id, File file, MappedByteBuffer buffer)
+		{
+			this.id = id;
+			this.file = file;
+			this.buffer = buffer;
+		}
+
+		public int getId()
+		{
+			return id;
+		}
+
+		public File getFile()
+		{
+			return file;
+		}
+
+		public MappedByteBuffer getBuffer()
+		{
+			return buffer;
+		}
+
+		public int getPosition()
+		{
+			return position;
+		}
+
+		public void setPosition(int position)
+		{
+			this.position = position;
+		}
+
+		public long getLiveBytes()
+		{
+			return liveBytes;
+		}
+
+		public void addLiveBytes(long bytes)
+		{
+			liveBytes += bytes;
+		}
+	}
+}
@@ -0,0 +1,330 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.spi.http;
+
+import java.net.URL;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * An immutable HTTP request.
+ */
+public final class HttpRequest
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// constants
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public static final String GET = "GET";
+
+	public static final String POST = "POST";
+
+	private static final byte[] NO_BODY = new byte[0];
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private final String method;
+
+	private final URL url;
+
+	private final Map<String, String> headers;
+
+	private final Map<String, String> cookies;
+
+	private final byte[] body;
+
+	private final BodyScanner bodyScanner;
+
+	private final boolean started;
+
+	private final long startNanos;
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public HttpRequest(String method, URL url)
+	{
+		this(method, url, Collections.<String, String>emptyMap(), Collections.<String, String>emptyMap(), NO_BODY);
+	}
+
+	/**
+	 * Creates a new HTTP request.
+	 *
+	 * @param method
+	 *            the request method
+	 * @param url
+	 *            the request URL
+	 * @param headers
+	 *            the request headers, excluding cookies
+	 * @param cookies
+	 *            the cookies to send with the request
+	 * @param body
+	 *            the request body, which is not copied
+	 */
+	public HttpRequest(String method, URL url, Map<String, String> headers, Map<String, String> cookies, byte[] body)
+	{
+		this.method = checkNotNull(method, "method");
+		this.url = checkNotNull(url, "url");
+		this.headers = Collections.unmodifiableMap(caseInsensitiveCopy(checkNotNull(headers, "headers")));
+		this.cookies = Collections.unmodifiableMap(new LinkedHashMap<String, String>(checkNotNull(cookies, "cookies")));
+		this.body = checkNotNull(body, "body");
+
+		bodyScanner = null;
+		started = false;
+		startNanos = 0;
+	}
+
+	private HttpRequest(HttpRequest request, URL url, Map<String, String> headers, Map<String, String> cookies,
+		BodyScanner bodyScanner)
+	{
+		this(request, url, headers, cookies, bodyScanner, request.started, request.startNanos);
+	}
+
+	private HttpRequest(HttpRequest request, URL url, Map<String, String> headers, Map<String, String> cookies,
+		BodyScanner bodyScanner, boolean started, long startNanos)
+	{
+		method = request.method;
+		this.url = checkNotNull(url, "url");
+		this.headers = Collections.unmodifiableMap(caseInsensitiveCopy(headers));
+		this.cookies = Collections.unmodifiableMap(new LinkedHashMap<String, String>(cookies));
+		body = request.body;
+		this.bodyScanner = bodyScanner;
+		this.started = started;
+		this.startNanos = startNanos;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// public methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public String getMethod()
+	{
+		return method;
+	}
+
+	public URL getUrl()
+	{
+		return url;
+	}
+
+	public Map<String, String> getHeaders()
+	{
+		return headers;
+	}
+
+	/**
+	 * Gets the value of the specified request header.
+	 *
+	 * @param name
+	 *            the case-insensitive header name
+	 * @return the header value, or {@code null} if not present
+	 */
+	public String getHeader(String name)
+	{
+		return headers.get(name);
+	}
+
+	public Map<String, String> getCookies()
+	{
+		return cookies;
+	}
+
+	/**
+	 * Gets the value of the {@code Cookie} header for this request's cookies.
+	 *
+	 * @return the header value, or {@code null} if this request has no cookies
+	 */
+	public String getCookieHeader()
+	{
+		if (cookies.isEmpty())
+		{
+			return null;
+		}
+
+		StringBuilder header = new StringBuilder();
+
+		for (Map.Entry<String, String> cookie : cookies.entrySet())
+		{
+			if (header.length() > 0)
+			{
+				header.append("; ");
+			}
+
+			header.append(cookie.getKey()).append('=').append(cookie.getValue());
+		}
+
+		return header.toString();
+	}
+
+	public byte[] getBody()
+	{
+		return body;
+	}
+
+	/**
+	 * Gets the scanner that decides when enough of the response body has been received.
+	 *
+	 * @return the body scanner, or {@code null} to receive the whole body
+	 */
+	public BodyScanner getBodyScanner()
+	{
+		return bodyScanner;
+	}
+
+	/**
+	 * Gets whether this request has started, so that any total timeout is measured from its start time.
+	 *
+	 * @return {@code true} if this request has a start time
+	 * @see #start()
+	 */
+	public boolean isStarted()
+	{
+		return started;
+	}
+
+	/**
+	 * Gets when this request started, from which any total timeout is measured across every redirect and retry sent
+	 * for it.
+	 *
+	 * @return the value of {@code System.nanoTime()} when this request started
+	 * @throws IllegalStateException
+	 *             if this request has not started
+	 */
+	public long getStartNanos()
+	{
+		checkState(started, "Request has not started");
+
+		return startNanos;
+	}
+
+	/**
+	 * Gets a copy of this request that starts now, unless this request has already started.
+	 * <p>
+	 * The transport that first receives a request starts it, so that the redirects and retries that the request leads
+	 * to share a single total timeout.
+	 *
+	 * @return this request if it has already started, otherwise the new request
+	 */
+	public HttpRequest start()
+	{
+		if (started)
+		{
+			return this;
+		}
+
+		return new HttpRequest(this, url, headers, cookies, bodyScanner, true, System.nanoTime());
+	}
+
+	/**
+	 * Gets a copy of this request with the specified URL.
+	 *
+	 * @param newUrl
+	 *            the request URL
+	 * @return the new request
+	 */
+	public HttpRequest withUrl(URL newUrl)
+	{
+		return new HttpRequest(this, newUrl, headers, cookies, bodyScanner);
+	}
+
+	/**
+	 * Gets a copy of this request with the specified header set.
+	 *
+	 * @param name
+	 *            the header name
+	 * @param value
+	 *            the header value, or {@code null} to remove the header
+	 * @return the new request
+	 */
+	public HttpRequest withHeader(String name, String value)
+	{
+		Map<String, String> newHeaders = caseInsensitiveCopy(headers);
+
+		if (value != null)
+		{
+			newHeaders.put(name, value);
+		}
+		else
+		{
+			newHeaders.remove(name);
+		}
+
+		return new HttpRequest(this, url, newHeaders, cookies, bodyScanner);
+	}
+
+	/**
+	 * Gets a copy of this request with the specified cookies added.
+	 *
+	 * @param newCookies
+	 *            the cookies to add, replacing any existing cookies with the same name
+	 * @return the new request
+	 */
+	public HttpRequest withCookies(Map<String, String> newCookies)
+	{
+		Map<String, String> union = new LinkedHashMap<String, String>(cookies);
+		union.putAll(newCookies);
+
+		return new HttpRequest(this, url, headers, union, bodyScanner);
+	}
+
+	/**
+	 * Gets a copy of this request with the specified body scanner.
+	 *
+	 * @param newBodyScanner
+	 *            the scanner that decides when enough of the response body has been received, or {@code null} to
+	 *            receive the whole body
+	 * @return the new request
+	 */
+	public HttpRequest withBodyScanner(BodyScanner newBodyScanner)
+	{
+		return new HttpRequest(this, url, headers, cookies, newBodyScanner);
+	}
+
+	@Override
+	public String toString()
+	{
+		return method + " " + url;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// package-private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Gets a copy of this request that started when the specified request did.
+	 */
+	HttpRequest withStartOf(HttpRequest request)
+	{
+		return new HttpRequest(this, url, headers, cookies, bodyScanner, request.started, request.startNanos);
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static Map<String, String> caseInsensitiveCopy(Map<String, String> map)
+	{
+		Map<String, String> copy = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+		copy.putAll(map);
+		return copy;
+	}
+}
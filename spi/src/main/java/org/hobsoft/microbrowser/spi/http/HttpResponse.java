@@ -0,0 +1,364 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.spi.http;
+
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * An immutable HTTP response.
+ */
+public final class HttpResponse
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// constants
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static final Pattern CHARSET_PATTERN = Pattern.compile("(?i)\\bcharset=\\s*(?:[\"'])?([^\\s,;\"']*)");
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private final URL url;
+
+	private final int statusCode;
+
+	private final String statusMessage;
+
+	private final Map<String, List<String>> headers;
+
+	private final Map<String, String> cookies;
+
+	private final byte[] body;
+
+	private final long encodedLength;
+
+	private final boolean truncated;
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Creates a new HTTP response whose cookies are parsed from its {@code Set-Cookie} headers.
+	 *
+	 * @param url
+	 *            the URL that produced this response
+	 * @param statusCode
+	 *            the response status code
+	 * @param statusMessage
+	 *            the response status message
+	 * @param headers
+	 *            the response headers
+	 * @param body
+	 *            the decoded response body, which is not copied
+	 */
+	public HttpResponse(URL url, int statusCode, String statusMessage, Map<String, List<String>> headers, byte[] body)
+	{
+		this(url, statusCode, statusMessage, headers, parseCookies(headers), body);
+	}
+
+	/**
+	 * Creates a new HTTP response with the specified cookies.
+	 *
+	 * @param url
+	 *            the URL that produced this response
+	 * @param statusCode
+	 *            the response status code
+	 * @param statusMessage
+	 *            the response status message
+	 * @param headers
+	 *            the response headers
+	 * @param cookies
+	 *            the cookies set by this response
+	 * @param body
+	 *            the decoded response body, which is not copied
+	 */
+	public HttpResponse(URL url, int statusCode, String statusMessage, Map<String, List<String>> headers,
+		Map<String, String> cookies, byte[] body)
+	{
+		this.url = checkNotNull(url, "url");
+		this.statusCode = statusCode;
+		this.statusMessage = checkNotNull(statusMessage, "statusMessage");
+		this.headers = Collections.unmodifiableMap(caseInsensitiveCopy(checkNotNull(headers, "headers")));
+		this.cookies = Collections.unmodifiableMap(new LinkedHashMap<String, String>(checkNotNull(cookies, "cookies")));
+		this.body = checkNotNull(body, "body");
+		encodedLength = body.length;
+		truncated = false;
+	}
+
+	private HttpResponse(HttpResponse response, Map<String, String> cookies, long encodedLength, boolean truncated)
+	{
+		url = response.url;
+		statusCode = response.statusCode;
+		statusMessage = response.statusMessage;
+		headers = response.headers;
+		this.cookies = Collections.unmodifiableMap(new LinkedHashMap<String, String>(checkNotNull(cookies, "cookies")));
+		body = response.body;
+		this.encodedLength = encodedLength;
+		this.truncated = truncated;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// public methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public URL getUrl()
+	{
+		return url;
+	}
+
+	public int getStatusCode()
+	{
+		return statusCode;
+	}
+
+	public String getStatusMessage()
+	{
+		return statusMessage;
+	}
+
+	public Map<String, List<String>> getHeaders()
+	{
+		return headers;
+	}
+
+	/**
+	 * Gets the first value of the specified response header.
+	 *
+	 * @param name
+	 *            the case-insensitive header name
+	 * @return the first header value, or {@code null} if not present
+	 */
+	public String getHeader(String name)
+	{
+		List<String> values = headers.get(name);
+
+		return (values != null && !values.isEmpty()) ? values.get(0) : null;
+	}
+
+	/**
+	 * Gets all the values of the specified response header.
+	 *
+	 * @param name
+	 *            the case-insensitive header name
+	 * @return the header values, or an empty list if not present
+	 */
+	public List<String> getHeaders(String name)
+	{
+		List<String> values = headers.get(name);
+
+		return (values != null) ? values : Collections.<String>emptyList();
+	}
+
+	public Map<String, String> getCookies()
+	{
+		return cookies;
+	}
+
+	public String getContentType()
+	{
+		return getHeader("Content-Type");
+	}
+
+	/**
+	 * Gets the charset declared by the {@code Content-Type} header.
+	 *
+	 * @return the charset name, or {@code null} if not declared or not supported
+	 */
+	public String getCharset()
+	{
+		String contentType = getContentType();
+
+		if (contentType == null)
+		{
+			return null;
+		}
+
+		Matcher matcher = CHARSET_PATTERN.matcher(contentType);
+
+		if (!matcher.find())
+		{
+			return null;
+		}
+
+		String charset = matcher.group(1).trim().replace("charset=", "");
+
+		try
+		{
+			return Charset.isSupported(charset) ? charset : null;
+		}
+		catch (IllegalCharsetNameException exception)
+		{
+			return null;
+		}
+	}
+
+	public byte[] getBody()
+	{
+		return body;
+	}
+
+	/**
+	 * Gets the number of body bytes that were received before any content coding, such as {@code gzip}, was decoded.
+	 *
+	 * @return the encoded body length, which is the decoded body length when the body was not content coded
+	 */
+	public long getEncodedLength()
+	{
+		return encodedLength;
+	}
+
+	/**
+	 * Gets the number of body bytes after any content coding was decoded.
+	 *
+	 * @return the decoded body length
+	 */
+	public long getDecodedLength()
+	{
+		return body.length;
+	}
+
+	/**
+	 * Gets a copy of this response with the specified encoded body length.
+	 *
+	 * @param newEncodedLength
+	 *            the number of body bytes that were received before content decoding
+	 * @return the new response
+	 */
+	public HttpResponse withEncodedLength(long newEncodedLength)
+	{
+		checkArgument(newEncodedLength >= 0, "newEncodedLength must be non-negative: %s", newEncodedLength);
+
+		return new HttpResponse(this, cookies, newEncodedLength, truncated);
+	}
+
+	/**
+	 * Gets whether the body of this response is incomplete because a {@code ResponseLimits} limit was reached while it
+	 * was being received.
+	 *
+	 * @return {@code true} if the body was truncated
+	 */
+	public boolean isTruncated()
+	{
+		return truncated;
+	}
+
+	/**
+	 * Gets a copy of this response with the specified truncation.
+	 *
+	 * @param newTruncated
+	 *            whether the body of the new response is incomplete
+	 * @return the new response
+	 */
+	public HttpResponse withTruncated(boolean newTruncated)
+	{
+		return new HttpResponse(this, cookies, encodedLength, newTruncated);
+	}
+
+	/**
+	 * Gets a copy of this response with the specified cookies.
+	 *
+	 * @param newCookies
+	 *            the cookies set by the new response
+	 * @return the new response
+	 */
+	public HttpResponse withCookies(Map<String, String> newCookies)
+	{
+		return new HttpResponse(this, newCookies, encodedLength, truncated);
+	}
+
+	@Override
+	public String toString()
+	{
+		return statusCode + " " + url;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static Map<String, List<String>> caseInsensitiveCopy(Map<String, List<String>> map)
+	{
+		Map<String, List<String>> copy = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+
+		for (Entry<String, List<String>> entry : map.entrySet())
+		{
+			List<String> values = copy.get(entry.getKey());
+
+			if (values == null)
+			{
+				values = new ArrayList<String>();
+				copy.put(entry.getKey(), values);
+			}
+
+			values.addAll(entry.getValue());
+		}
+
+		for (Entry<String, List<String>> entry : copy.entrySet())
+		{
+			entry.setValue(Collections.unmodifiableList(entry.getValue()));
+		}
+
+		return copy;
+	}
+
+	private static Map<String, String> parseCookies(Map<String, List<String>> headers)
+	{
+		Map<String, String> cookies = new LinkedHashMap<String, String>();
+
+		for (Entry<String, List<String>> entry : headers.entrySet())
+		{
+			if (!"Set-Cookie".equalsIgnoreCase(entry.getKey()))
+			{
+				continue;
+			}
+
+			for (String value : entry.getValue())
+			{
+				int equals = value.indexOf('=');
+				int semicolon = value.indexOf(';');
+
+				String name = (equals != -1) ? value.substring(0, equals).trim() : value.trim();
+				String cookie = "";
+
+				if (equals != -1)
+				{
+					cookie = value.substring(equals + 1, (semicolon > equals) ? semicolon : value.length()).trim();
+				}
+
+				if (name.length() > 0)
+				{
+					cookies.put(name, cookie);
+				}
+			}
+		}
+
+		return cookies;
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.spi.http;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * {@code CacheStore} that holds responses in memory.
+ * <p>
+ * The store is bounded by the total size of the response bodies and evicts the least recently used responses first.
+ */
+public class MemoryCacheStore implements CacheStore
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private final Cache<String, CachedResponse> responses;
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Creates a memory store with the specified capacity.
+	 *
+	 * @param maxBytes
+	 *            the maximum total size of the stored response bodies
+	 */
+	public MemoryCacheStore(long maxBytes)
+	{
+		checkArgument(maxBytes >= 0, "maxBytes must be non-negative: %s", maxBytes);
+
+		responses = CacheBuilder.newBuilder()
+			.maximumWeight(maxBytes)
+			.weigher(new Weigher<String, CachedResponse>()
+			{
+				public int weigh(String key, CachedResponse response)
+				{
+					return response.getResponse().getBody().length;
+				}
+			})
+			.build();
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// CacheStore methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public CachedResponse get(String key)
+	{
+		return responses.getIfPresent(key);
+	}
+
+	public void put(String key, CachedResponse response)
+	{
+		responses.put(key, response);
+	}
+
+	public void remove(String key)
+	{
+		responses.invalidate(key);
+	}
+
+	public void clear()
+	{
+		responses.invalidateAll();
+	}
+}
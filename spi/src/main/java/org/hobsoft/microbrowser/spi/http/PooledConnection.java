@@ -0,0 +1,781 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.spi.http;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingInputStream;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * An HTTP/1.1 connection that can be kept alive between exchanges.
+ */
+final class PooledConnection implements Closeable
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// constants
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+	private static final int MAX_LINE_LENGTH = 8192;
+
+	private static final int MAX_HEADER_COUNT = 100;
+
+	private static final long KEEP_ALIVE_MARGIN_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private final String route;
+
+	private final Socket socket;
+
+	private final TimedInputStream timedIn;
+
+	private final InputStream in;
+
+	private final OutputStream out;
+
+	private final boolean proxied;
+
+	private long idleSince;
+
+	private long keepAliveNanos;
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	PooledConnection(String route, Socket socket, boolean proxied) throws IOException
+	{
+		this.route = checkNotNull(route, "route");
+		this.socket = checkNotNull(socket, "socket");
+		this.proxied = proxied;
+
+		keepAliveNanos = -1;
+		timedIn = new TimedInputStream(socket);
+		in = new BufferedInputStream(timedIn, BUFFER_SIZE);
+		out = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// public methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public String getRoute()
+	{
+		return route;
+	}
+
+	public long getIdleSince()
+	{
+		return idleSince;
+	}
+
+	public void setIdleSince(long idleSince)
+	{
+		this.idleSince = idleSince;
+	}
+
+	/**
+	 * Writes the specified request to this connection.
+	 *
+	 * @param request
+	 *            the request to write
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public void writeRequest(HttpRequest request) throws IOException
+	{
+		URL url = request.getUrl();
+		StringBuilder head = new StringBuilder();
+
+		head.append(request.getMethod()).append(' ').append(getRequestTarget(url)).append(" HTTP/1.1\r\n");
+		appendHeader(head, "Host", getHost(url));
+
+		for (Entry<String, String> header : request.getHeaders().entrySet())
+		{
+			appendHeader(head, header.getKey(), header.getValue());
+		}
+
+		String cookieHeader = request.getCookieHeader();
+
+		if (cookieHeader != null)
+		{
+			appendHeader(head, "Cookie", cookieHeader);
+		}
+
+		byte[] body = request.getBody();
+
+		if (body.length > 0 || !HttpRequest.GET.equals(request.getMethod()))
+		{
+			appendHeader(head, "Content-Length", String.valueOf(body.length));
+		}
+
+		head.append("\r\n");
+
+		out.write(head.toString().getBytes(UTF_8));
+		out.write(body);
+		out.flush();
+	}
+
+	/**
+	 * Reads the response to the specified request from this connection.
+	 *
+	 * @param request
+	 *            the request that was written
+	 * @param limits
+	 *            the limits to enforce while reading the response
+	 * @param startNanos
+	 *            the time that the request started, from which any total timeout is measured
+	 * @return the response, or {@code null} if the connection was closed before any response was received
+	 * @throws IOException
+	 *             if an I/O error occurs, or a limit is reached and the response is not truncated
+	 */
+	public Exchange readResponse(HttpRequest request, ResponseLimits limits, long startNanos) throws IOException
+	{
+		timedIn.start(limits, startNanos);
+
+		try
+		{
+			return readResponse(request, limits);
+		}
+		finally
+		{
+			timedIn.finish();
+		}
+	}
+
+	/**
+	 * Gets whether this idle connection can be reused, without blocking.
+	 * <p>
+	 * A connection is stale once it has been idle for nearly as long as the peer said it would keep it alive, or once
+	 * unsolicited data has arrived on it. A peer that closed the connection without saying when cannot be detected
+	 * without blocking, and is instead left to {@code PooledTransport}, which connects afresh when a reused connection
+	 * turns out to be closed.
+	 *
+	 * @return {@code true} if this connection is not known to be stale
+	 */
+	public boolean isHealthy()
+	{
+		if (socket.isClosed() || socket.isInputShutdown() || socket.isOutputShutdown())
+		{
+			return false;
+		}
+
+		if (keepAliveNanos != -1 && System.nanoTime() - idleSince >= keepAliveNanos - KEEP_ALIVE_MARGIN_NANOS)
+		{
+			return false;
+		}
+
+		try
+		{
+			return in.available() == 0;
+		}
+		catch (IOException exception)
+		{
+			return false;
+		}
+	}
+
+	public void close()
+	{
+		try
+		{
+			socket.close();
+		}
+		catch (IOException exception)
+		{
+			// ignore
+		}
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// package-private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	static String readLine(InputStream in) throws IOException
+	{
+		ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+		int b;
+
+		while ((b = in.read()) != -1)
+		{
+			if (line.size() == MAX_LINE_LENGTH)
+			{
+				throw new IOException("Response line exceeds " + MAX_LINE_LENGTH + " bytes");
+			}
+
+			if (b == '\n')
+			{
+				byte[] bytes = line.toByteArray();
+				int length = (bytes.length > 0 && bytes[bytes.length - 1] == '\r') ? bytes.length - 1 : bytes.length;
+
+				return new String(bytes, 0, length, ISO_8859_1);
+			}
+
+			line.write(b);
+		}
+
+		return (line.size() > 0) ? new String(line.toByteArray(), ISO_8859_1) : null;
+	}
+
+	static void skipHeaders(InputStream in) throws IOException
+	{
+		String line = readLine(in);
+		int count = 0;
+
+		while (line != null && !line.isEmpty())
+		{
+			checkHeaderCount(++count);
+			line = readLine(in);
+		}
+	}
+
+	static String getHost(URL url)
+	{
+		int port = url.getPort();
+
+		return (port == -1 || port == url.getDefaultPort()) ? url.getHost() : url.getHost() + ":" + port;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private String getRequestTarget(URL url)
+	{
+		String target;
+
+		if (proxied && "http".equals(url.getProtocol()))
+		{
+			target = url.getProtocol() + "://" + url.getAuthority() + url.getFile();
+		}
+		else
+		{
+			target = url.getFile();
+		}
+
+		return escape(target.isEmpty() ? "/" : target);
+	}
+
+	/**
+	 * Percent-encodes any characters that are not permitted in a request target, such as spaces.
+	 */
+	private static String escape(String target)
+	{
+		StringBuilder escaped = new StringBuilder(target.length());
+		int index = 0;
+
+		while (index < target.length())
+		{
+			int codePoint = target.codePointAt(index);
+			int next = index + Character.charCount(codePoint);
+
+			if (codePoint > 0x20 && codePoint < 0x7f)
+			{
+				escaped.append((char) codePoint);
+			}
+			else
+			{
+				for (byte b : target.substring(index, next).getBytes(UTF_8))
+				{
+					escaped.append('%').append(HEX_DIGITS[(b >> 4) & 0xf]).append(HEX_DIGITS[b & 0xf]);
+				}
+			}
+
+			index = next;
+		}
+
+		return escaped.toString();
+	}
+
+	private static void appendHeader(StringBuilder head, String name, String value)
+	{
+		head.append(name).append(": ").append(value).append("\r\n");
+	}
+
+	private Exchange readResponse(HttpRequest request, ResponseLimits limits) throws IOException
+	{
+		String statusLine = readLine();
+
+		while (statusLine != null && statusLine.isEmpty())
+		{
+			statusLine = readLine();
+		}
+
+		if (statusLine == null)
+		{
+			return null;
+		}
+
+		StatusLine status = StatusLine.parse(statusLine);
+		Map<String, List<String>> headers = readHeaders();
+
+		// skip interim responses
+		while (status.code >= 100 && status.code < 200 && status.code != 101)
+		{
+			status = StatusLine.parse(readLine());
+			headers = readHeaders();
+		}
+
+		// a body delimited by the end of the stream precludes reuse
+		boolean delimited = !hasBody(request, status.code) || hasHeaderValue(headers, "Transfer-Encoding", "chunked")
+			|| headers.containsKey("Content-Length");
+		boolean keepAlive = delimited && isKeepAlive(status, headers);
+
+		HttpResponse response = readBody(request, status, headers, limits);
+		keepAliveNanos = getKeepAliveNanos(headers);
+
+		// the remainder of a truncated body is left unread
+		return new Exchange(response, keepAlive && !response.isTruncated());
+	}
+
+	private Map<String, List<String>> readHeaders() throws IOException
+	{
+		Map<String, List<String>> headers = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+		String line = readLine();
+		int count = 0;
+
+		while (line != null && !line.isEmpty())
+		{
+			checkHeaderCount(++count);
+			int colon = line.indexOf(':');
+
+			if (colon > 0)
+			{
+				String name = line.substring(0, colon).trim();
+				List<String> values = headers.get(name);
+
+				if (values == null)
+				{
+					values = new ArrayList<String>();
+					headers.put(name, values);
+				}
+
+				values.add(line.substring(colon + 1).trim());
+			}
+
+			line = readLine();
+		}
+
+		if (line == null)
+		{
+			throw new EOFException("Unexpected end of stream reading response headers");
+		}
+
+		return headers;
+	}
+
+	private String readLine() throws IOException
+	{
+		return readLine(in);
+	}
+
+	/**
+	 * Reads the response body, decoding any content coding as the encoded bytes arrive from the connection.
+	 */
+	private HttpResponse readBody(HttpRequest request, StatusLine status, Map<String, List<String>> headers,
+		ResponseLimits limits) throws IOException
+	{
+		InputStream encoded;
+		long contentLength = -1;
+
+		if (!hasBody(request, status.code))
+		{
+			encoded = new ByteArrayInputStream(new byte[0]);
+		}
+		else if (hasHeaderValue(headers, "Transfer-Encoding", "chunked"))
+		{
+			encoded = new ChunkedInputStream(in);
+		}
+		else if (headers.containsKey("Content-Length"))
+		{
+			contentLength = parseContentLength(headers);
+			encoded = ByteStreams.limit(in, contentLength);
+		}
+		else
+		{
+			encoded = in;
+		}
+
+		CountingInputStream counting = new CountingInputStream(encoded);
+		InputStream decoded = ContentEncodings.decode(counting, headers.get("Content-Encoding"));
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		boolean truncated;
+
+		try
+		{
+			truncated = copy(decoded, body, limits, newScan(request));
+
+			if (!truncated)
+			{
+				// consume anything after the encoded data, such as padding, so that the connection can be reused
+				ByteStreams.exhaust(counting);
+			}
+		}
+		finally
+		{
+			decoded.close();
+		}
+
+		if (!truncated && contentLength != -1 && counting.getCount() < contentLength)
+		{
+			throw new EOFException("Unexpected end of stream reading response body");
+		}
+
+		return new HttpResponse(request.getUrl(), status.code, status.message, headers, body.toByteArray())
+			.withEncodedLength(counting.getCount())
+			.withTruncated(truncated);
+	}
+
+	private static BodyScanner.Scan newScan(HttpRequest request)
+	{
+		BodyScanner scanner = request.getBodyScanner();
+
+		return (scanner != null) ? scanner.newScan() : null;
+	}
+
+	/**
+	 * Copies the specified decoded body while enforcing the maximum body size and total timeout, and stopping once any
+	 * scan is satisfied.
+	 *
+	 * @return {@code true} if the body was truncated
+	 */
+	private static boolean copy(InputStream in, ByteArrayOutputStream out, ResponseLimits limits,
+		BodyScanner.Scan scan) throws IOException
+	{
+		long maxBodySize = limits.getMaxBodySize();
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int read;
+
+		try
+		{
+			while ((read = in.read(buffer)) != -1)
+			{
+				if (read > maxBodySize - out.size())
+				{
+					if (!limits.isTruncate())
+					{
+						throw new BodyTooLargeException(maxBodySize);
+					}
+
+					out.write(buffer, 0, (int) (maxBodySize - out.size()));
+					return true;
+				}
+
+				out.write(buffer, 0, read);
+
+				if (scan != null && scan.update(buffer, 0, read))
+				{
+					return true;
+				}
+			}
+		}
+		catch (TotalTimeoutException exception)
+		{
+			if (!limits.isTruncate())
+			{
+				throw exception;
+			}
+
+			return true;
+		}
+
+		return false;
+	}
+
+	private static long parseContentLength(Map<String, List<String>> headers) throws IOException
+	{
+		String value = headers.get("Content-Length").get(0);
+
+		try
+		{
+			long length = Long.parseLong(value);
+
+			if (length < 0)
+			{
+				throw new NumberFormatException();
+			}
+
+			return length;
+		}
+		catch (NumberFormatException exception)
+		{
+			throw new IOException("Invalid Content-Length: " + value);
+		}
+	}
+
+	private static boolean hasBody(HttpRequest request, int statusCode)
+	{
+		return !"HEAD".equals(request.getMethod()) && statusCode != 204 && statusCode != 304;
+	}
+
+	private static boolean isKeepAlive(StatusLine status, Map<String, List<String>> headers)
+	{
+		if (hasHeaderValue(headers, "Connection", "close"))
+		{
+			return false;
+		}
+
+		return !status.http10 || hasHeaderValue(headers, "Connection", "keep-alive");
+	}
+
+	/**
+	 * Gets how long the peer will keep the connection alive while idle, from the {@code timeout} parameter of any
+	 * {@code Keep-Alive} header.
+	 *
+	 * @return the keep-alive timeout in nanoseconds, or {@code -1} if the peer did not say
+	 */
+	private static long getKeepAliveNanos(Map<String, List<String>> headers)
+	{
+		List<String> values = headers.get("Keep-Alive");
+
+		if (values != null)
+		{
+			for (String value : values)
+			{
+				for (String parameter : value.split(","))
+				{
+					String[] nameValue = parameter.split("=", 2);
+
+					if (nameValue.length == 2 && "timeout".equalsIgnoreCase(nameValue[0].trim()))
+					{
+						try
+						{
+							return TimeUnit.SECONDS.toNanos(Math.max(Long.parseLong(nameValue[1].trim()), 0));
+						}
+						catch (NumberFormatException exception)
+						{
+							// ignore
+						}
+					}
+				}
+			}
+		}
+
+		return -1;
+	}
+
+	private static void checkHeaderCount(int count) throws IOException
+	{
+		if (count > MAX_HEADER_COUNT)
+		{
+			throw new IOException("Response exceeds " + MAX_HEADER_COUNT + " headers");
+		}
+	}
+
+	private static boolean hasHeaderValue(Map<String, List<String>> headers, String name, String value)
+	{
+		List<String> values = headers.get(name);
+
+		if (values != null)
+		{
+			for (String headerValue : values)
+			{
+				for (String token : headerValue.split(","))
+				{
+					if (value.equalsIgnoreCase(token.trim()))
+					{
+						return true;
+					}
+				}
+			}
+		}
+
+		return false;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// types
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * A response read from a connection, together with whether the connection can be reused.
+	 */
+	static final class Exchange
+	{
+		private final HttpResponse response;
+
+		private final boolean keepAlive;
+
+		Exchange(HttpResponse response, boolean keepAlive)
+		{
+			this.response = response;
+			this.keepAlive = keepAlive;
+		}
+
+		public HttpResponse getResponse()
+		{
+			return response;
+		}
+
+		public boolean isKeepAlive()
+		{
+			return keepAlive;
+		}
+	}
+
+	/**
+	 * Socket input stream that shortens the read timeout so that reads also time out when a total timeout is reached.
+	 */
+	private static final class TimedInputStream extends FilterInputStream
+	{
+		private final Socket socket;
+
+		private int readTimeoutMillis;
+
+		private long deadlineNanos;
+
+		private boolean timed;
+
+		TimedInputStream(Socket socket) throws IOException
+		{
+			super(socket.getInputStream());
+
+			this.socket = socket;
+		}
+
+		public void start(ResponseLimits limits, long startNanos) throws IOException
+		{
+			readTimeoutMillis = limits.getReadTimeoutMillis();
+			deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(limits.getTotalTimeoutMillis());
+			timed = limits.getTotalTimeoutMillis() > 0;
+
+			socket.setSoTimeout(readTimeoutMillis);
+		}
+
+		public void finish() throws IOException
+		{
+			if (timed)
+			{
+				timed = false;
+				socket.setSoTimeout(readTimeoutMillis);
+			}
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			byte[] b = new byte[1];
+
+			return (read(b, 0, 1) == -1) ? -1 : (b[0] & 0xff);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException
+		{
+			if (!timed)
+			{
+				return super.read(b, off, len);
+			}
+
+			long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+
+			if (remainingMillis <= 0)
+			{
+				throw new TotalTimeoutException("Total timeout exceeded receiving response");
+			}
+
+			boolean total = readTimeoutMillis == 0 || remainingMillis < readTimeoutMillis;
+			socket.setSoTimeout(total ? (int) Math.min(remainingMillis, Integer.MAX_VALUE) : readTimeoutMillis);
+
+			try
+			{
+				return super.read(b, off, len);
+			}
+			catch (SocketTimeoutException exception)
+			{
+				if (total)
+				{
+					throw (TotalTimeoutException) new TotalTimeoutException("Total timeout exceeded receiving response")
+						.initCause(exception);
+				}
+
+				throw exception;
+			}
+		}
+	}
+
+	/**
+	 * A parsed HTTP status line.
+	 */
+	private static final class StatusLine
+	{
+		private final boolean http10;
+
+		private final int code;
+
+		private final String message;
+
+		private StatusLine(boolean http10, int code, String message)
+		{
+			this.http10 = http10;
+			this.code = code;
+			this.message = message;
+		}
+
+		public static StatusLine parse(String line) throws IOException
+		{
+			if (line == null || !line.startsWith("HTTP/1.") || line.length() < 12 || line.charAt(8) != ' ')
+			{
+				throw new IOException("Unexpected status line: " + line);
+			}
+
+			int code;
+
+			try
+			{
+				code = Integer.parseInt(line.substring(9, 12));
+			}
+			catch (NumberFormatException exception)
+			{
+				throw new IOException("Unexpected status line: " + line);
+			}
+
+			String message = (line.length() > 13) ? line.substring(13) : "";
+
+			return new StatusLine(line.charAt(7) == '0', code, message);
+		}
+	}
+}
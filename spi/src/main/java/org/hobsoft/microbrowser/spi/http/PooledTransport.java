@@ -0,0 +1,487 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.spi.http;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import org.hobsoft.microbrowser.spi.CompletableFutures;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * HTTP/1.1 {@code Transport} that reuses keep-alive connections from a bounded per-host pool.
+ */
+public class PooledTransport extends AbstractTransport implements Closeable
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// constants
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static final int DEFAULT_POOL_SIZE = 5;
+
+	private static final long DEFAULT_IDLE_TIMEOUT_SECONDS = 30;
+
+	private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private final ConnectionPool pool;
+
+	private volatile ResponseLimits limits;
+
+	private volatile boolean tcpNoDelay;
+
+	private volatile SSLSocketFactory sslSocketFactory;
+
+	private volatile Executor executor;
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public PooledTransport()
+	{
+		pool = new ConnectionPool(DEFAULT_POOL_SIZE, TimeUnit.SECONDS.toNanos(DEFAULT_IDLE_TIMEOUT_SECONDS));
+		limits = ResponseLimits.DEFAULT;
+		tcpNoDelay = true;
+		sslSocketFactory = (SSLSocketFactory) SSLSocketFactory.getDefault();
+		executor = CompletableFutures.getDefaultExecutor();
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// Closeable methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Closes all idle pooled connections.
+	 */
+	public void close()
+	{
+		pool.evictAll();
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// public methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Sets the maximum number of idle keep-alive connections to retain for each host.
+	 *
+	 * @param poolSize
+	 *            the maximum number of idle connections per host, or zero to disable connection reuse
+	 * @return this transport
+	 */
+	public PooledTransport poolSize(int poolSize)
+	{
+		checkArgument(poolSize >= 0, "poolSize must be non-negative: %s", poolSize);
+
+		pool.setMaxIdleConnectionsPerRoute(poolSize);
+		return this;
+	}
+
+	/**
+	 * Sets how long an idle connection is retained before it is evicted from the pool.
+	 *
+	 * @param duration
+	 *            the idle timeout duration
+	 * @param unit
+	 *            the idle timeout unit
+	 * @return this transport
+	 */
+	public PooledTransport idleTimeout(long duration, TimeUnit unit)
+	{
+		checkArgument(duration >= 0, "duration must be non-negative: %s", duration);
+
+		pool.setIdleTimeoutNanos(unit.toNanos(duration));
+		return this;
+	}
+
+	/**
+	 * Sets the connect and read timeout.
+	 *
+	 * @param millis
+	 *            the timeout in milliseconds, or zero for no timeout
+	 * @return this transport
+	 */
+	public PooledTransport timeout(int millis)
+	{
+		checkArgument(millis >= 0, "millis must be non-negative: %s", millis);
+
+		limits = limits.withConnectTimeout(millis, TimeUnit.MILLISECONDS)
+			.withReadTimeout(millis, TimeUnit.MILLISECONDS);
+		return this;
+	}
+
+	/**
+	 * Sets the size and time limits to enforce while receiving each response.
+	 *
+	 * @param limits
+	 *            the response limits
+	 * @return this transport
+	 */
+	public PooledTransport limits(ResponseLimits limits)
+	{
+		this.limits = checkNotNull(limits, "limits");
+		return this;
+	}
+
+	/**
+	 * Sets whether new connections disable Nagle's algorithm.
+	 *
+	 * @param tcpNoDelay
+	 *            {@code true} to enable {@code TCP_NODELAY}
+	 * @return this transport
+	 */
+	public PooledTransport tcpNoDelay(boolean tcpNoDelay)
+	{
+		this.tcpNoDelay = tcpNoDelay;
+		return this;
+	}
+
+	/**
+	 * Sets the factory used to create TLS connections.
+	 *
+	 * @param sslSocketFactory
+	 *            the TLS socket factory
+	 * @return this transport
+	 */
+	public PooledTransport sslSocketFactory(SSLSocketFactory sslSocketFactory)
+	{
+		this.sslSocketFactory = checkNotNull(sslSocketFactory, "sslSocketFactory");
+		return this;
+	}
+
+	/**
+	 * Sets the executor that runs asynchronous requests.
+	 *
+	 * @param executor
+	 *            the executor, which blocks one thread for each request in progress
+	 * @return this transport
+	 */
+	public PooledTransport executor(Executor executor)
+	{
+		this.executor = checkNotNull(executor, "executor");
+		return this;
+	}
+
+	/**
+	 * Sets the maximum number of permanent redirects to remember, so that later requests skip them.
+	 *
+	 * @param maxPermanentRedirects
+	 *            the maximum number of redirects, or zero to always follow permanent redirects anew
+	 * @return this transport
+	 */
+	public PooledTransport maxPermanentRedirects(int maxPermanentRedirects)
+	{
+		setMaxPermanentRedirects(maxPermanentRedirects);
+		return this;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// AbstractTransport methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Override
+	protected HttpResponse send(HttpRequest request) throws IOException
+	{
+		return send(request, new Cancellation());
+	}
+
+	@Override
+	protected HttpResponse send(HttpRequest request, Cancellation cancellation) throws IOException
+	{
+		// asynchronous requests are interrupted when cancelled
+		if (Thread.interrupted() || cancellation.isCancelled())
+		{
+			throw new InterruptedIOException("Interrupted fetching URL " + request.getUrl());
+		}
+
+		request = withDefaultHeaders(request);
+
+		ResponseLimits limits = this.limits;
+		long startNanos = request.isStarted() ? request.getStartNanos() : System.nanoTime();
+		PooledConnection connection = pool.acquire(getRoute(request.getUrl()));
+		PooledConnection.Exchange exchange = null;
+
+		// socket I/O ignores interrupts, so close the connection in use when cancelled
+		if (connection != null)
+		{
+			cancellation.register(connection);
+			exchange = exchange(connection, request, limits, startNanos, true);
+		}
+
+		// connect afresh when there was no idle connection, or the idle connection was closed by the peer
+		if (exchange == null)
+		{
+			connection = connect(request.getUrl(), limits, startNanos);
+			cancellation.register(connection);
+			exchange = exchange(connection, request, limits, startNanos, false);
+		}
+
+		cancellation.unregister();
+
+		if (exchange.isKeepAlive())
+		{
+			pool.release(connection);
+		}
+		else
+		{
+			connection.close();
+		}
+
+		return exchange.getResponse();
+	}
+
+	@Override
+	protected Executor getExecutor()
+	{
+		return executor;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// package-private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	int getIdleConnectionCount(URL url)
+	{
+		return pool.getIdleConnectionCount(getRoute(url));
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static HttpRequest withDefaultHeaders(HttpRequest request)
+	{
+		if (request.getHeader("Accept-Encoding") == null)
+		{
+			request = request.withHeader("Accept-Encoding", ContentEncodings.ACCEPT_ENCODING);
+		}
+
+		return request;
+	}
+
+	/**
+	 * Exchanges the specified request on a connection.
+	 * <p>
+	 * A reused connection may have been closed by the peer while idle. The request is only sent again when it could
+	 * not be written, or when it is idempotent and the connection was closed before any response was read.
+	 *
+	 * @return the exchange, or {@code null} if a reused connection was closed by the peer before responding
+	 */
+	private static PooledConnection.Exchange exchange(PooledConnection connection, HttpRequest request,
+		ResponseLimits limits, long startNanos, boolean reused) throws IOException
+	{
+		try
+		{
+			connection.writeRequest(request);
+		}
+		catch (IOException exception)
+		{
+			connection.close();
+
+			if (reused && !(exception instanceof SocketTimeoutException))
+			{
+				return null;
+			}
+
+			throw exception;
+		}
+
+		PooledConnection.Exchange exchange;
+
+		try
+		{
+			exchange = connection.readResponse(request, limits, startNanos);
+		}
+		catch (IOException exception)
+		{
+			connection.close();
+			throw exception;
+		}
+
+		if (exchange == null)
+		{
+			connection.close();
+
+			// the peer may have acted on a request it received before closing
+			if (reused && isIdempotent(request))
+			{
+				return null;
+			}
+
+			throw new EOFException("Connection closed before response: " + request.getUrl());
+		}
+
+		return exchange;
+	}
+
+	private PooledConnection connect(URL url, ResponseLimits limits, long startNanos) throws IOException
+	{
+		Proxy proxy = selectProxy(url);
+		boolean https = "https".equals(url.getProtocol());
+		int port = (url.getPort() != -1) ? url.getPort() : url.getDefaultPort();
+		int connectTimeout = getConnectTimeout(limits, startNanos);
+
+		Socket socket = (proxy.type() == Proxy.Type.HTTP) ? new Socket() : new Socket(proxy);
+
+		try
+		{
+			socket.setTcpNoDelay(tcpNoDelay);
+			socket.setKeepAlive(true);
+			socket.setSoTimeout(limits.getReadTimeoutMillis());
+
+			if (proxy.type() == Proxy.Type.HTTP)
+			{
+				socket.connect(proxy.address(), connectTimeout);
+
+				if (https)
+				{
+					tunnel(socket, url.getHost(), port);
+				}
+			}
+			else
+			{
+				socket.connect(new InetSocketAddress(url.getHost(), port), connectTimeout);
+			}
+
+			if (https)
+			{
+				socket = startTls(socket, url.getHost(), port);
+			}
+
+			return new PooledConnection(getRoute(url), socket, proxy.type() == Proxy.Type.HTTP);
+		}
+		catch (IOException exception)
+		{
+			socket.close();
+			throw exception;
+		}
+	}
+
+	/**
+	 * Gets the connect timeout, shortened to the time remaining before any total timeout.
+	 */
+	private static int getConnectTimeout(ResponseLimits limits, long startNanos) throws TotalTimeoutException
+	{
+		int connectTimeout = limits.getConnectTimeoutMillis();
+
+		if (limits.getTotalTimeoutMillis() == 0)
+		{
+			return connectTimeout;
+		}
+
+		long remainingMillis = limits.getTotalTimeoutMillis()
+			- TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+		if (remainingMillis <= 0)
+		{
+			throw new TotalTimeoutException("Total timeout exceeded connecting");
+		}
+
+		return (connectTimeout == 0) ? (int) Math.min(remainingMillis, Integer.MAX_VALUE)
+			: (int) Math.min(remainingMillis, connectTimeout);
+	}
+
+	private Socket startTls(Socket socket, String host, int port) throws IOException
+	{
+		SSLSocket sslSocket = (SSLSocket) sslSocketFactory.createSocket(socket, host, port, true);
+
+		SSLParameters parameters = sslSocket.getSSLParameters();
+		parameters.setEndpointIdentificationAlgorithm("HTTPS");
+		sslSocket.setSSLParameters(parameters);
+
+		sslSocket.startHandshake();
+
+		return sslSocket;
+	}
+
+	private static void tunnel(Socket socket, String host, int port) throws IOException
+	{
+		OutputStream out = socket.getOutputStream();
+		String authority = host + ":" + port;
+
+		out.write(("CONNECT " + authority + " HTTP/1.1\r\nHost: " + authority + "\r\n\r\n").getBytes(ISO_8859_1));
+		out.flush();
+
+		// read unbuffered so that no bytes belonging to the TLS handshake are consumed
+		InputStream in = socket.getInputStream();
+		String statusLine = PooledConnection.readLine(in);
+
+		if (statusLine == null || !statusLine.matches("HTTP/1\\.\\d 2\\d\\d.*"))
+		{
+			throw new IOException("Unable to tunnel through proxy: " + statusLine);
+		}
+
+		PooledConnection.skipHeaders(in);
+	}
+
+	private static Proxy selectProxy(URL url)
+	{
+		ProxySelector selector = ProxySelector.getDefault();
+
+		if (selector == null)
+		{
+			return Proxy.NO_PROXY;
+		}
+
+		List<Proxy> proxies;
+
+		try
+		{
+			proxies = selector.select(url.toURI());
+		}
+		catch (URISyntaxException exception)
+		{
+			return Proxy.NO_PROXY;
+		}
+
+		return (proxies == null || proxies.isEmpty()) ? Proxy.NO_PROXY : proxies.get(0);
+	}
+
+	private static String getRoute(URL url)
+	{
+		int port = (url.getPort() != -1) ? url.getPort() : url.getDefaultPort();
+
+		return url.getProtocol() + "://" + url.getHost() + ":" + port;
+	}
+
+	private static boolean isIdempotent(HttpRequest request)
+	{
+		return HttpRequest.GET.equals(request.getMethod()) || "HEAD".equals(request.getMethod());
+	}
+}
@@ -0,0 +1,180 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.spi.http;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Immutable size and time limits that a transport enforces while it receives each response.
+ * <p>
+ * By default connecting and each read time out after 30 seconds, there is no total timeout and response bodies may be
+ * up to 1MB. When the maximum body size or the total timeout is reached while the body is being received, the
+ * response either fails or, if truncation is enabled, is returned with the part of the body received so far.
+ */
+public final class ResponseLimits
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// constants
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * The default limits.
+	 */
+	public static final ResponseLimits DEFAULT = new ResponseLimits(30000, 30000, 0, 1024 * 1024, false);
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private final int connectTimeoutMillis;
+
+	private final int readTimeoutMillis;
+
+	private final long totalTimeoutMillis;
+
+	private final long maxBodySize;
+
+	private final boolean truncate;
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private ResponseLimits(int connectTimeoutMillis, int readTimeoutMillis, long totalTimeoutMillis, long maxBodySize,
+		boolean truncate)
+	{
+		this.connectTimeoutMillis = connectTimeoutMillis;
+		this.readTimeoutMillis = readTimeoutMillis;
+		this.totalTimeoutMillis = totalTimeoutMillis;
+		this.maxBodySize = maxBodySize;
+		this.truncate = truncate;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// public methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Gets the time to wait for a connection to be established.
+	 *
+	 * @return the connect timeout in milliseconds, or zero for no timeout
+	 */
+	public int getConnectTimeoutMillis()
+	{
+		return connectTimeoutMillis;
+	}
+
+	/**
+	 * Gets the time to wait for each read from a connection.
+	 *
+	 * @return the read timeout in milliseconds, or zero for no timeout
+	 */
+	public int getReadTimeoutMillis()
+	{
+		return readTimeoutMillis;
+	}
+
+	/**
+	 * Gets the time to wait for a complete response, from when the request started until the last byte of its body is
+	 * received, including any redirects and retries sent for the request.
+	 *
+	 * @return the total timeout in milliseconds, or zero for no timeout
+	 */
+	public long getTotalTimeoutMillis()
+	{
+		return totalTimeoutMillis;
+	}
+
+	/**
+	 * Gets the maximum number of decoded body bytes to receive.
+	 *
+	 * @return the maximum body size, or {@code Long.MAX_VALUE} for no limit
+	 */
+	public long getMaxBodySize()
+	{
+		return maxBodySize;
+	}
+
+	/**
+	 * Gets whether a body that reaches the maximum size or the total timeout is truncated rather than failed.
+	 *
+	 * @return {@code true} to truncate the body, or {@code false} to fail the response
+	 */
+	public boolean isTruncate()
+	{
+		return truncate;
+	}
+
+	public ResponseLimits withConnectTimeout(long duration, TimeUnit unit)
+	{
+		return new ResponseLimits(toMillis(duration, unit), readTimeoutMillis, totalTimeoutMillis, maxBodySize,
+			truncate);
+	}
+
+	public ResponseLimits withReadTimeout(long duration, TimeUnit unit)
+	{
+		return new ResponseLimits(connectTimeoutMillis, toMillis(duration, unit), totalTimeoutMillis, maxBodySize,
+			truncate);
+	}
+
+	public ResponseLimits withTotalTimeout(long duration, TimeUnit unit)
+	{
+		return new ResponseLimits(connectTimeoutMillis, readTimeoutMillis, toMillis(duration, unit), maxBodySize,
+			truncate);
+	}
+
+	/**
+	 * Gets a copy of these limits with the specified maximum body size.
+	 *
+	 * @param newMaxBodySize
+	 *            the maximum number of decoded body bytes, or {@code Long.MAX_VALUE} for no limit
+	 * @return the new limits
+	 */
+	public ResponseLimits withMaxBodySize(long newMaxBodySize)
+	{
+		checkArgument(newMaxBodySize >= 0, "newMaxBodySize must be non-negative: %s", newMaxBodySize);
+
+		return new ResponseLimits(connectTimeoutMillis, readTimeoutMillis, totalTimeoutMillis, newMaxBodySize,
+			truncate);
+	}
+
+	public ResponseLimits withTruncate(boolean newTruncate)
+	{
+		return new ResponseLimits(connectTimeoutMillis, readTimeoutMillis, totalTimeoutMillis, maxBodySize,
+			newTruncate);
+	}
+
+	@Override
+	public String toString()
+	{
+		return "ResponseLimits[connectTimeoutMillis=" + connectTimeoutMillis + ", readTimeoutMillis="
+			+ readTimeoutMillis + ", totalTimeoutMillis=" + totalTimeoutMillis + ", maxBodySize=" + maxBodySize
+			+ ", truncate=" + truncate + "]";
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static int toMillis(long duration, TimeUnit unit)
+	{
+		checkArgument(duration >= 0, "duration must be non-negative: %s", duration);
+		checkNotNull(unit, "unit");
+
+		return (int) Math.min(unit.toMillis(duration), Integer.MAX_VALUE);
+	}
+}
@@ -0,0 +1,612 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.spi.http;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import org.hobsoft.microbrowser.spi.CompletableFutures;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@code Transport} decorator that retries idempotent requests that fail transiently, and that can hedge slow ones.
+ * <p>
+ * A {@code GET} or {@code HEAD} request that fails with an I/O error, or whose response status is {@code 502},
+ * {@code 503} or {@code 504}, is sent again after an exponentially increasing delay with full jitter, up to the maximum
+ * number of attempts. Other requests, such as form submissions, are never retried, and nor are requests that have
+ * exceeded their total timeout or whose next delay would exceed it.
+ * <p>
+ * When hedging is enabled, an attempt that is still in progress once the specified percentile of recent response
+ * times has elapsed is duplicated. Whichever response arrives first is used and the other request is cancelled. This
+ * transport should therefore be beneath any {@code CoalescingTransport}, which would coalesce the duplicate request.
+ */
+public class RetryingTransport implements Transport
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// constants
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+	private static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 100;
+
+	private static final long DEFAULT_MAX_BACKOFF_MILLIS = 2000;
+
+	private static final int LATENCY_SAMPLE_SIZE = 100;
+
+	private static final int MIN_LATENCY_SAMPLES = 20;
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private final Transport delegate;
+
+	private final LatencyTracker latencies;
+
+	private volatile int maxAttempts;
+
+	private volatile long initialBackoffNanos;
+
+	private volatile long maxBackoffNanos;
+
+	private volatile double hedgePercentile;
+
+	private volatile long totalTimeoutNanos;
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public RetryingTransport(Transport delegate)
+	{
+		this.delegate = checkNotNull(delegate, "delegate");
+
+		latencies = new LatencyTracker(LATENCY_SAMPLE_SIZE);
+		maxAttempts = DEFAULT_MAX_ATTEMPTS;
+		initialBackoffNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_INITIAL_BACKOFF_MILLIS);
+		maxBackoffNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MAX_BACKOFF_MILLIS);
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// Transport methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public HttpResponse execute(HttpRequest request) throws IOException
+	{
+		// attempts share a single total timeout
+		request = request.start();
+
+		if (!isIdempotent(request))
+		{
+			return delegate.execute(request);
+		}
+
+		int attempts = maxAttempts;
+
+		for (int attempt = 1; ; attempt++)
+		{
+			long backoffNanos;
+
+			try
+			{
+				HttpResponse response = attempt(request);
+				backoffNanos = getBackoffNanos(request, attempt, attempts);
+
+				if (backoffNanos == -1 || !isRetryable(response))
+				{
+					return response;
+				}
+			}
+			catch (IOException exception)
+			{
+				backoffNanos = getBackoffNanos(request, attempt, attempts);
+
+				if (backoffNanos == -1 || !isRetryable(exception))
+				{
+					throw exception;
+				}
+			}
+
+			sleep(backoffNanos, request);
+		}
+	}
+
+	public CompletableFuture<HttpResponse> executeAsync(HttpRequest request)
+	{
+		// attempts share a single total timeout
+		request = request.start();
+
+		if (!isIdempotent(request))
+		{
+			return delegate.executeAsync(request);
+		}
+
+		CompletableFuture<HttpResponse> result = new CompletableFuture<HttpResponse>();
+
+		executeAsync(request, 1, maxAttempts, result);
+
+		return result;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// public methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Sets the maximum number of times to send an idempotent request.
+	 *
+	 * @param maxAttempts
+	 *            the maximum number of attempts, or one to disable retries
+	 * @return this transport
+	 */
+	public RetryingTransport maxAttempts(int maxAttempts)
+	{
+		checkArgument(maxAttempts >= 1, "maxAttempts must be positive: %s", maxAttempts);
+
+		this.maxAttempts = maxAttempts;
+		return this;
+	}
+
+	/**
+	 * Sets the delay before each retry, which is chosen at random up to a limit that doubles with each attempt.
+	 *
+	 * @param initial
+	 *            the limit of the delay before the first retry
+	 * @param max
+	 *            the greatest limit of the delay before any retry
+	 * @param unit
+	 *            the time unit of the delays
+	 * @return this transport
+	 */
+	public RetryingTransport backoff(long initial, long max, TimeUnit unit)
+	{
+		checkArgument(initial >= 0, "initial must be non-negative: %s", initial);
+		checkArgument(max >= initial, "max must be at least initial: %s", max);
+
+		initialBackoffNanos = unit.toNanos(initial);
+		maxBackoffNanos = unit.toNanos(max);
+		return this;
+	}
+
+	/**
+	 * Sets the total timeout that the underlying transport enforces across every attempt at a request, so that a retry
+	 * is not sent once its delay would reach the timeout.
+	 *
+	 * @param duration
+	 *            the total timeout, or zero for no timeout
+	 * @param unit
+	 *            the time unit of the timeout
+	 * @return this transport
+	 * @see ResponseLimits#getTotalTimeoutMillis()
+	 */
+	public RetryingTransport totalTimeout(long duration, TimeUnit unit)
+	{
+		checkArgument(duration >= 0, "duration must be non-negative: %s", duration);
+
+		totalTimeoutNanos = unit.toNanos(duration);
+		return this;
+	}
+
+	/**
+	 * Sets when to hedge an idempotent request by sending a duplicate request.
+	 *
+	 * @param percentile
+	 *            the percentile of recent response times after which to send a duplicate request, such as
+	 *            {@code 95}, or zero to disable hedging
+	 * @return this transport
+	 */
+	public RetryingTransport hedge(double percentile)
+	{
+		checkArgument(percentile >= 0 && percentile < 100, "percentile must be between 0 and 100: %s", percentile);
+
+		hedgePercentile = percentile;
+		return this;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private void executeAsync(final HttpRequest request, final int attempt, final int attempts,
+		final CompletableFuture<HttpResponse> result)
+	{
+		CompletableFuture<HttpResponse> sent = attemptAsync(request);
+
+		// abort the attempt in progress if the result is cancelled or times out
+		CompletableFutures.cancelOnFailure(result, sent);
+
+		sent.whenComplete(new BiConsumer<HttpResponse, Throwable>()
+		{
+			public void accept(HttpResponse response, Throwable throwable)
+			{
+				Throwable cause = (throwable != null) ? CompletableFutures.unwrap(throwable) : null;
+				boolean retryable = (cause != null) ? isRetryable(cause) : isRetryable(response);
+				long backoffNanos = getBackoffNanos(request, attempt, attempts);
+
+				if (backoffNanos == -1 || !retryable)
+				{
+					if (cause != null)
+					{
+						result.completeExceptionally(cause);
+					}
+					else
+					{
+						result.complete(response);
+					}
+				}
+				else if (!result.isDone())
+				{
+					retryAsync(request, attempt, attempts, backoffNanos, result);
+				}
+			}
+		});
+	}
+
+	private void retryAsync(final HttpRequest request, final int attempt, final int attempts, long backoffNanos,
+		final CompletableFuture<HttpResponse> result)
+	{
+		CompletableFuture<Void> backoff = CompletableFutures.delay(backoffNanos, TimeUnit.NANOSECONDS);
+
+		CompletableFutures.cancelOnFailure(result, backoff);
+
+		backoff.thenRun(new Runnable()
+		{
+			public void run()
+			{
+				executeAsync(request, attempt + 1, attempts, result);
+			}
+		});
+	}
+
+	private HttpResponse attempt(HttpRequest request) throws IOException
+	{
+		if (getHedgeDelayNanos() == -1)
+		{
+			long startNanos = System.nanoTime();
+			HttpResponse response = delegate.execute(request);
+			latencies.record(System.nanoTime() - startNanos);
+			return response;
+		}
+
+		// hedging requires concurrent requests
+		return await(attemptAsync(request), request);
+	}
+
+	private CompletableFuture<HttpResponse> attemptAsync(final HttpRequest request)
+	{
+		long hedgeDelayNanos = getHedgeDelayNanos();
+
+		if (hedgeDelayNanos == -1)
+		{
+			return send(request);
+		}
+
+		final Race race = new Race();
+		race.add(send(request));
+
+		CompletableFuture<Void> hedgeDelay = CompletableFutures.delay(hedgeDelayNanos, TimeUnit.NANOSECONDS);
+		CompletableFutures.cancelOnFailure(race.getResult(), hedgeDelay);
+
+		hedgeDelay.thenRun(new Runnable()
+		{
+			public void run()
+			{
+				if (!race.getResult().isDone())
+				{
+					race.add(send(request));
+				}
+			}
+		});
+
+		return race.getResult();
+	}
+
+	private CompletableFuture<HttpResponse> send(HttpRequest request)
+	{
+		final long startNanos = System.nanoTime();
+		CompletableFuture<HttpResponse> sent = delegate.executeAsync(request);
+
+		sent.whenComplete(new BiConsumer<HttpResponse, Throwable>()
+		{
+			public void accept(HttpResponse response, Throwable throwable)
+			{
+				if (throwable == null)
+				{
+					latencies.record(System.nanoTime() - startNanos);
+				}
+			}
+		});
+
+		return sent;
+	}
+
+	private long getHedgeDelayNanos()
+	{
+		double percentile = hedgePercentile;
+
+		return (percentile == 0) ? -1 : latencies.getPercentile(percentile, MIN_LATENCY_SAMPLES);
+	}
+
+	/**
+	 * Gets the delay before retrying the specified request after the specified attempt.
+	 *
+	 * @return the delay in nanoseconds, or {@code -1} if no attempts are left or the delay would reach the total
+	 *         timeout
+	 */
+	private long getBackoffNanos(HttpRequest request, int attempt, int attempts)
+	{
+		if (attempt >= attempts)
+		{
+			return -1;
+		}
+
+		long limit = (long) Math.min(maxBackoffNanos, initialBackoffNanos * Math.pow(2, attempt - 1));
+		long backoffNanos = (limit > 0) ? ThreadLocalRandom.current().nextLong(limit + 1) : 0;
+		long timeoutNanos = totalTimeoutNanos;
+
+		if (timeoutNanos > 0 && System.nanoTime() + backoffNanos - request.getStartNanos() >= timeoutNanos)
+		{
+			return -1;
+		}
+
+		return backoffNanos;
+	}
+
+	private static boolean isIdempotent(HttpRequest request)
+	{
+		return HttpRequest.GET.equals(request.getMethod()) || "HEAD".equals(request.getMethod());
+	}
+
+	private static boolean isRetryable(HttpResponse response)
+	{
+		int statusCode = response.getStatusCode();
+
+		return statusCode == 502 || statusCode == 503 || statusCode == 504;
+	}
+
+	private static boolean isRetryable(Throwable throwable)
+	{
+		if (!(throwable instanceof IOException) || throwable instanceof BodyTooLargeException
+			|| throwable instanceof MalformedURLException || throwable instanceof CircuitOpenException
+			|| throwable instanceof TotalTimeoutException)
+		{
+			return false;
+		}
+
+		// an interrupted request has been cancelled, whereas one that timed out before its total timeout may succeed
+		// when retried
+		return !(throwable instanceof InterruptedIOException) || throwable instanceof SocketTimeoutException;
+	}
+
+	private static void sleep(long nanos, HttpRequest request) throws InterruptedIOException
+	{
+		try
+		{
+			TimeUnit.NANOSECONDS.sleep(nanos);
+		}
+		catch (InterruptedException exception)
+		{
+			Thread.currentThread().interrupt();
+			throw (InterruptedIOException) new InterruptedIOException("Interrupted fetching URL " + request.getUrl())
+				.initCause(exception);
+		}
+	}
+
+	private static HttpResponse await(CompletableFuture<HttpResponse> future, HttpRequest request) throws IOException
+	{
+		try
+		{
+			return future.get();
+		}
+		catch (InterruptedException exception)
+		{
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw (InterruptedIOException) new InterruptedIOException("Interrupted fetching URL " + request.getUrl())
+				.initCause(exception);
+		}
+		catch (ExecutionException exception)
+		{
+			Throwable cause = CompletableFutures.unwrap(exception);
+
+			if (cause instanceof IOException)
+			{
+				throw (IOException) cause;
+			}
+
+			if (cause instanceof RuntimeException)
+			{
+				throw (RuntimeException) cause;
+			}
+
+			throw new IOException("Error fetching URL " + request.getUrl(), cause);
+		}
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// types
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Concurrent requests for the same response, of which the first to succeed wins and the others are cancelled.
+	 */
+	private static final class Race
+	{
+		private final CompletableFuture<HttpResponse> result;
+
+		private final List<CompletableFuture<HttpResponse>> requests;
+
+		private int failures;
+
+		private boolean finished;
+
+		Race()
+		{
+			result = new CompletableFuture<HttpResponse>();
+			requests = new ArrayList<CompletableFuture<HttpResponse>>();
+
+			result.whenComplete(new BiConsumer<HttpResponse, Throwable>()
+			{
+				public void accept(HttpResponse response, Throwable throwable)
+				{
+					cancelAll();
+				}
+			});
+		}
+
+		public CompletableFuture<HttpResponse> getResult()
+		{
+			return result;
+		}
+
+		public void add(CompletableFuture<HttpResponse> request)
+		{
+			boolean added;
+
+			synchronized (this)
+			{
+				added = !finished;
+
+				if (added)
+				{
+					requests.add(request);
+				}
+			}
+
+			if (!added)
+			{
+				request.cancel(true);
+				return;
+			}
+
+			request.whenComplete(new BiConsumer<HttpResponse, Throwable>()
+			{
+				public void accept(HttpResponse response, Throwable throwable)
+				{
+					complete(response, throwable);
+				}
+			});
+		}
+
+		/**
+		 * Completes the result outside of any lock, since completion runs the caller's callbacks.
+		 */
+		private void complete(HttpResponse response, Throwable throwable)
+		{
+			synchronized (this)
+			{
+				if (throwable != null)
+				{
+					failures++;
+				}
+
+				// succeed with the first response, or fail once every request has failed
+				if (finished || (throwable != null && failures < requests.size()))
+				{
+					return;
+				}
+
+				finished = true;
+			}
+
+			if (throwable == null)
+			{
+				result.complete(response);
+			}
+			else
+			{
+				result.completeExceptionally(CompletableFutures.unwrap(throwable));
+			}
+		}
+
+		private void cancelAll()
+		{
+			List<CompletableFuture<HttpResponse>> cancelled;
+
+			synchronized (this)
+			{
+				finished = true;
+				cancelled = new ArrayList<CompletableFuture<HttpResponse>>(requests);
+			}
+
+			for (CompletableFuture<HttpResponse> request : cancelled)
+			{
+				request.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * Bounded sample of the most recent response times.
+	 */
+	private static final class LatencyTracker
+	{
+		private final long[] samples;
+
+		private int count;
+
+		private int next;
+
+		LatencyTracker(int size)
+		{
+			samples = new long[size];
+		}
+
+		public synchronized void record(long nanos)
+		{
+			samples[next] = nanos;
+			next = (next + 1) % samples.length;
+			count = Math.min(count + 1, samples.length);
+		}
+
+		/**
+		 * Gets the specified percentile of the sampled response times.
+		 *
+		 * @return the response time in nanoseconds, or {@code -1} if there are fewer than the minimum samples
+		 */
+		public long getPercentile(double percentile, int minSamples)
+		{
+			long[] sorted;
+
+			synchronized (this)
+			{
+				if (count < minSamples)
+				{
+					return -1;
+				}
+
+				sorted = Arrays.copyOf(samples, count);
+			}
+
+			Arrays.sort(sorted);
+
+			int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+
+			return sorted[Math.max(index, 0)];
+		}
+	}
+}
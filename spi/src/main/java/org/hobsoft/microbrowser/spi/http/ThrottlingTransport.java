@@ -0,0 +1,497 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.spi.http;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import org.hobsoft.microbrowser.spi.CompletableFutures;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@code Transport} decorator that schedules requests fairly for each host, limiting both how many are in progress at
+ * once and how often they are sent.
+ * <p>
+ * Each host has its own queue of waiting requests, so a saturated host never delays requests for other hosts. A
+ * request is sent once fewer than the maximum number of requests to its host are in progress and the host's token
+ * bucket has a token. Scheduling is lock-free: whichever thread finds a request can proceed dispatches it, and a
+ * timer dispatches requests that are waiting for a token. Redirects are sent within the request that they follow.
+ */
+public class ThrottlingTransport implements Transport
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// constants
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static final int DEFAULT_MAX_IN_FLIGHT = 5;
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private final Transport delegate;
+
+	private final ConcurrentMap<String, HostScheduler> schedulersByHost;
+
+	private volatile int maxInFlight;
+
+	private volatile double permitsPerSecond;
+
+	private volatile int burst;
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// constructors
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public ThrottlingTransport(Transport delegate)
+	{
+		this.delegate = checkNotNull(delegate, "delegate");
+
+		schedulersByHost = new ConcurrentHashMap<String, HostScheduler>();
+		maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+		permitsPerSecond = Double.POSITIVE_INFINITY;
+		burst = 1;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// Transport methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	public HttpResponse execute(HttpRequest request) throws IOException
+	{
+		HostScheduler scheduler = getScheduler(request.getUrl());
+		Ticket ticket = scheduler.acquire();
+
+		try
+		{
+			ticket.get();
+		}
+		catch (InterruptedException exception)
+		{
+			// release the request if it was dispatched before it could be cancelled
+			if (!ticket.cancel(true))
+			{
+				scheduler.release();
+			}
+
+			Thread.currentThread().interrupt();
+			throw (InterruptedIOException) new InterruptedIOException("Interrupted fetching URL " + request.getUrl())
+				.initCause(exception);
+		}
+		catch (ExecutionException exception)
+		{
+			throw new IllegalStateException("Unexpected scheduling error", exception);
+		}
+
+		try
+		{
+			return delegate.execute(request);
+		}
+		finally
+		{
+			scheduler.release();
+		}
+	}
+
+	public CompletableFuture<HttpResponse> executeAsync(final HttpRequest request)
+	{
+		final HostScheduler scheduler = getScheduler(request.getUrl());
+		final CompletableFuture<HttpResponse> result = new CompletableFuture<HttpResponse>();
+		Ticket ticket = scheduler.acquire();
+
+		// abandon the request while it is waiting if the result is cancelled or times out
+		CompletableFutures.cancelOnFailure(result, ticket);
+
+		ticket.whenComplete(new BiConsumer<Void, Throwable>()
+		{
+			public void accept(Void value, Throwable throwable)
+			{
+				if (throwable == null)
+				{
+					send(request, scheduler, result);
+				}
+			}
+		});
+
+		return result;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// public methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Sets the maximum number of requests to each host that may be in progress at once.
+	 *
+	 * @param maxInFlight
+	 *            the maximum number of concurrent requests per host
+	 * @return this transport
+	 */
+	public ThrottlingTransport maxInFlight(int maxInFlight)
+	{
+		checkArgument(maxInFlight >= 1, "maxInFlight must be positive: %s", maxInFlight);
+
+		this.maxInFlight = maxInFlight;
+		return this;
+	}
+
+	/**
+	 * Sets the rate at which requests may be sent to each host.
+	 *
+	 * @param permitsPerSecond
+	 *            the number of requests per second that each host's token bucket is refilled with, or
+	 *            {@code Double.POSITIVE_INFINITY} for no limit
+	 * @param burst
+	 *            the number of tokens that each host's bucket holds, which is how many requests may be sent at once
+	 *            after a host has been idle
+	 * @return this transport
+	 */
+	public ThrottlingTransport rate(double permitsPerSecond, int burst)
+	{
+		checkArgument(permitsPerSecond > 0, "permitsPerSecond must be positive: %s", permitsPerSecond);
+		checkArgument(burst >= 1, "burst must be positive: %s", burst);
+
+		this.permitsPerSecond = permitsPerSecond;
+		this.burst = burst;
+		return this;
+	}
+
+	/**
+	 * Gets the number of requests that are waiting to be sent to the specified host.
+	 *
+	 * @param host
+	 *            the case-insensitive host name
+	 * @return the queue depth
+	 */
+	public int getQueueDepth(String host)
+	{
+		HostScheduler scheduler = schedulersByHost.get(normalize(host));
+
+		return (scheduler != null) ? scheduler.getQueueDepth() : 0;
+	}
+
+	/**
+	 * Gets the number of requests to the specified host that are in progress.
+	 *
+	 * @param host
+	 *            the case-insensitive host name
+	 * @return the number of requests in flight
+	 */
+	public int getInFlightCount(String host)
+	{
+		HostScheduler scheduler = schedulersByHost.get(normalize(host));
+
+		return (scheduler != null) ? scheduler.getInFlightCount() : 0;
+	}
+
+	/**
+	 * Gets the mean time that requests to the specified host have waited before being sent.
+	 *
+	 * @param host
+	 *            the case-insensitive host name
+	 * @param unit
+	 *            the time unit to return
+	 * @return the mean wait time, or zero if no requests have been sent to the host
+	 */
+	public long getMeanWaitTime(String host, TimeUnit unit)
+	{
+		HostScheduler scheduler = schedulersByHost.get(normalize(host));
+
+		return (scheduler != null) ? unit.convert(scheduler.getMeanWaitNanos(), TimeUnit.NANOSECONDS) : 0;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private void send(HttpRequest request, final HostScheduler scheduler, final CompletableFuture<HttpResponse> result)
+	{
+		CompletableFuture<HttpResponse> sent = delegate.executeAsync(request);
+
+		// abort the request in progress if the result is cancelled or times out
+		CompletableFutures.cancelOnFailure(result, sent);
+
+		sent.whenComplete(new BiConsumer<HttpResponse, Throwable>()
+		{
+			public void accept(HttpResponse response, Throwable throwable)
+			{
+				scheduler.release();
+
+				if (throwable != null)
+				{
+					result.completeExceptionally(CompletableFutures.unwrap(throwable));
+				}
+				else
+				{
+					result.complete(response);
+				}
+			}
+		});
+	}
+
+	private HostScheduler getScheduler(URL url)
+	{
+		String host = normalize(url.getHost());
+		HostScheduler scheduler = schedulersByHost.get(host);
+
+		if (scheduler == null)
+		{
+			HostScheduler newScheduler = new HostScheduler();
+			scheduler = schedulersByHost.putIfAbsent(host, newScheduler);
+
+			if (scheduler == null)
+			{
+				scheduler = newScheduler;
+			}
+		}
+
+		return scheduler;
+	}
+
+	private static String normalize(String host)
+	{
+		return host.toLowerCase(Locale.ENGLISH);
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// types
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * A request waiting to be sent, which completes when it is dispatched.
+	 */
+	private static final class Ticket extends CompletableFuture<Void>
+	{
+		private final long enqueuedNanos;
+
+		Ticket()
+		{
+			enqueuedNanos = System.nanoTime();
+		}
+
+		public long getEnqueuedNanos()
+		{
+			return enqueuedNanos;
+		}
+	}
+
+	/**
+	 * Queue of requests waiting to be sent to a single host.
+	 * <p>
+	 * Only one thread dispatches at a time, which is ensured by counting dispatch attempts rather than by locking. A
+	 * thread that finds another dispatching leaves its attempt to be repeated by that thread. The token bucket is
+	 * therefore only accessed by the dispatching thread.
+	 */
+	private final class HostScheduler
+	{
+		private final Queue<Ticket> tickets;
+
+		private final AtomicInteger queueDepth;
+
+		private final AtomicInteger inFlight;
+
+		private final AtomicInteger dispatchAttempts;
+
+		private final AtomicBoolean timerScheduled;
+
+		private final AtomicLong dispatchedCount;
+
+		private final AtomicLong totalWaitNanos;
+
+		private double tokens;
+
+		private long refilledNanos;
+
+		HostScheduler()
+		{
+			tickets = new ConcurrentLinkedQueue<Ticket>();
+			queueDepth = new AtomicInteger();
+			inFlight = new AtomicInteger();
+			dispatchAttempts = new AtomicInteger();
+			timerScheduled = new AtomicBoolean();
+			dispatchedCount = new AtomicLong();
+			totalWaitNanos = new AtomicLong();
+			tokens = burst;
+			refilledNanos = System.nanoTime();
+		}
+
+		public Ticket acquire()
+		{
+			Ticket ticket = new Ticket();
+
+			ticket.whenComplete(new BiConsumer<Void, Throwable>()
+			{
+				public void accept(Void value, Throwable throwable)
+				{
+					// a cancelled ticket is no longer waiting and may have been blocking the queue
+					if (throwable != null)
+					{
+						queueDepth.decrementAndGet();
+						dispatch();
+					}
+				}
+			});
+
+			queueDepth.incrementAndGet();
+			tickets.offer(ticket);
+			dispatch();
+
+			return ticket;
+		}
+
+		public void release()
+		{
+			inFlight.decrementAndGet();
+			dispatch();
+		}
+
+		public int getQueueDepth()
+		{
+			return queueDepth.get();
+		}
+
+		public int getInFlightCount()
+		{
+			return inFlight.get();
+		}
+
+		public long getMeanWaitNanos()
+		{
+			long count = dispatchedCount.get();
+
+			return (count > 0) ? totalWaitNanos.get() / count : 0;
+		}
+
+		private void dispatch()
+		{
+			if (dispatchAttempts.getAndIncrement() != 0)
+			{
+				return;
+			}
+
+			int attempts = 1;
+
+			do
+			{
+				dispatchWaiting();
+				attempts = dispatchAttempts.addAndGet(-attempts);
+			}
+			while (attempts != 0);
+		}
+
+		private void dispatchWaiting()
+		{
+			Ticket ticket = tickets.peek();
+
+			while (ticket != null && inFlight.get() < maxInFlight)
+			{
+				if (ticket.isDone())
+				{
+					tickets.poll();
+				}
+				else
+				{
+					long tokenWaitNanos = takeToken();
+
+					if (tokenWaitNanos > 0)
+					{
+						scheduleDispatch(tokenWaitNanos);
+						return;
+					}
+
+					tickets.poll();
+					dispatch(ticket);
+				}
+
+				ticket = tickets.peek();
+			}
+		}
+
+		private void dispatch(Ticket ticket)
+		{
+			inFlight.incrementAndGet();
+
+			if (ticket.complete(null))
+			{
+				queueDepth.decrementAndGet();
+				dispatchedCount.incrementAndGet();
+				totalWaitNanos.addAndGet(System.nanoTime() - ticket.getEnqueuedNanos());
+			}
+			else
+			{
+				// cancelled while being dispatched
+				inFlight.decrementAndGet();
+			}
+		}
+
+		/**
+		 * Takes a token from the bucket, refilling it for the time elapsed since it was last refilled.
+		 *
+		 * @return zero if a token was taken, otherwise the time until a token is available in nanoseconds
+		 */
+		private long takeToken()
+		{
+			double rate = permitsPerSecond;
+
+			if (Double.isInfinite(rate))
+			{
+				return 0;
+			}
+
+			long now = System.nanoTime();
+			tokens = Math.min(burst, tokens + (now - refilledNanos) * rate / TimeUnit.SECONDS.toNanos(1));
+			refilledNanos = now;
+
+			if (tokens >= 1)
+			{
+				tokens--;
+				return 0;
+			}
+
+			return (long) Math.ceil((1 - tokens) / rate * TimeUnit.SECONDS.toNanos(1));
+		}
+
+		private void scheduleDispatch(long delayNanos)
+		{
+			if (!timerScheduled.compareAndSet(false, true))
+			{
+				return;
+			}
+
+			CompletableFutures.delay(delayNanos, TimeUnit.NANOSECONDS).thenRun(new Runnable()
+			{
+				public void run()
+				{
+					timerScheduled.set(false);
+					dispatch();
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,46 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.spi.http;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Defines a mechanism to exchange HTTP requests and responses.
+ */
+public interface Transport
+{
+	/**
+	 * Executes the specified request, following any redirects.
+	 *
+	 * @param request
+	 *            the request to execute
+	 * @return the final response
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	HttpResponse execute(HttpRequest request) throws IOException;
+
+	/**
+	 * Executes the specified request asynchronously, following any redirects.
+	 * <p>
+	 * Cancelling the returned future aborts the request.
+	 *
+	 * @param request
+	 *            the request to execute
+	 * @return a future for the final response, which completes exceptionally with an {@code IOException} if an I/O
+	 *         error occurs
+	 */
+	CompletableFuture<HttpResponse> executeAsync(HttpRequest request);
+}
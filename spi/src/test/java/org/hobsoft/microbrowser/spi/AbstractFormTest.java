@@ -13,13 +13,22 @@
  */
 package org.hobsoft.microbrowser.spi;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 import org.hobsoft.microbrowser.Control;
 import org.hobsoft.microbrowser.ControlGroup;
 import org.hobsoft.microbrowser.Form;
+import org.hobsoft.microbrowser.MicrodataDocument;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.ExpectedException;
 
 import static java.util.Arrays.asList;
 
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.anyString;
@@ -32,6 +41,22 @@ import static org.mockito.Mockito.when;
  */
 public class AbstractFormTest
 {
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private ExpectedException thrown = ExpectedException.none();
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// test case methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Rule
+	public ExpectedException getThrown()
+	{
+		return thrown;
+	}
+
 	// ----------------------------------------------------------------------------------------------------------------
 	// tests
 	// ----------------------------------------------------------------------------------------------------------------
@@ -83,6 +108,33 @@ public class AbstractFormTest
 		assertThat(actual, is((Form) form));
 	}
 	
+	@Test
+	public void submitAsyncWithTimeoutReturnsSubmitAsync() throws InterruptedException, ExecutionException
+	{
+		AbstractForm form = mock(AbstractForm.class);
+		MicrodataDocument document = mock(MicrodataDocument.class);
+		when(form.submitAsync()).thenReturn(CompletableFuture.completedFuture(document));
+		
+		MicrodataDocument actual = form.submitAsync(1, TimeUnit.SECONDS).get();
+		
+		assertThat(actual, is(document));
+	}
+	
+	@Test
+	public void submitAsyncWithTimeoutWhenTimesOutCompletesExceptionally() throws InterruptedException,
+		ExecutionException
+	{
+		AbstractForm form = mock(AbstractForm.class);
+		when(form.submitAsync()).thenReturn(new CompletableFuture<MicrodataDocument>());
+		
+		CompletableFuture<MicrodataDocument> actual = form.submitAsync(1, TimeUnit.MILLISECONDS);
+		
+		thrown.expect(ExecutionException.class);
+		thrown.expectCause(instanceOf(TimeoutException.class));
+		
+		actual.get();
+	}
+	
 	// ----------------------------------------------------------------------------------------------------------------
 	// private methods
 	// ----------------------------------------------------------------------------------------------------------------
@@ -0,0 +1,209 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.spi;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests {@code CompletableFutures}.
+ */
+public class CompletableFuturesTest
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private ExpectedException thrown = ExpectedException.none();
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// test case methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Rule
+	public ExpectedException getThrown()
+	{
+		return thrown;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// tests
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Test
+	public void supplyAsyncReturnsResult() throws InterruptedException, ExecutionException
+	{
+		CompletableFuture<String> actual = CompletableFutures.supplyAsync(new Callable<String>()
+		{
+			public String call()
+			{
+				return "x";
+			}
+		}, CompletableFutures.getDefaultExecutor());
+		
+		assertThat(actual.get(), is("x"));
+	}
+	
+	@Test
+	public void supplyAsyncWhenTaskThrowsExceptionCompletesExceptionally() throws InterruptedException,
+		ExecutionException
+	{
+		CompletableFuture<String> actual = CompletableFutures.supplyAsync(new Callable<String>()
+		{
+			public String call() throws IOException
+			{
+				throw new IOException();
+			}
+		}, CompletableFutures.getDefaultExecutor());
+		
+		thrown.expect(ExecutionException.class);
+		thrown.expectCause(instanceOf(IOException.class));
+		
+		actual.get();
+	}
+	
+	@Test
+	public void supplyAsyncWhenCancelledInterruptsTask() throws InterruptedException
+	{
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch interrupted = new CountDownLatch(1);
+		
+		CompletableFuture<String> future = CompletableFutures.supplyAsync(new Callable<String>()
+		{
+			public String call()
+			{
+				started.countDown();
+				
+				try
+				{
+					Thread.sleep(TimeUnit.SECONDS.toMillis(10));
+				}
+				catch (InterruptedException exception)
+				{
+					interrupted.countDown();
+				}
+				
+				return "x";
+			}
+		}, CompletableFutures.getDefaultExecutor());
+		
+		started.await();
+		future.cancel(true);
+		
+		assertThat(interrupted.await(1, TimeUnit.SECONDS), is(true));
+	}
+	
+	@Test
+	public void delayCompletesAfterDelay() throws InterruptedException, ExecutionException, TimeoutException
+	{
+		long start = System.nanoTime();
+		
+		CompletableFutures.delay(50, TimeUnit.MILLISECONDS).get(1, TimeUnit.SECONDS);
+		
+		assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), is(greaterThanOrEqualTo(50L)));
+	}
+	
+	@Test
+	public void withTimeoutWhenCompletedReturnsResult() throws InterruptedException, ExecutionException
+	{
+		CompletableFuture<String> future = new CompletableFuture<String>();
+		
+		CompletableFuture<String> actual = CompletableFutures.withTimeout(future, 1, TimeUnit.SECONDS);
+		future.complete("x");
+		
+		assertThat(actual.get(), is("x"));
+	}
+	
+	@Test
+	public void withTimeoutWhenTimesOutCompletesWithTimeoutException() throws InterruptedException, ExecutionException
+	{
+		CompletableFuture<String> actual = CompletableFutures.withTimeout(new CompletableFuture<String>(), 1,
+			TimeUnit.MILLISECONDS);
+		
+		thrown.expect(ExecutionException.class);
+		thrown.expectCause(instanceOf(TimeoutException.class));
+		
+		actual.get();
+	}
+	
+	@Test
+	public void withTimeoutWithNegativeTimeoutThrowsException()
+	{
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("timeout must be non-negative: -1");
+		
+		CompletableFutures.withTimeout(new CompletableFuture<String>(), -1, TimeUnit.SECONDS);
+	}
+	
+	@Test
+	public void cancelOnFailureWhenCancelledCancelsUpstream()
+	{
+		CompletableFuture<String> future = new CompletableFuture<String>();
+		Future<?> upstream = mock(Future.class);
+		CompletableFutures.cancelOnFailure(future, upstream);
+		
+		future.cancel(false);
+		
+		verify(upstream).cancel(true);
+	}
+	
+	@Test
+	public void cancelOnFailureWhenCompletedDoesNotCancelUpstream()
+	{
+		CompletableFuture<String> future = new CompletableFuture<String>();
+		Future<?> upstream = mock(Future.class);
+		CompletableFutures.cancelOnFailure(future, upstream);
+		
+		future.complete("x");
+		
+		verify(upstream, never()).cancel(true);
+	}
+	
+	@Test
+	public void unwrapWithCompletionExceptionReturnsCause()
+	{
+		IOException cause = new IOException();
+		
+		Throwable actual = CompletableFutures.unwrap(new CompletionException(new ExecutionException(cause)));
+		
+		assertThat(actual, is((Throwable) cause));
+	}
+	
+	@Test
+	public void unwrapWithOtherExceptionReturnsException()
+	{
+		IOException exception = new IOException();
+		
+		assertThat(CompletableFutures.unwrap(exception), is((Throwable) exception));
+	}
+}
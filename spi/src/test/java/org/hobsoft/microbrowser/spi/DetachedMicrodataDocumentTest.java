@@ -0,0 +1,117 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.spi;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hobsoft.microbrowser.CookieNotFoundException;
+import org.hobsoft.microbrowser.Link;
+import org.hobsoft.microbrowser.MicrodataItem;
+import org.hobsoft.microbrowser.MicrodataProperty;
+import org.junit.Test;
+
+import static java.util.Arrays.asList;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests {@code DetachedMicrodataDocument}.
+ */
+public class DetachedMicrodataDocumentTest
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// constants
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static final List<DetachedMicrodataItem> NO_ITEMS = Collections.emptyList();
+	
+	private static final List<Link> NO_LINKS = Collections.emptyList();
+	
+	private static final List<MicrodataProperty> NO_PROPERTIES = Collections.emptyList();
+	
+	private static final Map<String, String> NO_COOKIES = Collections.emptyMap();
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// tests
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Test
+	public void getItemsIgnoresCaseAndWhitespace()
+	{
+		DetachedMicrodataItem item = newItem(" http://X ");
+		DetachedMicrodataDocument document = new DetachedMicrodataDocument(asList(item), NO_LINKS, NO_COOKIES);
+		
+		assertThat(document.getItems("http://x"), contains((MicrodataItem) item));
+	}
+	
+	@Test
+	public void getLinksWithRelTokenReturnsLinks()
+	{
+		Link link1 = newLink("x y");
+		Link link2 = newLink("z");
+		DetachedMicrodataDocument document = new DetachedMicrodataDocument(NO_ITEMS, asList(link1, link2),
+			NO_COOKIES);
+		
+		assertThat(document.getLinks("Y"), contains(link1));
+	}
+	
+	@Test
+	public void getLinksWithinItemWithRelTokenReturnsLinks()
+	{
+		Link link = newLink("x y");
+		DetachedMicrodataItem item = new DetachedMicrodataItem("http://i", "", NO_PROPERTIES, asList(link));
+		
+		assertThat(item.getLinks("y"), contains(link));
+	}
+	
+	@Test
+	public void getCookieReturnsCopiedValue()
+	{
+		Map<String, String> cookies = new HashMap<String, String>();
+		cookies.put("x", "y");
+		DetachedMicrodataDocument document = new DetachedMicrodataDocument(NO_ITEMS, NO_LINKS, cookies);
+		cookies.put("x", "z");
+		
+		assertThat(document.getCookie("x"), is("y"));
+	}
+	
+	@Test(expected = CookieNotFoundException.class)
+	public void getCookieWhenNotFoundThrowsException()
+	{
+		new DetachedMicrodataDocument(NO_ITEMS, NO_LINKS, NO_COOKIES).getCookie("x");
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static DetachedMicrodataItem newItem(String type)
+	{
+		return new DetachedMicrodataItem(type, "", NO_PROPERTIES, NO_LINKS);
+	}
+	
+	private static Link newLink(String rel)
+	{
+		Link link = mock(Link.class);
+		when(link.getRel()).thenReturn(rel);
+		return link;
+	}
+}
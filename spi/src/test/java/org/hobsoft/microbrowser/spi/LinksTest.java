@@ -0,0 +1,166 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.spi;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.hobsoft.microbrowser.Hypermedia;
+import org.hobsoft.microbrowser.Link;
+import org.hobsoft.microbrowser.MicrobrowserException;
+import org.hobsoft.microbrowser.MicrodataDocument;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import static java.util.Arrays.asList;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests {@code Links}.
+ */
+public class LinksTest
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private ExpectedException thrown = ExpectedException.none();
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// test case methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Rule
+	public ExpectedException getThrown()
+	{
+		return thrown;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// tests
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Test
+	public void followAllReturnsDocumentsInOrder() throws InterruptedException, ExecutionException
+	{
+		CompletableFuture<MicrodataDocument> future1 = new CompletableFuture<MicrodataDocument>();
+		CompletableFuture<MicrodataDocument> future2 = new CompletableFuture<MicrodataDocument>();
+		MicrodataDocument document1 = mock(MicrodataDocument.class);
+		MicrodataDocument document2 = mock(MicrodataDocument.class);
+		
+		CompletableFuture<List<MicrodataDocument>> actual = Links.followAll(asList(newLink(future1),
+			newLink(future2)));
+		future2.complete(document2);
+		future1.complete(document1);
+		
+		assertThat(actual.get(), contains(document1, document2));
+	}
+	
+	@Test
+	public void followAllWithNoLinksReturnsEmptyList() throws InterruptedException, ExecutionException
+	{
+		List<Link> links = asList();
+		
+		assertThat(Links.followAll(links).get().isEmpty(), is(true));
+	}
+	
+	@Test
+	public void followAllWithHypermediaFollowsLinksWithRel() throws InterruptedException, ExecutionException
+	{
+		MicrodataDocument document = mock(MicrodataDocument.class);
+		Link link = newLink(CompletableFuture.completedFuture(document));
+		Hypermedia hypermedia = mock(Hypermedia.class);
+		when(hypermedia.getLinks("r")).thenReturn(asList(link));
+		
+		assertThat(Links.followAll(hypermedia, "r").get(), contains(document));
+	}
+	
+	@Test
+	public void followAllWhenLinkFailsCancelsSiblings()
+	{
+		CompletableFuture<MicrodataDocument> future1 = new CompletableFuture<MicrodataDocument>();
+		CompletableFuture<MicrodataDocument> future2 = new CompletableFuture<MicrodataDocument>();
+		
+		CompletableFuture<List<MicrodataDocument>> actual = Links.followAll(asList(newLink(future1),
+			newLink(future2)));
+		future1.completeExceptionally(new MicrobrowserException("x"));
+		
+		assertThat(actual.isCompletedExceptionally(), is(true));
+		assertThat(future2.isCancelled(), is(true));
+	}
+	
+	@Test
+	public void followAllWhenLinkFailsCompletesWithCause() throws InterruptedException, ExecutionException
+	{
+		CompletableFuture<MicrodataDocument> future = new CompletableFuture<MicrodataDocument>();
+		CompletableFuture<List<MicrodataDocument>> actual = Links.followAll(asList(newLink(future)));
+		future.completeExceptionally(new MicrobrowserException("x"));
+		
+		thrown.expect(ExecutionException.class);
+		thrown.expectCause(instanceOf(MicrobrowserException.class));
+		
+		actual.get();
+	}
+	
+	@Test
+	public void followAllWhenCancelledCancelsLinks()
+	{
+		CompletableFuture<MicrodataDocument> future1 = new CompletableFuture<MicrodataDocument>();
+		CompletableFuture<MicrodataDocument> future2 = new CompletableFuture<MicrodataDocument>();
+		
+		Links.followAll(asList(newLink(future1), newLink(future2))).cancel(true);
+		
+		assertThat(future1.isCancelled(), is(true));
+		assertThat(future2.isCancelled(), is(true));
+	}
+	
+	@Test
+	public void followAllWhenInvalidLinkCancelsPreviousLinksAndThrowsException()
+	{
+		CompletableFuture<MicrodataDocument> future = new CompletableFuture<MicrodataDocument>();
+		Link invalidLink = mock(Link.class);
+		when(invalidLink.followAsync()).thenThrow(new IllegalArgumentException("x"));
+		
+		try
+		{
+			Links.followAll(asList(newLink(future), invalidLink));
+		}
+		catch (IllegalArgumentException exception)
+		{
+			assertThat(future.isCancelled(), is(true));
+			return;
+		}
+		
+		throw new AssertionError("Expected IllegalArgumentException");
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static Link newLink(CompletableFuture<MicrodataDocument> future)
+	{
+		Link link = mock(Link.class);
+		when(link.followAsync()).thenReturn(future);
+		return link;
+	}
+}
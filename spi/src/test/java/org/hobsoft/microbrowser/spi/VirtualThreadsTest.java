@@ -0,0 +1,89 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.spi;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeFalse;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Tests {@code VirtualThreads}.
+ */
+public class VirtualThreadsTest
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private ExpectedException thrown = ExpectedException.none();
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// test case methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Rule
+	public ExpectedException getThrown()
+	{
+		return thrown;
+	}
+
+	// ----------------------------------------------------------------------------------------------------------------
+	// tests
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Test
+	public void newExecutorWhenAvailableRunsTask() throws InterruptedException, ExecutionException
+	{
+		assumeTrue(VirtualThreads.isAvailable());
+		
+		ExecutorService executor = VirtualThreads.newExecutor();
+		
+		try
+		{
+			String actual = executor.submit(new Callable<String>()
+			{
+				public String call()
+				{
+					return "x";
+				}
+			}).get();
+			
+			assertThat(actual, is("x"));
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+	
+	@Test
+	public void newExecutorWhenUnavailableThrowsException()
+	{
+		assumeFalse(VirtualThreads.isAvailable());
+		
+		thrown.expect(UnsupportedOperationException.class);
+		thrown.expectMessage("Virtual threads require Java 21 or later");
+		
+		VirtualThreads.newExecutor();
+	}
+}
@@ -0,0 +1,409 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.spi.http;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.google.common.base.Ticker;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests {@code CachingTransport}.
+ */
+public class CachingTransportTest
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// initializer
+	// ----------------------------------------------------------------------------------------------------------------
+
+	static
+	{
+		Logger.getLogger("com.squareup.okhttp.mockwebserver").setLevel(Level.WARNING);
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private MockWebServer server = new MockWebServer();
+	
+	private PooledTransport delegate = new PooledTransport();
+	
+	private FakeTicker ticker = new FakeTicker();
+	
+	private CachingTransport transport = new CachingTransport(delegate, new MemoryCacheStore(1024), ticker);
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// test case methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Rule
+	public MockWebServer getServer()
+	{
+		return server;
+	}
+	
+	@After
+	public void tearDown()
+	{
+		delegate.close();
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// tests
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Test
+	public void executeWhenFreshReturnsStoredResponse() throws IOException
+	{
+		server.enqueue(new MockResponse().addHeader("Cache-Control", "max-age=60").setBody("a"));
+		HttpResponse expected = transport.execute(get("/"));
+		ticker.advance(59, TimeUnit.SECONDS);
+		
+		HttpResponse actual = transport.execute(get("/"));
+		
+		assertThat(actual.getBody(), is(sameInstance(expected.getBody())));
+		assertThat(server.getRequestCount(), is(1));
+	}
+	
+	@Test
+	public void executeWithTruncatedResponseDoesNotStoreResponse() throws IOException
+	{
+		server.enqueue(new MockResponse().addHeader("Cache-Control", "max-age=60").setBody("ab"));
+		server.enqueue(new MockResponse().addHeader("Cache-Control", "max-age=60").setBody("c"));
+		delegate.limits(ResponseLimits.DEFAULT.withMaxBodySize(1).withTruncate(true));
+		transport.execute(get("/"));
+		
+		transport.execute(get("/"));
+		
+		assertThat(server.getRequestCount(), is(2));
+	}
+	
+	@Test
+	public void executeWithAgeWhenStaleReturnsNewResponse() throws IOException
+	{
+		server.enqueue(new MockResponse().addHeader("Cache-Control", "max-age=60").addHeader("Age", "50")
+			.setBody("a"));
+		server.enqueue(new MockResponse().setBody("b"));
+		transport.execute(get("/"));
+		ticker.advance(10, TimeUnit.SECONDS);
+		
+		HttpResponse actual = transport.execute(get("/"));
+		
+		assertThat(new String(actual.getBody(), "UTF-8"), is("b"));
+	}
+	
+	@Test
+	public void executeWhenStaleSendsIfNoneMatch() throws IOException, InterruptedException
+	{
+		server.enqueue(new MockResponse().addHeader("Cache-Control", "max-age=60").addHeader("ETag", "\"x\"")
+			.setBody("a"));
+		server.enqueue(new MockResponse().setBody("b"));
+		transport.execute(get("/"));
+		ticker.advance(60, TimeUnit.SECONDS);
+		
+		transport.execute(get("/"));
+		
+		server.takeRequest();
+		assertThat(server.takeRequest().getHeader("If-None-Match"), is("\"x\""));
+	}
+	
+	@Test
+	public void executeWhenStaleSendsIfModifiedSince() throws IOException, InterruptedException
+	{
+		String lastModified = "Mon, 01 Jan 2018 00:00:00 GMT";
+		server.enqueue(new MockResponse().addHeader("Last-Modified", lastModified).setBody("a"));
+		server.enqueue(new MockResponse().setBody("b"));
+		transport.execute(get("/"));
+		
+		transport.execute(get("/"));
+		
+		server.takeRequest();
+		assertThat(server.takeRequest().getHeader("If-Modified-Since"), is(lastModified));
+	}
+	
+	@Test
+	public void executeWhenNotModifiedReturnsStoredResponse() throws IOException
+	{
+		server.enqueue(new MockResponse().addHeader("ETag", "\"x\"").setBody("a"));
+		server.enqueue(new MockResponse().setResponseCode(304).addHeader("ETag", "\"x\""));
+		HttpResponse expected = transport.execute(get("/"));
+		
+		HttpResponse actual = transport.execute(get("/"));
+		
+		assertThat(actual.getStatusCode(), is(200));
+		assertThat(actual.getBody(), is(sameInstance(expected.getBody())));
+	}
+	
+	@Test
+	public void executeWhenNotModifiedUpdatesFreshness() throws IOException
+	{
+		server.enqueue(new MockResponse().addHeader("ETag", "\"x\"").setBody("a"));
+		server.enqueue(new MockResponse().setResponseCode(304).addHeader("Cache-Control", "max-age=60"));
+		transport.execute(get("/"));
+		transport.execute(get("/"));
+		
+		transport.execute(get("/"));
+		
+		assertThat(server.getRequestCount(), is(2));
+	}
+	
+	@Test
+	public void executeWhenNotModifiedReturnsCookies() throws IOException
+	{
+		server.enqueue(new MockResponse().addHeader("ETag", "\"x\"").setBody("a"));
+		server.enqueue(new MockResponse().setResponseCode(304).addHeader("Set-Cookie", "x=y"));
+		transport.execute(get("/"));
+		
+		HttpResponse actual = transport.execute(get("/"));
+		
+		assertThat(actual.getCookies().get("x"), is("y"));
+	}
+	
+	@Test
+	public void executeWhenFreshDoesNotReturnCookies() throws IOException
+	{
+		server.enqueue(new MockResponse().addHeader("Cache-Control", "max-age=60").addHeader("Set-Cookie", "x=y")
+			.setBody("a"));
+		transport.execute(get("/"));
+		
+		HttpResponse actual = transport.execute(get("/"));
+		
+		assertThat(actual.getCookies().isEmpty(), is(true));
+	}
+	
+	@Test
+	public void executeWithNoStoreDoesNotStoreResponse() throws IOException, InterruptedException
+	{
+		server.enqueue(new MockResponse().addHeader("Cache-Control", "no-store, max-age=60").addHeader("ETag", "\"x\"")
+			.setBody("a"));
+		server.enqueue(new MockResponse().setBody("b"));
+		transport.execute(get("/"));
+		
+		transport.execute(get("/"));
+		
+		server.takeRequest();
+		assertThat(server.takeRequest().getHeader("If-None-Match"), is(nullValue()));
+	}
+	
+	@Test
+	public void executeWithNoCacheRevalidates() throws IOException
+	{
+		server.enqueue(new MockResponse().addHeader("Cache-Control", "no-cache, max-age=60").addHeader("ETag", "\"x\"")
+			.setBody("a"));
+		server.enqueue(new MockResponse().setResponseCode(304));
+		transport.execute(get("/"));
+		
+		transport.execute(get("/"));
+		
+		assertThat(server.getRequestCount(), is(2));
+	}
+	
+	@Test
+	public void executeWhenStaleWhileRevalidateReturnsStoredResponseAndRevalidates() throws IOException,
+		InterruptedException
+	{
+		server.enqueue(new MockResponse().addHeader("Cache-Control", "max-age=60, stale-while-revalidate=30")
+			.addHeader("ETag", "\"x\"").setBody("a"));
+		server.enqueue(new MockResponse().setBody("b"));
+		HttpResponse expected = transport.execute(get("/"));
+		ticker.advance(89, TimeUnit.SECONDS);
+		
+		HttpResponse actual = transport.execute(get("/"));
+		
+		assertThat(actual.getBody(), is(sameInstance(expected.getBody())));
+		server.takeRequest();
+		assertThat(server.takeRequest().getHeader("If-None-Match"), is("\"x\""));
+	}
+	
+	@Test
+	public void executeWhenBeyondStaleWhileRevalidateWaitsForResponse() throws IOException
+	{
+		server.enqueue(new MockResponse().addHeader("Cache-Control", "max-age=60, stale-while-revalidate=30")
+			.setBody("a"));
+		server.enqueue(new MockResponse().setBody("b"));
+		transport.execute(get("/"));
+		ticker.advance(90, TimeUnit.SECONDS);
+		
+		HttpResponse actual = transport.execute(get("/"));
+		
+		assertThat(new String(actual.getBody(), "UTF-8"), is("b"));
+	}
+	
+	@Test
+	public void executeWithVaryWhenHeaderDiffersDoesNotReturnStoredResponse() throws IOException
+	{
+		server.enqueue(new MockResponse().addHeader("Cache-Control", "max-age=60").addHeader("Vary", "Accept")
+			.setBody("a"));
+		server.enqueue(new MockResponse().setBody("b"));
+		transport.execute(get("/").withHeader("Accept", "text/html"));
+		
+		HttpResponse actual = transport.execute(get("/").withHeader("Accept", "text/plain"));
+		
+		assertThat(new String(actual.getBody(), "UTF-8"), is("b"));
+	}
+	
+	@Test
+	public void executeWithVaryWhenHeaderMatchesReturnsStoredResponse() throws IOException
+	{
+		server.enqueue(new MockResponse().addHeader("Cache-Control", "max-age=60").addHeader("Vary", "Accept")
+			.setBody("a"));
+		transport.execute(get("/").withHeader("Accept", "text/html"));
+		
+		transport.execute(get("/").withHeader("Accept", "text/html"));
+		
+		assertThat(server.getRequestCount(), is(1));
+	}
+	
+	@Test
+	public void executeWhenCookiesDifferDoesNotReturnStoredResponse() throws IOException
+	{
+		server.enqueue(new MockResponse().addHeader("Cache-Control", "private, max-age=60").setBody("a"));
+		server.enqueue(new MockResponse().setBody("b"));
+		transport.execute(get("/").withCookies(Collections.singletonMap("session", "1")));
+		
+		HttpResponse actual = transport.execute(get("/").withCookies(Collections.singletonMap("session", "2")));
+		
+		assertThat(new String(actual.getBody(), "UTF-8"), is("b"));
+	}
+	
+	@Test
+	public void executeWhenCookiesMatchReturnsStoredResponse() throws IOException
+	{
+		server.enqueue(new MockResponse().addHeader("Cache-Control", "private, max-age=60").setBody("a"));
+		transport.execute(get("/").withCookies(Collections.singletonMap("session", "1")));
+		
+		transport.execute(get("/").withCookies(Collections.singletonMap("session", "1")));
+		
+		assertThat(server.getRequestCount(), is(1));
+	}
+	
+	@Test
+	public void executeWithPostInvalidatesStoredResponse() throws IOException
+	{
+		server.enqueue(new MockResponse().addHeader("Cache-Control", "max-age=60").setBody("a"));
+		server.enqueue(new MockResponse());
+		server.enqueue(new MockResponse().setBody("b"));
+		transport.execute(get("/"));
+		transport.execute(new HttpRequest(HttpRequest.POST, url("/")));
+		
+		HttpResponse actual = transport.execute(get("/"));
+		
+		assertThat(new String(actual.getBody(), "UTF-8"), is("b"));
+	}
+	
+	@Test
+	public void executeWhenLargerThanMaxBytesDoesNotStoreResponse() throws IOException
+	{
+		transport = new CachingTransport(delegate, new MemoryCacheStore(1), ticker);
+		server.enqueue(new MockResponse().addHeader("Cache-Control", "max-age=60").setBody("ab"));
+		server.enqueue(new MockResponse().setBody("b"));
+		transport.execute(get("/"));
+		
+		transport.execute(get("/"));
+		
+		assertThat(server.getRequestCount(), is(2));
+	}
+	
+	@Test
+	public void executeAsyncWhenFreshReturnsStoredResponse() throws InterruptedException, ExecutionException
+	{
+		server.enqueue(new MockResponse().addHeader("Cache-Control", "max-age=60").setBody("a"));
+		HttpResponse expected = transport.executeAsync(get("/")).get();
+		
+		HttpResponse actual = transport.executeAsync(get("/")).get();
+		
+		assertThat(actual.getBody(), is(sameInstance(expected.getBody())));
+		assertThat(server.getRequestCount(), is(1));
+	}
+	
+	@Test
+	public void executeAsyncWhenNotModifiedReturnsStoredResponse() throws InterruptedException, ExecutionException
+	{
+		server.enqueue(new MockResponse().addHeader("ETag", "\"x\"").setBody("a"));
+		server.enqueue(new MockResponse().setResponseCode(304));
+		HttpResponse expected = transport.executeAsync(get("/")).get();
+		
+		HttpResponse actual = transport.executeAsync(get("/")).get();
+		
+		assertThat(actual.getStatusCode(), is(200));
+		assertThat(actual.getBody(), is(sameInstance(expected.getBody())));
+	}
+	
+	@Test
+	public void invalidateAllRemovesStoredResponses() throws IOException
+	{
+		server.enqueue(new MockResponse().addHeader("Cache-Control", "max-age=60").setBody("a"));
+		server.enqueue(new MockResponse().setBody("b"));
+		transport.execute(get("/"));
+		
+		transport.invalidateAll();
+		
+		HttpResponse actual = transport.execute(get("/"));
+		assertThat(new String(actual.getBody(), "UTF-8"), is("b"));
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private HttpRequest get(String path)
+	{
+		return new HttpRequest(HttpRequest.GET, url(path));
+	}
+	
+	private URL url(String path)
+	{
+		return server.url(path).url();
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// types
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * {@code Ticker} that only advances when told to.
+	 */
+	private static class FakeTicker extends Ticker
+	{
+		private long nanos;
+		
+		@Override
+		public synchronized long read()
+		{
+			return nanos;
+		}
+		
+		public synchronized void advance(long duration, TimeUnit unit)
+		{
+			nanos += unit.toNanos(duration);
+		}
+	}
+}
@@ -0,0 +1,381 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.spi.http;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.google.common.base.Ticker;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests {@code CircuitBreakerTransport}.
+ */
+public class CircuitBreakerTransportTest
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// initializer
+	// ----------------------------------------------------------------------------------------------------------------
+
+	static
+	{
+		Logger.getLogger("com.squareup.okhttp.mockwebserver").setLevel(Level.WARNING);
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private MockWebServer server = new MockWebServer();
+	
+	private ExpectedException thrown = ExpectedException.none();
+	
+	private PooledTransport pooledTransport = new PooledTransport();
+	
+	private FakeTicker ticker = new FakeTicker();
+	
+	private TickingTransport delegate = new TickingTransport(pooledTransport, ticker);
+	
+	private CircuitBreakerTransport transport = new CircuitBreakerTransport(delegate, ticker)
+		.slidingWindow(4, 2)
+		.openDuration(30, TimeUnit.SECONDS);
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// test case methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Rule
+	public MockWebServer getServer()
+	{
+		return server;
+	}
+	
+	@Rule
+	public ExpectedException getThrown()
+	{
+		return thrown;
+	}
+	
+	@After
+	public void tearDown()
+	{
+		pooledTransport.close();
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// tests
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Test
+	public void executeWhenSucceedingKeepsCircuitClosed() throws IOException
+	{
+		respond(200, 200, 200);
+		
+		assertThat(transport.getState(url("/")), is(CircuitState.CLOSED));
+	}
+	
+	@Test
+	public void executeWhenFailureRateBelowThresholdKeepsCircuitClosed() throws IOException
+	{
+		respond(200, 200, 500);
+		
+		assertThat(transport.getState(url("/")), is(CircuitState.CLOSED));
+	}
+	
+	@Test
+	public void executeWhenFailureRateReachesThresholdOpensCircuit() throws IOException
+	{
+		respond(200, 500);
+		
+		assertThat(transport.getState(url("/")), is(CircuitState.OPEN));
+	}
+	
+	@Test
+	public void executeWhenFailuresBelowMinimumCallsKeepsCircuitClosed() throws IOException
+	{
+		respond(500);
+		
+		assertThat(transport.getState(url("/")), is(CircuitState.CLOSED));
+	}
+	
+	@Test
+	public void executeWhenDisconnectedCountsFailure() throws IOException
+	{
+		server.shutdown();
+		
+		for (int index = 0; index < 2; index++)
+		{
+			try
+			{
+				transport.execute(get("/"));
+			}
+			catch (IOException exception)
+			{
+				// ignore
+			}
+		}
+		
+		assertThat(transport.getState(url("/")), is(CircuitState.OPEN));
+	}
+	
+	@Test
+	public void executeWhenSlowCallRateReachesThresholdOpensCircuit() throws IOException
+	{
+		transport.slowCallRate(1, TimeUnit.SECONDS, 50);
+		delegate.setElapsed(1, TimeUnit.SECONDS);
+		
+		respond(200, 200);
+		
+		assertThat(transport.getState(url("/")), is(CircuitState.OPEN));
+	}
+	
+	@Test
+	public void executeWhenOpenThrowsCircuitOpenException() throws IOException
+	{
+		respond(500, 500);
+		
+		thrown.expect(CircuitOpenException.class);
+		
+		transport.execute(get("/"));
+	}
+	
+	@Test
+	public void executeWhenOpenDoesNotSendRequest() throws IOException
+	{
+		respond(500, 500);
+		
+		try
+		{
+			transport.execute(get("/"));
+		}
+		catch (CircuitOpenException exception)
+		{
+			// ignore
+		}
+		
+		assertThat(server.getRequestCount(), is(2));
+	}
+	
+	@Test
+	public void executeWhenOpenForOtherOriginSendsRequest() throws IOException
+	{
+		respond(500, 500);
+		server.enqueue(new MockResponse().setBody("a"));
+		
+		HttpResponse actual = transport.execute(new HttpRequest(HttpRequest.GET, new URL("http", "127.0.0.1",
+			server.getPort(), "/")));
+		
+		assertThat(actual.getStatusCode(), is(200));
+	}
+	
+	@Test
+	public void executeWhenOpenDurationElapsedHalfOpensCircuit() throws IOException
+	{
+		respond(500, 500);
+		ticker.advance(30, TimeUnit.SECONDS);
+		server.enqueue(new MockResponse());
+		
+		transport.execute(get("/"));
+		
+		assertThat(server.getRequestCount(), is(3));
+	}
+	
+	@Test
+	public void executeWhenHalfOpenAndTrialSucceedsClosesCircuit() throws IOException
+	{
+		respond(500, 500);
+		ticker.advance(30, TimeUnit.SECONDS);
+		
+		respond(200);
+		
+		assertThat(transport.getState(url("/")), is(CircuitState.CLOSED));
+	}
+	
+	@Test
+	public void executeWhenHalfOpenAndTrialFailsReopensCircuit() throws IOException
+	{
+		respond(500, 500);
+		ticker.advance(30, TimeUnit.SECONDS);
+		
+		respond(500);
+		
+		assertThat(transport.getState(url("/")), is(CircuitState.OPEN));
+	}
+	
+	@Test
+	public void executeWhenHalfOpenAndTrialInProgressThrowsCircuitOpenException() throws Exception
+	{
+		respond(500, 500);
+		ticker.advance(30, TimeUnit.SECONDS);
+		server.enqueue(new MockResponse().setBodyDelay(500, TimeUnit.MILLISECONDS));
+		CompletableFuture<HttpResponse> trial = transport.executeAsync(get("/"));
+		
+		try
+		{
+			thrown.expect(CircuitOpenException.class);
+			
+			transport.execute(get("/"));
+		}
+		finally
+		{
+			trial.get();
+		}
+	}
+	
+	@Test
+	public void executeWhenStateChangesNotifiesListener() throws IOException
+	{
+		RecordingListener listener = new RecordingListener();
+		transport.addListener(listener);
+		
+		respond(500, 500);
+		ticker.advance(30, TimeUnit.SECONDS);
+		respond(200);
+		
+		String origin = "http://" + url("/").getHost() + ":" + server.getPort();
+		assertThat(listener.getEvents().toString(), is("[" + origin + " CLOSED>OPEN, " + origin + " OPEN>HALF_OPEN, "
+			+ origin + " HALF_OPEN>CLOSED]"));
+	}
+	
+	@Test
+	public void executeAsyncWhenOpenCompletesWithCircuitOpenException() throws InterruptedException
+	{
+		server.enqueue(new MockResponse().setResponseCode(500));
+		server.enqueue(new MockResponse().setResponseCode(500));
+		transport.executeAsync(get("/")).join();
+		transport.executeAsync(get("/")).join();
+		
+		try
+		{
+			transport.executeAsync(get("/")).get();
+		}
+		catch (ExecutionException exception)
+		{
+			assertThat(exception.getCause(), instanceOf(CircuitOpenException.class));
+			return;
+		}
+		
+		throw new AssertionError("Expected CircuitOpenException");
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private void respond(int... statusCodes) throws IOException
+	{
+		for (int statusCode : statusCodes)
+		{
+			server.enqueue(new MockResponse().setResponseCode(statusCode));
+			transport.execute(get("/"));
+		}
+	}
+	
+	private HttpRequest get(String path)
+	{
+		return new HttpRequest(HttpRequest.GET, url(path));
+	}
+	
+	private URL url(String path)
+	{
+		return server.url(path).url();
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// types
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static class FakeTicker extends Ticker
+	{
+		private long nanos;
+		
+		@Override
+		public synchronized long read()
+		{
+			return nanos;
+		}
+		
+		public synchronized void advance(long duration, TimeUnit unit)
+		{
+			nanos += unit.toNanos(duration);
+		}
+	}
+	
+	/**
+	 * Transport that advances a ticker by a fixed amount for each request.
+	 */
+	private static class TickingTransport implements Transport
+	{
+		private final Transport delegate;
+		
+		private final FakeTicker ticker;
+		
+		private volatile long elapsedNanos;
+		
+		TickingTransport(Transport delegate, FakeTicker ticker)
+		{
+			this.delegate = delegate;
+			this.ticker = ticker;
+		}
+		
+		public HttpResponse execute(HttpRequest request) throws IOException
+		{
+			ticker.advance(elapsedNanos, TimeUnit.NANOSECONDS);
+			return delegate.execute(request);
+		}
+		
+		public CompletableFuture<HttpResponse> executeAsync(HttpRequest request)
+		{
+			ticker.advance(elapsedNanos, TimeUnit.NANOSECONDS);
+			return delegate.executeAsync(request);
+		}
+		
+		public void setElapsed(long duration, TimeUnit unit)
+		{
+			elapsedNanos = unit.toNanos(duration);
+		}
+	}
+	
+	private static class RecordingListener implements CircuitBreakerListener
+	{
+		private final List<String> events = new ArrayList<String>();
+		
+		public synchronized void stateChanged(String origin, CircuitState from, CircuitState to)
+		{
+			events.add(origin + " " + from + ">" + to);
+		}
+		
+		public synchronized List<String> getEvents()
+		{
+			return new ArrayList<String>(events);
+		}
+	}
+}
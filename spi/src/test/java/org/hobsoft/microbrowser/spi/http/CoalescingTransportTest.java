@@ -0,0 +1,256 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.spi.http;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.SocketPolicy;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests {@code CoalescingTransport}.
+ */
+public class CoalescingTransportTest
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// constants
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// initializer
+	// ----------------------------------------------------------------------------------------------------------------
+
+	static
+	{
+		Logger.getLogger("com.squareup.okhttp.mockwebserver").setLevel(Level.WARNING);
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private MockWebServer server = new MockWebServer();
+	
+	private PooledTransport delegate = new PooledTransport();
+	
+	private CoalescingTransport transport = new CoalescingTransport(delegate);
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// test case methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Rule
+	public MockWebServer getServer()
+	{
+		return server;
+	}
+	
+	@After
+	public void tearDown()
+	{
+		delegate.close();
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// tests
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Test
+	public void executeAsyncWhenInProgressReturnsSameResponse() throws InterruptedException, ExecutionException
+	{
+		server.enqueue(newSlowResponse("a"));
+		server.enqueue(new MockResponse().setBody("b"));
+		
+		CompletableFuture<HttpResponse> response1 = transport.executeAsync(get("/"));
+		CompletableFuture<HttpResponse> response2 = transport.executeAsync(get("/"));
+		
+		assertThat(response2.get(), is(sameInstance(response1.get())));
+		assertThat(server.getRequestCount(), is(1));
+	}
+	
+	@Test
+	public void executeWhenInProgressReturnsSameResponse() throws IOException, InterruptedException,
+		ExecutionException
+	{
+		server.enqueue(newSlowResponse("a"));
+		server.enqueue(new MockResponse().setBody("b"));
+		CompletableFuture<HttpResponse> response1 = transport.executeAsync(get("/"));
+		
+		HttpResponse actual = transport.execute(get("/"));
+		
+		assertThat(actual, is(sameInstance(response1.get())));
+		assertThat(server.getRequestCount(), is(1));
+	}
+	
+	@Test
+	public void executeAsyncWhenCompleteSendsRequest() throws InterruptedException, ExecutionException
+	{
+		server.enqueue(new MockResponse().setBody("a"));
+		server.enqueue(new MockResponse().setBody("b"));
+		transport.executeAsync(get("/")).get();
+		
+		HttpResponse actual = transport.executeAsync(get("/")).get();
+		
+		assertThat(bodyOf(actual), is("b"));
+	}
+	
+	@Test
+	public void executeAsyncWithDifferentUrlSendsRequest() throws InterruptedException, ExecutionException
+	{
+		server.enqueue(newSlowResponse("a"));
+		server.enqueue(new MockResponse().setBody("b"));
+		CompletableFuture<HttpResponse> response1 = transport.executeAsync(get("/a"));
+		
+		CompletableFuture<HttpResponse> response2 = transport.executeAsync(get("/b"));
+		
+		response1.get();
+		response2.get();
+		assertThat(server.getRequestCount(), is(2));
+	}
+	
+	@Test
+	public void executeAsyncWithDifferentCookiesSendsRequest() throws InterruptedException, ExecutionException
+	{
+		server.enqueue(newSlowResponse("a"));
+		server.enqueue(new MockResponse().setBody("b"));
+		CompletableFuture<HttpResponse> response1 = transport.executeAsync(get("/"));
+		
+		CompletableFuture<HttpResponse> response2 = transport.executeAsync(get("/").withCookies(
+			Collections.singletonMap("x", "y")));
+		
+		response1.get();
+		response2.get();
+		assertThat(server.getRequestCount(), is(2));
+	}
+	
+	@Test
+	public void executeAsyncWithPostSendsRequest() throws InterruptedException, ExecutionException
+	{
+		server.enqueue(newSlowResponse("a"));
+		server.enqueue(new MockResponse().setBody("b"));
+		CompletableFuture<HttpResponse> response1 = transport.executeAsync(new HttpRequest(HttpRequest.POST, url("/")));
+		
+		CompletableFuture<HttpResponse> response2 = transport.executeAsync(new HttpRequest(HttpRequest.POST, url("/")));
+		
+		response1.get();
+		response2.get();
+		assertThat(server.getRequestCount(), is(2));
+	}
+	
+	@Test
+	public void executeAsyncWhenOneCallerCancelsCompletesOtherCaller() throws InterruptedException,
+		ExecutionException
+	{
+		server.enqueue(newSlowResponse("a"));
+		CompletableFuture<HttpResponse> response1 = transport.executeAsync(get("/"));
+		CompletableFuture<HttpResponse> response2 = transport.executeAsync(get("/"));
+		
+		response1.cancel(true);
+		
+		assertThat(bodyOf(response2.get()), is("a"));
+	}
+	
+	@Test
+	public void executeAsyncWhenAllCallersCancelSendsNewRequest() throws InterruptedException, ExecutionException
+	{
+		server.enqueue(newSlowResponse("a"));
+		server.enqueue(new MockResponse().setBody("b"));
+		transport.executeAsync(get("/")).cancel(true);
+		
+		HttpResponse actual = transport.executeAsync(get("/")).get();
+		
+		assertThat(actual.getStatusCode(), is(200));
+	}
+	
+	@Test
+	public void executeWhenFailsCompletesCallerInProgressWithSameException() throws InterruptedException,
+		ExecutionException
+	{
+		server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+		delegate.limits(ResponseLimits.DEFAULT.withReadTimeout(500, TimeUnit.MILLISECONDS));
+		final AtomicReference<IOException> leaderException = new AtomicReference<IOException>();
+		Thread leader = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				try
+				{
+					transport.execute(get("/"));
+				}
+				catch (IOException exception)
+				{
+					leaderException.set(exception);
+				}
+			}
+		});
+		leader.start();
+		server.takeRequest();
+		
+		Throwable actual = transport.executeAsync(get("/")).handle(new BiFunction<HttpResponse, Throwable, Throwable>()
+		{
+			public Throwable apply(HttpResponse response, Throwable throwable)
+			{
+				return throwable;
+			}
+		}).get();
+		
+		leader.join();
+		assertThat(actual, is(sameInstance((Throwable) leaderException.get())));
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private HttpRequest get(String path)
+	{
+		return new HttpRequest(HttpRequest.GET, url(path));
+	}
+	
+	private URL url(String path)
+	{
+		return server.url(path).url();
+	}
+	
+	private static MockResponse newSlowResponse(String body)
+	{
+		return new MockResponse().setBody(body).setBodyDelay(500, TimeUnit.MILLISECONDS);
+	}
+	
+	private static String bodyOf(HttpResponse response)
+	{
+		return new String(response.getBody(), UTF_8);
+	}
+}
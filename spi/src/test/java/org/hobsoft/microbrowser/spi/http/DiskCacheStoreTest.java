@@ -0,0 +1,284 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.spi.http;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests {@code DiskCacheStore}.
+ */
+public class DiskCacheStoreTest
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// constants
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static final int SEGMENT_SIZE = 256;
+	
+	private static final int MAX_BYTES = 3 * SEGMENT_SIZE;
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private TemporaryFolder folder = new TemporaryFolder();
+	
+	private ExpectedException thrown = ExpectedException.none();
+	
+	private File directory;
+	
+	private long maxBytes = MAX_BYTES;
+	
+	private int segmentSize = SEGMENT_SIZE;
+	
+	private DiskCacheStore store;
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// test case methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Rule
+	public TemporaryFolder getFolder()
+	{
+		return folder;
+	}
+	
+	@Rule
+	public ExpectedException getThrown()
+	{
+		return thrown;
+	}
+	
+	@Before
+	public void setUp() throws IOException
+	{
+		directory = folder.newFolder();
+		store = new DiskCacheStore(directory, maxBytes, segmentSize);
+	}
+	
+	@After
+	public void tearDown()
+	{
+		store.close();
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// tests
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Test
+	public void getWhenAbsentReturnsNull() throws IOException
+	{
+		assertThat(store.get("x"), is(nullValue()));
+	}
+	
+	@Test
+	public void getAfterPutReturnsResponse() throws IOException
+	{
+		store.put("x", newCachedResponse("a"));
+		
+		assertThat(store.get("x"), is(notNullValue()));
+	}
+	
+	@Test
+	public void getAfterPutReturnsSameResponse() throws IOException
+	{
+		CachedResponse response = newCachedResponse("a");
+		store.put("x", response);
+		
+		assertThat(store.get("x"), is(sameInstance(response)));
+	}
+	
+	@Test
+	public void getAfterReopenReturnsResponse() throws IOException
+	{
+		Map<String, List<String>> headers = Collections.singletonMap("ETag", Collections.singletonList("\"y\""));
+		HttpResponse response = new HttpResponse(new URL("http://localhost/x"), 200, "OK", headers,
+			Collections.singletonMap("c", "d"), "a".getBytes("UTF-8"));
+		store.put("x", new CachedResponse(response, Collections.<String, String>singletonMap("Accept", null), 1));
+		
+		CachedResponse actual = reopen().get("x");
+		
+		assertThat(actual.getRequestTimeMillis(), is(1L));
+		assertThat(actual.getVaryValues(), is(Collections.<String, String>singletonMap("Accept", null)));
+		assertThat(actual.getResponse().getUrl(), is(new URL("http://localhost/x")));
+		assertThat(actual.getResponse().getStatusCode(), is(200));
+		assertThat(actual.getResponse().getStatusMessage(), is("OK"));
+		assertThat(actual.getResponse().getHeader("ETag"), is("\"y\""));
+		assertThat(actual.getResponse().getCookies(), is(Collections.singletonMap("c", "d")));
+		assertThat(new String(actual.getResponse().getBody(), "UTF-8"), is("a"));
+	}
+	
+	@Test
+	public void getAfterPutReplacesResponseReturnsNewResponse() throws IOException
+	{
+		store.put("x", newCachedResponse("a"));
+		store.put("x", newCachedResponse("b"));
+		
+		assertThat(bodyOf(reopen().get("x")), is("b"));
+	}
+	
+	@Test
+	public void getAfterRemoveReturnsNull() throws IOException
+	{
+		store.put("x", newCachedResponse("a"));
+		store.remove("x");
+		
+		assertThat(reopen().get("x"), is(nullValue()));
+	}
+	
+	@Test
+	public void getAfterClearReturnsNull() throws IOException
+	{
+		store.put("x", newCachedResponse("a"));
+		store.clear();
+		
+		assertThat(reopen().get("x"), is(nullValue()));
+	}
+	
+	@Test
+	public void putWhenLargerThanSegmentDoesNotStoreResponse() throws IOException
+	{
+		store.put("x", newCachedResponse(new String(new char[SEGMENT_SIZE])));
+		
+		assertThat(store.get("x"), is(nullValue()));
+	}
+	
+	@Test
+	public void putWhenFullEvictsOldestSegment() throws IOException
+	{
+		// each response fills most of a segment
+		store.put("w", newCachedResponse(new String(new char[SEGMENT_SIZE / 2])));
+		store.put("x", newCachedResponse(new String(new char[SEGMENT_SIZE / 2])));
+		store.put("y", newCachedResponse(new String(new char[SEGMENT_SIZE / 2])));
+		store.put("z", newCachedResponse(new String(new char[SEGMENT_SIZE / 2])));
+		
+		assertThat(store.get("w"), is(nullValue()));
+		assertThat(store.get("x"), is(notNullValue()));
+		assertThat(store.get("z"), is(notNullValue()));
+		assertThat(store.getSegmentCount(), is(3));
+	}
+	
+	@Test
+	public void putWithManyKeysStoresResponses() throws IOException
+	{
+		maxBytes = 1024 * 1024;
+		segmentSize = 64 * 1024;
+		reopen();
+		
+		for (int index = 0; index < 2000; index++)
+		{
+			store.put("x" + index, newCachedResponse("a" + index));
+		}
+		
+		DiskCacheStore reopenedStore = reopen();
+		
+		for (int index = 0; index < 2000; index++)
+		{
+			assertThat(bodyOf(reopenedStore.get("x" + index)), is("a" + index));
+		}
+	}
+	
+	@Test
+	public void compactRetainsLiveResponses() throws IOException
+	{
+		store.put("x", newCachedResponse("a"));
+		store.put("y", newCachedResponse(new String(new char[SEGMENT_SIZE / 2])));
+		store.put("y", newCachedResponse("b"));
+		
+		store.compact();
+		
+		assertThat(bodyOf(reopen().get("x")), is("a"));
+		assertThat(bodyOf(store.get("y")), is("b"));
+	}
+	
+	@Test
+	public void compactDeletesSparseSegments() throws IOException
+	{
+		store.put("x", newCachedResponse(new String(new char[SEGMENT_SIZE / 2])));
+		store.put("x", newCachedResponse(new String(new char[SEGMENT_SIZE / 2])));
+		
+		store.compact();
+		
+		assertThat(store.getSegmentCount(), is(1));
+		assertThat(directory.list().length, is(2));
+	}
+	
+	@Test
+	public void openWithInvalidIndexDeletesSegments() throws IOException
+	{
+		store.put("x", newCachedResponse("a"));
+		store.close();
+		new File(directory, "index").delete();
+		
+		reopen();
+		
+		assertThat(store.get("x"), is(nullValue()));
+		assertThat(directory.list().length, is(2));
+	}
+	
+	@Test
+	public void getWhenClosedThrowsException() throws IOException
+	{
+		store.close();
+		
+		thrown.expect(IllegalStateException.class);
+		thrown.expectMessage("Cache store is closed");
+		
+		store.get("x");
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private DiskCacheStore reopen() throws IOException
+	{
+		store.close();
+		store = new DiskCacheStore(directory, maxBytes, segmentSize);
+		
+		return store;
+	}
+	
+	private static CachedResponse newCachedResponse(String body) throws IOException
+	{
+		HttpResponse response = new HttpResponse(new URL("http://localhost/"), 200, "OK",
+			Collections.<String, List<String>>emptyMap(), body.getBytes("UTF-8"));
+		
+		return new CachedResponse(response, Collections.<String, String>emptyMap(), 0);
+	}
+	
+	private static String bodyOf(CachedResponse response) throws IOException
+	{
+		return new String(response.getResponse().getBody(), "UTF-8");
+	}
+}
@@ -0,0 +1,726 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.spi.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.google.common.base.Strings;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import com.squareup.okhttp.mockwebserver.SocketPolicy;
+
+import okio.Buffer;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests {@code PooledTransport}.
+ */
+public class PooledTransportTest
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// initializer
+	// ----------------------------------------------------------------------------------------------------------------
+
+	static
+	{
+		Logger.getLogger("com.squareup.okhttp.mockwebserver").setLevel(Level.WARNING);
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private MockWebServer server = new MockWebServer();
+	
+	private PooledTransport transport = new PooledTransport();
+	
+	private ExpectedException thrown = ExpectedException.none();
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// test case methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Rule
+	public MockWebServer getServer()
+	{
+		return server;
+	}
+	
+	@Rule
+	public ExpectedException getThrown()
+	{
+		return thrown;
+	}
+	
+	@After
+	public void tearDown()
+	{
+		transport.close();
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// tests
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Test
+	public void executeReturnsResponse() throws IOException
+	{
+		server.enqueue(new MockResponse().setResponseCode(201).addHeader("Content-Type", "text/html; charset=UTF-8")
+			.setBody("x"));
+		
+		HttpResponse actual = transport.execute(new HttpRequest(HttpRequest.GET, url("/")));
+		
+		assertThat(actual.getStatusCode(), is(201));
+		assertThat(actual.getCharset(), is("UTF-8"));
+		assertThat(new String(actual.getBody(), "UTF-8"), is("x"));
+	}
+	
+	@Test
+	public void executeReusesConnection() throws IOException, InterruptedException
+	{
+		server.enqueue(new MockResponse().setBody("a"));
+		server.enqueue(new MockResponse().setBody("b"));
+		
+		transport.execute(new HttpRequest(HttpRequest.GET, url("/a")));
+		transport.execute(new HttpRequest(HttpRequest.GET, url("/b")));
+		
+		assertThat(server.takeRequest().getSequenceNumber(), is(0));
+		assertThat(server.takeRequest().getSequenceNumber(), is(1));
+	}
+	
+	@Test
+	public void executeWithChunkedBodyReusesConnection() throws IOException, InterruptedException
+	{
+		server.enqueue(new MockResponse().setChunkedBody("abcdef", 2));
+		server.enqueue(new MockResponse().setBody("b"));
+		
+		HttpResponse actual = transport.execute(new HttpRequest(HttpRequest.GET, url("/a")));
+		transport.execute(new HttpRequest(HttpRequest.GET, url("/b")));
+		
+		assertThat(new String(actual.getBody(), "UTF-8"), is("abcdef"));
+		assertThat(server.takeRequest().getSequenceNumber(), is(0));
+		assertThat(server.takeRequest().getSequenceNumber(), is(1));
+	}
+	
+	@Test
+	public void executeWithConnectionCloseDoesNotReuseConnection() throws IOException, InterruptedException
+	{
+		server.enqueue(new MockResponse().addHeader("Connection", "close").setBody("a"));
+		server.enqueue(new MockResponse().setBody("b"));
+		
+		transport.execute(new HttpRequest(HttpRequest.GET, url("/a")));
+		transport.execute(new HttpRequest(HttpRequest.GET, url("/b")));
+		
+		assertThat(server.takeRequest().getSequenceNumber(), is(0));
+		assertThat(server.takeRequest().getSequenceNumber(), is(0));
+	}
+	
+	@Test
+	public void executeWhenPooledConnectionClosedByPeerConnectsAfresh() throws IOException, InterruptedException
+	{
+		server.enqueue(new MockResponse().setBody("a").setSocketPolicy(SocketPolicy.DISCONNECT_AT_END));
+		server.enqueue(new MockResponse().setBody("b"));
+		
+		transport.execute(new HttpRequest(HttpRequest.GET, url("/a")));
+		HttpResponse actual = transport.execute(new HttpRequest(HttpRequest.GET, url("/b")));
+		
+		assertThat(new String(actual.getBody(), "UTF-8"), is("b"));
+	}
+	
+	@Test
+	public void executeWithExpiredKeepAliveTimeoutDoesNotReuseConnection() throws IOException, InterruptedException
+	{
+		server.enqueue(new MockResponse().addHeader("Keep-Alive", "timeout=1").setBody("a"));
+		server.enqueue(new MockResponse().setBody("b"));
+		
+		transport.execute(new HttpRequest(HttpRequest.GET, url("/a")));
+		transport.execute(new HttpRequest(HttpRequest.GET, url("/b")));
+		
+		assertThat(server.takeRequest().getSequenceNumber(), is(0));
+		assertThat(server.takeRequest().getSequenceNumber(), is(0));
+	}
+	
+	@Test
+	public void executeWithHeaderLineExceedingMaxLengthThrowsException() throws IOException
+	{
+		server.enqueue(new MockResponse().addHeader("X-Long", Strings.repeat("x", 8192)));
+		
+		thrown.expect(IOException.class);
+		thrown.expectMessage("Response line exceeds 8192 bytes");
+		
+		transport.execute(new HttpRequest(HttpRequest.GET, url("/")));
+	}
+	
+	@Test
+	public void executeWithHeadersExceedingMaxCountThrowsException() throws IOException
+	{
+		MockResponse response = new MockResponse();
+		
+		for (int index = 0; index < 100; index++)
+		{
+			response.addHeader("X-Header-" + index, "x");
+		}
+		
+		server.enqueue(response);
+		
+		thrown.expect(IOException.class);
+		thrown.expectMessage("Response exceeds 100 headers");
+		
+		transport.execute(new HttpRequest(HttpRequest.GET, url("/")));
+	}
+	
+	@Test
+	public void executeWhenPooledConnectionReturnsMalformedResponseThrowsException() throws IOException
+	{
+		server.enqueue(new MockResponse().setBody("a"));
+		server.enqueue(new MockResponse().setStatus("x"));
+		server.enqueue(new MockResponse().setBody("c"));
+		transport.execute(new HttpRequest(HttpRequest.GET, url("/a")));
+		
+		thrown.expect(IOException.class);
+		thrown.expectMessage("Unexpected status line: x");
+		
+		transport.execute(new HttpRequest(HttpRequest.GET, url("/b")));
+	}
+	
+	@Test
+	public void executeWithZeroPoolSizeDoesNotReuseConnection() throws IOException, InterruptedException
+	{
+		server.enqueue(new MockResponse().setBody("a"));
+		server.enqueue(new MockResponse().setBody("b"));
+		transport.poolSize(0);
+		
+		transport.execute(new HttpRequest(HttpRequest.GET, url("/a")));
+		transport.execute(new HttpRequest(HttpRequest.GET, url("/b")));
+		
+		assertThat(transport.getIdleConnectionCount(url("/")), is(0));
+		assertThat(server.takeRequest().getSequenceNumber(), is(0));
+		assertThat(server.takeRequest().getSequenceNumber(), is(0));
+	}
+	
+	@Test
+	public void executeRetainsIdleConnection() throws IOException
+	{
+		server.enqueue(new MockResponse().setBody("a"));
+		
+		transport.execute(new HttpRequest(HttpRequest.GET, url("/")));
+		
+		assertThat(transport.getIdleConnectionCount(url("/")), is(1));
+	}
+	
+	@Test
+	public void closeEvictsIdleConnections() throws IOException
+	{
+		server.enqueue(new MockResponse().setBody("a"));
+		transport.execute(new HttpRequest(HttpRequest.GET, url("/")));
+		
+		transport.close();
+		
+		assertThat(transport.getIdleConnectionCount(url("/")), is(0));
+	}
+	
+	@Test
+	public void executeWithGzipBodyDecompressesBody() throws IOException
+	{
+		server.enqueue(new MockResponse().addHeader("Content-Encoding", "gzip").setBody(gzip("abc")));
+		
+		HttpResponse actual = transport.execute(new HttpRequest(HttpRequest.GET, url("/")));
+		
+		assertThat(new String(actual.getBody(), "UTF-8"), is("abc"));
+	}
+	
+	@Test
+	public void executeSendsAcceptEncoding() throws IOException, InterruptedException
+	{
+		server.enqueue(new MockResponse());
+		
+		transport.execute(new HttpRequest(HttpRequest.GET, url("/")));
+		
+		assertThat(server.takeRequest().getHeader("Accept-Encoding"), is("gzip, deflate"));
+	}
+	
+	@Test
+	public void executeWithGzipBodyReturnsEncodedAndDecodedLengths() throws IOException
+	{
+		Buffer body = gzip("abcabcabcabcabcabcabcabcabcabcabcabcabcabcabc");
+		long encodedLength = body.size();
+		server.enqueue(new MockResponse().addHeader("Content-Encoding", "gzip").setBody(body));
+		
+		HttpResponse actual = transport.execute(new HttpRequest(HttpRequest.GET, url("/")));
+		
+		assertThat(actual.getEncodedLength(), is(encodedLength));
+		assertThat(actual.getDecodedLength(), is(45L));
+	}
+	
+	@Test
+	public void executeWithChunkedGzipBodyDecompressesBodyAndReusesConnection() throws IOException,
+		InterruptedException
+	{
+		server.enqueue(new MockResponse().addHeader("Content-Encoding", "gzip").setChunkedBody(gzip("abc"), 4));
+		server.enqueue(new MockResponse().setBody("def"));
+		
+		HttpResponse actual1 = transport.execute(new HttpRequest(HttpRequest.GET, url("/a")));
+		HttpResponse actual2 = transport.execute(new HttpRequest(HttpRequest.GET, url("/b")));
+		
+		assertThat(new String(actual1.getBody(), "UTF-8"), is("abc"));
+		assertThat(new String(actual2.getBody(), "UTF-8"), is("def"));
+		assertThat(server.takeRequest().getSequenceNumber(), is(0));
+		assertThat(server.takeRequest().getSequenceNumber(), is(1));
+	}
+	
+	@Test
+	public void executeWithDeflateBodyDecompressesBody() throws IOException
+	{
+		server.enqueue(new MockResponse().addHeader("Content-Encoding", "deflate").setBody(deflate("abc", false)));
+		
+		HttpResponse actual = transport.execute(new HttpRequest(HttpRequest.GET, url("/")));
+		
+		assertThat(new String(actual.getBody(), "UTF-8"), is("abc"));
+	}
+	
+	@Test
+	public void executeWithRawDeflateBodyDecompressesBody() throws IOException
+	{
+		server.enqueue(new MockResponse().addHeader("Content-Encoding", "deflate").setBody(deflate("abc", true)));
+		
+		HttpResponse actual = transport.execute(new HttpRequest(HttpRequest.GET, url("/")));
+		
+		assertThat(new String(actual.getBody(), "UTF-8"), is("abc"));
+	}
+	
+	@Test
+	public void executeWithEmptyGzipBodyReturnsEmptyBody() throws IOException
+	{
+		server.enqueue(new MockResponse().addHeader("Content-Encoding", "gzip"));
+		
+		HttpResponse actual = transport.execute(new HttpRequest(HttpRequest.GET, url("/")));
+		
+		assertThat(actual.getBody().length, is(0));
+	}
+	
+	@Test
+	public void executeWithUnsupportedEncodingReturnsEncodedBody() throws IOException
+	{
+		server.enqueue(new MockResponse().addHeader("Content-Encoding", "br").setBody("abc"));
+		
+		HttpResponse actual = transport.execute(new HttpRequest(HttpRequest.GET, url("/")));
+		
+		assertThat(new String(actual.getBody(), "UTF-8"), is("abc"));
+	}
+	
+	@Test
+	public void executeWithBodyWithinMaxBodySizeReturnsBody() throws IOException
+	{
+		server.enqueue(new MockResponse().setBody("abc"));
+		transport.limits(ResponseLimits.DEFAULT.withMaxBodySize(3));
+		
+		HttpResponse actual = transport.execute(new HttpRequest(HttpRequest.GET, url("/")));
+		
+		assertThat(new String(actual.getBody(), "UTF-8"), is("abc"));
+		assertThat(actual.isTruncated(), is(false));
+	}
+	
+	@Test
+	public void executeWithBodyExceedingDefaultMaxBodySizeThrowsException() throws IOException
+	{
+		server.enqueue(new MockResponse().setBody(Strings.repeat("a", 1024 * 1024 + 1)));
+		
+		thrown.expect(BodyTooLargeException.class);
+		
+		transport.execute(new HttpRequest(HttpRequest.GET, url("/")));
+	}
+	
+	@Test
+	public void executeWithBodyExceedingMaxBodySizeThrowsException() throws IOException
+	{
+		server.enqueue(new MockResponse().setBody("abcd"));
+		transport.limits(ResponseLimits.DEFAULT.withMaxBodySize(3));
+		
+		thrown.expect(BodyTooLargeException.class);
+		
+		transport.execute(new HttpRequest(HttpRequest.GET, url("/")));
+	}
+	
+	@Test
+	public void executeWithBodyExceedingMaxBodySizeAndTruncateReturnsTruncatedBody() throws IOException
+	{
+		server.enqueue(new MockResponse().setBody("abcd"));
+		transport.limits(ResponseLimits.DEFAULT.withMaxBodySize(3).withTruncate(true));
+		
+		HttpResponse actual = transport.execute(new HttpRequest(HttpRequest.GET, url("/")));
+		
+		assertThat(new String(actual.getBody(), "UTF-8"), is("abc"));
+		assertThat(actual.isTruncated(), is(true));
+	}
+	
+	@Test
+	public void executeWithTruncatedBodyDoesNotReuseConnection() throws IOException
+	{
+		server.enqueue(new MockResponse().setBody("abcd"));
+		transport.limits(ResponseLimits.DEFAULT.withMaxBodySize(3).withTruncate(true));
+		
+		transport.execute(new HttpRequest(HttpRequest.GET, url("/")));
+		
+		assertThat(transport.getIdleConnectionCount(url("/")), is(0));
+	}
+	
+	@Test
+	public void executeWithGzipBodyExceedingMaxBodySizeThrowsException() throws IOException
+	{
+		server.enqueue(new MockResponse().addHeader("Content-Encoding", "gzip").setBody(gzip("abcabcabcabc")));
+		transport.limits(ResponseLimits.DEFAULT.withMaxBodySize(10));
+		
+		thrown.expect(BodyTooLargeException.class);
+		
+		transport.execute(new HttpRequest(HttpRequest.GET, url("/")));
+	}
+	
+	@Test
+	public void executeWithSlowBodyExceedingTotalTimeoutThrowsException() throws IOException
+	{
+		server.enqueue(new MockResponse().setBody("abcdef").throttleBody(1, 100, TimeUnit.MILLISECONDS));
+		transport.limits(ResponseLimits.DEFAULT.withTotalTimeout(250, TimeUnit.MILLISECONDS));
+		
+		thrown.expect(TotalTimeoutException.class);
+		
+		transport.execute(new HttpRequest(HttpRequest.GET, url("/")));
+	}
+	
+	@Test
+	public void executeWithSlowRedirectsExceedingTotalTimeoutThrowsException() throws IOException
+	{
+		server.enqueue(new MockResponse().setResponseCode(302).addHeader("Location", "/b").setBody("a")
+			.setBodyDelay(200, TimeUnit.MILLISECONDS));
+		server.enqueue(new MockResponse().setBody("b").setBodyDelay(200, TimeUnit.MILLISECONDS));
+		transport.limits(ResponseLimits.DEFAULT.withTotalTimeout(300, TimeUnit.MILLISECONDS));
+		
+		thrown.expect(TotalTimeoutException.class);
+		
+		transport.execute(new HttpRequest(HttpRequest.GET, url("/a")));
+	}
+	
+	@Test
+	public void executeWithSlowBodyExceedingTotalTimeoutAndTruncateReturnsTruncatedBody() throws IOException
+	{
+		server.enqueue(new MockResponse().setBody("abcdef").throttleBody(1, 100, TimeUnit.MILLISECONDS));
+		transport.limits(ResponseLimits.DEFAULT.withTotalTimeout(250, TimeUnit.MILLISECONDS).withTruncate(true));
+		
+		HttpResponse actual = transport.execute(new HttpRequest(HttpRequest.GET, url("/")));
+		
+		assertThat(actual.isTruncated(), is(true));
+		assertThat(actual.getBody().length, is(lessThan(6)));
+	}
+	
+	@Test
+	public void executeWithSlowResponseExceedingReadTimeoutThrowsException() throws IOException
+	{
+		server.enqueue(new MockResponse().setBody("a").setBodyDelay(500, TimeUnit.MILLISECONDS));
+		transport.limits(ResponseLimits.DEFAULT.withReadTimeout(100, TimeUnit.MILLISECONDS));
+		
+		thrown.expect(SocketTimeoutException.class);
+		thrown.expect(not(instanceOf(TotalTimeoutException.class)));
+		
+		transport.execute(new HttpRequest(HttpRequest.GET, url("/")));
+	}
+	
+	@Test
+	public void executeWithPostSendsBody() throws IOException, InterruptedException
+	{
+		server.enqueue(new MockResponse());
+		HttpRequest request = new HttpRequest(HttpRequest.POST, url("/"), Collections.singletonMap("Content-Type",
+			"text/plain"), Collections.<String, String>emptyMap(), "x=y".getBytes("UTF-8"));
+		
+		transport.execute(request);
+		
+		RecordedRequest actual = server.takeRequest();
+		assertThat(actual.getMethod(), is("POST"));
+		assertThat(actual.getHeader("Content-Type"), is("text/plain"));
+		assertThat(actual.getBody().readUtf8(), is("x=y"));
+	}
+	
+	@Test
+	public void executeWithSatisfiedBodyScannerTruncatesBody() throws IOException
+	{
+		server.enqueue(new MockResponse().setBody(Strings.repeat("a", 100000)));
+		HttpRequest request = new HttpRequest(HttpRequest.GET, url("/")).withBodyScanner(new BodyScanner()
+		{
+			public Scan newScan()
+			{
+				return new Scan()
+				{
+					public boolean update(byte[] bytes, int offset, int length)
+					{
+						return true;
+					}
+				};
+			}
+		});
+		
+		HttpResponse actual = transport.execute(request);
+		
+		assertThat(actual.isTruncated(), is(true));
+		assertThat(actual.getBody().length, lessThan(100000));
+		assertThat(transport.getIdleConnectionCount(url("/")), is(0));
+	}
+	
+	@Test
+	public void executeWithUnsatisfiedBodyScannerReturnsWholeBody() throws IOException
+	{
+		server.enqueue(new MockResponse().setBody("a"));
+		HttpRequest request = new HttpRequest(HttpRequest.GET, url("/")).withBodyScanner(new BodyScanner()
+		{
+			public Scan newScan()
+			{
+				return new Scan()
+				{
+					public boolean update(byte[] bytes, int offset, int length)
+					{
+						return false;
+					}
+				};
+			}
+		});
+		
+		HttpResponse actual = transport.execute(request);
+		
+		assertThat(actual.isTruncated(), is(false));
+		assertThat(new String(actual.getBody(), "UTF-8"), is("a"));
+	}
+	
+	@Test
+	public void executeWithRedirectFollowsRedirectWithCookies() throws IOException, InterruptedException
+	{
+		server.enqueue(new MockResponse().setResponseCode(302).addHeader("Location", "/b")
+			.addHeader("Set-Cookie", "x=y"));
+		server.enqueue(new MockResponse().setBody("b"));
+		
+		HttpResponse actual = transport.execute(new HttpRequest(HttpRequest.GET, url("/a")));
+		
+		server.takeRequest();
+		RecordedRequest redirect = server.takeRequest();
+		assertThat(redirect.getPath(), is("/b"));
+		assertThat(redirect.getHeader("Cookie"), is("x=y"));
+		assertThat(actual.getUrl(), is(url("/b")));
+		assertThat(actual.getCookies(), is(Collections.singletonMap("x", "y")));
+	}
+	
+	@Test
+	public void executeWithSeeOtherRedirectAfterPostSendsGet() throws IOException, InterruptedException
+	{
+		server.enqueue(new MockResponse().setResponseCode(303).addHeader("Location", "/b"));
+		server.enqueue(new MockResponse());
+		
+		transport.execute(new HttpRequest(HttpRequest.POST, url("/a")));
+		
+		server.takeRequest();
+		assertThat(server.takeRequest().getMethod(), is("GET"));
+	}
+	
+	@Test
+	public void executeAsyncWithRedirectFollowsRedirectWithCookies() throws IOException, InterruptedException,
+		ExecutionException
+	{
+		server.enqueue(new MockResponse().setResponseCode(302).addHeader("Location", "/b")
+			.addHeader("Set-Cookie", "x=y"));
+		server.enqueue(new MockResponse().setBody("b"));
+		
+		HttpResponse actual = transport.executeAsync(new HttpRequest(HttpRequest.GET, url("/a"))).get();
+		
+		server.takeRequest();
+		assertThat(server.takeRequest().getHeader("Cookie"), is("x=y"));
+		assertThat(new String(actual.getBody(), "UTF-8"), is("b"));
+		assertThat(actual.getCookies(), is(Collections.singletonMap("x", "y")));
+	}
+	
+	@Test
+	public void executeWithPermanentRedirectSkipsRedirectNextTime() throws IOException, InterruptedException
+	{
+		server.enqueue(new MockResponse().setResponseCode(301).addHeader("Location", "/b"));
+		server.enqueue(new MockResponse().setBody("b1"));
+		server.enqueue(new MockResponse().setBody("b2"));
+		transport.execute(new HttpRequest(HttpRequest.GET, url("/a")));
+		
+		HttpResponse actual = transport.execute(new HttpRequest(HttpRequest.GET, url("/a")));
+		
+		server.takeRequest();
+		server.takeRequest();
+		assertThat(server.takeRequest().getPath(), is("/b"));
+		assertThat(actual.getUrl(), is(url("/b")));
+		assertThat(new String(actual.getBody(), "UTF-8"), is("b2"));
+	}
+	
+	@Test
+	public void executeAsyncWithPermanentRedirectSkipsRedirectNextTime() throws IOException, InterruptedException,
+		ExecutionException
+	{
+		server.enqueue(new MockResponse().setResponseCode(308).addHeader("Location", "/b"));
+		server.enqueue(new MockResponse());
+		server.enqueue(new MockResponse());
+		transport.executeAsync(new HttpRequest(HttpRequest.GET, url("/a"))).get();
+		
+		transport.executeAsync(new HttpRequest(HttpRequest.GET, url("/a"))).get();
+		
+		server.takeRequest();
+		server.takeRequest();
+		assertThat(server.takeRequest().getPath(), is("/b"));
+	}
+	
+	@Test
+	public void executeWithTemporaryRedirectFollowsRedirectNextTime() throws IOException, InterruptedException
+	{
+		server.enqueue(new MockResponse().setResponseCode(307).addHeader("Location", "/b"));
+		server.enqueue(new MockResponse());
+		server.enqueue(new MockResponse());
+		transport.execute(new HttpRequest(HttpRequest.GET, url("/a")));
+		
+		transport.execute(new HttpRequest(HttpRequest.GET, url("/a")));
+		
+		server.takeRequest();
+		server.takeRequest();
+		assertThat(server.takeRequest().getPath(), is("/a"));
+	}
+	
+	@Test
+	public void executeWithPermanentRedirectAndNoStoreFollowsRedirectNextTime() throws IOException,
+		InterruptedException
+	{
+		server.enqueue(new MockResponse().setResponseCode(301).addHeader("Location", "/b")
+			.addHeader("Cache-Control", "no-store"));
+		server.enqueue(new MockResponse());
+		server.enqueue(new MockResponse());
+		transport.execute(new HttpRequest(HttpRequest.GET, url("/a")));
+		
+		transport.execute(new HttpRequest(HttpRequest.GET, url("/a")));
+		
+		server.takeRequest();
+		server.takeRequest();
+		assertThat(server.takeRequest().getPath(), is("/a"));
+	}
+	
+	@Test
+	public void executeWithPermanentRedirectWhenPostFollowsRedirectNextTime() throws IOException,
+		InterruptedException
+	{
+		server.enqueue(new MockResponse().setResponseCode(301).addHeader("Location", "/b"));
+		server.enqueue(new MockResponse());
+		server.enqueue(new MockResponse());
+		transport.execute(new HttpRequest(HttpRequest.GET, url("/a")));
+		
+		transport.execute(new HttpRequest(HttpRequest.POST, url("/a")));
+		
+		server.takeRequest();
+		server.takeRequest();
+		assertThat(server.takeRequest().getPath(), is("/a"));
+	}
+	
+	@Test
+	public void executeWithPermanentRedirectWhenNoMaxPermanentRedirectsFollowsRedirectNextTime() throws IOException,
+		InterruptedException
+	{
+		server.enqueue(new MockResponse().setResponseCode(301).addHeader("Location", "/b"));
+		server.enqueue(new MockResponse());
+		server.enqueue(new MockResponse());
+		transport.maxPermanentRedirects(0);
+		transport.execute(new HttpRequest(HttpRequest.GET, url("/a")));
+		
+		transport.execute(new HttpRequest(HttpRequest.GET, url("/a")));
+		
+		server.takeRequest();
+		server.takeRequest();
+		assertThat(server.takeRequest().getPath(), is("/a"));
+	}
+	
+	@Test
+	public void clearPermanentRedirectsFollowsRedirectNextTime() throws IOException, InterruptedException
+	{
+		server.enqueue(new MockResponse().setResponseCode(301).addHeader("Location", "/b"));
+		server.enqueue(new MockResponse());
+		server.enqueue(new MockResponse());
+		transport.execute(new HttpRequest(HttpRequest.GET, url("/a")));
+		
+		transport.clearPermanentRedirects();
+		
+		transport.execute(new HttpRequest(HttpRequest.GET, url("/a")));
+		server.takeRequest();
+		server.takeRequest();
+		assertThat(server.takeRequest().getPath(), is("/a"));
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private URL url(String path)
+	{
+		return server.url(path).url();
+	}
+	
+	private static Buffer gzip(String string) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		GZIPOutputStream out = new GZIPOutputStream(bytes);
+		
+		try
+		{
+			out.write(string.getBytes("UTF-8"));
+		}
+		finally
+		{
+			out.close();
+		}
+		
+		return new Buffer().write(bytes.toByteArray());
+	}
+	
+	private static Buffer deflate(String string, boolean raw) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, raw);
+		DeflaterOutputStream out = new DeflaterOutputStream(bytes, deflater);
+		
+		try
+		{
+			out.write(string.getBytes("UTF-8"));
+		}
+		finally
+		{
+			out.close();
+			deflater.end();
+		}
+		
+		return new Buffer().write(bytes.toByteArray());
+	}
+}
@@ -0,0 +1,354 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.spi.http;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.hobsoft.microbrowser.spi.CompletableFutures;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.SocketPolicy;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests {@code RetryingTransport}.
+ */
+public class RetryingTransportTest
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// constants
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// initializer
+	// ----------------------------------------------------------------------------------------------------------------
+
+	static
+	{
+		Logger.getLogger("com.squareup.okhttp.mockwebserver").setLevel(Level.WARNING);
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private MockWebServer server = new MockWebServer();
+	
+	private ExpectedException thrown = ExpectedException.none();
+	
+	private PooledTransport delegate = new PooledTransport();
+	
+	private RetryingTransport transport = new RetryingTransport(delegate).backoff(0, 0, TimeUnit.MILLISECONDS);
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// test case methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Rule
+	public MockWebServer getServer()
+	{
+		return server;
+	}
+	
+	@Rule
+	public ExpectedException getThrown()
+	{
+		return thrown;
+	}
+	
+	@After
+	public void tearDown()
+	{
+		delegate.close();
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// tests
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Test
+	public void executeWithGetWhenDisconnectedRetriesRequest() throws IOException
+	{
+		server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START));
+		server.enqueue(new MockResponse().setBody("a"));
+		
+		HttpResponse actual = transport.execute(get("/"));
+		
+		assertThat(bodyOf(actual), is("a"));
+	}
+	
+	@Test
+	public void executeWithGetWhenUnavailableRetriesRequest() throws IOException
+	{
+		server.enqueue(new MockResponse().setResponseCode(503));
+		server.enqueue(new MockResponse().setBody("a"));
+		
+		HttpResponse actual = transport.execute(get("/"));
+		
+		assertThat(bodyOf(actual), is("a"));
+	}
+	
+	@Test
+	public void executeWithGetWhenNotFoundDoesNotRetryRequest() throws IOException
+	{
+		server.enqueue(new MockResponse().setResponseCode(404));
+		
+		HttpResponse actual = transport.execute(get("/"));
+		
+		assertThat(actual.getStatusCode(), is(404));
+		assertThat(server.getRequestCount(), is(1));
+	}
+	
+	@Test
+	public void executeWithGetWhenAlwaysUnavailableReturnsLastResponse() throws IOException
+	{
+		server.enqueue(new MockResponse().setResponseCode(503));
+		server.enqueue(new MockResponse().setResponseCode(503));
+		server.enqueue(new MockResponse().setResponseCode(503));
+		
+		HttpResponse actual = transport.execute(get("/"));
+		
+		assertThat(actual.getStatusCode(), is(503));
+		assertThat(server.getRequestCount(), is(3));
+	}
+	
+	@Test
+	public void executeWithGetWhenAlwaysDisconnectedThrowsException() throws IOException
+	{
+		server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START));
+		server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START));
+		transport.maxAttempts(2);
+		
+		thrown.expect(IOException.class);
+		
+		transport.execute(get("/"));
+	}
+	
+	@Test
+	public void executeWithGetWhenBodyTooLargeDoesNotRetryRequest() throws IOException
+	{
+		server.enqueue(new MockResponse().setBody("ab"));
+		delegate.limits(ResponseLimits.DEFAULT.withMaxBodySize(1));
+		
+		thrown.expect(BodyTooLargeException.class);
+		
+		transport.execute(get("/"));
+	}
+	
+	@Test
+	public void executeWithGetWhenTotalTimeoutExceededDoesNotRetryRequest() throws IOException
+	{
+		transport = new RetryingTransport(new TimingOutTransport()).backoff(0, 0, TimeUnit.MILLISECONDS);
+		
+		thrown.expect(TotalTimeoutException.class);
+		
+		transport.execute(get("/"));
+	}
+	
+	@Test
+	public void executeWithGetWhenBackoffExceedsTotalTimeoutDoesNotRetryRequest() throws IOException
+	{
+		server.enqueue(new MockResponse().setResponseCode(503));
+		server.enqueue(new MockResponse().setBody("a"));
+		transport.totalTimeout(1, TimeUnit.NANOSECONDS);
+		
+		HttpResponse actual = transport.execute(get("/"));
+		
+		assertThat(actual.getStatusCode(), is(503));
+		assertThat(server.getRequestCount(), is(1));
+	}
+	
+	@Test
+	public void executeWithPostWhenUnavailableDoesNotRetryRequest() throws IOException
+	{
+		server.enqueue(new MockResponse().setResponseCode(503));
+		
+		HttpResponse actual = transport.execute(new HttpRequest(HttpRequest.POST, url("/")));
+		
+		assertThat(actual.getStatusCode(), is(503));
+		assertThat(server.getRequestCount(), is(1));
+	}
+	
+	@Test
+	public void executeAsyncWithGetWhenUnavailableRetriesRequest() throws InterruptedException, ExecutionException
+	{
+		server.enqueue(new MockResponse().setResponseCode(503));
+		server.enqueue(new MockResponse().setBody("a"));
+		
+		HttpResponse actual = transport.executeAsync(get("/")).get();
+		
+		assertThat(bodyOf(actual), is("a"));
+	}
+	
+	@Test
+	public void executeAsyncWithGetWhenTotalTimeoutExceededDoesNotRetryRequest() throws InterruptedException,
+		ExecutionException
+	{
+		transport = new RetryingTransport(new TimingOutTransport()).backoff(0, 0, TimeUnit.MILLISECONDS);
+		
+		thrown.expectCause(instanceOf(TotalTimeoutException.class));
+		
+		transport.executeAsync(get("/")).get();
+	}
+	
+	@Test
+	public void executeAsyncWithGetWhenBackoffExceedsTotalTimeoutDoesNotRetryRequest() throws InterruptedException,
+		ExecutionException
+	{
+		server.enqueue(new MockResponse().setResponseCode(503));
+		server.enqueue(new MockResponse().setBody("a"));
+		transport.totalTimeout(1, TimeUnit.NANOSECONDS);
+		
+		HttpResponse actual = transport.executeAsync(get("/")).get();
+		
+		assertThat(actual.getStatusCode(), is(503));
+		assertThat(server.getRequestCount(), is(1));
+	}
+	
+	@Test
+	public void executeAsyncWithPostWhenUnavailableDoesNotRetryRequest() throws InterruptedException,
+		ExecutionException
+	{
+		server.enqueue(new MockResponse().setResponseCode(503));
+		
+		HttpResponse actual = transport.executeAsync(new HttpRequest(HttpRequest.POST, url("/"))).get();
+		
+		assertThat(actual.getStatusCode(), is(503));
+		assertThat(server.getRequestCount(), is(1));
+	}
+	
+	@Test
+	public void executeWithHedgeWhenSlowReturnsFirstResponse() throws IOException
+	{
+		transport.hedge(50);
+		warmUp(20);
+		server.enqueue(new MockResponse().setBody("slow").setBodyDelay(2, TimeUnit.SECONDS));
+		server.enqueue(new MockResponse().setBody("fast"));
+		
+		HttpResponse actual = transport.execute(get("/"));
+		
+		assertThat(bodyOf(actual), is("fast"));
+		assertThat(server.getRequestCount(), is(22));
+	}
+	
+	@Test
+	public void executeWithHedgeWhenTooFewSamplesDoesNotHedge() throws IOException
+	{
+		transport.hedge(50);
+		server.enqueue(new MockResponse().setBody("slow").setBodyDelay(200, TimeUnit.MILLISECONDS));
+		
+		HttpResponse actual = transport.execute(get("/"));
+		
+		assertThat(bodyOf(actual), is("slow"));
+		assertThat(server.getRequestCount(), is(1));
+	}
+	
+	@Test
+	public void executeAsyncWithHedgeWhenSlowReturnsFirstResponse() throws IOException, InterruptedException,
+		ExecutionException
+	{
+		transport.hedge(50);
+		warmUp(20);
+		server.enqueue(new MockResponse().setBody("slow").setBodyDelay(2, TimeUnit.SECONDS));
+		server.enqueue(new MockResponse().setBody("fast"));
+		
+		HttpResponse actual = transport.executeAsync(get("/")).get();
+		
+		assertThat(bodyOf(actual), is("fast"));
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private void warmUp(int requests) throws IOException
+	{
+		for (int index = 0; index < requests; index++)
+		{
+			server.enqueue(new MockResponse());
+			transport.execute(get("/"));
+		}
+	}
+	
+	private HttpRequest get(String path)
+	{
+		return new HttpRequest(HttpRequest.GET, url(path));
+	}
+	
+	private URL url(String path)
+	{
+		return server.url(path).url();
+	}
+	
+	private static String bodyOf(HttpResponse response)
+	{
+		return new String(response.getBody(), UTF_8);
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// types
+	// ----------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * {@code Transport} that exceeds the total timeout of the first request and returns an empty response to any
+	 * other.
+	 */
+	private static class TimingOutTransport implements Transport
+	{
+		private boolean timedOut;
+		
+		public synchronized HttpResponse execute(HttpRequest request) throws IOException
+		{
+			if (!timedOut)
+			{
+				timedOut = true;
+				throw new TotalTimeoutException("Total timeout exceeded");
+			}
+			
+			return new HttpResponse(request.getUrl(), 200, "OK", Collections.<String, List<String>>emptyMap(),
+				new byte[0]);
+		}
+		
+		public CompletableFuture<HttpResponse> executeAsync(HttpRequest request)
+		{
+			try
+			{
+				return CompletableFuture.completedFuture(execute(request));
+			}
+			catch (IOException exception)
+			{
+				return CompletableFutures.failedFuture(exception);
+			}
+		}
+	}
+}
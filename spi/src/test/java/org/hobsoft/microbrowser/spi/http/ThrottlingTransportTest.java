@@ -0,0 +1,199 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hobsoft.microbrowser.spi.http;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests {@code ThrottlingTransport}.
+ */
+public class ThrottlingTransportTest
+{
+	// ----------------------------------------------------------------------------------------------------------------
+	// constants
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// initializer
+	// ----------------------------------------------------------------------------------------------------------------
+
+	static
+	{
+		Logger.getLogger("com.squareup.okhttp.mockwebserver").setLevel(Level.WARNING);
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// fields
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private MockWebServer server = new MockWebServer();
+	
+	private PooledTransport delegate = new PooledTransport();
+	
+	private ThrottlingTransport transport = new ThrottlingTransport(delegate);
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// test case methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Rule
+	public MockWebServer getServer()
+	{
+		return server;
+	}
+	
+	@After
+	public void tearDown()
+	{
+		delegate.close();
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// tests
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Test
+	public void executeReturnsResponse() throws IOException
+	{
+		server.enqueue(new MockResponse().setBody("a"));
+		
+		HttpResponse actual = transport.execute(get("localhost", "/"));
+		
+		assertThat(bodyOf(actual), is("a"));
+		assertThat(transport.getInFlightCount("localhost"), is(0));
+	}
+	
+	@Test
+	public void executeAsyncWhenMaxInFlightQueuesRequest() throws MalformedURLException
+	{
+		server.enqueue(newSlowResponse("a"));
+		server.enqueue(newSlowResponse("b"));
+		transport.maxInFlight(1);
+		
+		transport.executeAsync(get("localhost", "/a"));
+		transport.executeAsync(get("localhost", "/b"));
+		
+		assertThat(transport.getInFlightCount("localhost"), is(1));
+		assertThat(transport.getQueueDepth("localhost"), is(1));
+	}
+	
+	@Test
+	public void executeAsyncWhenMaxInFlightSendsQueuedRequestAfterwards() throws MalformedURLException,
+		InterruptedException, ExecutionException
+	{
+		server.enqueue(newSlowResponse("a"));
+		server.enqueue(newSlowResponse("b"));
+		transport.maxInFlight(1);
+		transport.executeAsync(get("localhost", "/a"));
+		
+		HttpResponse actual = transport.executeAsync(get("localhost", "/b")).get();
+		
+		assertThat(bodyOf(actual), is("b"));
+		assertThat(transport.getQueueDepth("localhost"), is(0));
+		assertThat(transport.getMeanWaitTime("localhost", TimeUnit.MILLISECONDS), is(greaterThan(0L)));
+	}
+	
+	@Test
+	public void executeAsyncWhenMaxInFlightForOtherHostSendsRequest() throws MalformedURLException
+	{
+		server.enqueue(newSlowResponse("a"));
+		server.enqueue(newSlowResponse("b"));
+		transport.maxInFlight(1);
+		transport.executeAsync(get("localhost", "/a"));
+		
+		transport.executeAsync(get("127.0.0.1", "/b"));
+		
+		assertThat(transport.getInFlightCount("127.0.0.1"), is(1));
+		assertThat(transport.getQueueDepth("127.0.0.1"), is(0));
+	}
+	
+	@Test
+	public void executeAsyncWhenQueuedAndCancelledRemovesRequest() throws MalformedURLException
+	{
+		server.enqueue(newSlowResponse("a"));
+		transport.maxInFlight(1);
+		transport.executeAsync(get("localhost", "/a"));
+		CompletableFuture<HttpResponse> queued = transport.executeAsync(get("localhost", "/b"));
+		
+		queued.cancel(true);
+		
+		assertThat(transport.getQueueDepth("localhost"), is(0));
+		assertThat(transport.getInFlightCount("localhost"), is(1));
+	}
+	
+	@Test
+	public void executeWithRateDelaysRequestsBeyondBurst() throws IOException
+	{
+		server.enqueue(new MockResponse());
+		server.enqueue(new MockResponse());
+		server.enqueue(new MockResponse());
+		transport.rate(10, 1);
+		long start = System.nanoTime();
+		
+		transport.execute(get("localhost", "/"));
+		transport.execute(get("localhost", "/"));
+		transport.execute(get("localhost", "/"));
+		
+		assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), is(greaterThanOrEqualTo(150L)));
+	}
+	
+	@Test
+	public void getQueueDepthWithUnknownHostReturnsZero()
+	{
+		assertThat(transport.getQueueDepth("example.com"), is(0));
+	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// private methods
+	// ----------------------------------------------------------------------------------------------------------------
+
+	private HttpRequest get(String host, String path) throws MalformedURLException
+	{
+		URL url = server.url(path).url();
+		
+		return new HttpRequest(HttpRequest.GET, new URL(url.getProtocol(), host, url.getPort(), url.getFile()));
+	}
+	
+	private static MockResponse newSlowResponse(String body)
+	{
+		return new MockResponse().setBody(body).setBodyDelay(300, TimeUnit.MILLISECONDS);
+	}
+	
+	private static String bodyOf(HttpResponse response)
+	{
+		return new String(response.getBody(), UTF_8);
+	}
+}
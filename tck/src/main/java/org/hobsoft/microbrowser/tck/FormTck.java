@@ -13,14 +13,21 @@
  */
 package org.hobsoft.microbrowser.tck;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 import org.hobsoft.microbrowser.Control;
 import org.hobsoft.microbrowser.ControlGroup;
 import org.hobsoft.microbrowser.ControlNotFoundException;
 import org.hobsoft.microbrowser.Form;
+import org.hobsoft.microbrowser.MicrodataDocument;
 import org.junit.Test;
 
 import com.squareup.okhttp.mockwebserver.MockResponse;
 
+import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hobsoft.microbrowser.tck.support.mockwebserver.MockWebServerMatchers.get;
 import static org.hobsoft.microbrowser.tck.support.mockwebserver.MockWebServerUtils.takeRequest;
@@ -322,6 +329,84 @@ public abstract class FormTck extends AbstractMicrobrowserTest
 		form.submit();
 	}
 
+	// ----------------------------------------------------------------------------------------------------------------
+	// submitAsync tests
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Test
+	public void submitAsyncSubmitsRequest() throws InterruptedException, ExecutionException
+	{
+		server().enqueue(new MockResponse().setBody("<html><body>"
+			+ "<form name='f' action='/x'>"
+			+ "<input type='submit'/>"
+			+ "</form>"
+			+ "</body></html>"));
+		server().enqueue(new MockResponse());
+		
+		newBrowser().get(url(server()))
+			.getForm("f")
+			.submitAsync()
+			.get();
+		
+		server().takeRequest();
+		assertThat("request", takeRequest(server()), is(get("/x")));
+	}
+
+	@Test
+	public void submitAsyncWhenNoSubmitButtonThrowsException()
+	{
+		server().enqueue(new MockResponse().setBody("<html><body>"
+			+ "<form name='f'/>"
+			+ "</body></html>"));
+		
+		Form form = newBrowser().get(url(server()))
+			.getForm("f");
+		
+		thrown().expect(IllegalStateException.class);
+		thrown().expectMessage("Missing form submit button");
+		
+		form.submitAsync();
+	}
+
+	@Test
+	public void submitAsyncWhenInvalidActionThrowsException()
+	{
+		server().enqueue(new MockResponse().setBody("<html><body>"
+			+ "<form name='f' action='x:/a'>"
+			+ "<input type='submit'/>"
+			+ "</form>"
+			+ "</body></html>"));
+		
+		Form form = newBrowser().get(url(server()))
+			.getForm("f");
+		
+		thrown().expect(IllegalArgumentException.class);
+		thrown().expectMessage("Invalid action: x:/a");
+		
+		form.submitAsync();
+	}
+
+	@Test
+	public void submitAsyncWithTimeoutWhenSlowCompletesWithTimeoutException() throws InterruptedException,
+		ExecutionException
+	{
+		server().enqueue(new MockResponse().setBody("<html><body>"
+			+ "<form name='f' action='/x'>"
+			+ "<input type='submit'/>"
+			+ "</form>"
+			+ "</body></html>"));
+		server().enqueue(new MockResponse().setBody("<html/>").setBodyDelay(1, TimeUnit.SECONDS));
+		
+		CompletableFuture<MicrodataDocument> actual = newBrowser().get(url(server()))
+			.getForm("f")
+			.submitAsync(100, TimeUnit.MILLISECONDS);
+		
+		thrown().expect(ExecutionException.class);
+		thrown().expectCause(instanceOf(TimeoutException.class));
+		
+		actual.get();
+	}
+
 	// ----------------------------------------------------------------------------------------------------------------
 	// unwrap tests
 	// ----------------------------------------------------------------------------------------------------------------
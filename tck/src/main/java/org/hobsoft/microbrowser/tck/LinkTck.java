@@ -15,6 +15,10 @@ package org.hobsoft.microbrowser.tck;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.hobsoft.microbrowser.Link;
 import org.hobsoft.microbrowser.MicrodataDocument;
@@ -22,6 +26,7 @@ import org.junit.Test;
 
 import com.squareup.okhttp.mockwebserver.MockResponse;
 
+import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hobsoft.microbrowser.tck.support.MicrobrowserMatchers.item;
@@ -260,6 +265,98 @@ public abstract class LinkTck extends AbstractMicrobrowserTest
 		link.follow();
 	}
 
+	// ----------------------------------------------------------------------------------------------------------------
+	// followAsync tests
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Test
+	public void followAsyncWhenAnchorSubmitsRequest() throws InterruptedException, ExecutionException
+	{
+		server().enqueue(new MockResponse().setBody("<html><body>"
+			+ "<a rel='r' href='/x'>a</a>"
+			+ "</body></html>"));
+		server().enqueue(new MockResponse());
+		
+		newBrowser().get(url(server()))
+			.getLink("r")
+			.followAsync()
+			.get();
+		
+		server().takeRequest();
+		assertThat("request", takeRequest(server()).getPath(), is("/x"));
+	}
+
+	@Test
+	public void followAsyncWhenAnchorSendsCookie() throws InterruptedException, ExecutionException
+	{
+		server().enqueue(new MockResponse().addHeader("Set-Cookie", "x=y").setBody("<html><body>"
+			+ "<a rel='r' href='/a'>a</a>"
+			+ "</body></html>"));
+		server().enqueue(new MockResponse());
+		
+		newBrowser().get(url(server()))
+			.getLink("r")
+			.followAsync()
+			.get();
+		
+		server().takeRequest();
+		assertThat("cookie", takeRequest(server()).getHeader("Cookie"), is("x=y"));
+	}
+
+	@Test
+	public void followAsyncWhenAnchorReturnsResponse() throws MalformedURLException, InterruptedException,
+		ExecutionException
+	{
+		server().enqueue(new MockResponse().setBody("<html><body>"
+			+ "<a rel='r' href='/a'>a</a>"
+			+ "</body></html>"));
+		server().enqueue(new MockResponse().setBody("<html><body>"
+			+ "<div itemscope='itemscope' itemtype='http://i' itemid='http://x'/>"
+			+ "</body></html>"));
+		
+		MicrodataDocument actual = newBrowser().get(url(server()))
+			.getLink("r")
+			.followAsync()
+			.get();
+		
+		assertThat("response", actual.getItem("http://i"), is(item("http://x")));
+	}
+	
+	@Test
+	public void followAsyncWhenInvalidUrlThrowsException()
+	{
+		server().enqueue(new MockResponse().setBody("<html><body>"
+			+ "<a rel='r' href='x:/a'>a</a>"
+			+ "</body></html>"));
+		
+		Link link = newBrowser().get(url(server()))
+			.getLink("r");
+		
+		thrown().expect(IllegalArgumentException.class);
+		thrown().expectMessage("Invalid URL: x:/a");
+		
+		link.followAsync();
+	}
+	
+	@Test
+	public void followAsyncWithTimeoutWhenSlowCompletesWithTimeoutException() throws InterruptedException,
+		ExecutionException
+	{
+		server().enqueue(new MockResponse().setBody("<html><body>"
+			+ "<a rel='r' href='/a'>a</a>"
+			+ "</body></html>"));
+		server().enqueue(new MockResponse().setBody("<html/>").setBodyDelay(1, TimeUnit.SECONDS));
+		
+		CompletableFuture<MicrodataDocument> actual = newBrowser().get(url(server()))
+			.getLink("r")
+			.followAsync(100, TimeUnit.MILLISECONDS);
+		
+		thrown().expect(ExecutionException.class);
+		thrown().expectCause(instanceOf(TimeoutException.class));
+		
+		actual.get();
+	}
+
 	// ----------------------------------------------------------------------------------------------------------------
 	// unwrap tests
 	// ----------------------------------------------------------------------------------------------------------------
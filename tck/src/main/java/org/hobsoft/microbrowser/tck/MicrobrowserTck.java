@@ -14,12 +14,17 @@
 package org.hobsoft.microbrowser.tck;
 
 import java.net.MalformedURLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.hobsoft.microbrowser.MicrodataDocument;
 import org.junit.Test;
 
 import com.squareup.okhttp.mockwebserver.MockResponse;
 
+import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hobsoft.microbrowser.tck.support.MicrobrowserMatchers.item;
 import static org.hobsoft.microbrowser.tck.support.mockwebserver.MockWebServerUtils.url;
@@ -99,4 +104,67 @@ public abstract class MicrobrowserTck extends AbstractMicrobrowserTest
 		
 		assertThat("response", actual.getItem("http://i"), is(item("http://x")));
 	}
+	
+	// ----------------------------------------------------------------------------------------------------------------
+	// getAsync tests
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Test
+	public void getAsyncRequestsPath() throws InterruptedException, ExecutionException
+	{
+		server().enqueue(new MockResponse());
+		
+		newBrowser().getAsync(url(server(), "/x")).get();
+		
+		assertThat("request path", server().takeRequest().getPath(), is("/x"));
+	}
+
+	@Test
+	public void getAsyncReturnsResponse() throws MalformedURLException, InterruptedException,
+		ExecutionException
+	{
+		server().enqueue(new MockResponse().setBody("<html><body>"
+			+ "<div itemscope='itemscope' itemtype='http://i' itemid='http://x'/>"
+			+ "</body></html>"));
+		
+		MicrodataDocument actual = newBrowser().getAsync(url(server())).get();
+		
+		assertThat("response", actual.getItem("http://i"), is(item("http://x")));
+	}
+	
+	@Test
+	public void getAsyncWithInvalidUrlThrowsException()
+	{
+		thrown().expect(IllegalArgumentException.class);
+		thrown().expectMessage("Invalid URL: x");
+		
+		newBrowser().getAsync("x");
+	}
+	
+	@Test
+	public void getAsyncWithTimeoutReturnsResponse() throws MalformedURLException, InterruptedException,
+		ExecutionException
+	{
+		server().enqueue(new MockResponse().setBody("<html><body>"
+			+ "<div itemscope='itemscope' itemtype='http://i' itemid='http://x'/>"
+			+ "</body></html>"));
+		
+		MicrodataDocument actual = newBrowser().getAsync(url(server()), 10, TimeUnit.SECONDS).get();
+		
+		assertThat("response", actual.getItem("http://i"), is(item("http://x")));
+	}
+	
+	@Test
+	public void getAsyncWithTimeoutWhenSlowCompletesWithTimeoutException() throws InterruptedException,
+		ExecutionException
+	{
+		server().enqueue(new MockResponse().setBody("<html/>").setBodyDelay(1, TimeUnit.SECONDS));
+		
+		CompletableFuture<MicrodataDocument> actual = newBrowser().getAsync(url(server()), 100, TimeUnit.MILLISECONDS);
+		
+		thrown().expect(ExecutionException.class);
+		thrown().expectCause(instanceOf(TimeoutException.class));
+		
+		actual.get();
+	}
 }
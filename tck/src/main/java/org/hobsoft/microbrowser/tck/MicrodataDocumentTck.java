@@ -31,8 +31,10 @@ import com.squareup.okhttp.mockwebserver.MockResponse;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalToIgnoringCase;
 import static org.hobsoft.microbrowser.tck.support.MicrobrowserMatchers.item;
 import static org.hobsoft.microbrowser.tck.support.MicrobrowserMatchers.link;
+import static org.hobsoft.microbrowser.tck.support.mockwebserver.MockWebServerUtils.takeRequest;
 import static org.hobsoft.microbrowser.tck.support.mockwebserver.MockWebServerUtils.url;
 import static org.junit.Assert.assertThat;
 
@@ -291,6 +293,19 @@ public abstract class MicrodataDocumentTck extends AbstractMicrobrowserTest
 		));
 	}
 
+	@Test
+	public void getLinksWithRelTokenReturnsLink() throws MalformedURLException
+	{
+		server().enqueue(new MockResponse().setBody("<html><body>"
+			+ "<a rel='x y' href='http://z/'/>"
+			+ "</body></html>"));
+		
+		List<Link> actual = newBrowser().get(url(server()))
+			.getLinks("y");
+		
+		assertThat("links", actual, contains(link("x y", "http://z/")));
+	}
+
 	@Test
 	public void getLinksWithUnknownRelReturnsEmptyList()
 	{
@@ -376,6 +391,96 @@ public abstract class MicrodataDocumentTck extends AbstractMicrobrowserTest
 		document.getCookie("x");
 	}
 
+	// ----------------------------------------------------------------------------------------------------------------
+	// detach tests
+	// ----------------------------------------------------------------------------------------------------------------
+
+	@Test
+	public void detachReturnsItems() throws MalformedURLException
+	{
+		server().enqueue(new MockResponse().setBody("<html><body>"
+			+ "<div itemscope='itemscope' itemtype='http://x' itemid='http://y'/>"
+			+ "</body></html>"));
+		
+		MicrodataItem actual = newBrowser().get(url(server()))
+			.detach()
+			.getItem("http://x");
+		
+		assertThat("item", actual, is(item("http://y")));
+	}
+
+	@Test
+	public void detachReturnsItemPropertyValues()
+	{
+		server().enqueue(new MockResponse().setBody("<html><body>"
+			+ "<div itemscope='itemscope' itemtype='http://i'>"
+			+ "<a itemprop='p' href='/x'>a</a>"
+			+ "</div>"
+			+ "</body></html>"));
+		
+		String actual = newBrowser().get(url(server()))
+			.detach()
+			.getItem("http://i")
+			.getProperty("p")
+			.getValue();
+		
+		assertThat("item property value", actual, equalToIgnoringCase(url(server(), "/x")));
+	}
+
+	@Test
+	public void detachReturnsLinks() throws MalformedURLException
+	{
+		server().enqueue(new MockResponse().setBody("<html><body>"
+			+ "<a rel='x' href='http://y/'/>"
+			+ "</body></html>"));
+		
+		List<Link> actual = newBrowser().get(url(server()))
+			.detach()
+			.getLinks("x");
+		
+		assertThat("links", actual, contains(link("x", "http://y/")));
+	}
+
+	@Test
+	public void detachThenFollowLinkSubmitsRequest() throws InterruptedException
+	{
+		server().enqueue(new MockResponse().setBody("<html><body>"
+			+ "<a rel='r' href='/x'>a</a>"
+			+ "</body></html>"));
+		server().enqueue(new MockResponse());
+		
+		newBrowser().get(url(server()))
+			.detach()
+			.getLink("r")
+			.follow();
+		
+		server().takeRequest();
+		assertThat("request", takeRequest(server()).getPath(), is("/x"));
+	}
+
+	@Test
+	public void detachThenFollowLinkLeavesDetachedDocumentUnchanged()
+	{
+		server().enqueue(new MockResponse().setBody("<html><body>"
+			+ "<div itemscope='itemscope' itemtype='http://i'>"
+			+ "<p itemprop='p'>x</p>"
+			+ "</div>"
+			+ "<a rel='r' href='/y'>a</a>"
+			+ "</body></html>"));
+		server().enqueue(new MockResponse().setBody("<html><body>"
+			+ "<div itemscope='itemscope' itemtype='http://i'>"
+			+ "<p itemprop='p'>y</p>"
+			+ "</div>"
+			+ "</body></html>"));
+		
+		MicrodataDocument detached = newBrowser().get(url(server()))
+			.detach();
+		detached.getLink("r").follow();
+		
+		assertThat("item property value", detached.getItem("http://i").getProperty("p").getValue(), is("x"));
+		assertThat("link href", detached.getLink("r").getHref().toString(), equalToIgnoringCase(url(server(), "/y")));
+	}
+
 	// ----------------------------------------------------------------------------------------------------------------
 	// unwrap tests
 	// ----------------------------------------------------------------------------------------------------------------
@@ -283,6 +283,22 @@ public abstract class MicrodataItemTck extends AbstractMicrobrowserTest
 		));
 	}
 
+	@Test
+	public void getLinksWithRelTokenReturnsLink() throws MalformedURLException
+	{
+		server().enqueue(new MockResponse().setBody("<html><body>"
+			+ "<div itemscope='itemscope' itemtype='http://i'>"
+			+ "<a rel='x y' href='http://z/'/>"
+			+ "</div>"
+			+ "</body></html>"));
+		
+		List<Link> actual = newBrowser().get(url(server()))
+			.getItem("http://i")
+			.getLinks("y");
+		
+		assertThat("links", actual, contains(link("x y", "http://z/")));
+	}
+	
 	@Test
 	public void getLinksWithUnknownRelReturnsEmptyList()
 	{